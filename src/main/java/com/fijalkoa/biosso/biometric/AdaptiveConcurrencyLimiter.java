@@ -0,0 +1,335 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Adaptive concurrency limit for outbound biometric calls
+ *
+ * Learns how many concurrent calls the Python service can take before latency
+ * starts to grow (instead of a fixed limit that is wrong for every GPU/batch setup).
+ *
+ * Algorithms (app.biometric.concurrency-limit.algorithm):
+ * - gradient (default): compares long-term RTT with the latest RTT,
+ *   limit = limit x clamp(tolerance x longRtt / rtt, 0.5, 1) + sqrt(limit), smoothed
+ * - aimd: +1 while the limit is actually used, x backoff-ratio on failures/timeouts
+ *
+ * Calls above the limit wait in BiometricDispatchQueue (per-class queues, weighted fair
+ * sharing between login, verify and enrollment calls), bounded by max-queue-size and the
+ * per-class max-queue-wait. After that they are shed - BiometricCallGuard turns that into 429 + Retry-After.
+ * Blocking callers park on a condition, reactive callers (acquireAsync) queue a callback
+ * in the same queues, so both get the same fairness without holding a thread.
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    public enum Algorithm {
+        GRADIENT, AIMD
+    }
+
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double AIMD_BACKOFF_RATIO = 0.9;
+    private static final int LONG_RTT_WINDOW = 600;
+
+    private final Algorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final BiometricDispatchQueue waiters;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile double estimatedLimit;
+    private volatile int inFlight;
+    private double longRttNanos;
+    private long rttSamples;
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${app.biometric.concurrency-limit.algorithm:gradient}") String algorithm,
+            @Value("${app.biometric.concurrency-limit.initial-limit:8}") int initialLimit,
+            @Value("${app.biometric.concurrency-limit.min-limit:2}") int minLimit,
+            @Value("${app.biometric.concurrency-limit.max-limit:32}") int maxLimit,
+            @Value("${app.biometric.concurrency-limit.max-queue-size:64}") int maxQueueSize,
+            BiometricDispatchQueue dispatchQueue,
+            MeterRegistry meterRegistry) {
+
+        this.algorithm = Algorithm.valueOf(algorithm.trim().toUpperCase());
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueSize = maxQueueSize;
+        this.waiters = dispatchQueue;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("biometric.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit for biometric calls")
+                .register(meterRegistry);
+        Gauge.builder("biometric.limiter.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Biometric calls currently admitted by the limiter")
+                .register(meterRegistry);
+        Gauge.builder("biometric.limiter.queued", this, AdaptiveConcurrencyLimiter::getQueued)
+                .description("Biometric calls waiting for the limiter")
+                .register(meterRegistry);
+
+        log.info("📈 Adaptive concurrency limiter: algorithm={}, initial={}, range=[{}, {}], maxQueueSize={}",
+                this.algorithm, getLimit(), minLimit, maxLimit, maxQueueSize);
+    }
+
+    /**
+     * Acquire a slot, waiting in the class queue for at most its max-queue-wait
+     * Returns false when the call should be shed
+     */
+    public boolean acquire(BiometricPriority priority) throws InterruptedException {
+        return acquire(priority, waiters.getMaxWaitNanos(priority));
+    }
+
+    /**
+     * Acquire a slot without waiting
+     */
+    public boolean tryAcquire(BiometricPriority priority) {
+        try {
+            return acquire(priority, 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean acquire(BiometricPriority priority, long maxWaitNanos) throws InterruptedException {
+        List<BiometricDispatchQueue.Waiter> handedOn = List.of();
+        lock.lock();
+        try {
+            if (inFlight < getLimit() && waiters.isEmpty()) {
+                inFlight++;
+                waiters.recordWait(priority, 0);
+                return true;
+            }
+            if (maxWaitNanos <= 0 || waiters.size() >= maxQueueSize) {
+                return false;
+            }
+
+            BiometricDispatchQueue.Waiter waiter = waiters.enqueue(priority, lock.newCondition(), System.nanoTime());
+            try {
+                long remaining = maxWaitNanos;
+                while (!waiter.granted) {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = waiter.condition.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                if (waiter.granted) {
+                    // Granted just before the interrupt - the caller never gets the slot, pass it on
+                    inFlight--;
+                    handedOn = grantWaiters();
+                }
+                throw e;
+            } finally {
+                if (!waiter.granted) {
+                    waiters.remove(waiter);
+                }
+            }
+        } finally {
+            lock.unlock();
+            notifyGranted(handedOn);
+        }
+    }
+
+    /**
+     * Acquire a slot without blocking the caller (reactive callers)
+     *
+     * onDecision gets true once a slot is granted, false when the call is shed (queue full,
+     * max-queue-wait of its class over). It runs on this thread when decided right away,
+     * otherwise on the thread that freed the slot or on the timeout timer.
+     *
+     * @return the queued waiter (for withdraw()), null when decided right away
+     */
+    public BiometricDispatchQueue.Waiter acquireAsync(BiometricPriority priority, Consumer<Boolean> onDecision) {
+        long maxWaitNanos = waiters.getMaxWaitNanos(priority);
+        BiometricDispatchQueue.Waiter waiter = null;
+        boolean admitted = false;
+        lock.lock();
+        try {
+            if (inFlight < getLimit() && waiters.isEmpty()) {
+                inFlight++;
+                waiters.recordWait(priority, 0);
+                admitted = true;
+            } else if (maxWaitNanos > 0 && waiters.size() < maxQueueSize) {
+                waiter = waiters.enqueue(priority, onDecision, System.nanoTime());
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (waiter == null) {
+            onDecision.accept(admitted);
+            return null;
+        }
+        BiometricDispatchQueue.Waiter queued = waiter;
+        CompletableFuture.delayedExecutor(maxWaitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if (withdraw(queued)) {
+                queued.onDecision.accept(false);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Take back a request queued by acquireAsync (subscriber cancelled, max-queue-wait over)
+     *
+     * @return false when it was already granted or withdrawn - the slot then belongs to onDecision
+     */
+    public boolean withdraw(BiometricDispatchQueue.Waiter waiter) {
+        lock.lock();
+        try {
+            return !waiter.granted && waiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a slot and feed the observed round trip into the limit
+     *
+     * @param rttNanos round trip of the call
+     * @param dropped  call failed or timed out - treated as an overload signal
+     */
+    public void onSample(long rttNanos, boolean dropped) {
+        List<BiometricDispatchQueue.Waiter> granted;
+        lock.lock();
+        try {
+            int inFlightAtCompletion = inFlight;
+            inFlight--;
+            switch (algorithm) {
+                case GRADIENT -> updateGradient(rttNanos, dropped, inFlightAtCompletion);
+                case AIMD -> updateAimd(dropped, inFlightAtCompletion);
+            }
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        notifyGranted(granted);
+    }
+
+    /**
+     * Release a slot without a sample (call cancelled or rejected further down)
+     */
+    public void onIgnored() {
+        List<BiometricDispatchQueue.Waiter> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grantWaiters();
+        } finally {
+            lock.unlock();
+        }
+        notifyGranted(granted);
+    }
+
+    public int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued(BiometricPriority priority) {
+        return waiters.getQueued(priority);
+    }
+
+    private void updateGradient(long rttNanos, boolean dropped, int inFlightAtCompletion) {
+        rttNanos = Math.max(1, rttNanos);
+        if (rttSamples == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            long window = Math.min(rttSamples + 1, LONG_RTT_WINDOW);
+            longRttNanos += (rttNanos - longRttNanos) / window;
+        }
+        rttSamples++;
+
+        // Long-term RTT drifted far above the current RTT (load dropped) - let it recover faster
+        if (longRttNanos / rttNanos > 2) {
+            longRttNanos *= 0.95;
+        }
+
+        // Under-utilised limit says nothing about capacity
+        if (!dropped && inFlightAtCompletion < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRttNanos / rttNanos));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        setLimit(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private void updateAimd(boolean dropped, int inFlightAtCompletion) {
+        if (dropped) {
+            setLimit(estimatedLimit * AIMD_BACKOFF_RATIO);
+        } else if (inFlightAtCompletion * 2 >= estimatedLimit) {
+            setLimit(estimatedLimit + 1);
+        }
+    }
+
+    private void setLimit(double newLimit) {
+        double clamped = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        if ((int) clamped != (int) estimatedLimit) {
+            log.debug("📈 Biometric concurrency limit: {} -> {}", (int) estimatedLimit, (int) clamped);
+        }
+        estimatedLimit = clamped;
+    }
+
+    /**
+     * Hand free slots to queued calls - under the lock. Blocking waiters are signalled here,
+     * the returned non-blocking ones must be passed to notifyGranted() after unlocking.
+     */
+    private List<BiometricDispatchQueue.Waiter> grantWaiters() {
+        List<BiometricDispatchQueue.Waiter> granted = List.of();
+        long now = System.nanoTime();
+        while (inFlight < getLimit() && !waiters.isEmpty()) {
+            BiometricDispatchQueue.Waiter waiter = waiters.poll(now);
+            waiter.granted = true;
+            inFlight++;
+            if (waiter.condition != null) {
+                waiter.condition.signal();
+            } else {
+                if (granted.isEmpty()) {
+                    granted = new ArrayList<>();
+                }
+                granted.add(waiter);
+            }
+        }
+        return granted;
+    }
+
+    private static void notifyGranted(List<BiometricDispatchQueue.Waiter> granted) {
+        for (BiometricDispatchQueue.Waiter waiter : granted) {
+            try {
+                waiter.onDecision.accept(true);
+            } catch (RuntimeException e) {
+                log.error("❌ Biometric concurrency slot callback failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
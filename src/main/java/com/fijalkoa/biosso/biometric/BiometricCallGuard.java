@@ -0,0 +1,229 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Fail-fast guard around calls to the Python biometric microservice
+ *
+ * Three layers, checked in order:
+ * 1. Circuit breaker - stops calling Python while it is failing or slow (half-open probing to recover)
+ * 2. Adaptive concurrency limit - learned from observed RTTs, excess calls queue briefly
+ *    or are shed (see AdaptiveConcurrencyLimiter) - reactive callers queue without holding a thread
+ * 3. Bulkhead - hard cap on concurrent Python calls, so a slow Python service can only
+ *    hold that many servlet threads; password logins and OIDC endpoints keep their threads
+ *
+ * Rejected calls throw BiometricServiceUnavailableException (-> 503/429 + Retry-After).
+ *
+ * Metrics:
+ * - biometric.circuit.state (0 = closed, 1 = open, 2 = half-open)
+ * - biometric.calls.rejected{reason=circuit_open|concurrency_limit|bulkhead_full}
+ * - biometric.bulkhead.in_flight
+ */
+@Slf4j
+@Component
+public class BiometricCallGuard {
+
+    private final BiometricCircuitBreaker circuitBreaker;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final Semaphore bulkhead;
+    private final long bulkheadMaxWaitNanos;
+    private final Counter circuitOpenRejections;
+    private final Counter concurrencyLimitRejections;
+    private final Counter bulkheadFullRejections;
+
+    public BiometricCallGuard(
+            @Value("${app.biometric.circuit-breaker.window-size:50}") int windowSize,
+            @Value("${app.biometric.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${app.biometric.circuit-breaker.failure-rate-threshold:50}") int failureRateThresholdPercent,
+            @Value("${app.biometric.circuit-breaker.slow-call-duration:10s}") Duration slowCallDuration,
+            @Value("${app.biometric.circuit-breaker.open-duration:30s}") Duration openDuration,
+            @Value("${app.biometric.circuit-breaker.half-open-probes:3}") int halfOpenProbes,
+            @Value("${app.biometric.bulkhead.max-concurrent-calls:32}") int maxConcurrentCalls,
+            @Value("${app.biometric.bulkhead.max-wait:0ms}") Duration bulkheadMaxWait,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            MeterRegistry meterRegistry) {
+
+        this.circuitBreaker = new BiometricCircuitBreaker(windowSize, minimumCalls, failureRateThresholdPercent,
+                slowCallDuration.toNanos(), openDuration.toNanos(), halfOpenProbes, System::nanoTime);
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.bulkhead = new Semaphore(maxConcurrentCalls, true);
+        this.bulkheadMaxWaitNanos = bulkheadMaxWait.toNanos();
+
+        Gauge.builder("biometric.circuit.state", circuitBreaker, cb -> cb.getState().ordinal())
+                .description("Biometric circuit breaker state (0 = closed, 1 = open, 2 = half-open)")
+                .register(meterRegistry);
+        Gauge.builder("biometric.bulkhead.in_flight", bulkhead, b -> maxConcurrentCalls - b.availablePermits())
+                .description("Concurrent calls to the biometric microservice")
+                .register(meterRegistry);
+        this.circuitOpenRejections = Counter.builder("biometric.calls.rejected")
+                .tag("reason", "circuit_open")
+                .description("Biometric calls refused without contacting Python")
+                .register(meterRegistry);
+        this.concurrencyLimitRejections = Counter.builder("biometric.calls.rejected")
+                .tag("reason", "concurrency_limit")
+                .description("Biometric calls refused without contacting Python")
+                .register(meterRegistry);
+        this.bulkheadFullRejections = Counter.builder("biometric.calls.rejected")
+                .tag("reason", "bulkhead_full")
+                .description("Biometric calls refused without contacting Python")
+                .register(meterRegistry);
+
+        log.info("🛡️ Biometric call guard: bulkhead={}, slowCall={}, openDuration={}",
+                maxConcurrentCalls, slowCallDuration, openDuration);
+    }
+
+    /**
+     * Admit one call or throw BiometricServiceUnavailableException.
+     * May wait briefly in the concurrency limiter queue of its priority class.
+     * The returned permit must be released exactly once.
+     */
+    public Permit acquire(BiometricPriority priority) {
+        BiometricCircuitBreaker.Acquisition acquisition = enterCircuit();
+
+        boolean admitted;
+        try {
+            admitted = concurrencyLimiter.acquire(priority);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        return admit(acquisition, admitted, true);
+    }
+
+    /**
+     * Non-blocking acquire (reactive callers) - the Mono completes once the concurrency limiter
+     * grants a slot, without holding a thread while queued, or errors with BiometricServiceUnavailableException.
+     * Cancelling it while queued withdraws the request. The emitted permit must be released exactly once.
+     */
+    public Mono<Permit> acquireAsync(BiometricPriority priority) {
+        return Mono.<Permit>create(sink -> {
+            BiometricCircuitBreaker.Acquisition acquisition = enterCircuit();
+            BiometricDispatchQueue.Waiter waiter = concurrencyLimiter.acquireAsync(priority, admitted -> {
+                try {
+                    sink.success(admit(acquisition, admitted, false));
+                } catch (BiometricServiceUnavailableException e) {
+                    sink.error(e);
+                }
+            });
+            sink.onCancel(() -> {
+                if (waiter != null && concurrencyLimiter.withdraw(waiter)) {
+                    circuitBreaker.onIgnored(acquisition);
+                }
+            });
+        }).doOnDiscard(Permit.class, Permit::cancel);  // Granted after the subscriber went away
+    }
+
+    private BiometricCircuitBreaker.Acquisition enterCircuit() {
+        BiometricCircuitBreaker.Acquisition acquisition = circuitBreaker.tryAcquire();
+        if (acquisition == BiometricCircuitBreaker.Acquisition.REJECTED) {
+            circuitOpenRejections.increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(circuitBreaker.getRemainingOpenNanos()));
+            throw new BiometricServiceUnavailableException(BiometricServiceUnavailableException.Reason.CIRCUIT_OPEN,
+                    retryAfter, "Biometric service is temporarily unavailable (circuit open)");
+        }
+        return acquisition;
+    }
+
+    /**
+     * Bulkhead and permit once the concurrency limiter decided - admitted = a limiter slot is held
+     */
+    private Permit admit(BiometricCircuitBreaker.Acquisition acquisition, boolean admitted, boolean mayWait) {
+        if (!admitted) {
+            circuitBreaker.onIgnored(acquisition);
+            concurrencyLimitRejections.increment();
+            throw new BiometricServiceUnavailableException(BiometricServiceUnavailableException.Reason.CONCURRENCY_LIMIT,
+                    1, "Too many concurrent biometric requests, retry shortly");
+        }
+
+        boolean entered;
+        try {
+            entered = mayWait
+                    ? bulkhead.tryAcquire(bulkheadMaxWaitNanos, TimeUnit.NANOSECONDS)
+                    : bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            entered = false;
+        }
+        if (!entered) {
+            concurrencyLimiter.onIgnored();
+            circuitBreaker.onIgnored(acquisition);
+            bulkheadFullRejections.increment();
+            throw new BiometricServiceUnavailableException(BiometricServiceUnavailableException.Reason.BULKHEAD_FULL,
+                    1, "Biometric service is at capacity");
+        }
+
+        return new Permit(acquisition, System.nanoTime());
+    }
+
+    /**
+     * Run a blocking call under the guard
+     * 4xx responses count as success - Python answered, the request was bad
+     */
+    public <T> T execute(BiometricPriority priority, Supplier<T> call) {
+        Permit permit = acquire(priority);
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } catch (HttpClientErrorException e) {
+            failed = false;
+            throw e;
+        } finally {
+            permit.release(failed);
+        }
+    }
+
+    /**
+     * Result of an active health check round - see BiometricCircuitBreaker.onHealthCheck
+     */
+    public void onHealthCheck(boolean anyReplicaReachable) {
+        circuitBreaker.onHealthCheck(anyReplicaReachable);
+    }
+
+    public BiometricCircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    public final class Permit {
+
+        private final BiometricCircuitBreaker.Acquisition acquisition;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(BiometricCircuitBreaker.Acquisition acquisition, long startNanos) {
+            this.acquisition = acquisition;
+            this.startNanos = startNanos;
+        }
+
+        public void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                long rttNanos = System.nanoTime() - startNanos;
+                bulkhead.release();
+                concurrencyLimiter.onSample(rttNanos, failed);
+                circuitBreaker.onResult(acquisition, rttNanos, failed);
+            }
+        }
+
+        public void cancel() {
+            if (released.compareAndSet(false, true)) {
+                bulkhead.release();
+                concurrencyLimiter.onIgnored();
+                circuitBreaker.onIgnored(acquisition);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for the Python biometric microservice
+ *
+ * CLOSED    - calls pass, outcomes recorded in a count-based sliding window
+ * OPEN      - failure rate (errors + slow calls) crossed the threshold, calls fail fast
+ * HALF_OPEN - after the open period a limited number of probe calls is let through;
+ *             all probes succeed -> CLOSED, any probe fails -> OPEN again
+ *
+ * Slow calls (longer than slowCallNanos) count as failures - a Python service that
+ * answers in 60 s is as harmful to the SSO as one that does not answer at all.
+ */
+@Slf4j
+public class BiometricCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public enum Acquisition {
+        REJECTED, PERMITTED, PROBE
+    }
+
+    private final int minimumCalls;
+    private final int failureRateThresholdPercent;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int windowFailures;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probeSuccesses;
+    private boolean unreachable;
+
+    public BiometricCircuitBreaker(int windowSize, int minimumCalls, int failureRateThresholdPercent,
+                                   long slowCallNanos, long openNanos, int halfOpenProbes, LongSupplier clock) {
+        this.window = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThresholdPercent = failureRateThresholdPercent;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+        this.halfOpenProbes = halfOpenProbes;
+        this.clock = clock;
+    }
+
+    public Acquisition tryAcquire() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (clock.getAsLong() - openedAtNanos < openNanos) {
+                    return Acquisition.REJECTED;
+                }
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= halfOpenProbes) {
+                    return Acquisition.REJECTED;
+                }
+                probesInFlight++;
+                return Acquisition.PROBE;
+            }
+            return Acquisition.PERMITTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record the outcome of a call admitted by tryAcquire
+     */
+    public void onResult(Acquisition acquisition, long durationNanos, boolean failed) {
+        boolean bad = failed || durationNanos >= slowCallNanos;
+        lock.lock();
+        try {
+            if (acquisition == Acquisition.PROBE) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                probesInFlight--;
+                if (bad) {
+                    transitionTo(State.OPEN);
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    transitionTo(State.CLOSED);
+                }
+                return;
+            }
+
+            // Late results of calls admitted before the breaker opened are ignored
+            if (acquisition != Acquisition.PERMITTED || state != State.CLOSED) {
+                return;
+            }
+            record(bad);
+            if (windowCount >= minimumCalls && windowFailures * 100 >= failureRateThresholdPercent * windowCount) {
+                log.warn("🔌 Biometric circuit breaker opening: {}/{} failed or slow calls", windowFailures, windowCount);
+                transitionTo(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Release a permission without an outcome (call cancelled before Python answered)
+     */
+    public void onIgnored(Acquisition acquisition) {
+        if (acquisition != Acquisition.PROBE) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                probesInFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Active health signal (BiometricHealthProber), independent of call outcomes
+     * - no replica reachable: open now (or stay open) instead of failing a window of real calls
+     * - a replica reachable again while open: start half-open probing without waiting out open-duration
+     *   (only on the unreachable -> reachable transition, a breaker opened by failing calls while
+     *   replicas still answer their health checks waits out open-duration as usual)
+     */
+    public void onHealthCheck(boolean reachable) {
+        lock.lock();
+        try {
+            boolean wasUnreachable = unreachable;
+            unreachable = !reachable;
+            if (!reachable) {
+                if (state == State.OPEN) {
+                    openedAtNanos = clock.getAsLong();
+                } else {
+                    log.warn("🔌 Biometric circuit breaker opening: no replica passes health checks");
+                    transitionTo(State.OPEN);
+                }
+            } else if (wasUnreachable && state == State.OPEN) {
+                transitionTo(State.HALF_OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Time until the next half-open probe is allowed (0 when not OPEN)
+     */
+    public long getRemainingOpenNanos() {
+        lock.lock();
+        try {
+            return state == State.OPEN ? Math.max(0, openNanos - (clock.getAsLong() - openedAtNanos)) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void record(boolean bad) {
+        if (windowCount == window.length) {
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = bad;
+        if (bad) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    private void transitionTo(State newState) {
+        log.info("🔌 Biometric circuit breaker: {} -> {}", state, newState);
+        state = newState;
+        switch (newState) {
+            case OPEN -> openedAtNanos = clock.getAsLong();
+            case HALF_OPEN -> {
+                probesInFlight = 0;
+                probeSuccesses = 0;
+            }
+            case CLOSED -> {
+                windowIndex = 0;
+                windowCount = 0;
+                windowFailures = 0;
+            }
+        }
+    }
+}
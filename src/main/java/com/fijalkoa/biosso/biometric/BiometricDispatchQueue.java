@@ -0,0 +1,202 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.function.Consumer;
+
+/**
+ * Priority-aware wait queue for calls held back by AdaptiveConcurrencyLimiter
+ *
+ * One FIFO per BiometricPriority. When a slot frees up:
+ * 1. Starvation protection - a head waiter older than starvation-age is served first (oldest wins)
+ * 2. Otherwise weighted fair sharing (stride scheduling) - with weights 8/3/1, during
+ *    contention out of 12 grants auth gets 8, verify 3, enroll 1
+ *
+ * A class that was idle re-enters at the current virtual time, so it cannot
+ * save up credit and burst ahead of the others.
+ *
+ * Not thread-safe - only used under the limiter's lock.
+ *
+ * Metrics (tag class=auth|verify|enroll):
+ * - biometric.dispatch.queued - waiters per class
+ * - biometric.dispatch.wait - time from arrival to admission
+ */
+@Slf4j
+@Component
+public class BiometricDispatchQueue {
+
+    private static final long STRIDE = 1L << 20;
+
+    private final Map<BiometricPriority, ClassQueue> queues = new EnumMap<>(BiometricPriority.class);
+    private final long starvationNanos;
+    private long virtualTime;
+    private int size;
+
+    public BiometricDispatchQueue(
+            @Value("${app.biometric.dispatch.auth.weight:8}") int authWeight,
+            @Value("${app.biometric.dispatch.auth.max-queue-wait:500ms}") Duration authMaxWait,
+            @Value("${app.biometric.dispatch.verify.weight:3}") int verifyWeight,
+            @Value("${app.biometric.dispatch.verify.max-queue-wait:500ms}") Duration verifyMaxWait,
+            @Value("${app.biometric.dispatch.enroll.weight:1}") int enrollWeight,
+            @Value("${app.biometric.dispatch.enroll.max-queue-wait:5s}") Duration enrollMaxWait,
+            @Value("${app.biometric.dispatch.starvation-age:2s}") Duration starvationAge,
+            MeterRegistry meterRegistry) {
+
+        this.starvationNanos = starvationAge.toNanos();
+        queues.put(BiometricPriority.AUTH, new ClassQueue(BiometricPriority.AUTH, authWeight, authMaxWait, meterRegistry));
+        queues.put(BiometricPriority.VERIFY, new ClassQueue(BiometricPriority.VERIFY, verifyWeight, verifyMaxWait, meterRegistry));
+        queues.put(BiometricPriority.ENROLL, new ClassQueue(BiometricPriority.ENROLL, enrollWeight, enrollMaxWait, meterRegistry));
+
+        log.info("🚦 Biometric dispatch weights: auth={}, verify={}, enroll={}, starvationAge={}",
+                authWeight, verifyWeight, enrollWeight, starvationAge);
+    }
+
+    /**
+     * Blocking waiter - signalled on the condition once granted
+     */
+    public Waiter enqueue(BiometricPriority priority, Condition condition, long nowNanos) {
+        return enqueue(new Waiter(priority, condition, null, nowNanos));
+    }
+
+    /**
+     * Non-blocking waiter - the limiter calls onDecision (outside its lock) once granted or shed
+     */
+    public Waiter enqueue(BiometricPriority priority, Consumer<Boolean> onDecision, long nowNanos) {
+        return enqueue(new Waiter(priority, null, onDecision, nowNanos));
+    }
+
+    private Waiter enqueue(Waiter waiter) {
+        ClassQueue queue = queues.get(waiter.priority);
+        if (queue.waiters.isEmpty()) {
+            queue.pass = Math.max(queue.pass, virtualTime);
+        }
+        queue.waiters.addLast(waiter);
+        queue.depth.incrementAndGet();
+        size++;
+        return waiter;
+    }
+
+    /**
+     * Remove a waiter that gave up (timeout, interrupt, cancel)
+     *
+     * @return false when it was no longer queued
+     */
+    public boolean remove(Waiter waiter) {
+        ClassQueue queue = queues.get(waiter.priority);
+        if (queue.waiters.remove(waiter)) {
+            queue.depth.decrementAndGet();
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Next waiter to admit, or null when nobody is waiting
+     */
+    public Waiter poll(long nowNanos) {
+        if (size == 0) {
+            return null;
+        }
+
+        ClassQueue chosen = null;
+        for (ClassQueue queue : queues.values()) {
+            Waiter head = queue.waiters.peekFirst();
+            if (head != null && nowNanos - head.enqueuedNanos >= starvationNanos
+                    && (chosen == null || head.enqueuedNanos < chosen.waiters.peekFirst().enqueuedNanos)) {
+                chosen = queue;
+            }
+        }
+
+        if (chosen == null) {
+            for (ClassQueue queue : queues.values()) {
+                if (!queue.waiters.isEmpty() && (chosen == null || queue.pass < chosen.pass)) {
+                    chosen = queue;
+                }
+            }
+            virtualTime = chosen.pass;
+            chosen.pass += chosen.stride;
+        }
+
+        Waiter waiter = chosen.waiters.pollFirst();
+        chosen.depth.decrementAndGet();
+        size--;
+        recordWait(waiter.priority, nowNanos - waiter.enqueuedNanos);
+        return waiter;
+    }
+
+    public void recordWait(BiometricPriority priority, long waitNanos) {
+        queues.get(priority).waitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxWaitNanos(BiometricPriority priority) {
+        return queues.get(priority).maxWaitNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getQueued(BiometricPriority priority) {
+        return queues.get(priority).depth.get();
+    }
+
+    public static final class Waiter {
+        final BiometricPriority priority;
+        final Condition condition;
+        final Consumer<Boolean> onDecision;
+        final long enqueuedNanos;
+        boolean granted;
+
+        private Waiter(BiometricPriority priority, Condition condition, Consumer<Boolean> onDecision, long enqueuedNanos) {
+            this.priority = priority;
+            this.condition = condition;
+            this.onDecision = onDecision;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        public BiometricPriority getPriority() {
+            return priority;
+        }
+    }
+
+    private static final class ClassQueue {
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final long stride;
+        private final long maxWaitNanos;
+        private final Timer waitTimer;
+        private long pass;
+
+        private ClassQueue(BiometricPriority priority, int weight, Duration maxWait, MeterRegistry meterRegistry) {
+            this.stride = STRIDE / Math.max(1, weight);
+            this.maxWaitNanos = maxWait.toNanos();
+            this.waitTimer = Timer.builder("biometric.dispatch.wait")
+                    .tag("class", priority.tag())
+                    .description("Time biometric calls wait for a concurrency slot")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            Gauge.builder("biometric.dispatch.queued", depth, AtomicInteger::get)
+                    .tag("class", priority.tag())
+                    .description("Biometric calls waiting for a concurrency slot")
+                    .register(meterRegistry);
+        }
+    }
+}
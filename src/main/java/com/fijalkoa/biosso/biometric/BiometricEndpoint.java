@@ -0,0 +1,133 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One Python biometric replica as seen by BiometricLoadBalancer
+ *
+ * Tracks (passively, from real traffic):
+ * - outstanding requests
+ * - EWMA latency, decaying towards zero while the endpoint gets no traffic
+ *   (so a once-slow node is eventually tried again)
+ * - consecutive failures and ejection state
+ * and (actively, from BiometricHealthProber) whether the last health checks passed
+ *
+ * Statistics are updated without locking; small races only blur the estimates.
+ */
+public class BiometricEndpoint {
+
+    private static final double EWMA_ALPHA = 0.3;
+
+    @Getter
+    private final String url;
+
+    private final long decayNanos;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private volatile double ewmaLatencyNanos;
+    private volatile long lastSampleNanos;
+    private volatile long samples;
+
+    private volatile long ejectedUntilNanos;
+    private volatile int ejections;
+    private volatile boolean healthy = true;
+
+    public BiometricEndpoint(String url, long decayNanos) {
+        this.url = url;
+        this.decayNanos = decayNanos;
+    }
+
+    public void onRequestStart() {
+        outstanding.incrementAndGet();
+    }
+
+    public void onRequestEnd(long latencyNanos, boolean failed) {
+        outstanding.decrementAndGet();
+
+        double current = ewmaLatencyNanos;
+        ewmaLatencyNanos = samples == 0 ? latencyNanos : current + EWMA_ALPHA * (latencyNanos - current);
+        lastSampleNanos = System.nanoTime();
+        samples++;
+
+        if (failed) {
+            consecutiveFailures.incrementAndGet();
+        } else {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * EWMA latency, decayed by the time since the last observed response
+     */
+    public double getLatencyNanos(long nowNanos) {
+        if (samples == 0) {
+            return 0;
+        }
+        double idle = Math.max(0, nowNanos - lastSampleNanos);
+        return ewmaLatencyNanos * Math.exp(-idle / decayNanos);
+    }
+
+    /**
+     * Peak-EWMA style cost used for balancing: latency weighted by queue length
+     */
+    public double getCost(long nowNanos) {
+        return (getLatencyNanos(nowNanos) + 1) * (outstanding.get() + 1);
+    }
+
+    public boolean isEjected(long nowNanos) {
+        return ejectedUntilNanos != 0 && nowNanos < ejectedUntilNanos;
+    }
+
+    /**
+     * False while active health checks fail - the replica gets no traffic until a probe succeeds
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+    public int getEjections() {
+        return ejections;
+    }
+
+    /**
+     * Eject for baseNanos multiplied by the number of ejections so far (capped),
+     * so a flapping replica stays out progressively longer
+     */
+    public void eject(long nowNanos, long baseNanos, int maxMultiplier) {
+        ejections++;
+        ejectedUntilNanos = nowNanos + baseNanos * Math.min(ejections, maxMultiplier);
+    }
+
+    /**
+     * Back in rotation after the ejection period - start from a clean slate
+     */
+    public void readmit() {
+        ejectedUntilNanos = 0;
+        consecutiveFailures.set(0);
+        samples = 0;
+        ewmaLatencyNanos = 0;
+    }
+
+    boolean isReadmissionDue(long nowNanos) {
+        return ejectedUntilNanos != 0 && nowNanos >= ejectedUntilNanos;
+    }
+}
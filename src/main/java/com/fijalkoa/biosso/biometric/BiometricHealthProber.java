@@ -0,0 +1,204 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Active health checks of the Python biometric replicas
+ *
+ * Every probe-interval each replica's /api/biometrics/health is called (probe-timeout),
+ * the results are kept as an immutable snapshot - /api/biometric/health serves it as is,
+ * without an outbound call per request.
+ *
+ * Per replica: status, last probe result, last latency, consecutive failures, last success time.
+ * Overall: UP (every replica passed its last probe), DEGRADED (some replica in rotation failed it
+ * or is out of rotation), DOWN (none in rotation), UNKNOWN (before the first probe).
+ *
+ * The public response (/api/biometric/health) carries the overall status only; replica URLs,
+ * errors and Python's own health body are in the details response (authenticated callers).
+ *
+ * The results feed the call path:
+ * - A replica failing unhealthy-threshold probes in a row is skipped by BiometricLoadBalancer
+ *   until a probe succeeds again (on top of passive outlier ejection)
+ * - No replica up -> the circuit breaker opens right away instead of after a window of failed
+ *   logins; the first replica back up while it is open starts the half-open probing
+ *
+ * Metrics: biometric.health.up{endpoint} (1 = up, 0 = down)
+ */
+@Slf4j
+@Component
+public class BiometricHealthProber {
+
+    public enum Status {
+        UNKNOWN, UP, DEGRADED, DOWN
+    }
+
+    public record EndpointHealth(String url, Status status, long latencyMillis, int consecutiveFailures,
+                                 Instant lastSuccess, String error) {
+
+        /**
+         * Result of the latest probe - status stays UP for up to unhealthy-threshold - 1 failed probes
+         */
+        public boolean lastProbePassed() {
+            return consecutiveFailures == 0 && lastSuccess != null;
+        }
+    }
+
+    public record Snapshot(Status status, Instant checkedAt, List<EndpointHealth> endpoints,
+                           ResponseEntity<Map<String, Object>> response,
+                           ResponseEntity<Map<String, Object>> details) {
+    }
+
+    private final BiometricLoadBalancer loadBalancer;
+    private final BiometricCallGuard callGuard;
+    private final RestTemplate restTemplate;
+    private final int unhealthyThreshold;
+    private final Map<BiometricEndpoint, EndpointHealth> lastResults = new LinkedHashMap<>();
+
+    private volatile Snapshot snapshot;
+
+    public BiometricHealthProber(
+            BiometricLoadBalancer loadBalancer,
+            BiometricCallGuard callGuard,
+            @Value("${app.biometric.health.probe-timeout:2s}") Duration probeTimeout,
+            @Value("${app.biometric.health.unhealthy-threshold:2}") int unhealthyThreshold,
+            MeterRegistry meterRegistry) {
+
+        this.loadBalancer = loadBalancer;
+        this.callGuard = callGuard;
+        this.unhealthyThreshold = Math.max(1, unhealthyThreshold);
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(
+                HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .connectTimeout(probeTimeout)
+                        .build());
+        requestFactory.setReadTimeout(probeTimeout);
+        this.restTemplate = new RestTemplate(requestFactory);
+
+        List<EndpointHealth> unknown = new ArrayList<>();
+        for (BiometricEndpoint endpoint : loadBalancer.getEndpoints()) {
+            unknown.add(new EndpointHealth(endpoint.getUrl(), Status.UNKNOWN, -1, 0, null, null));
+            Gauge.builder("biometric.health.up", endpoint, e -> e.isHealthy() ? 1 : 0)
+                    .tag("endpoint", endpoint.getUrl())
+                    .description("Biometric replica health from active probes (1 = up, 0 = down)")
+                    .register(meterRegistry);
+        }
+        this.snapshot = snapshot(Status.UNKNOWN, Instant.now(), unknown, null);
+    }
+
+    /**
+     * Latest health snapshot - never blocks, never calls Python
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${app.biometric.health.probe-interval:5s}", initialDelay = 0)
+    public void probe() {
+        List<EndpointHealth> results = new ArrayList<>();
+        Map<String, Object> service = null;
+        int up = 0;
+        int passing = 0;
+
+        for (BiometricEndpoint endpoint : loadBalancer.getEndpoints()) {
+            EndpointHealth previous = lastResults.get(endpoint);
+            int failures = previous == null ? 0 : previous.consecutiveFailures();
+            Instant lastSuccess = previous == null ? null : previous.lastSuccess();
+
+            long start = System.nanoTime();
+            EndpointHealth result;
+            try {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> body = restTemplate.getForObject(endpoint.getUrl() + "/api/biometrics/health", Map.class);
+                long latencyMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                result = new EndpointHealth(endpoint.getUrl(), Status.UP, latencyMillis, 0, Instant.now(), null);
+                if (service == null) {
+                    service = body;
+                }
+            } catch (Exception e) {
+                long latencyMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                failures++;
+                Status status = failures >= unhealthyThreshold ? Status.DOWN
+                        : previous == null || previous.status() == Status.UNKNOWN ? Status.UNKNOWN : previous.status();
+                result = new EndpointHealth(endpoint.getUrl(), status, latencyMillis, failures, lastSuccess, e.getMessage());
+            }
+
+            updateEndpoint(endpoint, result);
+            lastResults.put(endpoint, result);
+            results.add(result);
+            if (endpoint.isHealthy()) {
+                up++;
+            }
+            if (result.lastProbePassed()) {
+                passing++;
+            }
+        }
+
+        Status overall = passing == results.size() ? Status.UP : up == 0 ? Status.DOWN : Status.DEGRADED;
+        callGuard.onHealthCheck(up > 0);
+        snapshot = snapshot(overall, Instant.now(), List.copyOf(results), service);
+    }
+
+    private void updateEndpoint(BiometricEndpoint endpoint, EndpointHealth result) {
+        if (result.status() == Status.UP && !endpoint.isHealthy()) {
+            endpoint.setHealthy(true);
+            log.info("💚 Biometric endpoint {} passed its health check, back in rotation", endpoint.getUrl());
+        } else if (result.status() == Status.DOWN && endpoint.isHealthy()) {
+            endpoint.setHealthy(false);
+            log.warn("💔 Biometric endpoint {} failed {} health checks in a row ({}), out of rotation",
+                    endpoint.getUrl(), result.consecutiveFailures(), result.error());
+        }
+    }
+
+    /**
+     * The HTTP responses are built once per probe round, so serving them costs nothing
+     */
+    private static Snapshot snapshot(Status status, Instant checkedAt, List<EndpointHealth> endpoints,
+                                     Map<String, Object> service) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", status.name());
+        body.put("checked_at", checkedAt.toString());
+
+        Map<String, Object> details = new LinkedHashMap<>(body);
+        List<Map<String, Object>> replicas = new ArrayList<>(endpoints.size());
+        for (EndpointHealth endpoint : endpoints) {
+            Map<String, Object> replica = new LinkedHashMap<>();
+            replica.put("url", endpoint.url());
+            replica.put("status", endpoint.status().name());
+            // latency -1: not probed yet
+            replica.put("last_probe", endpoint.latencyMillis() < 0 ? null : endpoint.lastProbePassed() ? "PASSED" : "FAILED");
+            replica.put("latency_ms", endpoint.latencyMillis());
+            replica.put("consecutive_failures", endpoint.consecutiveFailures());
+            replica.put("last_success", endpoint.lastSuccess() == null ? null : endpoint.lastSuccess().toString());
+            if (endpoint.error() != null) {
+                replica.put("error", endpoint.error());
+            }
+            replicas.add(replica);
+        }
+        details.put("endpoints", replicas);
+        if (service != null) {
+            details.put("service", service);
+        }
+
+        HttpStatus httpStatus = status == Status.UP || status == Status.DEGRADED ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return new Snapshot(status, checkedAt, endpoints, ResponseEntity.status(httpStatus).body(body),
+                ResponseEntity.status(httpStatus).body(details));
+    }
+}
@@ -0,0 +1,265 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java-side metrics of outbound calls to the Python biometric microservice
+ *
+ * Measured at the HTTP exchange (request written -> response headers), so the numbers cover
+ * the network and Python, not the time spent in BiometricCallGuard queues or in image
+ * preprocessing - a regression in the proxy shows up next to a flat Python latency.
+ *
+ * Tag operation = first path segment after /api/biometrics/ (register, verify, embed,
+ * templates, verify-batch, health, metrics), transport = blocking (RestTemplate) | reactive (WebClient)
+ * | socket (BiometricSocketTransport, sizes are whole frames)
+ *
+ * - biometric.client.requests{operation, outcome, transport} - timer with p50/p95/p99
+ *   and a Prometheus histogram
+ * - biometric.client.request.size / biometric.client.response.size{operation} - bytes on the wire
+ * - biometric.client.errors{operation, category=timeout|connect|io|client_error|server_error}
+ * - biometric.client.in_flight{operation} - requests waiting for Python
+ */
+@Component
+public class BiometricHttpMetrics {
+
+    private static final String PATH_PREFIX = "/api/biometrics/";
+
+    public enum Transport {
+        BLOCKING, REACTIVE, SOCKET;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public BiometricHttpMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * RestTemplate request factory that records every exchange (body streaming is preserved)
+     */
+    public ClientHttpRequestFactory instrument(ClientHttpRequestFactory factory) {
+        return new MeteredClientHttpRequestFactory(factory, this);
+    }
+
+    /**
+     * Same metrics for WebClient
+     */
+    public ExchangeFilterFunction webClientFilter() {
+        return (request, next) -> {
+            String operation = operation(request.url());
+            Exchange exchange = start(operation, Transport.REACTIVE);
+            ClientRequest counted = ClientRequest.from(request)
+                    .body((message, context) -> request.body().insert(new ClientHttpRequestDecorator(message) {
+                        @Override
+                        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                            return super.writeWith(Flux.from(body)
+                                    .doOnNext(buffer -> exchange.sent(buffer.readableByteCount())));
+                        }
+                    }, context))
+                    .build();
+
+            return next.exchange(counted)
+                    .doOnNext(response -> exchange.completed(response.statusCode()))
+                    .doOnError(exchange::failed)
+                    .doOnCancel(exchange::cancelled)
+                    .map(response -> response.mutate()
+                            .body(body -> body
+                                    .doOnNext(buffer -> exchange.received(buffer.readableByteCount()))
+                                    .doFinally(signal -> exchange.responseDone()))
+                            .build());
+        };
+    }
+
+    /**
+     * Per operation: requests, mean/p50/p95/p99 of successful calls (ms), errors by category, in flight
+     * For /api/biometric/metrics - Prometheus scrapes the meters themselves
+     */
+    public Map<String, Object> summary() {
+        Map<String, Map<String, Object>> operations = new TreeMap<>();
+        for (Timer timer : meterRegistry.find("biometric.client.requests").timers()) {
+            Map<String, Object> stats = stats(operations, timer.getId().getTag("operation"));
+            stats.merge("requests", timer.count(), (a, b) -> (long) a + (long) b);
+            if ("success".equals(timer.getId().getTag("outcome"))) {
+                String prefix = timer.getId().getTag("transport") + "_";
+                stats.put(prefix + "mean_ms", timer.mean(TimeUnit.MILLISECONDS));
+                for (ValueAtPercentile percentile : timer.takeSnapshot().percentileValues()) {
+                    stats.put(prefix + "p" + Math.round(percentile.percentile() * 100) + "_ms",
+                            percentile.value(TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+        for (Counter counter : meterRegistry.find("biometric.client.errors").counters()) {
+            stats(operations, counter.getId().getTag("operation"))
+                    .put("errors_" + counter.getId().getTag("category"), (long) counter.count());
+        }
+        inFlight.forEach((operation, count) -> stats(operations, operation).put("in_flight", count.get()));
+        return new LinkedHashMap<>(operations);
+    }
+
+    private static Map<String, Object> stats(Map<String, Map<String, Object>> operations, String operation) {
+        return operations.computeIfAbsent(operation, key -> new LinkedHashMap<>());
+    }
+
+    static String operation(URI uri) {
+        String path = uri.getPath();
+        int start = path == null ? -1 : path.indexOf(PATH_PREFIX);
+        if (start < 0) {
+            return "other";
+        }
+        String rest = path.substring(start + PATH_PREFIX.length());
+        int slash = rest.indexOf('/');
+        String operation = slash < 0 ? rest : rest.substring(0, slash);
+        return operation.isEmpty() ? "other" : operation;
+    }
+
+    Exchange start(String operation, Transport transport) {
+        AtomicInteger counter = inFlight.computeIfAbsent(operation, key -> {
+            AtomicInteger gauge = new AtomicInteger();
+            Gauge.builder("biometric.client.in_flight", gauge, AtomicInteger::get)
+                    .tag("operation", key)
+                    .description("Requests to the biometric microservice waiting for a response")
+                    .register(meterRegistry);
+            return gauge;
+        });
+        counter.incrementAndGet();
+        return new Exchange(operation, transport, counter, System.nanoTime());
+    }
+
+    /**
+     * One outbound request - outcome and each size recorded exactly once
+     * Bytes are summed while streaming, the request size is recorded with the outcome,
+     * the response size when the response body is done
+     */
+    final class Exchange {
+
+        private final String operation;
+        private final Transport transport;
+        private final AtomicInteger inFlightCounter;
+        private final long startNanos;
+        private final DistributionSummary requestSize;
+        private final DistributionSummary responseSize;
+        private final AtomicLong sentBytes = new AtomicLong();
+        private final AtomicLong receivedBytes = new AtomicLong();
+        private final AtomicBoolean responseDone = new AtomicBoolean();
+        private boolean finished;
+
+        private Exchange(String operation, Transport transport, AtomicInteger inFlightCounter, long startNanos) {
+            this.operation = operation;
+            this.transport = transport;
+            this.inFlightCounter = inFlightCounter;
+            this.startNanos = startNanos;
+            this.requestSize = DistributionSummary.builder("biometric.client.request.size")
+                    .tag("operation", operation)
+                    .baseUnit("bytes")
+                    .description("Bytes sent to the biometric microservice")
+                    .register(meterRegistry);
+            this.responseSize = DistributionSummary.builder("biometric.client.response.size")
+                    .tag("operation", operation)
+                    .baseUnit("bytes")
+                    .description("Bytes received from the biometric microservice")
+                    .register(meterRegistry);
+        }
+
+        void sent(long bytes) {
+            sentBytes.addAndGet(bytes);
+        }
+
+        void received(long bytes) {
+            receivedBytes.addAndGet(bytes);
+        }
+
+        void responseDone() {
+            if (responseDone.compareAndSet(false, true)) {
+                responseSize.record(receivedBytes.get());
+            }
+        }
+
+        void completed(HttpStatusCode status) {
+            String outcome = status.is5xxServerError() ? "server_error"
+                    : status.is4xxClientError() ? "client_error" : "success";
+            finish(outcome, "success".equals(outcome) ? null : outcome);
+        }
+
+        void failed(Throwable error) {
+            String category = category(error);
+            finish(category, category);
+        }
+
+        void cancelled() {
+            finish("cancelled", null);
+        }
+
+        private synchronized void finish(String outcome, String errorCategory) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            inFlightCounter.decrementAndGet();
+            requestSize.record(sentBytes.get());
+            Timer.builder("biometric.client.requests")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .tag("transport", transport.tag())
+                    .description("Round trip to the biometric microservice (request sent -> response headers)")
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (errorCategory != null) {
+                Counter.builder("biometric.client.errors")
+                        .tag("operation", operation)
+                        .tag("category", errorCategory)
+                        .description("Failed requests to the biometric microservice by category")
+                        .register(meterRegistry)
+                        .increment();
+            }
+        }
+
+        private static String category(Throwable error) {
+            for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException
+                        || cause instanceof TimeoutException) {
+                    return "timeout";
+                }
+                if (cause instanceof ConnectException) {
+                    return "connect";
+                }
+            }
+            return "io";
+        }
+    }
+}
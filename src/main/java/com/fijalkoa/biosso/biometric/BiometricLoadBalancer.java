@@ -0,0 +1,232 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Client-side load balancer for Python biometric replicas
+ *
+ * Endpoints come from app.biometric.microservice-urls (comma separated),
+ * falling back to the single app.biometric.microservice-url.
+ *
+ * Strategies (app.biometric.load-balancing.strategy):
+ * - p2c (default): power of two choices - two random replicas, lower (latency x outstanding) cost wins
+ * - least-outstanding: replica with fewest in-flight requests, ties broken by latency
+ *
+ * Passive outlier ejection (no extra traffic, driven by real responses):
+ * - N consecutive failures (5xx, I/O errors, timeouts) eject the replica
+ * - EWMA latency above latency-factor x median of the other replicas ejects it
+ * - Ejection time grows with repeated ejections, at most max-ejection-percent of replicas are out
+ * - When every replica is ejected, traffic is spread over all of them (panic mode)
+ *
+ * Replicas failing active health checks (BiometricHealthProber) are skipped the same way.
+ */
+@Slf4j
+@Component
+public class BiometricLoadBalancer {
+
+    public enum Strategy {
+        POWER_OF_TWO_CHOICES, LEAST_OUTSTANDING
+    }
+
+    private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+    private final List<BiometricEndpoint> endpoints;
+    private final Strategy strategy;
+    private final int consecutiveErrorsToEject;
+    private final double latencyFactor;
+    private final long minSamples;
+    private final long baseEjectionNanos;
+    private final int maxEjectionPercent;
+    private final ReentrantLock ejectionLock = new ReentrantLock();
+
+    public BiometricLoadBalancer(
+            @Value("${app.biometric.microservice-urls:${app.biometric.microservice-url:http://localhost:5001}}") List<String> urls,
+            @Value("${app.biometric.load-balancing.strategy:p2c}") String strategy,
+            @Value("${app.biometric.outlier.consecutive-errors:5}") int consecutiveErrorsToEject,
+            @Value("${app.biometric.outlier.latency-factor:3.0}") double latencyFactor,
+            @Value("${app.biometric.outlier.min-samples:20}") long minSamples,
+            @Value("${app.biometric.outlier.base-ejection:30s}") Duration baseEjection,
+            @Value("${app.biometric.outlier.max-ejection-percent:50}") int maxEjectionPercent,
+            @Value("${app.biometric.outlier.latency-decay:10s}") Duration latencyDecay) {
+
+        List<BiometricEndpoint> parsed = new ArrayList<>();
+        for (String url : urls) {
+            String trimmed = url.trim();
+            if (!trimmed.isEmpty()) {
+                parsed.add(new BiometricEndpoint(trimmed.replaceAll("/+$", ""), latencyDecay.toNanos()));
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("At least one biometric microservice URL is required");
+        }
+
+        this.endpoints = Collections.unmodifiableList(parsed);
+        this.strategy = parseStrategy(strategy);
+        this.consecutiveErrorsToEject = consecutiveErrorsToEject;
+        this.latencyFactor = latencyFactor;
+        this.minSamples = minSamples;
+        this.baseEjectionNanos = baseEjection.toNanos();
+        this.maxEjectionPercent = maxEjectionPercent;
+
+        log.info("⚖️ Biometric load balancer: strategy={}, endpoints={}", this.strategy,
+                parsed.stream().map(BiometricEndpoint::getUrl).toList());
+    }
+
+    /**
+     * Run an outbound call against the chosen replica and feed the outcome back
+     * 4xx responses count as success - the replica answered, the request was bad
+     */
+    public <T> T execute(Function<String, T> call) {
+        BiometricEndpoint endpoint = choose();
+        long start = System.nanoTime();
+        endpoint.onRequestStart();
+        boolean failed = true;
+        try {
+            T result = call.apply(endpoint.getUrl());
+            failed = false;
+            return result;
+        } catch (HttpClientErrorException e) {
+            failed = false;
+            throw e;
+        } finally {
+            record(endpoint, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Pick a replica for the next request (caller must report back via record)
+     */
+    public BiometricEndpoint choose() {
+        long now = System.nanoTime();
+        List<BiometricEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (BiometricEndpoint endpoint : endpoints) {
+            if (endpoint.isReadmissionDue(now)) {
+                endpoint.readmit();
+                log.info("↩️ Biometric endpoint back in rotation: {}", endpoint.getUrl());
+            }
+            if (!endpoint.isEjected(now) && endpoint.isHealthy()) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = endpoints;  // Panic mode - better a degraded replica than none
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        return switch (strategy) {
+            case LEAST_OUTSTANDING -> leastOutstanding(candidates, now);
+            case POWER_OF_TWO_CHOICES -> powerOfTwoChoices(candidates, now);
+        };
+    }
+
+    /**
+     * Report the outcome of a request started on endpoint (from choose())
+     */
+    public void record(BiometricEndpoint endpoint, long latencyNanos, boolean failed) {
+        endpoint.onRequestEnd(latencyNanos, failed);
+        checkOutlier(endpoint, System.nanoTime());
+    }
+
+    public List<BiometricEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    private BiometricEndpoint leastOutstanding(List<BiometricEndpoint> candidates, long now) {
+        BiometricEndpoint best = candidates.get(0);
+        for (int i = 1; i < candidates.size(); i++) {
+            BiometricEndpoint candidate = candidates.get(i);
+            if (candidate.getOutstanding() < best.getOutstanding()
+                    || (candidate.getOutstanding() == best.getOutstanding()
+                        && candidate.getLatencyNanos(now) < best.getLatencyNanos(now))) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private BiometricEndpoint powerOfTwoChoices(List<BiometricEndpoint> candidates, long now) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        BiometricEndpoint a = candidates.get(first);
+        BiometricEndpoint b = candidates.get(second);
+        return a.getCost(now) <= b.getCost(now) ? a : b;
+    }
+
+    private void checkOutlier(BiometricEndpoint endpoint, long now) {
+        if (endpoint.isEjected(now)) {
+            return;
+        }
+        if (endpoint.getConsecutiveFailures() >= consecutiveErrorsToEject) {
+            tryEject(endpoint, now, "consecutive failures: " + endpoint.getConsecutiveFailures());
+            return;
+        }
+        if (endpoint.getSamples() < minSamples) {
+            return;
+        }
+
+        double peerMedian = peerMedianLatency(endpoint, now);
+        double latency = endpoint.getLatencyNanos(now);
+        if (peerMedian > 0 && latency > latencyFactor * peerMedian) {
+            tryEject(endpoint, now, String.format("latency %.0fms vs peer median %.0fms",
+                    latency / 1_000_000, peerMedian / 1_000_000));
+        }
+    }
+
+    private double peerMedianLatency(BiometricEndpoint endpoint, long now) {
+        double[] latencies = endpoints.stream()
+                .filter(peer -> peer != endpoint && !peer.isEjected(now) && peer.getSamples() >= minSamples)
+                .mapToDouble(peer -> peer.getLatencyNanos(now))
+                .toArray();
+        if (latencies.length == 0) {
+            return 0;
+        }
+        Arrays.sort(latencies);
+        int middle = latencies.length / 2;
+        return latencies.length % 2 == 1 ? latencies[middle] : (latencies[middle - 1] + latencies[middle]) / 2;
+    }
+
+    private void tryEject(BiometricEndpoint endpoint, long now, String reason) {
+        ejectionLock.lock();
+        try {
+            if (endpoint.isEjected(now)) {
+                return;
+            }
+            long ejected = endpoints.stream().filter(e -> e.isEjected(now)).count();
+            long maxEjected = endpoints.size() * maxEjectionPercent / 100;
+            if (ejected >= maxEjected) {
+                log.warn("⚠️ Not ejecting biometric endpoint {} ({}) - ejection limit reached", endpoint.getUrl(), reason);
+                return;
+            }
+            endpoint.eject(now, baseEjectionNanos, MAX_EJECTION_MULTIPLIER);
+            log.warn("⛔ Ejecting biometric endpoint {} ({}), ejection #{}", endpoint.getUrl(), reason, endpoint.getEjections());
+        } finally {
+            ejectionLock.unlock();
+        }
+    }
+
+    private static Strategy parseStrategy(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "p2c", "power-of-two-choices" -> Strategy.POWER_OF_TWO_CHOICES;
+            case "least-outstanding", "least-outstanding-requests" -> Strategy.LEAST_OUTSTANDING;
+            default -> throw new IllegalArgumentException("Unknown load balancing strategy: " + value);
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.fijalkoa.biosso.biometric;
+
+/**
+ * Dispatch class of a call to the Python microservice
+ *
+ * - AUTH - biometric step of an interactive login (/verify-for-auth), someone is waiting at the screen
+ * - VERIFY - standalone verification (/verify)
+ * - ENROLL - registration with 5 images, bulk enrollment waves can tolerate waiting
+ */
+public enum BiometricPriority {
+    AUTH, VERIFY, ENROLL;
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
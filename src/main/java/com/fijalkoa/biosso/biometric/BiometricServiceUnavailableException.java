@@ -0,0 +1,34 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a call to the Python microservice is refused locally
+ * (circuit open, bulkhead full, adaptive concurrency limit) instead of being attempted.
+ *
+ * Mapped to 503 Service Unavailable (429 Too Many Requests when shed by the
+ * concurrency limiter) with a Retry-After header.
+ */
+@Getter
+public class BiometricServiceUnavailableException extends RuntimeException {
+
+    public enum Reason {
+        CIRCUIT_OPEN, BULKHEAD_FULL, CONCURRENCY_LIMIT
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+    private final long retryAfterSeconds;
+
+    public BiometricServiceUnavailableException(Reason reason, long retryAfterSeconds, String message) {
+        super(message);
+        this.reason = reason;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getHttpStatus() {
+        return reason == Reason.CONCURRENCY_LIMIT ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+    }
+}
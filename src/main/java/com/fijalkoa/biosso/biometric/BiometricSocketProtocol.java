@@ -0,0 +1,155 @@
+package com.fijalkoa.biosso.biometric;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed binary framing between the proxy and a Python sidecar (BiometricSocketTransport)
+ *
+ * Every frame, big-endian:
+ * - int length - bytes after this field (type + request id + payload)
+ * - byte type
+ * - int requestId - chosen by the client, echoed in the response; responses may come in any order
+ * - payload
+ *
+ * Requests:
+ * - VERIFY: short userIdLength, userId (UTF-8), double threshold, byte flags (FLAG_CHECK_LIVENESS),
+ *   int imageLength, image bytes as uploaded/normalised (JPEG)
+ * - EMBED: byte flags (FLAG_CHECK_LIVENESS), int imageLength, image bytes
+ *
+ * Responses:
+ * - VERIFY_RESULT: byte flags (FLAG_MATCHED, FLAG_LIVENESS_CHECKED, FLAG_LIVENESS_PASSED),
+ *   double confidence, float verificationTimeMs (NaN = not reported) - 13 bytes
+ * - EMBED_RESULT: byte flags (FLAG_LIVENESS_*), int dimensions, float[dimensions]
+ * - ERROR: short httpStatus, message (UTF-8, rest of the frame)
+ */
+public final class BiometricSocketProtocol {
+
+    public static final int HEADER_BYTES = 9;
+    public static final int MAX_FRAME_BYTES = 32 * 1024 * 1024;
+
+    public static final byte VERIFY = 0x01;
+    public static final byte EMBED = 0x02;
+    public static final byte VERIFY_RESULT = (byte) 0x81;
+    public static final byte EMBED_RESULT = (byte) 0x82;
+    public static final byte ERROR = (byte) 0xFF;
+
+    public static final int FLAG_CHECK_LIVENESS = 1;
+    public static final int FLAG_MATCHED = 1;
+    public static final int FLAG_LIVENESS_CHECKED = 1 << 1;
+    public static final int FLAG_LIVENESS_PASSED = 1 << 2;
+
+    private BiometricSocketProtocol() {
+    }
+
+    public record Frame(byte type, int requestId, ByteBuffer payload) {
+
+        public int size() {
+            return HEADER_BYTES + payload.capacity();
+        }
+    }
+
+    /**
+     * Blocks until a whole frame has been read - null on end of stream between frames
+     *
+     * @param header reusable buffer of HEADER_BYTES
+     */
+    public static Frame read(ReadableByteChannel channel, ByteBuffer header) throws IOException {
+        header.clear();
+        if (!readFully(channel, header, true)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        byte type = header.get();
+        int requestId = header.getInt();
+        if (length < HEADER_BYTES - 4 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length - (HEADER_BYTES - 4));
+        readFully(channel, payload, false);
+        payload.flip();
+        return new Frame(type, requestId, payload);
+    }
+
+    /**
+     * Header of an outgoing frame, the payload follows
+     */
+    public static void putHeader(ByteBuffer buffer, byte type, int requestId, int payloadLength) {
+        buffer.putInt(HEADER_BYTES - 4 + payloadLength).put(type).putInt(requestId);
+    }
+
+    public static VerifyResponse decodeVerifyResult(ByteBuffer payload) {
+        byte flags = payload.get();
+        double confidence = payload.getDouble();
+        float verificationTimeMs = payload.getFloat();
+        return new VerifyResponse((flags & FLAG_MATCHED) != 0, confidence, liveness(flags),
+                Float.isNaN(verificationTimeMs) ? null : (double) verificationTimeMs);
+    }
+
+    public static EmbeddingResponse decodeEmbedResult(ByteBuffer payload) throws IOException {
+        byte flags = payload.get();
+        int dimensions = payload.getInt();
+        if (dimensions < 0 || (long) dimensions * Float.BYTES > payload.remaining()) {
+            throw new IOException("Invalid embedding dimensions " + dimensions);
+        }
+        float[] embedding = new float[dimensions];
+        payload.asFloatBuffer().get(embedding);
+        return new EmbeddingResponse(embedding, liveness(flags));
+    }
+
+    public static ByteBuffer encodeVerifyResult(int requestId, VerifyResponse result) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + 13);
+        putHeader(frame, VERIFY_RESULT, requestId, 13);
+        frame.put((byte) ((result.matched() ? FLAG_MATCHED : 0) | livenessFlags(result.livenessPassed())))
+                .putDouble(result.confidence())
+                .putFloat(result.verificationTimeMs() == null ? Float.NaN : result.verificationTimeMs().floatValue());
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeEmbedResult(int requestId, EmbeddingResponse result) {
+        int payloadLength = 5 + result.embedding().length * Float.BYTES;
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+        putHeader(frame, EMBED_RESULT, requestId, payloadLength);
+        frame.put((byte) livenessFlags(result.livenessPassed())).putInt(result.embedding().length);
+        for (float value : result.embedding()) {
+            frame.putFloat(value);
+        }
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeError(int requestId, int httpStatus, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + 2 + text.length);
+        putHeader(frame, ERROR, requestId, 2 + text.length);
+        frame.putShort((short) httpStatus).put(text);
+        return frame.flip();
+    }
+
+    private static Boolean liveness(byte flags) {
+        return (flags & FLAG_LIVENESS_CHECKED) == 0 ? null : (flags & FLAG_LIVENESS_PASSED) != 0;
+    }
+
+    private static int livenessFlags(Boolean livenessPassed) {
+        if (livenessPassed == null) {
+            return 0;
+        }
+        return FLAG_LIVENESS_CHECKED | (livenessPassed ? FLAG_LIVENESS_PASSED : 0);
+    }
+
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean endAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (endAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Stream ended inside a frame");
+            }
+        }
+        return true;
+    }
+}
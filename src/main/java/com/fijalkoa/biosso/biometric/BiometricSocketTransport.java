@@ -0,0 +1,360 @@
+package com.fijalkoa.biosso.biometric;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verify / embed calls to a Python sidecar over a Unix domain socket
+ *
+ * When Python runs in the same pod, HTTP + multipart + JSON is pure overhead on the login path.
+ * With app.biometric.transport=uds, BiometricRestService sends /verify and /embed here instead
+ * (registration, templates and health checks stay on HTTP). Framing: BiometricSocketProtocol.
+ *
+ * - app.biometric.uds.connections persistent channels to app.biometric.uds.path, opened on first use
+ *   and reopened after a failure; calls are spread round-robin
+ * - Calls are multiplexed - each frame carries a request id, a reader thread per channel hands
+ *   responses to their callers in whatever order Python finishes them
+ * - The image goes from the upload into a direct buffer and from there to the socket, in chunks
+ *   of the buffer size - no multipart encoding, no heap copy of the whole image
+ * - An ERROR frame is thrown as HttpClientErrorException / HttpServerErrorException and I/O
+ *   failures as ResourceAccessException, so BiometricCallGuard treats them like the HTTP path
+ *
+ * Exchanges are recorded in BiometricHttpMetrics with transport=socket.
+ */
+@Slf4j
+@Component
+public class BiometricSocketTransport {
+
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private final boolean enabled;
+    private final Path socketPath;
+    private final Duration timeout;
+    private final BiometricHttpMetrics metrics;
+    private final Connection[] connections;
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private volatile boolean shutdown;
+
+    public BiometricSocketTransport(
+            @Value("${app.biometric.transport:http}") String transport,
+            @Value("${app.biometric.uds.path:/var/run/biometric/biometric.sock}") String socketPath,
+            @Value("${app.biometric.uds.connections:2}") int connections,
+            @Value("${app.biometric.uds.timeout:120s}") Duration timeout,
+            BiometricHttpMetrics metrics) {
+
+        this.enabled = "uds".equalsIgnoreCase(transport);
+        this.socketPath = Path.of(socketPath);
+        this.timeout = timeout;
+        this.metrics = metrics;
+        this.connections = new Connection[Math.max(1, connections)];
+        for (int i = 0; i < this.connections.length; i++) {
+            this.connections[i] = new Connection(i);
+        }
+
+        if (enabled) {
+            log.info("🔌 Biometric verify/embed over Unix domain socket {} ({} channels)", socketPath, this.connections.length);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public VerifyResponse verify(String userId, Resource image, double threshold, boolean checkLiveness) {
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer fields = ByteBuffer.allocate(2 + user.length + 8 + 1)
+                .putShort((short) user.length)
+                .put(user)
+                .putDouble(threshold)
+                .put((byte) (checkLiveness ? BiometricSocketProtocol.FLAG_CHECK_LIVENESS : 0))
+                .flip();
+        BiometricSocketProtocol.Frame frame = call("verify", BiometricSocketProtocol.VERIFY, fields, image,
+                BiometricSocketProtocol.VERIFY_RESULT);
+        return BiometricSocketProtocol.decodeVerifyResult(frame.payload());
+    }
+
+    public EmbeddingResponse embed(Resource image, boolean checkLiveness) {
+        ByteBuffer fields = ByteBuffer.allocate(1)
+                .put((byte) (checkLiveness ? BiometricSocketProtocol.FLAG_CHECK_LIVENESS : 0))
+                .flip();
+        BiometricSocketProtocol.Frame frame = call("embed", BiometricSocketProtocol.EMBED, fields, image,
+                BiometricSocketProtocol.EMBED_RESULT);
+        try {
+            return BiometricSocketProtocol.decodeEmbedResult(frame.payload());
+        } catch (IOException e) {
+            throw new ResourceAccessException("Malformed embed frame from biometric sidecar: " + e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        shutdown = true;
+        for (Connection connection : connections) {
+            connection.close(new ClosedChannelException());
+        }
+    }
+
+    private BiometricSocketProtocol.Frame call(String operation, byte type, ByteBuffer fields, Resource image,
+                                               byte expectedType) {
+        BiometricHttpMetrics.Exchange exchange = metrics.start(operation, BiometricHttpMetrics.Transport.SOCKET);
+        int requestId = nextRequestId.incrementAndGet();
+        CompletableFuture<BiometricSocketProtocol.Frame> response = new CompletableFuture<>();
+        Link link = null;
+        try {
+            Resource content = image.contentLength() >= 0 ? image : new ByteArrayResource(image.getContentAsByteArray());
+            Connection connection = connections[Math.floorMod(nextConnection.getAndIncrement(), connections.length)];
+            link = connection.send(type, requestId, fields, content, response, exchange);
+
+            BiometricSocketProtocol.Frame frame = response.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            exchange.received(frame.size());
+            exchange.responseDone();
+            if (frame.type() == BiometricSocketProtocol.ERROR) {
+                throw error(frame, exchange);
+            }
+            if (frame.type() != expectedType) {
+                throw new IOException("Unexpected frame type " + frame.type() + " for " + operation);
+            }
+            exchange.completed(HttpStatus.OK);
+            return frame;
+
+        } catch (TimeoutException e) {
+            link.abandon(requestId);
+            SocketTimeoutException timedOut = new SocketTimeoutException(operation + " timed out after " + timeout);
+            exchange.failed(timedOut);
+            throw new ResourceAccessException("Biometric sidecar did not answer " + operation + " in time", timedOut);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (link != null) {
+                link.abandon(requestId);
+            }
+            exchange.cancelled();
+            throw new ResourceAccessException("Interrupted waiting for biometric sidecar", new InterruptedIOException());
+        } catch (ExecutionException e) {
+            IOException failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            exchange.failed(failure);
+            throw new ResourceAccessException("Biometric sidecar channel failed: " + failure.getMessage(), failure);
+        } catch (IOException e) {
+            exchange.failed(e);
+            throw new ResourceAccessException("I/O error on biometric sidecar socket: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            exchange.failed(e);
+            throw e;
+        }
+    }
+
+    private static RuntimeException error(BiometricSocketProtocol.Frame frame, BiometricHttpMetrics.Exchange exchange) {
+        ByteBuffer payload = frame.payload();
+        HttpStatusCode status = HttpStatusCode.valueOf(payload.getShort() & 0xFFFF);
+        String message = StandardCharsets.UTF_8.decode(payload).toString();
+        exchange.completed(status);
+        return status.is4xxClientError()
+                ? HttpClientErrorException.create(status, message, HttpHeaders.EMPTY, null, null)
+                : HttpServerErrorException.create(status, message, HttpHeaders.EMPTY, null, null);
+    }
+
+    /**
+     * One slot of the pool - holds the current Link, opens a new one when it broke
+     * Frames are written whole under the lock, so they never interleave on the channel
+     * A caller interrupted mid-write closes the channel (InterruptibleChannel) - the calls
+     * on it fail and the next call reconnects
+     */
+    private final class Connection {
+
+        private final int index;
+        private final ReentrantLock writeLock = new ReentrantLock();
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        private volatile Link link;
+
+        private Connection(int index) {
+            this.index = index;
+        }
+
+        private Link send(byte type, int requestId, ByteBuffer fields, Resource image,
+                          CompletableFuture<BiometricSocketProtocol.Frame> response,
+                          BiometricHttpMetrics.Exchange exchange) throws IOException {
+            long imageLength = image.contentLength();
+            int payloadLength = fields.remaining() + 4;
+            if (imageLength > BiometricSocketProtocol.MAX_FRAME_BYTES - BiometricSocketProtocol.HEADER_BYTES - payloadLength) {
+                throw new IOException("Image of " + imageLength + " bytes does not fit in a frame");
+            }
+            payloadLength += (int) imageLength;
+
+            writeLock.lock();
+            try {
+                Link current = open();
+                current.pending.put(requestId, response);
+                try {
+                    writeBuffer.clear();
+                    BiometricSocketProtocol.putHeader(writeBuffer, type, requestId, payloadLength);
+                    writeBuffer.put(fields).putInt((int) imageLength);
+                    writeImage(current.channel, image, imageLength);
+                    flush(current.channel);
+                    exchange.sent(BiometricSocketProtocol.HEADER_BYTES + payloadLength);
+                    return current;
+                } catch (IOException | RuntimeException e) {
+                    // A partly written frame leaves the stream unusable for everyone on it
+                    current.pending.remove(requestId);
+                    current.fail(e instanceof IOException io ? io : new IOException(e));
+                    throw e;
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void writeImage(SocketChannel channel, Resource image, long imageLength) throws IOException {
+            long remaining = imageLength;
+            try (ReadableByteChannel source = Channels.newChannel(image.getInputStream())) {
+                while (remaining > 0) {
+                    if (!writeBuffer.hasRemaining()) {
+                        flush(channel);
+                    }
+                    int limit = writeBuffer.limit();
+                    if (writeBuffer.remaining() > remaining) {
+                        writeBuffer.limit(writeBuffer.position() + (int) remaining);
+                    }
+                    int read = source.read(writeBuffer);
+                    writeBuffer.limit(limit);
+                    if (read < 0) {
+                        throw new EOFException("Image ended after " + (imageLength - remaining) + " of " + imageLength + " bytes");
+                    }
+                    remaining -= read;
+                }
+            }
+        }
+
+        private void flush(SocketChannel channel) throws IOException {
+            writeBuffer.flip();
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+            writeBuffer.clear();
+        }
+
+        /**
+         * Called under writeLock
+         */
+        private Link open() throws IOException {
+            Link current = link;
+            if (current != null && current.channel.isOpen()) {
+                return current;
+            }
+            if (shutdown) {
+                throw new ClosedChannelException();
+            }
+
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socketPath));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            Link opened = new Link(channel);
+            link = opened;
+            Thread.ofVirtual().name("biometric-uds-reader-" + index).start(opened::readLoop);
+            log.info("🔌 Biometric sidecar channel {} connected to {}", index, socketPath);
+            return opened;
+        }
+
+        private void close(IOException cause) {
+            Link current = link;
+            if (current != null) {
+                current.fail(cause);
+            }
+        }
+    }
+
+    /**
+     * One open channel and the calls waiting on it
+     * When the channel breaks, exactly the calls sent on it fail - the next call opens a new one
+     */
+    private final class Link {
+
+        private final SocketChannel channel;
+        private final Map<Integer, CompletableFuture<BiometricSocketProtocol.Frame>> pending = new ConcurrentHashMap<>();
+
+        private Link(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void readLoop() {
+            ByteBuffer header = ByteBuffer.allocateDirect(BiometricSocketProtocol.HEADER_BYTES);
+            IOException failure;
+            try {
+                BiometricSocketProtocol.Frame frame;
+                while ((frame = BiometricSocketProtocol.read(channel, header)) != null) {
+                    CompletableFuture<BiometricSocketProtocol.Frame> waiting = pending.remove(frame.requestId());
+                    if (waiting != null) {
+                        waiting.complete(frame);
+                    }
+                }
+                failure = new EOFException("Biometric sidecar closed the channel");
+            } catch (IOException e) {
+                failure = e;
+            }
+            fail(failure);
+        }
+
+        /**
+         * Late answers to an abandoned call are dropped by the reader
+         */
+        private void abandon(int requestId) {
+            pending.remove(requestId);
+        }
+
+        /**
+         * The channel is closed first, so a call registered after the sweep fails on write instead
+         */
+        private void fail(IOException cause) {
+            if (channel.isOpen() && !shutdown) {
+                log.warn("⚠️ Biometric sidecar channel closed: {}", cause.getMessage());
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Closing biometric sidecar channel: {}", e.getMessage());
+            }
+            for (Integer requestId : pending.keySet()) {
+                CompletableFuture<BiometricSocketProtocol.Frame> waiting = pending.remove(requestId);
+                if (waiting != null) {
+                    waiting.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.fijalkoa.biosso.biometric;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Multipart part whose content is still being prepared (see ImageNormalizer.prepareAsync)
+ *
+ * Lets the outbound registration request start before all images are ready:
+ * - FormHttpMessageConverter writes parts in order and only blocks in getInputStream()
+ *   when it reaches a part that is not finished yet
+ * - contentLength() is unknown (-1) until the content is ready, so the part is written
+ *   without a Content-Length header instead of waiting for it
+ */
+public class DeferredImagePart extends AbstractResource {
+
+    private final CompletableFuture<Resource> content;
+    private final String filename;
+
+    public DeferredImagePart(CompletableFuture<Resource> content, String filename) {
+        this.content = content;
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return content.isDone() ? resolve().contentLength() : -1;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return resolve().getInputStream();
+    }
+
+    /**
+     * Stop preparing the content if nobody is going to read it (request refused, failed)
+     */
+    public void cancel() {
+        content.cancel(false);
+    }
+
+    @Override
+    public String getDescription() {
+        return "Deferred image part [" + filename + "]";
+    }
+
+    private Resource resolve() throws IOException {
+        try {
+            return content.join();
+        } catch (CancellationException e) {
+            throw new IOException("Preparation of image part " + filename + " was cancelled", e);
+        } catch (CompletionException e) {
+            throw new IOException("Preparation of image part " + filename + " failed", e.getCause());
+        }
+    }
+}
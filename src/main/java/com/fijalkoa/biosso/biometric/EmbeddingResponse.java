@@ -0,0 +1,19 @@
+package com.fijalkoa.biosso.biometric;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Python /api/biometrics/embed response - probe embedding for Java-side matching
+ *
+ * The embedding is read straight into a float[] (no List of boxed Doubles in between).
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record EmbeddingResponse(
+        @JsonProperty("embedding") float[] embedding,
+        @JsonProperty("liveness_passed") Boolean livenessPassed) {
+
+    public boolean livenessFailed() {
+        return Boolean.FALSE.equals(livenessPassed);
+    }
+}
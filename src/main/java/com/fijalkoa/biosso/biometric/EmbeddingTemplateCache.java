@@ -0,0 +1,131 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Enrolled embeddings kept in the Java tier, keyed by UserBiometricMetadata.templateId
+ *
+ * - Embeddings are stored unit-length, so matching is a dot product (VectorSimilarity)
+ * - A re-enrollment gets a new templateId, so entries never go stale - old ones just age out (LRU)
+ * - Loading happens outside the lock; two concurrent misses for the same template both load it
+ * - With the off-heap MappedEmbeddingStore enabled, templates are read from (and loaded into)
+ *   the store instead - nothing is retained on the heap and restarts keep every template
+ *
+ * Metrics: biometric.templates.cache{result=hit|miss}, biometric.templates.cache.size
+ */
+@Slf4j
+@Component
+public class EmbeddingTemplateCache {
+
+    private final int maxEntries;
+    private final MappedEmbeddingStore store;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, float[][]> templates;
+    private final Counter hits;
+    private final Counter misses;
+
+    public EmbeddingTemplateCache(
+            @Value("${app.biometric.matcher.template-cache-size:10000}") int maxEntries,
+            MappedEmbeddingStore store,
+            MeterRegistry meterRegistry) {
+
+        this.maxEntries = maxEntries;
+        this.store = store;
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[][]> eldest) {
+                return size() > EmbeddingTemplateCache.this.maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("biometric.templates.cache")
+                .tag("result", "hit")
+                .description("Enrolled template lookups in the Java tier")
+                .register(meterRegistry);
+        this.misses = Counter.builder("biometric.templates.cache")
+                .tag("result", "miss")
+                .description("Enrolled template lookups in the Java tier")
+                .register(meterRegistry);
+        Gauge.builder("biometric.templates.cache.size", this, EmbeddingTemplateCache::size)
+                .description("Enrolled templates cached in the Java tier")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Cached unit-length embeddings for the template, loading (raw embeddings) on a miss
+     */
+    public float[][] getOrLoad(long userId, String templateId, Supplier<float[][]> loader) {
+        float[][] cached = store.isEnabled() ? store.get(templateId).orElse(null) : get(templateId);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        float[][] loaded = loader.get();
+        float[][] unit = new float[loaded.length][];
+        for (int i = 0; i < loaded.length; i++) {
+            unit[i] = VectorSimilarity.normalize(loaded[i]);
+        }
+        if (store.isEnabled()) {
+            store.put(userId, templateId, unit);
+        } else {
+            put(templateId, unit);
+        }
+        log.debug("🧬 Cached {} embeddings for template {}", unit.length, templateId);
+        return unit;
+    }
+
+    public void evict(String templateId) {
+        lock.lock();
+        try {
+            templates.remove(templateId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enrollment revoked or deactivated - drop the user's embeddings from the off-heap store
+     */
+    public void revoke(long userId) {
+        store.revoke(userId);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return templates.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private float[][] get(String templateId) {
+        lock.lock();
+        try {
+            return templates.get(templateId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String templateId, float[][] unitEmbeddings) {
+        lock.lock();
+        try {
+            templates.put(templateId, unitEmbeddings);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.fijalkoa.biosso.biometric;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest neighbour index (HNSW) over unit-length face embeddings
+ *
+ * Hierarchical Navigable Small World graph (Malkov & Yashunin):
+ * - every embedding is a node on layer 0, and with exponentially decreasing probability
+ *   on the layers above; search descends greedily from the top layer, then runs a
+ *   best-first search with ef candidates on layer 0
+ * - similarity is the dot product of unit vectors (= cosine), see VectorSimilarity
+ * - neighbours are picked with the diversity heuristic, so clusters of embeddings of
+ *   the same person do not swallow all links
+ *
+ * One user has several nodes (one per enrolled angle), results are reduced to the best
+ * node per user. Removing a user tombstones its nodes - they still route searches but are
+ * never returned; compact() rebuilds the graph without them.
+ *
+ * Vectors can be stored quantized (QuantizedVector - int8 or float16) to cut memory ~4x / 2x;
+ * scores are then approximate and callers re-rank the top candidates on full-precision vectors.
+ *
+ * Searches run in parallel (read lock), inserts and removals are exclusive (write lock).
+ */
+public class HnswIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x484E5357;   // "HNSW"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int DEADLINE_CHECK_INTERVAL = 32;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final QuantizedVector.Quantization quantization;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Long, List<Integer>> nodesByUser = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedNodes;
+
+    private final ThreadLocal<VisitedSet> visited = ThreadLocal.withInitial(VisitedSet::new);
+
+    public HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        this(dimensions, m, efConstruction, QuantizedVector.Quantization.NONE, seed);
+    }
+
+    public HnswIndex(int dimensions, int m, int efConstruction, QuantizedVector.Quantization quantization, long seed) {
+        this.dimensions = dimensions;
+        this.quantization = quantization;
+        this.m = m;
+        this.maxM0 = 2 * m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public record Candidate(long userId, float similarity) {
+    }
+
+    /**
+     * @param partial search stopped at the latency budget, candidates are the best found so far
+     */
+    public record SearchResult(List<Candidate> candidates, boolean partial) {
+    }
+
+    /**
+     * Add one embedding of a user (call once per enrolled angle)
+     */
+    public void insert(long userId, float[] unitVector) {
+        if (unitVector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + unitVector.length);
+        }
+
+        lock.writeLock().lock();
+        try {
+            int level = randomLevel();
+            int id = nodes.size();
+            QuantizedVector vector = QuantizedVector.encode(unitVector, quantization);
+            Node node = new Node(userId, vector, level);
+            nodes.add(node);
+            nodesByUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(id);
+
+            if (entryPoint < 0) {
+                entryPoint = id;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            float currentSimilarity = similarity(unitVector, current);
+            for (int layer = maxLevel; layer > level; layer--) {
+                Scored closest = greedyClosest(unitVector, current, currentSimilarity, layer);
+                current = closest.node;
+                currentSimilarity = closest.similarity;
+            }
+
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Scored> found = searchLayer(unitVector, current, efConstruction, layer, Long.MAX_VALUE, null);
+                int maxLinks = layer == 0 ? maxM0 : m;
+                List<Scored> neighbours = selectNeighbours(found, m);
+                for (Scored neighbour : neighbours) {
+                    node.addLink(layer, neighbour.node);
+                    link(neighbour.node, id, layer, maxLinks);
+                }
+                current = found.get(0).node;
+            }
+
+            if (level > maxLevel) {
+                entryPoint = id;
+                maxLevel = level;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstone all nodes of the user, returns false when the user was not indexed
+     */
+    public boolean remove(long userId) {
+        lock.writeLock().lock();
+        try {
+            List<Integer> ids = nodesByUser.remove(userId);
+            if (ids == null) {
+                return false;
+            }
+            for (int id : ids) {
+                nodes.get(id).deleted = true;
+                deletedNodes++;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Top-k users most similar to the probe
+     *
+     * @param ef           search breadth on layer 0 (higher = better recall, slower)
+     * @param budgetNanos  latency budget - the search returns what it has when it runs out
+     */
+    public SearchResult search(float[] unitQuery, int k, int ef, long budgetNanos) {
+        if (unitQuery.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + unitQuery.length);
+        }
+        long deadline = budgetNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + budgetNanos;
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return new SearchResult(List.of(), false);
+            }
+
+            int current = entryPoint;
+            float currentSimilarity = similarity(unitQuery, current);
+            for (int layer = maxLevel; layer > 0; layer--) {
+                Scored closest = greedyClosest(unitQuery, current, currentSimilarity, layer);
+                current = closest.node;
+                currentSimilarity = closest.similarity;
+            }
+
+            boolean[] partial = new boolean[1];
+            // Several nodes per user - look a bit wider than k so k distinct users survive
+            List<Scored> found = searchLayer(unitQuery, current, Math.max(ef, k), 0, deadline, partial);
+
+            Map<Long, Float> bestPerUser = new LinkedHashMap<>();
+            for (Scored scored : found) {
+                Node node = nodes.get(scored.node);
+                if (!node.deleted) {
+                    bestPerUser.merge(node.userId, scored.similarity, Math::max);
+                }
+            }
+
+            List<Candidate> candidates = bestPerUser.entrySet().stream()
+                    .map(e -> new Candidate(e.getKey(), e.getValue()))
+                    .sorted(Comparator.comparing(Candidate::similarity).reversed())
+                    .limit(k)
+                    .toList();
+            return new SearchResult(candidates, partial[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long userId) {
+        lock.readLock().lock();
+        try {
+            return nodesByUser.containsKey(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int userCount() {
+        lock.readLock().lock();
+        try {
+            return nodesByUser.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public double deletedRatio() {
+        lock.readLock().lock();
+        try {
+            return nodes.isEmpty() ? 0 : (double) deletedNodes / nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public QuantizedVector.Quantization getQuantization() {
+        return quantization;
+    }
+
+    /**
+     * New index with the live nodes only (drops tombstones)
+     */
+    public HnswIndex compact() {
+        HnswIndex compacted = new HnswIndex(dimensions, m, efConstruction, quantization, random.nextLong());
+        lock.readLock().lock();
+        try {
+            for (Node node : nodes) {
+                if (!node.deleted) {
+                    compacted.insert(node.userId, node.vector.decode());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return compacted;
+    }
+
+    /**
+     * Binary snapshot of the whole graph - restart loads it instead of re-fetching every template
+     */
+    public void writeSnapshot(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(dimensions);
+            out.writeByte(quantization.ordinal());
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(nodes.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (Node node : nodes) {
+                out.writeLong(node.userId);
+                out.writeBoolean(node.deleted);
+                out.writeInt(node.links.length - 1);
+                writeVector(out, node.vector);
+                for (int layer = 0; layer < node.links.length; layer++) {
+                    out.writeInt(node.linkCounts[layer]);
+                    for (int i = 0; i < node.linkCounts[layer]; i++) {
+                        out.writeInt(node.links[layer][i]);
+                    }
+                }
+            }
+            out.flush();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static HnswIndex readSnapshot(DataInputStream in, long seed) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a face index snapshot");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported face index snapshot version " + version);
+        }
+        int dimensions = in.readInt();
+        QuantizedVector.Quantization quantization = version == 1
+                ? QuantizedVector.Quantization.NONE
+                : QuantizedVector.Quantization.values()[in.readByte()];
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        int nodeCount = in.readInt();
+
+        HnswIndex index = new HnswIndex(dimensions, m, efConstruction, quantization, seed);
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        for (int id = 0; id < nodeCount; id++) {
+            long userId = in.readLong();
+            boolean deleted = in.readBoolean();
+            int level = in.readInt();
+            Node node = new Node(userId, readVector(in, quantization, dimensions), level);
+            node.deleted = deleted;
+            for (int layer = 0; layer <= level; layer++) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    node.addLink(layer, in.readInt());
+                }
+            }
+            index.nodes.add(node);
+            if (deleted) {
+                index.deletedNodes++;
+            } else {
+                index.nodesByUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(id);
+            }
+        }
+        return index;
+    }
+
+    private static void writeVector(DataOutputStream out, QuantizedVector vector) throws IOException {
+        switch (vector) {
+            case QuantizedVector.Float32 f -> {
+                for (int i = 0; i < f.dimensions(); i++) {
+                    out.writeFloat(f.get(i));
+                }
+            }
+            case QuantizedVector.Int8 q -> {
+                out.writeFloat(q.scale());
+                out.write(q.values());
+            }
+            case QuantizedVector.Float16 h -> {
+                for (short value : h.values()) {
+                    out.writeShort(value);
+                }
+            }
+        }
+    }
+
+    private static QuantizedVector readVector(DataInputStream in, QuantizedVector.Quantization quantization, int dimensions)
+            throws IOException {
+        return switch (quantization) {
+            case NONE -> {
+                float[] values = new float[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    values[i] = in.readFloat();
+                }
+                yield new QuantizedVector.Float32(values);
+            }
+            case INT8 -> {
+                float scale = in.readFloat();
+                byte[] values = new byte[dimensions];
+                in.readFully(values);
+                yield new QuantizedVector.Int8(values, scale);
+            }
+            case FLOAT16 -> {
+                short[] values = new short[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    values[i] = in.readShort();
+                }
+                yield new QuantizedVector.Float16(values);
+            }
+        };
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private float similarity(float[] query, int node) {
+        return nodes.get(node).vector.dot(query);
+    }
+
+    private Scored greedyClosest(float[] query, int start, float startSimilarity, int layer) {
+        int current = start;
+        float currentSimilarity = startSimilarity;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = node.links[layer][i];
+                float s = similarity(query, neighbour);
+                if (s > currentSimilarity) {
+                    currentSimilarity = s;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return new Scored(current, currentSimilarity);
+    }
+
+    /**
+     * Best-first search on one layer, returns up to ef nodes ordered by similarity (best first)
+     */
+    private List<Scored> searchLayer(float[] query, int start, int ef, int layer, long deadline, boolean[] partial) {
+        VisitedSet seen = visited.get();
+        seen.reset(nodes.size());
+
+        PriorityQueue<Scored> candidates = new PriorityQueue<>((a, b) -> Float.compare(b.similarity, a.similarity));
+        PriorityQueue<Scored> results = new PriorityQueue<>((a, b) -> Float.compare(a.similarity, b.similarity));
+
+        Scored first = new Scored(start, similarity(query, start));
+        seen.add(start);
+        candidates.add(first);
+        results.add(first);
+
+        int expansions = 0;
+        while (!candidates.isEmpty()) {
+            Scored candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity < results.peek().similarity) {
+                break;
+            }
+            if (deadline != Long.MAX_VALUE && ++expansions % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                partial[0] = true;
+                break;
+            }
+
+            Node node = nodes.get(candidate.node);
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = node.links[layer][i];
+                if (!seen.add(neighbour)) {
+                    continue;
+                }
+                float s = similarity(query, neighbour);
+                if (results.size() < ef || s > results.peek().similarity) {
+                    Scored scored = new Scored(neighbour, s);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        Scored[] ordered = results.toArray(new Scored[0]);
+        Arrays.sort(ordered, (a, b) -> Float.compare(b.similarity, a.similarity));
+        return Arrays.asList(ordered);
+    }
+
+    /**
+     * Diversity heuristic - keep a candidate only if it is closer to the new node than to
+     * every neighbour kept so far, then top up with the best pruned ones
+     */
+    private List<Scored> selectNeighbours(List<Scored> candidates, int maxLinks) {
+        List<Scored> selected = new ArrayList<>(maxLinks);
+        List<Scored> pruned = new ArrayList<>();
+        for (Scored candidate : candidates) {
+            if (selected.size() >= maxLinks) {
+                break;
+            }
+            QuantizedVector vector = nodes.get(candidate.node).vector;
+            boolean diverse = true;
+            for (Scored kept : selected) {
+                if (vector.dot(nodes.get(kept.node).vector) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                pruned.add(candidate);
+            }
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < maxLinks; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    private void link(int from, int to, int layer, int maxLinks) {
+        Node node = nodes.get(from);
+        if (node.linkCounts[layer] < maxLinks) {
+            node.addLink(layer, to);
+            return;
+        }
+
+        // Full - re-select among existing links plus the new one
+        List<Scored> candidates = new ArrayList<>(maxLinks + 1);
+        for (int i = 0; i < node.linkCounts[layer]; i++) {
+            int neighbour = node.links[layer][i];
+            candidates.add(new Scored(neighbour, node.vector.dot(nodes.get(neighbour).vector)));
+        }
+        candidates.add(new Scored(to, node.vector.dot(nodes.get(to).vector)));
+        candidates.sort((a, b) -> Float.compare(b.similarity, a.similarity));
+
+        List<Scored> kept = selectNeighbours(candidates, maxLinks);
+        node.linkCounts[layer] = 0;
+        for (Scored scored : kept) {
+            node.addLink(layer, scored.node);
+        }
+    }
+
+    private record Scored(int node, float similarity) {
+    }
+
+    private static final class Node {
+        private final long userId;
+        private final QuantizedVector vector;
+        private final int[][] links;
+        private final int[] linkCounts;
+        private boolean deleted;
+
+        private Node(long userId, QuantizedVector vector, int level) {
+            this.userId = userId;
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                links[layer] = new int[4];
+            }
+        }
+
+        private void addLink(int layer, int node) {
+            if (linkCounts[layer] == links[layer].length) {
+                links[layer] = Arrays.copyOf(links[layer], links[layer].length * 2);
+            }
+            links[layer][linkCounts[layer]++] = node;
+        }
+    }
+
+    /**
+     * Generation-stamped visited marks, reused per thread (no allocation per search)
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int generation;
+
+        private void reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length * 2)];
+                generation = 0;
+            }
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+        }
+
+        private boolean add(int node) {
+            if (marks[node] == generation) {
+                return false;
+            }
+            marks[node] = generation;
+            return true;
+        }
+    }
+}
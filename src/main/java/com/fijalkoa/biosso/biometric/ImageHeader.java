@@ -0,0 +1,124 @@
+package com.fijalkoa.biosso.biometric;
+
+/**
+ * Format and pixel size of an image read from its first bytes, without decoding it
+ *
+ * - PNG: 8-byte signature, then the IHDR chunk (width/height within the first 24 bytes)
+ * - JPEG: SOI, then marker segments are skipped by their declared length up to the SOFn
+ *   frame header - only EXIF/ICC segments come before it, usually a few KB
+ *
+ * Anything that starts with neither signature is rejected after its first byte.
+ */
+public record ImageHeader(Format format, int width, int height) {
+
+    public enum Format {
+        JPEG, PNG
+    }
+
+    private static final byte[] JPEG_SOI = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    public long pixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * @param complete no more bytes will come (end of the part)
+     * @return the header, or null when more bytes are needed to tell
+     * @throws ImageUploadRejectedException FORMAT when it is not JPEG/PNG, MALFORMED when the header is broken
+     */
+    public static ImageHeader sniff(byte[] data, int length, boolean complete) {
+        ImageHeader header;
+        if (startsWith(data, length, JPEG_SOI)) {
+            header = length < JPEG_SOI.length ? null : jpeg(data, length);
+        } else if (startsWith(data, length, PNG_SIGNATURE)) {
+            header = png(data, length);
+        } else {
+            throw new ImageUploadRejectedException(ImageUploadRejectedException.Reason.FORMAT,
+                    "Image is neither JPEG nor PNG");
+        }
+
+        if (header == null && complete) {
+            throw new ImageUploadRejectedException(ImageUploadRejectedException.Reason.MALFORMED,
+                    "Image ends before its header");
+        }
+        return header;
+    }
+
+    private static ImageHeader png(byte[] data, int length) {
+        if (length < 24) {
+            return null;
+        }
+        if (data[12] != 'I' || data[13] != 'H' || data[14] != 'D' || data[15] != 'R') {
+            throw malformed("PNG without IHDR chunk");
+        }
+        return new ImageHeader(Format.PNG, int32(data, 16), int32(data, 20));
+    }
+
+    private static ImageHeader jpeg(byte[] data, int length) {
+        int position = 2;
+        while (true) {
+            if (position + 4 > length) {
+                return null;
+            }
+            if ((data[position] & 0xFF) != 0xFF) {
+                throw malformed("JPEG marker expected at offset " + position);
+            }
+            int marker = data[position + 1] & 0xFF;
+            if (marker == 0xFF) {
+                // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                // Standalone markers, no length
+                position += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                throw malformed("JPEG without frame header");
+            }
+
+            int segmentLength = uint16(data, position + 2);
+            if (segmentLength < 2) {
+                throw malformed("JPEG segment with length " + segmentLength);
+            }
+            if (isStartOfFrame(marker)) {
+                if (position + 9 > length) {
+                    return null;
+                }
+                return new ImageHeader(Format.JPEG, uint16(data, position + 7), uint16(data, position + 5));
+            }
+            position += 2 + segmentLength;
+        }
+    }
+
+    /**
+     * SOF0-SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+     */
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static boolean startsWith(byte[] data, int length, byte[] signature) {
+        for (int i = 0; i < Math.min(length, signature.length); i++) {
+            if (data[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int uint16(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int int32(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static ImageUploadRejectedException malformed(String message) {
+        return new ImageUploadRejectedException(ImageUploadRejectedException.Reason.MALFORMED, message);
+    }
+}
@@ -0,0 +1,331 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional normalisation of face images before they are forwarded to Python
+ *
+ * Phone cameras send 12 MP JPEGs, the face model works on ~640px. When enabled:
+ * 1. Reads the EXIF orientation tag (only the APP1 header, not the whole file)
+ * 2. Decodes with source subsampling - a 4032px image is decoded at ~1/6 size, not at full size
+ * 3. Scales to app.biometric.image.max-dimension (longest side) and applies the orientation
+ * 4. Re-encodes as baseline JPEG at app.biometric.image.jpeg-quality, without any metadata
+ *    (EXIF with GPS/device data never leaves this service)
+ *
+ * Images that cannot be decoded are forwarded unchanged (ImagePartResource), Python
+ * still gets the chance to reject them with a proper error.
+ *
+ * prepareAsync() runs the stage on a small CPU-sized pool (app.biometric.image.threads),
+ * so the five registration images are processed in parallel. When the pool is saturated
+ * the caller runs the work itself instead of queueing without bound.
+ *
+ * Metrics:
+ * - biometric.image.normalize (timer)
+ * - biometric.image.bytes{stage=original|normalized}
+ */
+@Slf4j
+@Component
+public class ImageNormalizer {
+
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float jpegQuality;
+    private final Timer normalizeTimer;
+    private final Counter originalBytes;
+    private final Counter normalizedBytes;
+    private final ExecutorService executor;
+
+    public ImageNormalizer(
+            @Value("${app.biometric.image.normalize-enabled:false}") boolean enabled,
+            @Value("${app.biometric.image.max-dimension:640}") int maxDimension,
+            @Value("${app.biometric.image.jpeg-quality:0.85}") float jpegQuality,
+            @Value("${app.biometric.image.threads:0}") int threads,
+            MeterRegistry meterRegistry) {
+
+        this.enabled = enabled;
+        this.executor = enabled ? newExecutor(threads > 0 ? threads : Runtime.getRuntime().availableProcessors()) : null;
+        this.maxDimension = maxDimension;
+        this.jpegQuality = jpegQuality;
+        this.normalizeTimer = Timer.builder("biometric.image.normalize")
+                .description("Decode, downscale and re-encode of a face image")
+                .register(meterRegistry);
+        this.originalBytes = Counter.builder("biometric.image.bytes")
+                .tag("stage", "original")
+                .baseUnit("bytes")
+                .description("Face image bytes before/after normalisation")
+                .register(meterRegistry);
+        this.normalizedBytes = Counter.builder("biometric.image.bytes")
+                .tag("stage", "normalized")
+                .baseUnit("bytes")
+                .description("Face image bytes before/after normalisation")
+                .register(meterRegistry);
+
+        log.info("🖼️ Image normalisation: enabled={}, maxDimension={}, jpegQuality={}", enabled, maxDimension, jpegQuality);
+    }
+
+    /**
+     * Multipart part for the outbound request - normalised JPEG, or the streamed upload
+     * when normalisation is disabled or the image cannot be decoded
+     */
+    public Resource toPart(MultipartFile file, String filename) {
+        if (!enabled) {
+            return new ImagePartResource(file, filename);
+        }
+        try {
+            byte[] normalized = normalize(file);
+            return new NormalizedImageResource(normalized, filename);
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Image normalisation failed for {}, forwarding original: {}", filename, e.getMessage());
+            return new ImagePartResource(file, filename);
+        }
+    }
+
+    /**
+     * Same as toPart, but prepared on the image pool - the future completes with the part content
+     */
+    public CompletableFuture<Resource> prepareAsync(MultipartFile file, String filename) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(new ImagePartResource(file, filename));
+        }
+        return CompletableFuture.supplyAsync(() -> toPart(file, filename), executor);
+    }
+
+    /**
+     * Decode, orient, downscale and re-encode one image
+     */
+    public byte[] normalize(MultipartFile file) throws IOException {
+        long start = System.nanoTime();
+
+        int orientation;
+        try (InputStream in = file.getInputStream()) {
+            orientation = readExifOrientation(in);
+        }
+
+        BufferedImage decoded;
+        try (InputStream in = file.getInputStream();
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            decoded = decodeSubsampled(imageIn);
+        }
+
+        byte[] encoded = encodeJpeg(orientAndScale(decoded, orientation));
+
+        normalizeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        originalBytes.increment(file.getSize());
+        normalizedBytes.increment(encoded.length);
+        log.debug("🖼️ Normalised image: {}x{} orientation={} {}B -> {}B",
+                decoded.getWidth(), decoded.getHeight(), orientation, file.getSize(), encoded.length);
+        return encoded;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-normalize-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private BufferedImage decodeSubsampled(ImageInputStream imageIn) throws IOException {
+        Iterator<ImageReader> readers = imageIn == null ? null : ImageIO.getImageReaders(imageIn);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            // Metadata is dropped anyway, do not let the reader parse it
+            reader.setInput(imageIn, true, true);
+            int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+            // Integer subsampling keeps the decoded image >= maxDimension, the final scale is done below
+            int subsampling = Math.max(1, longestSide / maxDimension);
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private BufferedImage orientAndScale(BufferedImage source, int orientation) {
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        boolean swapsAxes = orientation >= 5 && orientation <= 8;
+
+        BufferedImage target = new BufferedImage(swapsAxes ? height : width, swapsAxes ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+
+        AffineTransform transform = orientationTransform(orientation, width, height);
+        transform.concatenate(AffineTransform.getScaleInstance(
+                (double) width / source.getWidth(), (double) height / source.getHeight()));
+
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * EXIF orientation (1-8) as a transform from the stored w x h image to the upright image
+     */
+    private static AffineTransform orientationTransform(int orientation, int w, int h) {
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);   // mirror horizontal
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);  // rotate 180
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);   // mirror vertical
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);    // transpose
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);   // rotate 90 CW
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);  // transverse
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);   // rotate 270 CW
+            default -> new AffineTransform();
+        };
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            // No metadata - EXIF, thumbnails and ICC profiles are not written
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Walk the JPEG header segments up to the first scan and return the EXIF orientation (1 when absent)
+     */
+    static int readExifOrientation(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readUnsignedShort() != 0xFFD8) {
+                return 1;
+            }
+            while (true) {
+                int marker = data.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return 1;
+                }
+                int length = data.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return 1;
+                }
+                if (marker == 0xFFE1) {
+                    byte[] segment = new byte[length];
+                    data.readFully(segment);
+                    int orientation = parseExifOrientation(segment);
+                    if (orientation > 0) {
+                        return orientation;
+                    }
+                } else {
+                    data.skipNBytes(length);
+                }
+            }
+        } catch (EOFException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Orientation from an APP1 segment, 0 when the segment is not EXIF (e.g. XMP) or has no orientation
+     */
+    private static int parseExifOrientation(byte[] segment) {
+        if (segment.length < 14 || !"Exif\0\0".equals(new String(segment, 0, 6, StandardCharsets.ISO_8859_1))) {
+            return 0;
+        }
+        int tiff = 6;
+        ByteOrder order = segment[tiff] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        ByteBuffer buffer = ByteBuffer.wrap(segment).order(order);
+        try {
+            int ifd = tiff + buffer.getInt(tiff + 4);
+            int entries = buffer.getShort(ifd) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd + 2 + i * 12;
+                if ((buffer.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                    int value = buffer.getShort(entry + 8) & 0xFFFF;
+                    return value >= 1 && value <= 8 ? value : 1;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            return 0;
+        }
+        return 0;
+    }
+
+    private static final class NormalizedImageResource extends ByteArrayResource {
+
+        private final String filename;
+
+        private NormalizedImageResource(byte[] content, String filename) {
+            super(content, "Normalised image part [" + filename + "]");
+            this.filename = filename;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.fijalkoa.biosso.biometric;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming multipart part backed by an uploaded MultipartFile
+ *
+ * Used instead of ByteArrayResource(file.getBytes()) when forwarding images to Python:
+ * - Content is read lazily from the servlet multipart storage (temp file)
+ * - FormHttpMessageConverter copies it to the outbound request with a fixed-size buffer
+ * - contentLength() comes from the upload, so the stream is never read twice
+ */
+public class ImagePartResource extends AbstractResource {
+
+    private final MultipartFile file;
+    private final String filename;
+
+    public ImagePartResource(MultipartFile file, String filename) {
+        this.file = file;
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public long contentLength() {
+        return file.getSize();
+    }
+
+    @Override
+    public boolean exists() {
+        return !file.isEmpty();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return file.getInputStream();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Image part [" + filename + "] from upload [" + file.getOriginalFilename() + "]";
+    }
+}
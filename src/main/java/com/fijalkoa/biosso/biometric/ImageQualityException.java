@@ -0,0 +1,48 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+
+/**
+ * Thrown by ImageQualityGate when a probe frame is not worth sending to Python
+ * (too blurry, too dark/bright, face too small).
+ *
+ * Mapped to 422 Unprocessable Entity - the reason and the measured scores tell
+ * the frontend what to ask the user for (hold still, more light, come closer).
+ */
+@Getter
+public class ImageQualityException extends RuntimeException {
+
+    public enum Reason {
+        BLURRY, UNDEREXPOSED, OVEREXPOSED, FACE_TOO_SMALL
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+    private final ImageQualityGate.Assessment assessment;
+
+    public ImageQualityException(Reason reason, ImageQualityGate.Assessment assessment, String message) {
+        super(message);
+        this.reason = reason;
+        this.assessment = assessment;
+    }
+
+    public HttpStatus getHttpStatus() {
+        return HttpStatus.UNPROCESSABLE_ENTITY;
+    }
+
+    /**
+     * The 422 body - error, reason and the measured scores (same shape on every verify endpoint)
+     */
+    public Map<String, Object> toMap() {
+        return Map.of(
+                "success", false,
+                "error", getMessage(),
+                "reason", reason.name(),
+                "quality", assessment.toMap()
+        );
+    }
+}
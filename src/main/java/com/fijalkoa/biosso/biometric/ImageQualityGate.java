@@ -0,0 +1,295 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process quality check of a probe frame before it costs a GPU call in Python
+ *
+ * The frame (or the face box, when the client sent one) is decoded with source subsampling
+ * to about app.biometric.quality.analysis-size px on the longest side, converted to luminance, then:
+ * - face size: shorter side of the face box in original pixels >= min-face-size
+ * - exposure: mean luminance within min/max-brightness, share of clipped pixels
+ *   (<= 16 or >= 240) <= max-clipped-fraction
+ * - blur: variance of the 4-neighbour Laplacian >= min-sharpness (scores are on the subsampled image)
+ *
+ * The first failed check throws ImageQualityException (422) with the measured scores.
+ * Frames that cannot be decoded pass - Python still rejects them with a proper error.
+ *
+ * Metrics:
+ * - biometric.image.quality (timer)
+ * - biometric.image.quality.rejected{reason}
+ */
+@Slf4j
+@Component
+public class ImageQualityGate {
+
+    private static final int CLIPPED_DARK = 16;
+    private static final int CLIPPED_BRIGHT = 240;
+
+    /**
+     * Face bounding box in original image pixels, as detected by the client
+     */
+    public record FaceBox(int x, int y, int width, int height) {
+
+        /**
+         * @param value "x,y,width,height"
+         */
+        public static FaceBox parse(String value) {
+            String[] parts = value.split(",");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Face box must be x,y,width,height: " + value);
+            }
+            try {
+                FaceBox box = new FaceBox(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                        Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+                if (box.x < 0 || box.y < 0 || box.width <= 0 || box.height <= 0) {
+                    throw new IllegalArgumentException("Face box out of range: " + value);
+                }
+                return box;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Face box must be x,y,width,height: " + value);
+            }
+        }
+    }
+
+    /**
+     * Measured scores - sharpness is the Laplacian variance, brightness the mean luminance (0-255)
+     * Serializable - carried by ImageQualityException
+     */
+    public record Assessment(double sharpness, double brightness, double darkFraction, double brightFraction,
+                             Integer faceSize) implements Serializable {
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>(8);
+            map.put("sharpness", Math.round(sharpness * 10) / 10.0);
+            map.put("brightness", Math.round(brightness * 10) / 10.0);
+            map.put("dark_fraction", Math.round(darkFraction * 1000) / 1000.0);
+            map.put("bright_fraction", Math.round(brightFraction * 1000) / 1000.0);
+            if (faceSize != null) {
+                map.put("face_size", faceSize);
+            }
+            return map;
+        }
+    }
+
+    private final boolean enabled;
+    private final int analysisSize;
+    private final double minSharpness;
+    private final double minBrightness;
+    private final double maxBrightness;
+    private final double maxClippedFraction;
+    private final int minFaceSize;
+    private final Timer assessTimer;
+    private final MeterRegistry meterRegistry;
+
+    public ImageQualityGate(
+            @Value("${app.biometric.quality.enabled:false}") boolean enabled,
+            @Value("${app.biometric.quality.analysis-size:256}") int analysisSize,
+            @Value("${app.biometric.quality.min-sharpness:40}") double minSharpness,
+            @Value("${app.biometric.quality.min-brightness:50}") double minBrightness,
+            @Value("${app.biometric.quality.max-brightness:205}") double maxBrightness,
+            @Value("${app.biometric.quality.max-clipped-fraction:0.35}") double maxClippedFraction,
+            @Value("${app.biometric.quality.min-face-size:96}") int minFaceSize,
+            MeterRegistry meterRegistry) {
+
+        this.enabled = enabled;
+        this.analysisSize = analysisSize;
+        this.minSharpness = minSharpness;
+        this.minBrightness = minBrightness;
+        this.maxBrightness = maxBrightness;
+        this.maxClippedFraction = maxClippedFraction;
+        this.minFaceSize = minFaceSize;
+        this.meterRegistry = meterRegistry;
+        this.assessTimer = Timer.builder("biometric.image.quality")
+                .description("Blur/exposure scoring of a probe frame")
+                .register(meterRegistry);
+
+        log.info("🔎 Image quality gate: enabled={}, minSharpness={}, brightness={}-{}, minFaceSize={}",
+                enabled, minSharpness, minBrightness, maxBrightness, minFaceSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Throws ImageQualityException when the frame fails a threshold
+     *
+     * @param faceBox optional face box from the client, null to score the whole frame
+     * @return the scores, null when the gate is disabled or the image cannot be decoded
+     */
+    public Assessment check(MultipartFile image, FaceBox faceBox) {
+        if (!enabled || image == null || image.isEmpty()) {
+            return null;
+        }
+        Assessment assessment = assess(image, faceBox);
+        if (assessment == null) {
+            return null;
+        }
+
+        ImageQualityException.Reason failure = failure(assessment);
+        if (failure != null) {
+            throw reject(failure, assessment, switch (failure) {
+                case FACE_TOO_SMALL -> "Face is too small (" + assessment.faceSize() + " px, at least "
+                        + minFaceSize + " px)";
+                case UNDEREXPOSED -> "Image is too dark";
+                case OVEREXPOSED -> "Image is overexposed";
+                case BLURRY -> "Image is too blurry";
+            });
+        }
+        return assessment;
+    }
+
+    /**
+     * First threshold the scores fail (face size, exposure, blur), null when the frame is good enough
+     * Applied regardless of app.biometric.quality.enabled - used to rank streamed frames too
+     */
+    public ImageQualityException.Reason failure(Assessment assessment) {
+        if (assessment.faceSize() != null && assessment.faceSize() < minFaceSize) {
+            return ImageQualityException.Reason.FACE_TOO_SMALL;
+        }
+        if (assessment.brightness() < minBrightness || assessment.darkFraction() > maxClippedFraction) {
+            return ImageQualityException.Reason.UNDEREXPOSED;
+        }
+        if (assessment.brightness() > maxBrightness || assessment.brightFraction() > maxClippedFraction) {
+            return ImageQualityException.Reason.OVEREXPOSED;
+        }
+        if (assessment.sharpness() < minSharpness) {
+            return ImageQualityException.Reason.BLURRY;
+        }
+        return null;
+    }
+
+    /**
+     * Scores of the frame (or face box region), null when it cannot be decoded
+     */
+    public Assessment assess(MultipartFile image, FaceBox faceBox) {
+        long start = System.nanoTime();
+        try (InputStream in = image.getInputStream();
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+
+            Iterator<ImageReader> readers = imageIn == null ? null : ImageIO.getImageReaders(imageIn);
+            if (readers == null || !readers.hasNext()) {
+                log.debug("🔎 Quality gate skipped, unsupported image format: {}", image.getOriginalFilename());
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                Rectangle region = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+                Integer faceSize = null;
+                if (faceBox != null) {
+                    region = region.intersection(new Rectangle(faceBox.x(), faceBox.y(), faceBox.width(), faceBox.height()));
+                    if (region.isEmpty()) {
+                        throw new IllegalArgumentException("Face box lies outside the image");
+                    }
+                    faceSize = Math.min(region.width, region.height);
+                }
+
+                int subsampling = Math.max(1, Math.max(region.width, region.height) / analysisSize);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return score(reader.read(0, param), faceSize);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            log.warn("⚠️ Quality gate skipped, image cannot be decoded: {}", e.getMessage());
+            return null;
+        } finally {
+            assessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    static Assessment score(BufferedImage image, Integer faceSize) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = luminance(image);
+
+        long sum = 0;
+        int dark = 0;
+        int bright = 0;
+        for (int value : luma) {
+            sum += value;
+            if (value <= CLIPPED_DARK) {
+                dark++;
+            } else if (value >= CLIPPED_BRIGHT) {
+                bright++;
+            }
+        }
+        double pixels = luma.length;
+        return new Assessment(laplacianVariance(luma, width, height), sum / pixels, dark / pixels, bright / pixels,
+                faceSize);
+    }
+
+    /**
+     * Variance of 4c - n - s - e - w over the interior pixels - low for defocused or motion-blurred frames
+     */
+    static double laplacianVariance(int[] luma, int width, int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int laplacian = 4 * luma[i] - luma[i - 1] - luma[i + 1] - luma[i - width] - luma[i + width];
+                sum += laplacian;
+                sumOfSquares += (long) laplacian * laplacian;
+            }
+        }
+        double count = (double) (width - 2) * (height - 2);
+        double mean = sum / count;
+        return sumOfSquares / count - mean * mean;
+    }
+
+    /**
+     * Rec. 601 luma, 0-255
+     */
+    private static int[] luminance(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] luma = new int[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                luma[y * width + x] = (77 * ((rgb >> 16) & 0xFF) + 150 * ((rgb >> 8) & 0xFF) + 29 * (rgb & 0xFF)) >> 8;
+            }
+        }
+        return luma;
+    }
+
+    private ImageQualityException reject(ImageQualityException.Reason reason, Assessment assessment, String message) {
+        Counter.builder("biometric.image.quality.rejected")
+                .tag("reason", reason.name().toLowerCase())
+                .description("Probe frames rejected by the quality gate before calling Python")
+                .register(meterRegistry)
+                .increment();
+        return new ImageQualityException(reason, assessment, message);
+    }
+}
@@ -0,0 +1,218 @@
+package com.fijalkoa.biosso.biometric;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.multipart.support.DefaultMultipartHttpServletRequest;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming pre-validation of image uploads to the biometric endpoints
+ *
+ * The container multipart parser receives a whole upload (up to spring.servlet.multipart.max-file-size)
+ * before anything looks at it. For POST/PUT multipart requests to /api/biometric/* this filter parses
+ * the body itself while it arrives (MultipartUploadParser) and gives up at the first violation:
+ * - Content-Length over the endpoint budget - rejected before a single body byte is read
+ * - bytes read over the budget (chunked uploads) or an image over max-image-size
+ * - image part not starting with JPEG/PNG magic bytes - after its first byte
+ * - width/height outside min/max-dimension or over max-pixels - as soon as the image header
+ *   (PNG IHDR, JPEG SOFn) has arrived, typically within the first few KB
+ *
+ * Budgets: verify (verify*, identify*, enrollment-sessions/{id}/images/{angle}), register (register*),
+ * batch (verify-batch)
+ * A rejected upload gets 413/415/422/400 with Connection: close, so the container does not drain the rest.
+ * Accepted uploads are handed to Spring MVC as a MultipartHttpServletRequest, the container
+ * parser never runs for them.
+ *
+ * Metrics: biometric.upload.rejected{reason}, biometric.upload.rejected.bytes (bytes read before rejecting)
+ */
+@Slf4j
+@Component
+public class ImageUploadFilter extends OncePerRequestFilter {
+
+    private static final String PATH_PREFIX = "/api/biometric/";
+    private static final Set<String> VERIFY_ENDPOINTS =
+            Set.of("verify", "verify-async", "verify-for-auth", "verify-for-auth-async", "identify", "identify-for-auth");
+    private static final Set<String> REGISTER_ENDPOINTS = Set.of("register", "register-async");
+    private static final Set<String> BATCH_ENDPOINTS = Set.of("verify-batch");
+    private static final String ENROLLMENT_SESSIONS = "enrollment-sessions/";
+
+    private final boolean enabled;
+    private final long verifyBudget;
+    private final long registerBudget;
+    private final long batchBudget;
+    private final MultipartUploadParser.Limits imageLimits;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary rejectedBytes;
+
+    public ImageUploadFilter(
+            @Value("${app.biometric.upload.validation-enabled:true}") boolean enabled,
+            @Value("${app.biometric.upload.budget.verify:10MB}") DataSize verifyBudget,
+            @Value("${app.biometric.upload.budget.register:40MB}") DataSize registerBudget,
+            @Value("${app.biometric.upload.budget.batch:50MB}") DataSize batchBudget,
+            @Value("${app.biometric.upload.max-image-size:10MB}") DataSize maxImageSize,
+            @Value("${app.biometric.upload.header-limit:128KB}") DataSize headerLimit,
+            @Value("${app.biometric.upload.min-dimension:64}") int minDimension,
+            @Value("${app.biometric.upload.max-dimension:8192}") int maxDimension,
+            @Value("${app.biometric.upload.max-pixels:50000000}") long maxPixels,
+            @Value("${app.biometric.upload.memory-threshold:256KB}") DataSize memoryThreshold,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry) {
+
+        this.enabled = enabled;
+        this.verifyBudget = verifyBudget.toBytes();
+        this.registerBudget = registerBudget.toBytes();
+        this.batchBudget = batchBudget.toBytes();
+        this.imageLimits = new MultipartUploadParser.Limits(0, maxImageSize.toBytes(), (int) headerLimit.toBytes(),
+                minDimension, maxDimension, maxPixels, (int) memoryThreshold.toBytes());
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.rejectedBytes = DistributionSummary.builder("biometric.upload.rejected.bytes")
+                .baseUnit("bytes")
+                .description("Body bytes read before a biometric upload was rejected")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled
+                || !("POST".equals(request.getMethod()) || "PUT".equals(request.getMethod()))
+                || request.getContentType() == null
+                || !request.getContentType().toLowerCase().startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)
+                || budget(request) < 0;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        long budget = budget(request);
+        long declared = request.getContentLengthLong();
+        if (declared > budget) {
+            reject(response, new ImageUploadRejectedException(ImageUploadRejectedException.Reason.BUDGET,
+                    "Upload of " + declared + " bytes exceeds the " + budget + " byte budget of this endpoint"), 0);
+            return;
+        }
+
+        String boundary = MediaType.parseMediaType(request.getContentType()).getParameter("boundary");
+        if (boundary == null) {
+            reject(response, new ImageUploadRejectedException(ImageUploadRejectedException.Reason.MALFORMED,
+                    "Multipart request without boundary"), 0);
+            return;
+        }
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+
+        MultipartUploadParser parser = new MultipartUploadParser(request.getInputStream(), limits(budget));
+        MultipartUploadParser.Result upload;
+        try {
+            upload = parser.parse(boundary);
+        } catch (ImageUploadRejectedException e) {
+            parser.cleanup();
+            reject(response, e, parser.bytesRead());
+            return;
+        } catch (IOException | RuntimeException e) {
+            parser.cleanup();
+            throw e;
+        }
+
+        try {
+            chain.doFilter(new DefaultMultipartHttpServletRequest(request, upload.files(), upload.parameters(),
+                    upload.contentTypes()), response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // Async handlers still read the images - clean up when the response is done
+                request.getAsyncContext().addListener(new CleanupListener(parser));
+            } else {
+                parser.cleanup();
+            }
+        }
+    }
+
+    private MultipartUploadParser.Limits limits(long budget) {
+        return new MultipartUploadParser.Limits(budget, imageLimits.maxImageBytes(), imageLimits.headerLimit(),
+                imageLimits.minDimension(), imageLimits.maxDimension(), imageLimits.maxPixels(),
+                imageLimits.memoryThreshold());
+    }
+
+    /**
+     * Byte budget of the endpoint, -1 when it is not an image upload endpoint
+     */
+    private long budget(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!path.startsWith(PATH_PREFIX)) {
+            return -1;
+        }
+        String endpoint = path.substring(PATH_PREFIX.length());
+        // One enrollment image per request - same budget as a single verification image
+        if (VERIFY_ENDPOINTS.contains(endpoint)
+                || endpoint.startsWith(ENROLLMENT_SESSIONS) && endpoint.contains("/images/")) {
+            return verifyBudget;
+        }
+        if (REGISTER_ENDPOINTS.contains(endpoint)) {
+            return registerBudget;
+        }
+        if (BATCH_ENDPOINTS.contains(endpoint)) {
+            return batchBudget;
+        }
+        return -1;
+    }
+
+    private void reject(HttpServletResponse response, ImageUploadRejectedException e, long bytesRead) throws IOException {
+        log.warn("🚫 Biometric upload rejected after {} bytes ({}): {}", bytesRead, e.getReason(), e.getMessage());
+        Counter.builder("biometric.upload.rejected")
+                .tag("reason", e.getReason().name().toLowerCase())
+                .description("Biometric uploads rejected while still being received")
+                .register(meterRegistry)
+                .increment();
+        rejectedBytes.record(bytesRead);
+
+        response.setStatus(e.getHttpStatus().value());
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of(
+                "success", false,
+                "error", e.getMessage(),
+                "reason", e.getReason().name()
+        ));
+    }
+
+    private record CleanupListener(MultipartUploadParser parser) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            parser.cleanup();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown while a biometric upload is still being received (ImageUploadFilter)
+ * when it can already be told it is not worth reading to the end.
+ *
+ * Mapped to 413 (byte budget), 415 (not JPEG/PNG), 422 (unusable dimensions)
+ * or 400 (broken multipart / image header).
+ */
+@Getter
+public class ImageUploadRejectedException extends RuntimeException {
+
+    public enum Reason {
+        BUDGET, FORMAT, DIMENSIONS, MALFORMED
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private final Reason reason;
+
+    public ImageUploadRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public HttpStatus getHttpStatus() {
+        return switch (reason) {
+            case BUDGET -> HttpStatus.PAYLOAD_TOO_LARGE;
+            case FORMAT -> HttpStatus.UNSUPPORTED_MEDIA_TYPE;
+            case DIMENSIONS -> HttpStatus.UNPROCESSABLE_ENTITY;
+            case MALFORMED -> HttpStatus.BAD_REQUEST;
+        };
+    }
+}
@@ -0,0 +1,437 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Enrolled embeddings kept off-heap, in memory-mapped segment files
+ *
+ * Hundreds of thousands of templates as float[][] on the heap mean long GC marking and
+ * a heap sized for the user count. Here the vectors live in the page cache; the heap only
+ * holds a small location entry per template, and a restart just maps the files again
+ * (no re-fetching from Python).
+ *
+ * Layout - append-only log split into fixed-size segments (segment-NNNNNN.emb):
+ * - segment header: magic, version
+ * - record: magic, type (template | tombstone), userId, templateId, count, dims, floats
+ *   The record magic is written last, so a record torn by a crash is simply not there on restart.
+ * - a new template of a user supersedes the old one (tombstone written for the old templateId),
+ *   revoke(userId) tombstones the current one
+ *
+ * Compaction (every compaction-interval): sealed segments with at least compaction-threshold
+ * dead bytes get their live records copied to the active segment and are deleted.
+ *
+ * Uses MappedByteBuffer rather than the FFM API (MemorySegment is still a preview API on Java 21).
+ * Disabled by default (app.biometric.embedding-store.enabled), EmbeddingTemplateCache then keeps
+ * its on-heap LRU.
+ *
+ * Metrics: biometric.embedding_store.templates, biometric.embedding_store.bytes{state=live|dead}
+ */
+@Slf4j
+@Component
+public class MappedEmbeddingStore {
+
+    private static final int SEGMENT_MAGIC = 0x454D4253;    // "EMBS"
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER = 16;
+    private static final int RECORD_MAGIC = 0x454D4231;     // "EMB1"
+    private static final byte TEMPLATE = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int MAX_TEMPLATE_ID_BYTES = 255;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<String, Location> templates = new HashMap<>();
+    private final Map<Long, String> templateByUser = new HashMap<>();
+    private Segment active;
+
+    public MappedEmbeddingStore(
+            @Value("${app.biometric.embedding-store.enabled:false}") boolean enabled,
+            @Value("${app.biometric.embedding-store.path:data/embeddings}") String directory,
+            @Value("${app.biometric.embedding-store.segment-size:64MB}") DataSize segmentSize,
+            @Value("${app.biometric.embedding-store.compaction-threshold:0.5}") double compactionThreshold,
+            MeterRegistry meterRegistry) {
+
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, segmentSize.toBytes());
+        this.compactionThreshold = compactionThreshold;
+
+        if (enabled) {
+            long start = System.nanoTime();
+            open();
+            log.info("🗄️ Embedding store opened: {} templates in {} segments ({} ms)",
+                    templates.size(), segments.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+
+        Gauge.builder("biometric.embedding_store.templates", this, MappedEmbeddingStore::size)
+                .description("Templates in the off-heap embedding store")
+                .register(meterRegistry);
+        Gauge.builder("biometric.embedding_store.bytes", this, s -> s.bytes(true))
+                .tag("state", "live")
+                .description("Bytes used by the off-heap embedding store")
+                .register(meterRegistry);
+        Gauge.builder("biometric.embedding_store.bytes", this, s -> s.bytes(false))
+                .tag("state", "dead")
+                .description("Bytes used by the off-heap embedding store")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Unit-length embeddings of the template, copied onto the heap (short-lived)
+     */
+    public Optional<float[][]> get(String templateId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            Location location = templates.get(templateId);
+            if (location == null) {
+                return Optional.empty();
+            }
+            FloatBuffer floats = location.segment.buffer
+                    .slice(location.vectorOffset, location.count * location.dims * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+            float[][] embeddings = new float[location.count][location.dims];
+            for (int i = 0; i < location.count; i++) {
+                floats.get(i * location.dims, embeddings[i]);
+            }
+            return Optional.of(embeddings);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Append the user's current template (supersedes the previous one)
+     */
+    public void put(long userId, String templateId, float[][] embeddings) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            String previous = templateByUser.get(userId);
+            if (previous != null && !previous.equals(templateId)) {
+                tombstone(userId, previous);
+            }
+            append(TEMPLATE, userId, templateId, embeddings);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstone the user's current template (enrollment revoked / deactivated)
+     */
+    public void revoke(long userId) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            String templateId = templateByUser.get(userId);
+            if (templateId != null) {
+                tombstone(userId, templateId);
+                log.debug("🪦 Embeddings of user {} tombstoned (template {})", userId, templateId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return templates.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite sealed segments that are mostly dead (runs in the background, see class doc)
+     */
+    @Scheduled(fixedDelayString = "${app.biometric.embedding-store.compaction-interval:10m}",
+            initialDelayString = "${app.biometric.embedding-store.compaction-interval:10m}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        List<Segment> candidates;
+        lock.readLock().lock();
+        try {
+            candidates = segments.values().stream()
+                    .filter(segment -> segment != active && segment.deadRatio() >= compactionThreshold)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (Segment segment : candidates) {
+            lock.writeLock().lock();
+            try {
+                compact(segment);
+            } catch (IOException e) {
+                log.warn("⚠️ Compaction of {} failed: {}", segment.path.getFileName(), e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean olderSegments = segments.firstKey() < segment.id;
+        int position = SEGMENT_HEADER;
+        int moved = 0;
+        while (position < segment.writePosition) {
+            Record record = Record.read(segment.buffer, position);
+            if (record.type == TEMPLATE) {
+                Location location = templates.get(record.templateId);
+                if (location != null && location.segment == segment && location.recordOffset == position) {
+                    append(TEMPLATE, record.userId, record.templateId, record.embeddings(segment.buffer));
+                    moved++;
+                }
+            } else if (olderSegments && !templates.containsKey(record.templateId)) {
+                // Still needed - an older segment may hold the record it kills
+                append(TOMBSTONE, record.userId, record.templateId, new float[0][]);
+            }
+            position = record.end;
+        }
+
+        segments.remove(segment.id);
+        Files.delete(segment.path);
+        log.info("🗜️ Embedding segment {} compacted: {} live templates moved", segment.path.getFileName(), moved);
+    }
+
+    private void tombstone(long userId, String templateId) {
+        append(TOMBSTONE, userId, templateId, new float[0][]);
+    }
+
+    private void append(byte type, long userId, String templateId, float[][] embeddings) {
+        byte[] id = templateId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_TEMPLATE_ID_BYTES) {
+            throw new IllegalArgumentException("templateId too long: " + templateId);
+        }
+        int dims = embeddings.length == 0 ? 0 : embeddings[0].length;
+        int size = Record.size(id.length, embeddings.length, dims);
+        if (size > segmentSize - SEGMENT_HEADER) {
+            throw new IllegalArgumentException("Template " + templateId + " does not fit in a segment");
+        }
+
+        try {
+            if (active == null || active.writePosition + size > segmentSize) {
+                active = createSegment(segments.isEmpty() ? 1 : segments.lastKey() + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create embedding segment", e);
+        }
+
+        int offset = active.writePosition;
+        MappedByteBuffer buffer = active.buffer;
+        int position = offset + Integer.BYTES;
+        buffer.put(position, type);
+        buffer.putLong(position + 1, userId);
+        buffer.put(position + 9, (byte) id.length);
+        buffer.put(position + 10, id);
+        position += 10 + id.length;
+        buffer.putInt(position, embeddings.length);
+        buffer.putInt(position + 4, dims);
+        position += 8;
+        int vectorOffset = position;
+        for (float[] embedding : embeddings) {
+            for (float value : embedding) {
+                buffer.putFloat(position, value);
+                position += Float.BYTES;
+            }
+        }
+        // Magic last - marks the record as complete
+        buffer.putInt(offset, RECORD_MAGIC);
+        buffer.force(offset, size);
+        active.writePosition = offset + size;
+
+        apply(type, userId, templateId, new Location(active, offset, vectorOffset, embeddings.length, dims, size));
+    }
+
+    private void apply(byte type, long userId, String templateId, Location location) {
+        Location previous = type == TEMPLATE ? templates.put(templateId, location) : templates.remove(templateId);
+        if (previous != null) {
+            previous.segment.deadBytes += previous.size;
+        }
+        if (type == TEMPLATE) {
+            templateByUser.put(userId, templateId);
+        } else {
+            templateByUser.remove(userId, templateId);
+            location.segment.deadBytes += location.size;
+        }
+    }
+
+    private void open() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.emb")).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = mapSegment(file, Integer.parseInt(file.getFileName().toString().replaceAll("\\D", "")), false);
+                segments.put(segment.id, segment);
+                replay(segment);
+                active = segment;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open embedding store " + directory, e);
+        }
+    }
+
+    private void replay(Segment segment) {
+        int position = SEGMENT_HEADER;
+        while (position + Integer.BYTES <= segment.buffer.capacity() && segment.buffer.getInt(position) == RECORD_MAGIC) {
+            Record record = Record.read(segment.buffer, position);
+            apply(record.type, record.userId, record.templateId,
+                    new Location(segment, position, record.vectorOffset, record.count, record.dims, record.end - position));
+            position = record.end;
+        }
+        segment.writePosition = position;
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("segment-%06d.emb", id));
+        Segment segment = mapSegment(path, id, true);
+        segment.buffer.putInt(0, SEGMENT_MAGIC);
+        segment.buffer.putInt(4, SEGMENT_VERSION);
+        segment.buffer.force(0, SEGMENT_HEADER);
+        segment.writePosition = SEGMENT_HEADER;
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private Segment mapSegment(Path path, int id, boolean create) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = create ? segmentSize : channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (!create && (size < SEGMENT_HEADER || buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION)) {
+                throw new IOException("Not an embedding segment: " + path);
+            }
+            return new Segment(id, path, buffer);
+        }
+    }
+
+    private double bytes(boolean live) {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (Segment segment : segments.values()) {
+                long used = segment.writePosition - SEGMENT_HEADER;
+                total += live ? used - segment.deadBytes : segment.deadBytes;
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private long deadBytes;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        private double deadRatio() {
+            int used = writePosition - SEGMENT_HEADER;
+            return used <= 0 ? 0 : (double) deadBytes / used;
+        }
+    }
+
+    private record Location(Segment segment, int recordOffset, int vectorOffset, int count, int dims, int size) {
+    }
+
+    private record Record(byte type, long userId, String templateId, int count, int dims, int vectorOffset, int end) {
+
+        // magic + type + userId + templateId length + count + dims
+        private static int size(int templateIdBytes, int count, int dims) {
+            return Integer.BYTES + 1 + Long.BYTES + 1 + templateIdBytes + 2 * Integer.BYTES + count * dims * Float.BYTES;
+        }
+
+        private static Record read(MappedByteBuffer buffer, int offset) {
+            int position = offset + Integer.BYTES;
+            byte type = buffer.get(position);
+            long userId = buffer.getLong(position + 1);
+            byte[] id = new byte[buffer.get(position + 9) & 0xFF];
+            buffer.get(position + 10, id);
+            position += 10 + id.length;
+            int count = buffer.getInt(position);
+            int dims = buffer.getInt(position + 4);
+            int vectorOffset = position + 8;
+            return new Record(type, userId, new String(id, StandardCharsets.UTF_8), count, dims, vectorOffset,
+                    vectorOffset + count * dims * Float.BYTES);
+        }
+
+        private float[][] embeddings(MappedByteBuffer buffer) {
+            float[][] embeddings = new float[count][dims];
+            FloatBuffer floats = buffer.slice(vectorOffset, count * dims * Float.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+            for (int i = 0; i < count; i++) {
+                floats.get(i * dims, embeddings[i]);
+            }
+            return embeddings;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.fijalkoa.biosso.biometric;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.StreamingHttpOutputMessage;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Request factory decorator feeding BiometricHttpMetrics
+ *
+ * Unlike a ClientHttpRequestInterceptor it does not buffer the request body - streamed
+ * multipart uploads stay streamed, bytes are counted as they are written and read.
+ */
+class MeteredClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final ClientHttpRequestFactory delegate;
+    private final BiometricHttpMetrics metrics;
+
+    MeteredClientHttpRequestFactory(ClientHttpRequestFactory delegate, BiometricHttpMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return new MeteredRequest(delegate.createRequest(uri, httpMethod));
+    }
+
+    private final class MeteredRequest implements ClientHttpRequest, StreamingHttpOutputMessage {
+
+        private final ClientHttpRequest request;
+        private BiometricHttpMetrics.Exchange exchange;
+        private Body pendingBody;
+
+        private MeteredRequest(ClientHttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return request.getMethod();
+        }
+
+        @Override
+        public URI getURI() {
+            return request.getURI();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return request.getAttributes();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return request.getHeaders();
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return new CountingOutputStream(request.getBody(), exchange());
+        }
+
+        @Override
+        public void setBody(Body body) {
+            BiometricHttpMetrics.Exchange current = exchange();
+            Body counted = new Body() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    body.writeTo(new CountingOutputStream(outputStream, current));
+                }
+
+                @Override
+                public boolean repeatable() {
+                    return body.repeatable();
+                }
+            };
+            if (request instanceof StreamingHttpOutputMessage streaming) {
+                streaming.setBody(counted);
+            } else {
+                pendingBody = counted;
+            }
+        }
+
+        @Override
+        public ClientHttpResponse execute() throws IOException {
+            BiometricHttpMetrics.Exchange current = exchange();
+            try {
+                if (pendingBody != null) {
+                    pendingBody.writeTo(request.getBody());
+                }
+                ClientHttpResponse response = request.execute();
+                current.completed(response.getStatusCode());
+                return new MeteredResponse(response, current);
+            } catch (IOException | RuntimeException e) {
+                current.failed(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Started on first use - the clock runs from when the body starts to be written
+         */
+        private BiometricHttpMetrics.Exchange exchange() {
+            if (exchange == null) {
+                exchange = metrics.start(BiometricHttpMetrics.operation(request.getURI()),
+                        BiometricHttpMetrics.Transport.BLOCKING);
+            }
+            return exchange;
+        }
+    }
+
+    private static final class MeteredResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final BiometricHttpMetrics.Exchange exchange;
+
+        private MeteredResponse(ClientHttpResponse response, BiometricHttpMetrics.Exchange exchange) {
+            this.response = response;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return new FilterInputStream(response.getBody()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b >= 0) {
+                        exchange.received(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        exchange.received(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            exchange.responseDone();
+            response.close();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private final BiometricHttpMetrics.Exchange exchange;
+
+        private CountingOutputStream(OutputStream out, BiometricHttpMetrics.Exchange exchange) {
+            super(out);
+            this.exchange = exchange;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            exchange.sent(1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            exchange.sent(length);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.fijalkoa.biosso.biometric;
+
+import org.springframework.http.ContentDisposition;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming multipart/form-data parser that validates image parts while they arrive
+ *
+ * - Counts every byte read against the endpoint budget (also for chunked uploads without Content-Length)
+ * - File parts: magic bytes checked from the first byte, dimensions as soon as the image header
+ *   is complete (ImageHeader), size against max-image-size
+ * - The first violation throws ImageUploadRejectedException, the rest of the body is never read
+ *
+ * Image parts up to memory-threshold stay in memory, larger ones are spooled to a temp file
+ * (cleanup() deletes them). One instance per request.
+ */
+final class MultipartUploadParser {
+
+    record Limits(long budget, long maxImageBytes, int headerLimit, int minDimension, int maxDimension,
+                  long maxPixels, int memoryThreshold) {
+    }
+
+    record Result(MultiValueMap<String, MultipartFile> files,
+                  Map<String, String[]> parameters, Map<String, String> contentTypes) {
+    }
+
+    private static final int BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_HEADER_BYTES = 8 * 1024;
+    private static final int MAX_FIELD_BYTES = 64 * 1024;
+    private static final byte[] CRLF_CRLF = {'\r', '\n', '\r', '\n'};
+
+    private final Limits limits;
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private final List<Path> tempFiles = new ArrayList<>();
+    private final List<OutputStream> spools = new ArrayList<>();
+    private int start;
+    private int end;
+    private long bytesRead;
+
+    MultipartUploadParser(InputStream in, Limits limits) {
+        this.in = in;
+        this.limits = limits;
+    }
+
+    long bytesRead() {
+        return bytesRead;
+    }
+
+    void cleanup() {
+        for (OutputStream spool : spools) {
+            try {
+                spool.close();
+            } catch (IOException e) {
+                // already closed or broken, the file is deleted below
+            }
+        }
+        for (Path file : tempFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    Result parse(String boundary) throws IOException {
+        byte[] first = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+
+        MultiValueMap<String, MultipartFile> files = new LinkedMultiValueMap<>();
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        Map<String, String> contentTypes = new HashMap<>();
+
+        readUntil(first, Sink.DISCARD);
+        while (true) {
+            require(2, "Multipart body ends after a boundary");
+            if (buffer[start] == '-' && buffer[start + 1] == '-') {
+                break;
+            }
+            if (buffer[start] != '\r' || buffer[start + 1] != '\n') {
+                throw malformed("Malformed multipart boundary");
+            }
+            start += 2;
+
+            LimitedBuffer headerBytes = new LimitedBuffer(MAX_HEADER_BYTES, "Part headers");
+            readUntil(CRLF_CRLF, headerBytes);
+            Map<String, String> headers = headers(headerBytes.toString(StandardCharsets.UTF_8));
+            String disposition = headers.get("content-disposition");
+            if (disposition == null) {
+                throw malformed("Part without Content-Disposition");
+            }
+            ContentDisposition contentDisposition = ContentDisposition.parse(disposition);
+            String name = contentDisposition.getName();
+            String contentType = headers.get("content-type");
+
+            if (contentDisposition.getFilename() != null) {
+                ImageSink image = new ImageSink(name);
+                readUntil(delimiter, image);
+                files.add(name, image.finish(contentDisposition.getFilename(), contentType));
+            } else {
+                LimitedBuffer value = new LimitedBuffer(MAX_FIELD_BYTES, "Field " + name);
+                readUntil(delimiter, value);
+                fields.computeIfAbsent(name, key -> new ArrayList<>()).add(value.toString(StandardCharsets.UTF_8));
+            }
+            if (contentType != null) {
+                contentTypes.put(name, contentType);
+            }
+        }
+
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        fields.forEach((name, values) -> parameters.put(name, values.toArray(String[]::new)));
+        return new Result(files, parameters, contentTypes);
+    }
+
+    /**
+     * Passes everything before the delimiter to the sink and consumes the delimiter
+     * The last delimiter.length - 1 bytes are held back, they may be the start of the delimiter
+     */
+    private void readUntil(byte[] delimiter, Sink sink) throws IOException {
+        while (true) {
+            int index = indexOf(delimiter);
+            if (index >= 0) {
+                sink.write(buffer, start, index - start);
+                start = index + delimiter.length;
+                return;
+            }
+            int safe = end - (delimiter.length - 1);
+            if (safe > start) {
+                sink.write(buffer, start, safe - start);
+                start = safe;
+            }
+            if (!fill()) {
+                throw malformed("Multipart body ends before the closing boundary");
+            }
+        }
+    }
+
+    private void require(int bytes, String message) throws IOException {
+        while (end - start < bytes) {
+            if (!fill()) {
+                throw malformed(message);
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) {
+            return false;
+        }
+        end += read;
+        bytesRead += read;
+        if (bytesRead > limits.budget()) {
+            throw new ImageUploadRejectedException(ImageUploadRejectedException.Reason.BUDGET,
+                    "Upload exceeds the " + limits.budget() + " byte budget of this endpoint");
+        }
+        return true;
+    }
+
+    private int indexOf(byte[] pattern) {
+        outer:
+        for (int i = start; i <= end - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static Map<String, String> headers(String block) {
+        Map<String, String> headers = new HashMap<>();
+        for (String line : block.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static ImageUploadRejectedException malformed(String message) {
+        return new ImageUploadRejectedException(ImageUploadRejectedException.Reason.MALFORMED, message);
+    }
+
+    private interface Sink {
+
+        Sink DISCARD = (data, offset, length) -> {
+        };
+
+        void write(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private static final class LimitedBuffer extends ByteArrayOutputStream implements Sink {
+
+        private final int limit;
+        private final String what;
+
+        private LimitedBuffer(int limit, String what) {
+            this.limit = limit;
+            this.what = what;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            if (count + length > limit) {
+                throw malformed(what + " longer than " + limit + " bytes");
+            }
+            super.write(data, offset, length);
+        }
+    }
+
+    /**
+     * Sniffs the image header from the first bytes, then keeps the content (memory or temp file)
+     */
+    private final class ImageSink implements Sink {
+
+        private final String name;
+        private final byte[] head = new byte[limits.headerLimit()];
+        private int headLength;
+        private ImageHeader header;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private OutputStream spool;
+        private Path file;
+        private long size;
+
+        private ImageSink(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            size += length;
+            if (size > limits.maxImageBytes()) {
+                throw new ImageUploadRejectedException(ImageUploadRejectedException.Reason.BUDGET,
+                        "Image " + name + " exceeds " + limits.maxImageBytes() + " bytes");
+            }
+
+            if (header == null) {
+                int copied = Math.min(length, head.length - headLength);
+                System.arraycopy(data, offset, head, headLength, copied);
+                headLength += copied;
+                header = ImageHeader.sniff(head, headLength, false);
+                if (header != null) {
+                    checkDimensions();
+                } else if (headLength == head.length) {
+                    throw malformed("No image header in the first " + head.length + " bytes of " + name);
+                }
+            }
+
+            if (spool == null && memory.size() + length > limits.memoryThreshold()) {
+                file = Files.createTempFile("biometric-upload-", ".part");
+                tempFiles.add(file);
+                spool = Files.newOutputStream(file);
+                spools.add(spool);
+                memory.writeTo(spool);
+                memory = null;
+            }
+            if (spool != null) {
+                spool.write(data, offset, length);
+            } else {
+                memory.write(data, offset, length);
+            }
+        }
+
+        private UploadedImage finish(String filename, String contentType) throws IOException {
+            // An empty part is left to the services ("Missing ... image")
+            if (header == null && size > 0) {
+                header = ImageHeader.sniff(head, headLength, true);
+                checkDimensions();
+            }
+            if (spool != null) {
+                spool.close();
+                return new UploadedImage(name, filename, contentType, size, null, file);
+            }
+            return new UploadedImage(name, filename, contentType, size, memory.toByteArray(), null);
+        }
+
+        private void checkDimensions() {
+            if (header.width() < limits.minDimension() || header.height() < limits.minDimension()
+                    || header.width() > limits.maxDimension() || header.height() > limits.maxDimension()
+                    || header.pixels() > limits.maxPixels()) {
+                throw new ImageUploadRejectedException(ImageUploadRejectedException.Reason.DIMENSIONS,
+                        "Image " + name + " is " + header.width() + "x" + header.height() + " px, allowed "
+                                + limits.minDimension() + "-" + limits.maxDimension() + " px per side, at most "
+                                + limits.maxPixels() + " px");
+            }
+        }
+    }
+}
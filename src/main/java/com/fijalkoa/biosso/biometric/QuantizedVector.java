@@ -0,0 +1,214 @@
+package com.fijalkoa.biosso.biometric;
+
+/**
+ * Unit-length embedding stored at reduced precision (scalar quantization)
+ *
+ * - NONE: float32, 4 bytes per dimension
+ * - INT8: one byte per dimension + per-vector scale (max |x| / 127), ~4x smaller
+ * - FLOAT16: IEEE half precision, 2 bytes per dimension
+ *
+ * Scores against a float query are approximate (see QuantizedVectorTest for the drift),
+ * callers that make decisions re-rank the top candidates on full-precision vectors.
+ */
+public sealed interface QuantizedVector permits QuantizedVector.Float32, QuantizedVector.Int8, QuantizedVector.Float16 {
+
+    enum Quantization {
+        NONE, INT8, FLOAT16
+    }
+
+    static QuantizedVector encode(float[] unitVector, Quantization quantization) {
+        return switch (quantization) {
+            case NONE -> new Float32(unitVector.clone());
+            case INT8 -> Int8.encode(unitVector);
+            case FLOAT16 -> Float16.encode(unitVector);
+        };
+    }
+
+    Quantization quantization();
+
+    int dimensions();
+
+    float get(int i);
+
+    /**
+     * Approximate dot product with a full-precision query
+     */
+    float dot(float[] query);
+
+    default float dot(QuantizedVector other) {
+        float sum = 0f;
+        for (int i = 0; i < dimensions(); i++) {
+            sum += get(i) * other.get(i);
+        }
+        return sum;
+    }
+
+    default float[] decode() {
+        float[] values = new float[dimensions()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = get(i);
+        }
+        return values;
+    }
+
+    final class Float32 implements QuantizedVector {
+
+        private final float[] values;
+
+        Float32(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Quantization quantization() {
+            return Quantization.NONE;
+        }
+
+        @Override
+        public int dimensions() {
+            return values.length;
+        }
+
+        @Override
+        public float get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public float dot(float[] query) {
+            return VectorSimilarity.dot(values, query);
+        }
+
+        @Override
+        public float dot(QuantizedVector other) {
+            return other instanceof Float32 f ? VectorSimilarity.dot(values, f.values) : other.dot(values);
+        }
+
+        @Override
+        public float[] decode() {
+            return values.clone();
+        }
+    }
+
+    final class Int8 implements QuantizedVector {
+
+        private final byte[] values;
+        private final float scale;
+
+        Int8(byte[] values, float scale) {
+            this.values = values;
+            this.scale = scale;
+        }
+
+        static Int8 encode(float[] vector) {
+            float maxAbs = 0f;
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            float scale = maxAbs == 0f ? 1f : maxAbs / 127f;
+            byte[] values = new byte[vector.length];
+            for (int i = 0; i < vector.length; i++) {
+                values[i] = (byte) Math.round(vector[i] / scale);
+            }
+            return new Int8(values, scale);
+        }
+
+        float scale() {
+            return scale;
+        }
+
+        byte[] values() {
+            return values;
+        }
+
+        @Override
+        public Quantization quantization() {
+            return Quantization.INT8;
+        }
+
+        @Override
+        public int dimensions() {
+            return values.length;
+        }
+
+        @Override
+        public float get(int i) {
+            return values[i] * scale;
+        }
+
+        @Override
+        public float dot(float[] query) {
+            if (query.length != values.length) {
+                throw new IllegalArgumentException("Embedding dimensions differ: " + values.length + " vs " + query.length);
+            }
+            float sum = 0f;
+            for (int i = 0; i < values.length; i++) {
+                sum += values[i] * query[i];
+            }
+            return sum * scale;
+        }
+
+        /**
+         * int8 x int8 stays in integer arithmetic, one multiply by both scales at the end
+         */
+        @Override
+        public float dot(QuantizedVector other) {
+            if (!(other instanceof Int8 o)) {
+                return QuantizedVector.super.dot(other);
+            }
+            int sum = 0;
+            for (int i = 0; i < values.length; i++) {
+                sum += values[i] * o.values[i];
+            }
+            return sum * scale * o.scale;
+        }
+    }
+
+    final class Float16 implements QuantizedVector {
+
+        private final short[] values;
+
+        Float16(short[] values) {
+            this.values = values;
+        }
+
+        static Float16 encode(float[] vector) {
+            short[] values = new short[vector.length];
+            for (int i = 0; i < vector.length; i++) {
+                values[i] = Float.floatToFloat16(vector[i]);
+            }
+            return new Float16(values);
+        }
+
+        short[] values() {
+            return values;
+        }
+
+        @Override
+        public Quantization quantization() {
+            return Quantization.FLOAT16;
+        }
+
+        @Override
+        public int dimensions() {
+            return values.length;
+        }
+
+        @Override
+        public float get(int i) {
+            return Float.float16ToFloat(values[i]);
+        }
+
+        @Override
+        public float dot(float[] query) {
+            if (query.length != values.length) {
+                throw new IllegalArgumentException("Embedding dimensions differ: " + values.length + " vs " + query.length);
+            }
+            float sum = 0f;
+            for (int i = 0; i < values.length; i++) {
+                sum += Float.float16ToFloat(values[i]) * query[i];
+            }
+            return sum;
+        }
+    }
+}
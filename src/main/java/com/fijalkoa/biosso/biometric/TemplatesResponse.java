@@ -0,0 +1,13 @@
+package com.fijalkoa.biosso.biometric;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Python /api/biometrics/templates/{userId} response - one embedding per enrolled angle
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record TemplatesResponse(
+        @JsonProperty("template_id") String templateId,
+        @JsonProperty("embeddings") float[][] embeddings) {
+}
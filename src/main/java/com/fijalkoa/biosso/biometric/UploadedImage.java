@@ -0,0 +1,97 @@
+package com.fijalkoa.biosso.biometric;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Image part received by MultipartUploadParser - small ones in memory, larger ones in a temp file
+ * The temp file lives until the request (including async processing) completes
+ * Also wraps images that did not arrive as multipart in this request - WebSocket frames (inMemory)
+ * and stored enrollment session parts (onDisk)
+ */
+public final class UploadedImage implements MultipartFile {
+
+    private final String name;
+    private final String originalFilename;
+    private final String contentType;
+    private final long size;
+    private final byte[] content;
+    private final Path file;
+
+    UploadedImage(String name, String originalFilename, String contentType, long size, byte[] content, Path file) {
+        this.name = name;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.size = size;
+        this.content = content;
+        this.file = file;
+    }
+
+    public static UploadedImage inMemory(String name, String originalFilename, String contentType, byte[] content) {
+        return new UploadedImage(name, originalFilename, contentType, content.length, content, null);
+    }
+
+    /**
+     * Image already stored on disk (enrollment sessions) - read lazily, the file is not deleted
+     */
+    public static UploadedImage onDisk(String name, String originalFilename, String contentType, Path file)
+            throws IOException {
+        return new UploadedImage(name, originalFilename, contentType, Files.size(file), null, file);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return content != null ? content.clone() : Files.readAllBytes(file);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return content != null ? new ByteArrayInputStream(content) : Files.newInputStream(file);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        transferTo(dest.toPath());
+    }
+
+    @Override
+    public void transferTo(Path dest) throws IOException {
+        if (content != null) {
+            Files.write(dest, content);
+        } else {
+            Files.copy(file, dest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.fijalkoa.biosso.biometric;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Similarity of face embeddings in the Java tier
+ *
+ * 1:1 verification against an enrolled template is a cosine similarity - with
+ * templates stored unit-length (see EmbeddingTemplateCache) it is a single dot product.
+ *
+ * Uses SIMD kernels (VectorKernels, jdk.incubator.vector) when the JVM was started with
+ * --add-modules jdk.incubator.vector, plain loops otherwise. The *Scalar variants are
+ * public for benchmarks and tests.
+ */
+@Slf4j
+public final class VectorSimilarity {
+
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static {
+        log.info("🧮 Embedding similarity kernels: {}", VECTOR_API ? "jdk.incubator.vector (SIMD)" : "scalar");
+    }
+
+    private VectorSimilarity() {
+    }
+
+    public static boolean isVectorApiAvailable() {
+        return VECTOR_API;
+    }
+
+    public static float dot(float[] a, float[] b) {
+        checkDimensions(a, b);
+        return VECTOR_API ? VectorKernels.dot(a, b) : dotScalar(a, b);
+    }
+
+    public static float cosine(float[] a, float[] b) {
+        checkDimensions(a, b);
+        return VECTOR_API ? VectorKernels.cosine(a, b) : cosineScalar(a, b);
+    }
+
+    /**
+     * Best match of a unit-length probe against unit-length templates
+     */
+    public static float maxSimilarity(float[] unitProbe, float[][] unitTemplates) {
+        float best = -1f;
+        for (float[] template : unitTemplates) {
+            best = Math.max(best, dot(unitProbe, template));
+        }
+        return best;
+    }
+
+    public static float dotScalar(float[] a, float[] b) {
+        checkDimensions(a, b);
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    public static float cosineScalar(float[] a, float[] b) {
+        checkDimensions(a, b);
+        float dot = 0f;
+        float normA = 0f;
+        float normB = 0f;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return cosineFromParts(dot, normA, normB);
+    }
+
+    /**
+     * Copy scaled to unit length (zero vector stays zero)
+     */
+    public static float[] normalize(float[] v) {
+        float norm = (float) Math.sqrt(VECTOR_API ? VectorKernels.dot(v, v) : dotScalar(v, v));
+        float[] unit = new float[v.length];
+        if (norm == 0f) {
+            return unit;
+        }
+        for (int i = 0; i < v.length; i++) {
+            unit[i] = v[i] / norm;
+        }
+        return unit;
+    }
+
+    static float cosineFromParts(float dot, float normA, float normB) {
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+
+    private static void checkDimensions(float[] a, float[] b) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("Embedding dimensions differ: " + a.length + " vs " + b.length);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache of verification results, keyed by
+ * (user_id, SHA-256 of the image bytes, threshold, check_liveness)
+ *
+ * Browser retries, double clicks and gateway replays of the same request inside the TTL
+ * get the previous result instead of another face-recognition call.
+ *
+ * - Only successful (2xx) results are cached - errors and rejections are retried for real
+ * - Bounded by max-entries (oldest dropped first) and ttl
+ * - The image is hashed as a stream, it is never copied onto the heap
+ * - A hit is an exact-image replay (a camera never produces the same bytes twice) - it is
+ *   logged and counted, and marked on the response with the X-Biometric-Replay header
+ *
+ * Metrics: biometric.verify.cache{result=hit|miss}, biometric.verify.cache.size
+ */
+@Slf4j
+@Component
+public class VerificationResultCache {
+
+    public static final String REPLAY_HEADER = "X-Biometric-Replay";
+
+    private static final int DIGEST_BUFFER = 16 * 1024;
+
+    public record Key(String userId, String imageSha256, double threshold, boolean checkLiveness) {
+    }
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public VerificationResultCache(
+            @Value("${app.biometric.verify-cache.enabled:true}") boolean enabled,
+            @Value("${app.biometric.verify-cache.ttl:10s}") Duration ttl,
+            @Value("${app.biometric.verify-cache.max-entries:10000}") int maxEntries,
+            MeterRegistry meterRegistry) {
+        this(enabled, ttl, maxEntries, System::nanoTime, meterRegistry);
+    }
+
+    public VerificationResultCache(boolean enabled, Duration ttl, int maxEntries, LongSupplier clock,
+                                   MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > VerificationResultCache.this.maxEntries;
+            }
+        };
+
+        this.hits = Counter.builder("biometric.verify.cache")
+                .tag("result", "hit")
+                .description("Verification requests answered from the result cache (exact-image replays)")
+                .register(meterRegistry);
+        this.misses = Counter.builder("biometric.verify.cache")
+                .tag("result", "miss")
+                .description("Verification requests with no live cached result (new image or expired entry)")
+                .register(meterRegistry);
+        Gauge.builder("biometric.verify.cache.size", this, VerificationResultCache::size)
+                .description("Cached verification results")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Key key(String userId, MultipartFile image, double threshold, boolean checkLiveness) {
+        return new Key(userId, sha256(image), threshold, checkLiveness);
+    }
+
+    /**
+     * Cached result for the key (marked as a replay), or null
+     */
+    public ResponseEntity<VerifyResponse> get(Key key) {
+        long now = clock.getAsLong();
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null && now - entry.storedAt > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                entry.replays++;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        log.warn("🔁 Exact image replay for user {} (replay #{} within {} ms) - answered from cache",
+                key.userId(), entry.replays, Duration.ofNanos(ttlNanos).toMillis());
+        return ResponseEntity.status(entry.response.getStatusCode())
+                .header(REPLAY_HEADER, "true")
+                .body(entry.response.getBody());
+    }
+
+    public void put(Key key, ResponseEntity<VerifyResponse> response) {
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            return;
+        }
+        // Headers of the original exchange are not replayed, the body is immutable and shared
+        ResponseEntity<VerifyResponse> stored = ResponseEntity.status(response.getStatusCode()).body(response.getBody());
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            entries.remove(key);
+            entries.put(key, new Entry(stored, now));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String sha256(MultipartFile image) {
+        try (InputStream in = image.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[DIGEST_BUFFER];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read image for digest", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+        private final ResponseEntity<VerifyResponse> response;
+        private final long storedAt;
+        private int replays;
+
+        private Entry(ResponseEntity<VerifyResponse> response, long storedAt) {
+            this.response = response;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.fijalkoa.biosso.biometric;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of concurrent identical verification requests
+ *
+ * While a call for a fingerprint (VerificationResultCache.Key) is in flight, callers with the
+ * same fingerprint wait for it and share its result instead of calling Python themselves.
+ * Unlike VerificationResultCache nothing outlives the call - the flight is gone as soon as
+ * it completes.
+ *
+ * - The first caller (leader) runs the call on its own thread, in its own dispatch class
+ * - Followers share the (immutable) response body, marked with the X-Biometric-Coalesced header
+ * - Errors reach every waiter: followers rethrow the leader's exception (rejections by
+ *   BiometricCallGuard stay BiometricServiceUnavailableException -> 503/429)
+ * - Cancellation is per waiter: an interrupted follower just stops waiting. A leader
+ *   interrupted before its call produced a result abandons the flight - its followers do not
+ *   inherit the cancellation, they start over and one of them becomes the new leader
+ *
+ * Metrics: biometric.verify.coalesced, biometric.verify.flights (calls currently in flight)
+ */
+@Slf4j
+@Component
+public class VerificationSingleFlight {
+
+    public static final String COALESCED_HEADER = "X-Biometric-Coalesced";
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<VerificationResultCache.Key, Flight> flights = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public VerificationSingleFlight(
+            @Value("${app.biometric.single-flight.enabled:true}") boolean enabled,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.coalesced = Counter.builder("biometric.verify.coalesced")
+                .description("Verification requests that shared another caller's in-flight Python call")
+                .register(meterRegistry);
+        Gauge.builder("biometric.verify.flights", flights, Map::size)
+                .description("Distinct verification calls in flight")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Result of the in-flight call for the key, or of call when there is none
+     * Runtime exceptions of the call are rethrown to every caller that waited for it
+     */
+    public ResponseEntity<VerifyResponse> execute(VerificationResultCache.Key key,
+                                                       Supplier<ResponseEntity<VerifyResponse>> call) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(key, flight, call);
+            }
+            ResponseEntity<VerifyResponse> shared = follow(key, existing);
+            if (shared != null) {
+                return shared;
+            }
+            // Leader gave up - retry, someone becomes the new leader
+        }
+    }
+
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private ResponseEntity<VerifyResponse> lead(VerificationResultCache.Key key, Flight flight,
+                                                     Supplier<ResponseEntity<VerifyResponse>> call) {
+        try {
+            ResponseEntity<VerifyResponse> response = call.get();
+            flights.remove(key, flight);
+            flight.result.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            if (Thread.currentThread().isInterrupted()) {
+                // The leader's own request was cancelled - that says nothing about the followers' requests
+                flight.result.cancel(false);
+            } else {
+                flight.result.completeExceptionally(e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Shared response, or null when the leader abandoned the flight
+     */
+    private ResponseEntity<VerifyResponse> follow(VerificationResultCache.Key key, Flight flight) {
+        int waiting = flight.followers.incrementAndGet();
+        coalesced.increment();
+        log.debug("🔗 Verification for user {} joined an in-flight call ({} waiting)", key.userId(), waiting);
+        try {
+            ResponseEntity<VerifyResponse> response = flight.result.get();
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .header(COALESCED_HEADER, "true")
+                    .body(response.getBody());
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Verification cancelled while waiting for an in-flight call");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            flight.followers.decrementAndGet();
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<ResponseEntity<VerifyResponse>> result = new CompletableFuture<>();
+        private final AtomicInteger followers = new AtomicInteger();
+    }
+}
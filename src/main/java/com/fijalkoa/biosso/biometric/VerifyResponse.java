@@ -0,0 +1,52 @@
+package com.fijalkoa.biosso.biometric;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Python /api/biometrics/verify response
+ *
+ * Bound field by field from the JSON stream - no intermediate Map, no Number casts.
+ * Immutable, so cached and coalesced results are shared instead of copied.
+ * Fields the login path does not read (success, message, error, ...) are kept in
+ * extra and passed through to the public /verify endpoints unchanged.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record VerifyResponse(
+        @JsonProperty("is_matched") boolean matched,
+        @JsonProperty("confidence") double confidence,
+        @JsonProperty("liveness_passed") Boolean livenessPassed,
+        @JsonProperty("verification_time_ms") Double verificationTimeMs,
+        @JsonAnySetter Map<String, Object> extra) {
+
+    public VerifyResponse {
+        // Python may send JSON nulls (error: null), so no Map.copyOf
+        extra = extra == null || extra.isEmpty() ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(extra));
+    }
+
+    public VerifyResponse(boolean matched, double confidence, Boolean livenessPassed, Double verificationTimeMs) {
+        this(matched, confidence, livenessPassed, verificationTimeMs, null);
+    }
+
+    /**
+     * JSON shape of the public /verify endpoints (same field names as Python)
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>(8 + extra.size());
+        map.put("is_matched", matched);
+        map.put("confidence", confidence);
+        if (livenessPassed != null) {
+            map.put("liveness_passed", livenessPassed);
+        }
+        if (verificationTimeMs != null) {
+            map.put("verification_time_ms", verificationTimeMs);
+        }
+        extra.forEach(map::putIfAbsent);
+        return map;
+    }
+}
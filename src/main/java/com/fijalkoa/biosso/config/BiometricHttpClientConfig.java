@@ -0,0 +1,97 @@
+package com.fijalkoa.biosso.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Pooled HTTP client for the Python biometric microservice
+ *
+ * Active when app.biometric.http-client=pooled (default).
+ * Replaces HttpURLConnection with Apache HttpClient 5:
+ * - HTTP/1.1 keep-alive, connections reused across verify/register calls
+ * - Configurable total and per-route connection limits
+ * - Background eviction of idle and expired connections
+ * - Pool state published as Micrometer gauges (biometric.http.pool.*)
+ *
+ * Set app.biometric.http-client=simple to fall back to SimpleClientHttpRequestFactory.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "app.biometric.http-client", havingValue = "pooled", matchIfMissing = true)
+public class BiometricHttpClientConfig {
+
+    @Value("${app.biometric.pool.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${app.biometric.pool.max-connections-per-route:50}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${app.biometric.pool.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    @Value("${app.biometric.pool.time-to-live:5m}")
+    private Duration timeToLive;
+
+    @Value("${app.biometric.pool.validate-after-inactivity:2s}")
+    private Duration validateAfterInactivity;
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager biometricConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)  // Keep a hot subset, let the rest go idle and get evicted
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofSeconds(30))
+                        .setSocketTimeout(Timeout.ofSeconds(120))  // Longer timeout for image processing
+                        .setValidateAfterInactivity(TimeValue.ofMilliseconds(validateAfterInactivity.toMillis()))
+                        .setTimeToLive(TimeValue.ofMilliseconds(timeToLive.toMillis()))
+                        .build())
+                .build();
+
+        Gauge.builder("biometric.http.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+                .description("Connections to the biometric microservice currently in use")
+                .register(meterRegistry);
+        Gauge.builder("biometric.http.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+                .description("Idle keep-alive connections ready for reuse")
+                .register(meterRegistry);
+        Gauge.builder("biometric.http.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+                .description("Requests waiting for a connection from the pool")
+                .register(meterRegistry);
+        Gauge.builder("biometric.http.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+                .description("Maximum number of pooled connections")
+                .register(meterRegistry);
+
+        log.info("🔌 Biometric HTTP pool: max={}, perRoute={}, idleEviction={}, ttl={}",
+                maxConnections, maxConnectionsPerRoute, idleEviction, timeToLive);
+
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient biometricHttpClient(PoolingHttpClientConnectionManager biometricConnectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(biometricConnectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEviction.toMillis()))
+                .disableAutomaticRetries()  // Registration is not idempotent
+                .build();
+    }
+}
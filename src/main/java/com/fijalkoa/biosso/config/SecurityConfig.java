@@ -1,22 +1,29 @@
 package com.fijalkoa.biosso.config;
 
 import com.fijalkoa.biosso.security.BioSSOAuthenticationProvider;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * Security Configuration for BioSSO
@@ -80,11 +87,16 @@ public class SecurityConfig {
      * - AUTHENTICATED: Users fully authenticated (password + biometric if required)
      */
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(
+            HttpSecurity http,
+            @Value("${app.metrics.scrape-addresses:127.0.0.1/32,::1/128}") List<String> scrapeAddresses) throws Exception {
         http
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
+                        // Async result dispatches - the original request was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR)
+                        .permitAll()
                         // Public endpoints - anyone can access
                         .requestMatchers(
                                 "/login",
@@ -95,18 +107,32 @@ public class SecurityConfig {
                                 "/.well-known/oauth-authorization-server",
                                 "/oauth2/**",
                                 "/api/biometric/register",    // Public registration
+                                "/api/biometric/register-async",
                                 "/api/biometric/health",      // Public health check
                                 "/api/biometric/metrics",     // Public metrics
                                 "/error",
                                 "/actuator/health"
                         )
                         .permitAll()
+                        // Resumable registration - sessions are stored server-side and bound to the logged-in user
+                        .requestMatchers("/api/biometric/enrollment-sessions", "/api/biometric/enrollment-sessions/**")
+                        .authenticated()
+                        // Prometheus scrape - every meter (user flows, replicas, pools), scraper addresses only
+                        .requestMatchers("/actuator/prometheus")
+                        .access(fromAddresses(scrapeAddresses))
                         // Biometric verification endpoint - requires BIOMETRIC_VERIFICATION_REQUIRED authority
-                        .requestMatchers("/api/biometric/verify-for-auth")
+                        .requestMatchers("/api/biometric/verify-for-auth", "/api/biometric/verify-for-auth-async",
+                                "/ws/biometric/login")
                         .hasAuthority("BIOMETRIC_VERIFICATION_REQUIRED")
                         // Standalone verify endpoint - public (can be used without auth)
-                        .requestMatchers("/api/biometric/verify")
+                        .requestMatchers("/api/biometric/verify", "/api/biometric/verify-async", "/api/biometric/verify-batch")
+                        .permitAll()
+                        // Passwordless login step - answers with a session upgrade or 401, never with candidates
+                        .requestMatchers("/api/biometric/identify-for-auth")
                         .permitAll()
+                        // Raw 1:N search returns enrolled user ids and scores - administrators only
+                        .requestMatchers("/api/biometric/identify")
+                        .hasAuthority("BIOMETRIC_ADMIN")
                         // Everything else requires authentication
                         .anyRequest().authenticated()
                 )
@@ -133,4 +159,17 @@ public class SecurityConfig {
 
         return http.build();
     }
+
+    /**
+     * Allows requests whose remote address is in one of the given addresses / CIDR ranges
+     */
+    private static AuthorizationManager<RequestAuthorizationContext> fromAddresses(List<String> addresses) {
+        List<IpAddressMatcher> matchers = addresses.stream()
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .map(IpAddressMatcher::new)
+                .toList();
+        return (authentication, context) -> new AuthorizationDecision(
+                matchers.stream().anyMatch(matcher -> matcher.matches(context.getRequest())));
+    }
 }
@@ -1,54 +1,160 @@
 package com.fijalkoa.biosso.config;
 
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.BufferingClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
 
 /**
  * HTTP Client Configuration
  * 
  * Provides RestTemplate for synchronous REST calls to Python microservice
- * Provides WebClient for reactive operations (if needed in future)
+ * (backed by the pooled client from BiometricHttpClientConfig when enabled)
+ * Provides WebClient for non-blocking calls (ReactiveBiometricRestService)
+ * Both record their exchanges with Python in BiometricHttpMetrics
+ * Both decode Python JSON with the Boot ObjectMapper, which gets the Blackbird module
+ * (generated accessors instead of reflection when binding VerifyResponse and friends)
+ * 
+ * HTTP client (app.biometric.http-client):
+ * - pooled (default): Apache HttpClient 5, see BiometricHttpClientConfig
+ * - jdk: java.net.http.HttpClient (virtual-thread executor when enabled)
+ * - simple: HttpURLConnection; replaced by jdk when spring.threads.virtual.enabled=true
+ *   to avoid pinning carrier threads inside its synchronized sections
+ * 
+ * Request body modes (app.biometric.streaming-enabled):
+ * - true (default): multipart parts are streamed to Python in chunks of
+ *   app.biometric.stream-chunk-size bytes, heap use per request stays bounded
+ * - false: whole request is buffered before sending (legacy mode, for Python
+ *   servers that do not accept chunked transfer encoding)
  */
+@Slf4j
 @Configuration
 public class WebClientConfig {
 
+    @Value("${app.biometric.streaming-enabled:true}")
+    private boolean streamingEnabled;
+
+    @Value("${app.biometric.stream-chunk-size:65536}")
+    private int streamChunkSize;
+
+    @Value("${app.biometric.http-client:pooled}")
+    private String httpClientType;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
     /**
      * RestTemplate for biometric microservice communication
      * Supports multipart form data for image uploads
+     * Timeouts (30 s connect, 120 s read) live on the underlying client - the builder cannot set them
+     * through the metering wrapper
      */
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder builder) {
+    public RestTemplate restTemplate(RestTemplateBuilder builder, ObjectProvider<CloseableHttpClient> biometricHttpClient,
+                                     BiometricHttpMetrics httpMetrics) {
+        CloseableHttpClient pooledClient = biometricHttpClient.getIfAvailable();
         return builder
-                .requestFactory(this::clientHttpRequestFactory)
-                .setConnectTimeout(java.time.Duration.ofSeconds(30))
-                .setReadTimeout(java.time.Duration.ofSeconds(120))  // Longer timeout for image processing
+                .requestFactory(() -> httpMetrics.instrument(clientHttpRequestFactory(pooledClient)))
                 .build();
     }
 
-    private ClientHttpRequestFactory clientHttpRequestFactory() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(30000);  // 30 seconds
-        factory.setReadTimeout(120000);    // 2 minutes (for image processing)
-        factory.setBufferRequestBody(true);
+    private ClientHttpRequestFactory clientHttpRequestFactory(CloseableHttpClient pooledClient) {
+        ClientHttpRequestFactory factory;
+        if (pooledClient != null) {
+            log.info("🔌 Biometric proxy using pooled Apache HttpClient");
+            factory = new HttpComponentsClientHttpRequestFactory(pooledClient);
+        } else if ("jdk".equals(httpClientType) || virtualThreadsEnabled) {
+            if (!"jdk".equals(httpClientType)) {
+                // HttpURLConnection internals can pin a carrier thread for the whole 120 s read
+                log.warn("⚠️ Virtual threads enabled - using JDK HttpClient instead of HttpURLConnection");
+            }
+            log.info("🔌 Biometric proxy using JDK HttpClient (virtual threads: {})", virtualThreadsEnabled);
+            factory = jdkClientHttpRequestFactory();
+        } else {
+            log.info("🔌 Biometric proxy using HttpURLConnection (no connection pool)");
+            SimpleClientHttpRequestFactory simpleFactory = new SimpleClientHttpRequestFactory();
+            simpleFactory.setConnectTimeout(30000);  // 30 seconds
+            simpleFactory.setReadTimeout(120000);    // 2 minutes (for image processing)
+            simpleFactory.setChunkSize(streamChunkSize);
+            factory = simpleFactory;
+        }
+
+        if (streamingEnabled) {
+            log.info("📡 Biometric proxy in streaming mode (chunk size: {} bytes)", streamChunkSize);
+            return factory;
+        }
+
+        log.info("📦 Biometric proxy in buffered mode");
         return new BufferingClientHttpRequestFactory(factory);
     }
 
     /**
-     * WebClient for reactive operations (for future use)
+     * JDK HttpClient - lock-based internals, safe to block on from virtual threads
+     */
+    private ClientHttpRequestFactory jdkClientHttpRequestFactory() {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30));
+        if (virtualThreadsEnabled) {
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(builder.build());
+        factory.setReadTimeout(Duration.ofSeconds(120));  // 2 minutes (for image processing)
+        return factory;
+    }
+
+    /**
+     * Picked up by the Boot ObjectMapper (Jackson2ObjectMapperBuilder registers Module beans)
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    /**
+     * WebClient for non-blocking calls to the biometric microservice
+     * Used by ReactiveBiometricRestService (async controller endpoints)
      */
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(BiometricHttpMetrics httpMetrics, ObjectMapper objectMapper) {
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30000)  // 30 seconds
+                .responseTimeout(Duration.ofSeconds(120));           // 2 minutes (for image processing)
+
         return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(httpMetrics.webClientFilter())
                 // increase limit for large images
                 .exchangeStrategies(ExchangeStrategies.builder()
-                        .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(50 * 1024 * 1024))
+                        .codecs(configurer -> {
+                            configurer.defaultCodecs().maxInMemorySize(50 * 1024 * 1024);
+                            configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                            configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                        })
                         .build())
                 .build();
     }
@@ -0,0 +1,31 @@
+package com.fijalkoa.biosso.config;
+
+import com.fijalkoa.biosso.controller.BiometricFrameStreamHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
+
+/**
+ * WebSocket Configuration
+ *
+ * /ws/biometric/login - streamed biometric login (BiometricFrameStreamHandler)
+ * The HTTP session attributes (with the SecurityContext of the pending login) are copied
+ * into the WebSocket session, so a verified stream upgrades the same authentication as /verify-for-auth.
+ */
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final BiometricFrameStreamHandler frameStreamHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(frameStreamHandler, "/ws/biometric/login")
+                .addInterceptors(new HttpSessionHandshakeInterceptor())
+                .setAllowedOriginPatterns("http://localhost:*", "http://127.0.0.1:*");
+    }
+}
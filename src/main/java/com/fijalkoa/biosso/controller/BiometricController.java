@@ -1,14 +1,34 @@
 package com.fijalkoa.biosso.controller;
 
+import com.fijalkoa.biosso.biometric.BiometricHealthProber;
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.service.BiometricBatchVerificationService;
+import com.fijalkoa.biosso.service.BiometricEnrollmentSessionService;
 import com.fijalkoa.biosso.service.BiometricRestService;
 import com.fijalkoa.biosso.service.BiometricVerificationService;
+import com.fijalkoa.biosso.service.FaceIdentificationService;
+import com.fijalkoa.biosso.service.ReactiveBiometricRestService;
 import lombok.RequiredArgsConstructor;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,10 +41,18 @@ import java.util.Map;
  * 
  * Endpoints:
  * - POST /api/biometric/register - Create biometric enrollment
+ * - POST /api/biometric/enrollment-sessions, GET /{id}, PUT /{id}/images/{angle}, POST /{id}/complete
+ *   Resumable enrollment - images uploaded one at a time, registered once all 5 are stored
  * - POST /api/biometric/verify - Standalone biometric verification
  * - POST /api/biometric/verify-for-auth - During login (verifies + completes OAuth2 flow)
- * - GET  /api/biometric/health - Health check
- * - GET  /api/biometric/metrics - Performance metrics
+ * - POST /api/biometric/register-async, /verify-async, /verify-for-auth-async
+ *   Non-blocking variants - the servlet thread is released while Python is processing
+ * - POST /api/biometric/verify-batch - Many (user_id, image) pairs, results streamed as NDJSON
+ * - POST /api/biometric/identify-for-auth - Passwordless login (confident 1:N match + liveness, no candidates returned)
+ * - POST /api/biometric/identify - Raw 1:N top-k search with scores, BIOMETRIC_ADMIN only
+ * - GET  /api/biometric/health - Health check (cached snapshot from BiometricHealthProber), overall status only
+ * - GET  /api/biometric/health/replicas - Per-replica health detail (authenticated)
+ * - GET  /api/biometric/metrics - Performance metrics (Java proxy + Python), full set at /actuator/prometheus
  * 
  * The /verify-for-auth endpoint is called after:
  * 1. User submits email+password (/doLogin)
@@ -42,7 +70,14 @@ import java.util.Map;
 public class BiometricController {
 
     private final BiometricRestService biometricRestService;
+    private final ReactiveBiometricRestService reactiveBiometricRestService;
     private final BiometricVerificationService biometricVerificationService;
+    private final BiometricBatchVerificationService biometricBatchVerificationService;
+    private final BiometricEnrollmentSessionService enrollmentSessionService;
+    private final FaceIdentificationService faceIdentificationService;
+    private final BiometricHealthProber healthProber;
+    private final BiometricHttpMetrics httpMetrics;
+    private final SecurityContextRepository securityContextRepository = new HttpSessionSecurityContextRepository();
 
     /**
      * Register user with 5 face images
@@ -75,29 +110,103 @@ public class BiometricController {
         );
     }
 
+    /**
+     * Start a resumable enrollment session for the logged-in user
+     *
+     * Authenticated callers only (SecurityConfig) - the session belongs to the caller,
+     * the enrolled user is never taken from the request
+     * Optional: check_liveness (default: true)
+     *
+     * Response 201: session_id, status, received, missing, images_received
+     */
+    @PostMapping("/enrollment-sessions")
+    public ResponseEntity<Map<String, Object>> startEnrollmentSession(
+            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness,
+            Authentication authentication,
+            HttpServletRequest request) {
+
+        log.info("📝 Enrollment session request: user={}", authentication.getName());
+
+        return enrollmentSessionService.start(authentication.getName(), checkLiveness,
+                request.getRemoteAddr(), request.getHeader(HttpHeaders.USER_AGENT));
+    }
+
+    /**
+     * Progress of an enrollment session - a client resuming after a disconnect
+     * re-sends only the angles listed in missing
+     */
+    @GetMapping("/enrollment-sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> enrollmentSession(@PathVariable String sessionId,
+                                                                 Authentication authentication) {
+        return enrollmentSessionService.status(sessionId, authentication.getName());
+    }
+
+    /**
+     * Upload (or replace) one angle of an enrollment session
+     *
+     * angle: front, left, right, up, down - Required: image
+     *
+     * Response: the session progress. The upload completing the set registers the user
+     * (response status and "registration" body from /register). 409 when the session is
+     * already completed, 410 when it expired, 404 when it belongs to another user.
+     */
+    @PutMapping(value = "/enrollment-sessions/{sessionId}/images/{angle}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> putEnrollmentImage(
+            @PathVariable String sessionId,
+            @PathVariable String angle,
+            @RequestParam("image") MultipartFile image,
+            Authentication authentication) {
+
+        log.info("📥 Enrollment image: session={}, angle={}", sessionId, angle);
+
+        return enrollmentSessionService.putImage(sessionId, authentication.getName(), angle, image);
+    }
+
+    /**
+     * Retry the registration of a session with all angles stored (e.g. Python was unavailable)
+     */
+    @PostMapping("/enrollment-sessions/{sessionId}/complete")
+    public ResponseEntity<Map<String, Object>> completeEnrollmentSession(@PathVariable String sessionId,
+                                                                         Authentication authentication) {
+        return enrollmentSessionService.complete(sessionId, authentication.getName());
+    }
+
     /**
      * Verify user with a single face image
      * (Standalone verification - not tied to authentication)
      * 
      * Required: user_id, image
-     * Optional: threshold (default: 0.5), check_liveness (default: true)
+     * Optional: threshold (default: 0.5), check_liveness (default: true),
+     *           face_box ("x,y,width,height" from a client-side face detector)
      * 
      * Response: is_matched, confidence, verification_time_ms
+     * 422 with reason BLURRY / UNDEREXPOSED / OVEREXPOSED / FACE_TOO_SMALL and the measured
+     * quality scores when the frame is rejected before verification (ImageQualityGate)
      */
     @PostMapping(value = "/verify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Map<String, Object>> verifyUser(
             @RequestParam("user_id") String userId,
             @RequestParam("image") MultipartFile image,
             @RequestParam(value = "threshold", defaultValue = "0.5") double threshold,
-            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness) {
+            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness,
+            @RequestParam(value = "face_box", required = false) String faceBox) {
 
         log.info("🔍 Standalone biometric verification: user={}, threshold={}", userId, threshold);
 
+        ImageQualityGate.FaceBox box;
+        try {
+            box = faceBox == null ? null : ImageQualityGate.FaceBox.parse(faceBox);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", e.getMessage()));
+        }
+
         return biometricRestService.verifyUser(
                 userId,
                 image,
                 threshold,
-                checkLiveness
+                checkLiveness,
+                BiometricPriority.VERIFY,
+                box
         );
     }
 
@@ -143,21 +252,180 @@ public class BiometricController {
     }
 
     /**
-     * Health check - verify biometric microservice is running
+     * Register user with 5 face images (non-blocking)
+     * Same contract as /register
+     */
+    @PostMapping(value = "/register-async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> registerUserAsync(
+            @RequestParam("user_id") String userId,
+            @RequestParam("image_front") MultipartFile imageFront,
+            @RequestParam("image_left") MultipartFile imageLeft,
+            @RequestParam("image_right") MultipartFile imageRight,
+            @RequestParam("image_up") MultipartFile imageUp,
+            @RequestParam("image_down") MultipartFile imageDown,
+            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness) {
+
+        log.info("📝 Async biometric registration request: user={}", userId);
+
+        return reactiveBiometricRestService.registerUser(
+                userId,
+                imageFront,
+                imageLeft,
+                imageRight,
+                imageUp,
+                imageDown,
+                checkLiveness
+        );
+    }
+
+    /**
+     * Verify user with a single face image (non-blocking)
+     * Same contract as /verify
+     */
+    @PostMapping(value = "/verify-async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> verifyUserAsync(
+            @RequestParam("user_id") String userId,
+            @RequestParam("image") MultipartFile image,
+            @RequestParam(value = "threshold", defaultValue = "0.5") double threshold,
+            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness) {
+
+        log.info("🔍 Async standalone biometric verification: user={}, threshold={}", userId, threshold);
+
+        return reactiveBiometricRestService.verifyUser(
+                userId,
+                image,
+                threshold,
+                checkLiveness
+        );
+    }
+
+    /**
+     * Verify user for authentication (non-blocking)
+     * Same contract as /verify-for-auth
+     */
+    @PostMapping(value = "/verify-for-auth-async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<Map<String, Object>>> verifyForAuthenticationAsync(
+            @RequestParam("user_email") String userEmail,
+            @RequestParam("image") MultipartFile image,
+            @RequestParam(value = "threshold", defaultValue = "0.5") double threshold) {
+
+        log.info("🔐 Async biometric verification for authentication: user={}, threshold={}", userEmail, threshold);
+
+        return biometricVerificationService.verifyAndAuthenticateAsync(userEmail, image, threshold)
+                .map(result -> {
+                    result.put("redirect_url", "/oauth2/authorize");
+                    return ResponseEntity.ok(result);
+                });
+    }
+
+    /**
+     * Verify many users in one request (kiosks, turnstiles)
+     * 
+     * Required: user_id and image repeated once per person, in the same order
+     * Optional: threshold (default: 0.5), check_liveness (default: true)
+     * 
+     * Response: application/x-ndjson, one line per item as soon as it is verified
+     * (index, user_id, status, is_matched, confidence ... or error)
+     */
+    @PostMapping(value = "/verify-batch",
+            consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> verifyBatch(
+            @RequestParam("user_id") List<String> userIds,
+            @RequestParam("image") List<MultipartFile> images,
+            @RequestParam(value = "threshold", defaultValue = "0.5") double threshold,
+            @RequestParam(value = "check_liveness", defaultValue = "true") boolean checkLiveness) {
+
+        log.info("📦 Batch biometric verification: items={}, threshold={}", userIds.size(), threshold);
+
+        return biometricBatchVerificationService.verify(userIds, images, threshold, checkLiveness);
+    }
+
+    /**
+     * Passwordless login - log in with the face alone (1:N, no email, no password)
+     * 
+     * Required: image
+     * 
+     * Authenticates only when the face is live and confidently matches exactly one enrolled user
+     * (app.biometric.identification.login-threshold / login-margin); the thresholds are server-side.
+     * The new authentication is stored in a fresh session (session id changed).
+     * 
+     * Response: status, message, redirect_url - 401 "Face not recognised" otherwise, no candidates or scores
+     */
+    @PostMapping(value = "/identify-for-auth", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> identifyForAuthentication(
+            @RequestParam("image") MultipartFile image,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+
+        log.info("🔐 Passwordless biometric login request");
+
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        Map<String, Object> result = biometricVerificationService.identifyAndAuthenticate(image, securityContext);
+
+        if (request.getSession(false) != null) {
+            request.changeSessionId();
+        }
+        SecurityContextHolder.setContext(securityContext);
+        securityContextRepository.saveContext(securityContext, request, response);
+
+        result.put("redirect_url", "/oauth2/authorize");
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Identify the user from a face image alone (1:N top-k search)
+     * 
+     * BIOMETRIC_ADMIN only (SecurityConfig) - the candidates are enrolled user ids with scores;
+     * logging in by face goes through /identify-for-auth, which returns none of them
+     * 
+     * Required: image
+     * Optional: k (default: app.biometric.identification.top-k), threshold (default: 0.5)
+     * 
+     * Response: candidates (user_id, similarity - best first), partial (search hit its latency budget), search_time_ms
+     */
+    @PostMapping(value = "/identify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Map<String, Object>> identify(
+            @RequestParam("image") MultipartFile image,
+            @RequestParam(value = "k", required = false) Integer k,
+            @RequestParam(value = "threshold", defaultValue = "0.5") double threshold) {
+
+        log.info("🔎 Biometric identification request: k={}, threshold={}", k, threshold);
+
+        return ResponseEntity.ok(faceIdentificationService.identify(image, k, threshold));
+    }
+
+    /**
+     * Health check - latest background probe of the biometric replicas
+     * No call to Python here, probes and dashboards can poll it as often as they like
+     * 200 when at least one replica is up, 503 otherwise (or before the first probe)
+     * Public, so the body is the overall status only
      */
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
-        log.debug("🏥 Biometric service health check");
-        return biometricRestService.healthCheck();
+        return healthProber.getSnapshot().response();
+    }
+
+    /**
+     * Same snapshot with per-replica detail (URL, last probe, latency, errors) and Python's health body
+     * Authenticated callers only - replica addresses and exception texts are internal
+     */
+    @GetMapping("/health/replicas")
+    public ResponseEntity<Map<String, Object>> healthDetails() {
+        return healthProber.getSnapshot().details();
     }
 
     /**
-     * Get performance metrics from biometric microservice
+     * Performance metrics - Java-side timings of calls to Python (per operation) next to
+     * Python's own numbers, so proxy and model regressions can be told apart
      */
     @GetMapping("/metrics")
     public ResponseEntity<Map<String, Object>> metrics() {
         log.debug("📊 Biometric service metrics requested");
-        return biometricRestService.getMetrics();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("proxy", httpMetrics.summary());
+        body.put("python", biometricRestService.getMetrics().getBody());
+        return ResponseEntity.ok(body);
     }
 }
 
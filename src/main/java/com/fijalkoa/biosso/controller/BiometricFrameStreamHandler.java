@@ -0,0 +1,189 @@
+package com.fijalkoa.biosso.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fijalkoa.biosso.service.BiometricFrameStream;
+import com.fijalkoa.biosso.service.BiometricFrameStreamService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * WebSocket /ws/biometric/login - biometric login step as a stream of camera frames
+ * (alternative to uploading one still to /verify-for-auth)
+ *
+ * Handshake: ?user_email=...&threshold=0.5, same HTTP session and BIOMETRIC_VERIFICATION_REQUIRED
+ * authority as /verify-for-auth; user_email must be the user of the pending authentication. Protocol:
+ * - server: {"type":"session","session_id":...} once the BiometricSession is created
+ * - client: one binary message per frame (JPEG/PNG), optionally {"type":"end"} when done
+ * - server: {"type":"frame","index":n,"accepted":bool,"reason":...,"quality":{...}} per frame
+ * - server: {"type":"result","status":"verified"|"failed",...} once decided, then closes the socket
+ * Errors before the stream starts: {"type":"error","error":...} and close.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BiometricFrameStreamHandler extends AbstractWebSocketHandler {
+
+    private static final String STREAM_ATTRIBUTE = "biometric.frameStream";
+    private static final String OUT_ATTRIBUTE = "biometric.frameStream.out";
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_BYTES = 64 * 1024;
+
+    private final BiometricFrameStreamService frameStreamService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * One frame is one binary message - the container default (8KB) is far below a camera frame
+     */
+    @Value("${app.biometric.stream.max-frame-size:1MB}")
+    private DataSize maxFrameSize = DataSize.ofMegabytes(1);
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        session.setBinaryMessageSizeLimit((int) maxFrameSize.toBytes());
+        // Results are sent from the Python callback thread as well - serialise the sends
+        WebSocketSession out = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_BYTES);
+        session.getAttributes().put(OUT_ATTRIBUTE, out);
+
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+        String userEmail = params.getFirst("user_email");
+        String threshold = params.getFirst("threshold");
+        SecurityContext securityContext = (SecurityContext) session.getAttributes()
+                .get(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        if (userEmail == null || securityContext == null || securityContext.getAuthentication() == null) {
+            fail(out, userEmail == null ? "Missing user_email" : "No authentication in session", CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+        // The stream upgrades this session's authentication - only for the user who passed the password step
+        if (!userEmail.equals(securityContext.getAuthentication().getName())) {
+            fail(out, "user_email does not match the authenticated user", CloseStatus.POLICY_VIOLATION);
+            return;
+        }
+
+        log.info("🎥 Biometric frame stream for authentication: user={}", userEmail);
+        try {
+            BiometricFrameStreamService.OpenStream stream = frameStreamService.open(
+                    userEmail,
+                    threshold == null ? 0.5 : Double.parseDouble(threshold),
+                    securityContext,
+                    session.getRemoteAddress() == null ? null : session.getRemoteAddress().getAddress().getHostAddress(),
+                    session.getHandshakeHeaders().getFirst(HttpHeaders.USER_AGENT),
+                    result -> {
+                        send(out, result);
+                        close(out, CloseStatus.NORMAL);
+                    });
+            session.getAttributes().put(STREAM_ATTRIBUTE, stream);
+
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "session");
+            message.put("session_id", stream.sessionId());
+            send(out, message);
+
+        } catch (ResponseStatusException e) {
+            fail(out, e.getReason() != null ? e.getReason() : e.getStatusCode().toString(), CloseStatus.POLICY_VIOLATION);
+        } catch (NumberFormatException e) {
+            fail(out, "Invalid threshold: " + threshold, CloseStatus.BAD_DATA);
+        }
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        BiometricFrameStreamService.OpenStream stream = stream(session);
+        if (stream == null) {
+            return;
+        }
+        ByteBuffer payload = message.getPayload();
+        byte[] frame = new byte[payload.remaining()];
+        payload.get(frame);
+
+        BiometricFrameStream.FrameVerdict verdict = stream.stream().onFrame(frame);
+        frameStreamService.recordFrame(verdict);
+
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("type", "frame");
+        reply.put("index", verdict.index());
+        reply.put("accepted", verdict.accepted());
+        if (verdict.reason() != null) {
+            reply.put("reason", verdict.reason());
+        }
+        if (verdict.assessment() != null) {
+            reply.put("quality", verdict.assessment().toMap());
+        }
+        send(out(session), reply);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        BiometricFrameStreamService.OpenStream stream = stream(session);
+        JsonNode command = objectMapper.readTree(message.getPayload());
+        if (stream != null && "end".equals(command.path("type").asText())) {
+            stream.stream().finish();
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.warn("⚠️ Biometric frame stream transport error: {}", exception.getMessage());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        BiometricFrameStreamService.OpenStream stream = stream(session);
+        if (stream != null) {
+            frameStreamService.abandon(stream);
+        }
+    }
+
+    private static BiometricFrameStreamService.OpenStream stream(WebSocketSession session) {
+        return (BiometricFrameStreamService.OpenStream) session.getAttributes().get(STREAM_ATTRIBUTE);
+    }
+
+    private static WebSocketSession out(WebSocketSession session) {
+        return (WebSocketSession) session.getAttributes().get(OUT_ATTRIBUTE);
+    }
+
+    private void fail(WebSocketSession out, String error, CloseStatus status) {
+        log.warn("❌ Biometric frame stream refused: {}", error);
+        send(out, Map.of("type", "error", "error", error));
+        close(out, status);
+    }
+
+    private void send(WebSocketSession out, Map<String, Object> message) {
+        if (!out.isOpen()) {
+            return;
+        }
+        try {
+            out.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Could not send to biometric frame stream {}: {}", out.getId(), e.getMessage());
+        }
+    }
+
+    private static void close(WebSocketSession out, CloseStatus status) {
+        try {
+            out.close(status);
+        } catch (IOException e) {
+            log.debug("Biometric frame stream {} already closed: {}", out.getId(), e.getMessage());
+        }
+    }
+}
@@ -35,6 +35,12 @@ public class BiometricSession {
     @Column(nullable = false)
     private Integer imagesReceived = 0;
 
+    @Column(length = 100)
+    private String receivedParts; // REGISTER: comma-separated angles stored so far (front,left,...)
+
+    @Column
+    private Boolean checkLiveness;
+
     @Column
     private String pythonMicroserviceCorrelationId;
 
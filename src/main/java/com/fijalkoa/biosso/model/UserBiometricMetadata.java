@@ -1,5 +1,6 @@
 package com.fijalkoa.biosso.model;
 
+import com.fijalkoa.biosso.service.BiometricEnrollmentListener;
 import jakarta.persistence.*;
 import lombok.*;
 import java.math.BigDecimal;
@@ -7,6 +8,7 @@ import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "user_biometric_metadata")
+@EntityListeners(BiometricEnrollmentListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,157 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch verification for kiosks and turnstiles
+ *
+ * One request carries many (user_id, image) pairs. Items are split into micro-batches
+ * and forwarded to Python concurrently, per-item results are emitted as soon as the
+ * micro-batch they belong to finishes (streamed to the client as NDJSON).
+ *
+ * Modes (app.biometric.batch.mode):
+ * - batch (default): one POST /api/biometrics/verify-batch per micro-batch, so Python can run
+ *   the whole micro-batch through the GPU at once
+ * - single: every item is a regular /api/biometrics/verify call (Python without the batch endpoint)
+ *
+ * Every image passes ImageQualityGate first - a rejected one is a line of its own with status 422,
+ * reason and quality scores (same body as /verify) and is never sent to Python.
+ *
+ * Every emitted line has index (position in the request), user_id and status (HTTP status
+ * of the item), plus the Python fields (is_matched, confidence, ...) or error.
+ * Lines are emitted in completion order, not request order.
+ */
+@Slf4j
+@Service
+public class BiometricBatchVerificationService {
+
+    public enum Mode {
+        BATCH, SINGLE
+    }
+
+    public record Item(int index, String userId, MultipartFile image) {
+    }
+
+    private final ReactiveBiometricRestService reactiveBiometricRestService;
+    private final Mode mode;
+    private final int microBatchSize;
+    private final int maxConcurrentBatches;
+    private final int maxItems;
+
+    public BiometricBatchVerificationService(
+            ReactiveBiometricRestService reactiveBiometricRestService,
+            @Value("${app.biometric.batch.mode:batch}") String mode,
+            @Value("${app.biometric.batch.micro-batch-size:16}") int microBatchSize,
+            @Value("${app.biometric.batch.max-concurrent-batches:4}") int maxConcurrentBatches,
+            @Value("${app.biometric.batch.max-items:256}") int maxItems) {
+
+        this.reactiveBiometricRestService = reactiveBiometricRestService;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+        this.microBatchSize = microBatchSize;
+        this.maxConcurrentBatches = maxConcurrentBatches;
+        this.maxItems = maxItems;
+    }
+
+    public Flux<Map<String, Object>> verify(List<String> userIds, List<MultipartFile> images,
+                                            double threshold, boolean checkLiveness) {
+        if (userIds.size() != images.size()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "user_id and image count differ: " + userIds.size() + " vs " + images.size());
+        }
+        if (userIds.isEmpty() || userIds.size() > maxItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Batch must contain between 1 and " + maxItems + " items");
+        }
+
+        List<Item> items = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            items.add(new Item(i, userIds.get(i), images.get(i)));
+        }
+
+        log.info("📦 Batch verification: items={}, mode={}, microBatch={}", items.size(), mode, microBatchSize);
+
+        return switch (mode) {
+            case BATCH -> {
+                List<Item> accepted = new ArrayList<>(items.size());
+                List<Map<String, Object>> rejected = new ArrayList<>();
+                for (Item item : items) {
+                    Map<String, Object> rejection = reactiveBiometricRestService.qualityRejection(item.image());
+                    if (rejection == null) {
+                        accepted.add(item);
+                    } else {
+                        rejected.add(itemResult(item, HttpStatus.UNPROCESSABLE_ENTITY.value(), rejection));
+                    }
+                }
+                yield Flux.fromIterable(rejected).concatWith(Flux.fromIterable(accepted)
+                        .buffer(microBatchSize)
+                        .flatMap(batch -> verifyMicroBatch(batch, threshold, checkLiveness), maxConcurrentBatches));
+            }
+            // verifyUser applies the quality gate itself
+            case SINGLE -> Flux.fromIterable(items)
+                    .flatMap(item -> reactiveBiometricRestService
+                            .verifyUser(item.userId(), item.image(), threshold, checkLiveness)
+                            .map(response -> itemResult(item, response.getStatusCode().value(), response.getBody())),
+                            microBatchSize * maxConcurrentBatches);
+        };
+    }
+
+    private Flux<Map<String, Object>> verifyMicroBatch(List<Item> batch, double threshold, boolean checkLiveness) {
+        List<String> userIds = batch.stream().map(Item::userId).toList();
+        List<MultipartFile> images = batch.stream().map(Item::image).toList();
+
+        return reactiveBiometricRestService
+                .verifyBatch(userIds, images, threshold, checkLiveness, BiometricPriority.VERIFY)
+                .flatMapIterable(response -> splitResults(batch, response));
+    }
+
+    /**
+     * One line per item - Python results in request order, or the batch-level error copied to every item
+     */
+    private static List<Map<String, Object>> splitResults(List<Item> batch, ResponseEntity<Map<String, Object>> response) {
+        int status = response.getStatusCode().value();
+        Map<String, Object> body = response.getBody() == null ? Map.of() : response.getBody();
+
+        List<Map<String, Object>> lines = new ArrayList<>(batch.size());
+        if (response.getStatusCode().is2xxSuccessful()
+                && body.get("results") instanceof List<?> results && results.size() == batch.size()) {
+            for (int i = 0; i < batch.size(); i++) {
+                lines.add(itemResult(batch.get(i), status, results.get(i) instanceof Map<?, ?> result ? result : Map.of()));
+            }
+            return lines;
+        }
+
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("success", false);
+        error.put("error", body.getOrDefault("error", "Unexpected batch response from biometric service"));
+        if (body.containsKey("reason")) {
+            error.put("reason", body.get("reason"));
+        }
+        int itemStatus = response.getStatusCode().is2xxSuccessful() ? HttpStatus.BAD_GATEWAY.value() : status;
+        batch.forEach(item -> lines.add(itemResult(item, itemStatus, error)));
+        return lines;
+    }
+
+    private static Map<String, Object> itemResult(Item item, int status, Map<?, ?> result) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", item.index());
+        line.put("user_id", item.userId());
+        line.put("status", status);
+        if (result != null) {
+            result.forEach((key, value) -> line.putIfAbsent(String.valueOf(key), value));
+        }
+        return line;
+    }
+}
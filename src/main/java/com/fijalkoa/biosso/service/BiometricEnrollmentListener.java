@@ -0,0 +1,63 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.model.UserBiometricMetadata;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA listener on UserBiometricMetadata - keeps the face identification index and the
+ * off-heap embedding store in sync with enrollment status changes
+ * (ACTIVE / INACTIVE / REVOKED, re-enrollment, removal)
+ *
+ * Changes are forwarded after the transaction commits, so a rolled back status change
+ * never reaches the index.
+ */
+@Component
+public class BiometricEnrollmentListener {
+
+    private final ObjectProvider<FaceIdentificationService> identificationService;
+    private final ObjectProvider<EmbeddingTemplateCache> templateCache;
+
+    public BiometricEnrollmentListener(ObjectProvider<FaceIdentificationService> identificationService,
+                                       ObjectProvider<EmbeddingTemplateCache> templateCache) {
+        this.identificationService = identificationService;
+        this.templateCache = templateCache;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(UserBiometricMetadata metadata) {
+        afterCommit(metadata, false);
+    }
+
+    @PostRemove
+    public void onRemoved(UserBiometricMetadata metadata) {
+        afterCommit(metadata, true);
+    }
+
+    private void afterCommit(UserBiometricMetadata metadata, boolean removed) {
+        Runnable notify = () -> {
+            boolean revoked = removed || metadata.getStatus() != UserBiometricMetadata.BiometricStatus.ACTIVE;
+            if (revoked && metadata.getUser() != null) {
+                templateCache.ifAvailable(cache -> cache.revoke(metadata.getUser().getId()));
+            }
+            identificationService.ifAvailable(service -> service.onEnrollmentChanged(metadata, removed));
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    notify.run();
+                }
+            });
+        } else {
+            notify.run();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.UploadedImage;
+import com.fijalkoa.biosso.model.BiometricSession;
+import com.fijalkoa.biosso.model.User;
+import com.fijalkoa.biosso.repository.BiometricSessionRepository;
+import com.fijalkoa.biosso.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resumable enrollment - the five registration images uploaded one at a time
+ * (alternative to the all-or-nothing multipart POST /register)
+ *
+ * Sessions belong to the logged-in user who started them (userEmail = the authenticated principal);
+ * another caller's session id answers 404 like an unknown one.
+ *
+ * A BiometricSession (mode REGISTER) tracks the progress:
+ * - every accepted image is written to app.biometric.enrollment.directory/{sessionId}/{angle}.img
+ *   (temp file + atomic move, an interrupted upload never counts as received)
+ * - receivedParts / imagesReceived are updated, so a client that lost the connection asks for
+ *   the session and re-sends only the missing angles; re-sending an angle replaces it
+ * - once all angles are present the images are forwarded to Python through BiometricRestService.registerUser
+ *   (same validation, preprocessing and call guard as /register). Success - COMPLETED and the images
+ *   are deleted. Any other answer leaves the session ACTIVE - retry with complete() or replace an image.
+ * - sessions still ACTIVE after session-ttl are marked ABANDONED and their images deleted
+ *
+ * Stored images live on the local disk - with several instances, the session needs sticky routing
+ * or a shared directory.
+ *
+ * Metrics: biometric.enrollment.session{event=started|image|completed|abandoned}
+ */
+@Slf4j
+@Service
+public class BiometricEnrollmentSessionService {
+
+    static final List<String> ANGLES = List.of("front", "left", "right", "up", "down");
+
+    private final BiometricRestService biometricRestService;
+    private final BiometricSessionRepository sessionRepository;
+    private final UserRepository userRepository;
+    private final Path directory;
+    private final Duration sessionTtl;
+    private final MeterRegistry meterRegistry;
+    // One upload or forward per session at a time - the last image must trigger exactly one registration.
+    // ReentrantLock, not synchronized: the holder blocks on disk and on Python, and a virtual thread
+    // parked inside a monitor would pin its carrier thread
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    public BiometricEnrollmentSessionService(
+            BiometricRestService biometricRestService,
+            BiometricSessionRepository sessionRepository,
+            UserRepository userRepository,
+            @Value("${app.biometric.enrollment.directory:${java.io.tmpdir}/biosso-enrollment}") String directory,
+            @Value("${app.biometric.enrollment.session-ttl:30m}") Duration sessionTtl,
+            MeterRegistry meterRegistry) {
+
+        this.biometricRestService = biometricRestService;
+        this.sessionRepository = sessionRepository;
+        this.userRepository = userRepository;
+        this.directory = Path.of(directory);
+        this.sessionTtl = sessionTtl;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * New enrollment session for the authenticated user
+     */
+    public ResponseEntity<Map<String, Object>> start(String userEmail, boolean checkLiveness,
+                                                     String clientIp, String userAgent) {
+        Optional<User> user = userRepository.findByEmail(userEmail);
+        if (user.isEmpty()) {
+            return error(HttpStatus.NOT_FOUND, "User not found");
+        }
+
+        BiometricSession session = sessionRepository.save(BiometricSession.builder()
+                .user(user.get())
+                .sessionId(UUID.randomUUID().toString())
+                .mode(BiometricSession.BiometricMode.REGISTER)
+                .status(BiometricSession.BiometricStatus.ACTIVE)
+                .imagesReceived(0)
+                .receivedParts("")
+                .checkLiveness(checkLiveness)
+                .createdAt(LocalDateTime.now())
+                .clientIp(clientIp)
+                .userAgent(userAgent)
+                .build());
+
+        count("started");
+        log.info("📝 Enrollment session started: user={}, session={}", userEmail, session.getSessionId());
+        return ResponseEntity.status(HttpStatus.CREATED).body(progress(session, null));
+    }
+
+    /**
+     * Progress of a session - which angles are stored and which are still missing
+     */
+    public ResponseEntity<Map<String, Object>> status(String sessionId, String userEmail) {
+        Optional<BiometricSession> session = find(sessionId, userEmail);
+        return session.isEmpty()
+                ? error(HttpStatus.NOT_FOUND, "Enrollment session not found")
+                : ResponseEntity.ok(progress(session.get(), null));
+    }
+
+    /**
+     * Store (or replace) one angle - registers with Python when it was the last missing one
+     */
+    public ResponseEntity<Map<String, Object>> putImage(String sessionId, String userEmail, String angle,
+                                                        MultipartFile image) {
+        if (!ANGLES.contains(angle)) {
+            return error(HttpStatus.BAD_REQUEST, "Unknown angle " + angle + ", expected one of " + ANGLES);
+        }
+        try {
+            BiometricRestService.validateImages(Map.of(angle, image));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        ReentrantLock lock = lock(sessionId);
+        lock.lock();
+        try {
+            Optional<BiometricSession> found = find(sessionId, userEmail);
+            if (found.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Enrollment session not found");
+            }
+            BiometricSession session = found.get();
+            ResponseEntity<Map<String, Object>> closed = rejectIfClosed(session);
+            if (closed != null) {
+                return closed;
+            }
+
+            try {
+                Path sessionDirectory = Files.createDirectories(directory.resolve(session.getSessionId()));
+                Path part = Files.createTempFile(sessionDirectory, angle + "-", ".part");
+                try {
+                    image.transferTo(part);
+                    Files.move(part, sessionDirectory.resolve(angle + ".img"),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(part);
+                }
+            } catch (IOException e) {
+                log.error("❌ Could not store {} image of enrollment session {}: {}", angle, sessionId, e.getMessage(), e);
+                return error(HttpStatus.INTERNAL_SERVER_ERROR, "Could not store image, please retry");
+            }
+
+            List<String> received = storedAngles(session);
+            session.setReceivedParts(String.join(",", received));
+            session.setImagesReceived(received.size());
+            sessionRepository.save(session);
+            count("image");
+            log.info("📥 Enrollment session {}: {} stored ({}/{})", sessionId, angle, received.size(), ANGLES.size());
+
+            return received.size() == ANGLES.size() ? forward(session) : ResponseEntity.ok(progress(session, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retry the registration of a session that has all angles (after a Python error)
+     */
+    public ResponseEntity<Map<String, Object>> complete(String sessionId, String userEmail) {
+        ReentrantLock lock = lock(sessionId);
+        lock.lock();
+        try {
+            Optional<BiometricSession> found = find(sessionId, userEmail);
+            if (found.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Enrollment session not found");
+            }
+            BiometricSession session = found.get();
+            ResponseEntity<Map<String, Object>> closed = rejectIfClosed(session);
+            if (closed != null) {
+                return closed;
+            }
+            if (storedAngles(session).size() < ANGLES.size()) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(progress(session, null));
+            }
+            return forward(session);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sessions left ACTIVE longer than session-ttl - ABANDONED, stored images deleted
+     */
+    @Scheduled(fixedDelayString = "${app.biometric.enrollment.cleanup-interval:5m}",
+            initialDelayString = "${app.biometric.enrollment.cleanup-interval:5m}")
+    public void abandonExpired() {
+        List<BiometricSession> expired = sessionRepository.findByModeAndStatusAndCreatedAtBefore(
+                BiometricSession.BiometricMode.REGISTER, BiometricSession.BiometricStatus.ACTIVE,
+                LocalDateTime.now().minus(sessionTtl));
+        for (BiometricSession session : expired) {
+            ReentrantLock lock = lock(session.getSessionId());
+            lock.lock();
+            try {
+                abandon(session);
+            } finally {
+                lock.unlock();
+            }
+            locks.remove(session.getSessionId());
+        }
+        if (!expired.isEmpty()) {
+            log.info("🧹 Abandoned {} expired enrollment sessions", expired.size());
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> forward(BiometricSession session) {
+        List<MultipartFile> images = new ArrayList<>(ANGLES.size());
+        try {
+            for (String angle : ANGLES) {
+                images.add(UploadedImage.onDisk("image_" + angle, angle + ".jpg", null, imagePath(session, angle)));
+            }
+        } catch (IOException e) {
+            log.error("❌ Stored images of enrollment session {} unreadable: {}", session.getSessionId(), e.getMessage());
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Stored images unreadable, please re-send them");
+        }
+
+        String userId = String.valueOf(session.getUser().getId());
+        ResponseEntity<Map<String, Object>> registration = biometricRestService.registerUser(userId,
+                images.get(0), images.get(1), images.get(2), images.get(3), images.get(4),
+                !Boolean.FALSE.equals(session.getCheckLiveness()));
+
+        if (registration.getStatusCode().is2xxSuccessful()) {
+            session.setStatus(BiometricSession.BiometricStatus.COMPLETED);
+            session.setCompletedAt(LocalDateTime.now());
+            sessionRepository.save(session);
+            deleteImages(session);
+            locks.remove(session.getSessionId());
+            count("completed");
+            log.info("✅ Enrollment session {} registered: user={}", session.getSessionId(), userId);
+        } else {
+            log.warn("❌ Enrollment session {} registration failed: status={}, session stays active",
+                    session.getSessionId(), registration.getStatusCode().value());
+        }
+
+        return ResponseEntity.status(registration.getStatusCode())
+                .headers(registration.getHeaders())
+                .body(progress(session, registration.getBody()));
+    }
+
+    /**
+     * 409 for a COMPLETED session, 410 for an ABANDONED or expired one, null when uploads are accepted
+     */
+    private ResponseEntity<Map<String, Object>> rejectIfClosed(BiometricSession session) {
+        if (session.getStatus() == BiometricSession.BiometricStatus.ACTIVE
+                && session.getCreatedAt().isBefore(LocalDateTime.now().minus(sessionTtl))) {
+            abandon(session);
+        }
+        return switch (session.getStatus()) {
+            case ACTIVE -> null;
+            case COMPLETED -> ResponseEntity.status(HttpStatus.CONFLICT).body(progress(session, null));
+            default -> error(HttpStatus.GONE, "Enrollment session expired, start a new one");
+        };
+    }
+
+    private void abandon(BiometricSession session) {
+        session.setStatus(BiometricSession.BiometricStatus.ABANDONED);
+        session.setCompletedAt(LocalDateTime.now());
+        sessionRepository.save(session);
+        deleteImages(session);
+        count("abandoned");
+    }
+
+    private Optional<BiometricSession> find(String sessionId, String userEmail) {
+        return sessionRepository.findBySessionId(sessionId)
+                .filter(session -> session.getMode() == BiometricSession.BiometricMode.REGISTER)
+                .filter(session -> session.getUser() != null && userEmail.equals(session.getUser().getEmail()));
+    }
+
+    private List<String> storedAngles(BiometricSession session) {
+        return ANGLES.stream().filter(angle -> Files.isRegularFile(imagePath(session, angle))).toList();
+    }
+
+    private Path imagePath(BiometricSession session, String angle) {
+        return directory.resolve(session.getSessionId()).resolve(angle + ".img");
+    }
+
+    private void deleteImages(BiometricSession session) {
+        try {
+            FileSystemUtils.deleteRecursively(directory.resolve(session.getSessionId()));
+        } catch (IOException e) {
+            log.warn("⚠️ Could not delete images of enrollment session {}: {}", session.getSessionId(), e.getMessage());
+        }
+    }
+
+    private ReentrantLock lock(String sessionId) {
+        return locks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+    }
+
+    private Map<String, Object> progress(BiometricSession session, Map<String, Object> registration) {
+        List<String> received = session.getStatus() == BiometricSession.BiometricStatus.ACTIVE
+                ? storedAngles(session)
+                : receivedParts(session);
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("success", session.getStatus() != BiometricSession.BiometricStatus.ABANDONED);
+        body.put("session_id", session.getSessionId());
+        body.put("status", session.getStatus().name());
+        body.put("received", received);
+        body.put("missing", ANGLES.stream().filter(angle -> !received.contains(angle)).toList());
+        body.put("images_received", received.size());
+        if (registration != null) {
+            body.put("registration", registration);
+        }
+        return body;
+    }
+
+    private static List<String> receivedParts(BiometricSession session) {
+        String parts = session.getReceivedParts();
+        return parts == null || parts.isEmpty() ? List.of() : List.of(parts.split(","));
+    }
+
+    private void count(String event) {
+        Counter.builder("biometric.enrollment.session")
+                .tag("event", event)
+                .description("Resumable enrollment session events")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of(
+                "success", false,
+                "error", message
+        ));
+    }
+}
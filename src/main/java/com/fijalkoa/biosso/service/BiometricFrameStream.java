@@ -0,0 +1,285 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.ImageQualityException;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.UploadedImage;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One login attempt streamed as camera frames (see BiometricFrameStreamService)
+ *
+ * Every frame is scored on arrival (ImageQualityGate - blur, exposure). Frames passing the gate
+ * are kept as candidates, only the best-frames sharpest ones stay in memory.
+ * Once min-frames candidates are collected the sharpest one goes to Python (/verify with liveness),
+ * while further frames keep being scored. After each answer:
+ * - matched with confidence >= threshold + confident-margin - VERIFIED, stream stops
+ * - not matched with confidence < threshold - confident-margin, or liveness failed - FAILED, stream stops
+ * - anything in between - the next best candidate is sent, up to max-attempts calls
+ * When the attempts or the frames run out, the best uncertain answer decides (matched = VERIFIED).
+ *
+ * Exactly one Decision is delivered per stream. Thread-safe - frames arrive on the WebSocket
+ * thread, Python answers on another one. The Decision is taken under the lock but delivered after
+ * it is released - onDecision saves to the database and writes to the socket, and must not hold
+ * the frame thread or the Python callback (nor pin a virtual thread's carrier) meanwhile.
+ */
+@Slf4j
+public final class BiometricFrameStream {
+
+    public record Settings(double threshold, double confidentMargin, int minFrames, int bestFrames,
+                           int maxAttempts, int maxFrames) {
+    }
+
+    /**
+     * Score of one received frame - reason is a quality gate reason, or UNREADABLE
+     */
+    public record FrameVerdict(int index, boolean accepted, String reason, ImageQualityGate.Assessment assessment) {
+    }
+
+    public enum Outcome {
+        VERIFIED, NOT_MATCHED, LIVENESS_FAILED, NO_USABLE_FRAME, UNAVAILABLE, ERROR
+    }
+
+    /**
+     * @param result   the Python answer the decision is based on, null when none was usable
+     * @param hint     most frequent frame rejection reason, for NO_USABLE_FRAME
+     */
+    public record Decision(Outcome outcome, VerifyResponse result, String hint, int framesReceived, int framesSent) {
+
+        public boolean verified() {
+            return outcome == Outcome.VERIFIED;
+        }
+    }
+
+    private record Candidate(int index, byte[] image, double sharpness) {
+    }
+
+    private static final String UNREADABLE = "UNREADABLE";
+
+    private final Settings settings;
+    private final ImageQualityGate qualityGate;
+    private final Function<MultipartFile, Mono<ResponseEntity<VerifyResponse>>> verifier;
+    private final Consumer<Decision> onDecision;
+
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Map<ImageQualityException.Reason, Integer> rejections = new EnumMap<>(ImageQualityException.Reason.class);
+    private int framesReceived;
+    private int attempts;
+    private boolean inFlight;
+    private boolean ending;
+    private boolean decided;
+    private VerifyResponse bestUncertain;
+    private Decision undelivered;
+
+    public BiometricFrameStream(Settings settings, ImageQualityGate qualityGate,
+                                Function<MultipartFile, Mono<ResponseEntity<VerifyResponse>>> verifier,
+                                Consumer<Decision> onDecision) {
+        this.settings = settings;
+        this.qualityGate = qualityGate;
+        this.verifier = verifier;
+        this.onDecision = onDecision;
+    }
+
+    /**
+     * Score one frame - may start a Python call, or conclude the stream when max-frames is reached
+     */
+    public FrameVerdict onFrame(byte[] image) {
+        int index;
+        synchronized (this) {
+            if (decided) {
+                return new FrameVerdict(framesReceived, false, null, null);
+            }
+            index = framesReceived++;
+        }
+
+        // Scoring is CPU work - outside the lock, the Python callback must not wait for it
+        ImageQualityGate.Assessment assessment = qualityGate.assess(frame(image, index), null);
+        ImageQualityException.Reason failure = assessment == null ? null : qualityGate.failure(assessment);
+        boolean accepted = assessment != null && failure == null;
+
+        synchronized (this) {
+            if (accepted) {
+                addCandidate(new Candidate(index, image, assessment.sharpness()));
+            } else if (failure != null) {
+                rejections.merge(failure, 1, Integer::sum);
+            }
+            if (framesReceived >= settings.maxFrames()) {
+                ending = true;
+            }
+            advance();
+        }
+        deliver();
+        return new FrameVerdict(index, accepted, accepted ? null : failure != null ? failure.name() : UNREADABLE,
+                assessment);
+    }
+
+    /**
+     * No more frames will come (client finished, max-duration reached) - decide with what there is
+     */
+    public void finish() {
+        synchronized (this) {
+            ending = true;
+            advance();
+        }
+        deliver();
+    }
+
+    /**
+     * The client went away - no decision is delivered
+     *
+     * @return false when the stream was already decided
+     */
+    public synchronized boolean abandon() {
+        if (decided) {
+            return false;
+        }
+        decided = true;
+        candidates.clear();
+        return true;
+    }
+
+    public synchronized int framesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * Keeps the candidates sorted by sharpness, best first, at most best-frames of them
+     */
+    private void addCandidate(Candidate candidate) {
+        int position = 0;
+        while (position < candidates.size() && candidates.get(position).sharpness() >= candidate.sharpness()) {
+            position++;
+        }
+        if (position < settings.bestFrames()) {
+            candidates.add(position, candidate);
+            if (candidates.size() > settings.bestFrames()) {
+                candidates.remove(candidates.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Sends the next candidate or concludes - called under the lock after every state change
+     */
+    private void advance() {
+        if (decided || inFlight) {
+            return;
+        }
+        if (attempts >= settings.maxAttempts()) {
+            concludeWithBest();
+            return;
+        }
+        boolean ready = !candidates.isEmpty()
+                && (candidates.size() >= settings.minFrames() || attempts > 0 || ending);
+        if (ready) {
+            send(candidates.remove(0));
+        } else if (ending) {
+            concludeWithBest();
+        }
+    }
+
+    private void send(Candidate candidate) {
+        attempts++;
+        inFlight = true;
+        log.debug("📤 Streamed frame {} sent to Python (attempt {}, sharpness={})",
+                candidate.index(), attempts, candidate.sharpness());
+        verifier.apply(frame(candidate.image(), candidate.index()))
+                .subscribe(this::onResult, this::onError);
+    }
+
+    private void onResult(ResponseEntity<VerifyResponse> response) {
+        synchronized (this) {
+            evaluate(response);
+        }
+        deliver();
+    }
+
+    private void evaluate(ResponseEntity<VerifyResponse> response) {
+        inFlight = false;
+        if (decided) {
+            return;
+        }
+        VerifyResponse result = response.getBody();
+        if (!response.getStatusCode().is2xxSuccessful() || result == null) {
+            int status = response.getStatusCode().value();
+            conclude(status == 503 || status == 429 ? Outcome.UNAVAILABLE : Outcome.ERROR, null, null);
+            return;
+        }
+
+        if (Boolean.FALSE.equals(result.livenessPassed())) {
+            conclude(Outcome.LIVENESS_FAILED, result, null);
+        } else if (result.matched() && result.confidence() >= settings.threshold() + settings.confidentMargin()) {
+            conclude(Outcome.VERIFIED, result, null);
+        } else if (!result.matched() && result.confidence() < settings.threshold() - settings.confidentMargin()) {
+            conclude(Outcome.NOT_MATCHED, result, null);
+        } else {
+            if (bestUncertain == null || result.confidence() > bestUncertain.confidence()) {
+                bestUncertain = result;
+            }
+            advance();
+        }
+    }
+
+    private void onError(Throwable error) {
+        log.error("❌ Streamed frame verification failed: {}", error.getMessage(), error);
+        synchronized (this) {
+            inFlight = false;
+            if (!decided) {
+                conclude(Outcome.ERROR, null, null);
+            }
+        }
+        deliver();
+    }
+
+    private void concludeWithBest() {
+        if (bestUncertain != null) {
+            conclude(bestUncertain.matched() ? Outcome.VERIFIED : Outcome.NOT_MATCHED, bestUncertain, null);
+        } else if (attempts == 0) {
+            String hint = rejections.entrySet().stream()
+                    .max(Map.Entry.comparingByValue())
+                    .map(entry -> entry.getKey().name())
+                    .orElse(framesReceived > 0 ? UNREADABLE : null);
+            conclude(Outcome.NO_USABLE_FRAME, null, hint);
+        } else {
+            conclude(Outcome.ERROR, null, null);
+        }
+    }
+
+    private void conclude(Outcome outcome, VerifyResponse result, String hint) {
+        decided = true;
+        candidates.clear();
+        undelivered = new Decision(outcome, result, hint, framesReceived, attempts);
+    }
+
+    /**
+     * Hands a concluded Decision to onDecision - outside the lock. A Python answer arriving synchronously
+     * (inside send, still under the caller's lock) leaves it to the caller, which delivers after releasing.
+     */
+    private void deliver() {
+        if (Thread.holdsLock(this)) {
+            return;
+        }
+        Decision decision;
+        synchronized (this) {
+            decision = undelivered;
+            undelivered = null;
+        }
+        if (decision != null) {
+            onDecision.accept(decision);
+        }
+    }
+
+    private static MultipartFile frame(byte[] image, int index) {
+        return UploadedImage.inMemory("image", "frame-" + index + ".jpg", "image/jpeg", image);
+    }
+}
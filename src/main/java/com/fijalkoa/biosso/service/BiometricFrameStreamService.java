@@ -0,0 +1,211 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.model.BiometricSession;
+import com.fijalkoa.biosso.model.User;
+import com.fijalkoa.biosso.repository.BiometricSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Login by a short stream of camera frames instead of one uploaded still
+ * (WebSocket /ws/biometric/login, see BiometricFrameStreamHandler)
+ *
+ * Each stream is a BiometricSession (mode LOGIN): created ACTIVE when the socket opens,
+ * COMPLETED / FAILED with the number of received frames when decided, ABANDONED when the
+ * client disconnects first. Frame scoring and best-frame selection: BiometricFrameStream.
+ * Python calls go through ReactiveBiometricRestService.verify with AUTH priority and liveness.
+ * A stream that has not decided after max-duration is decided with the frames received so far.
+ *
+ * Metrics:
+ * - biometric.stream.frames{accepted=true|false}
+ * - biometric.stream.decision{outcome} (timer, socket open to decision)
+ * - biometric.stream.abandoned
+ */
+@Slf4j
+@Service
+public class BiometricFrameStreamService {
+
+    private final BiometricVerificationService verificationService;
+    private final ReactiveBiometricRestService reactiveBiometricRestService;
+    private final ImageQualityGate imageQualityGate;
+    private final BiometricSessionRepository sessionRepository;
+    private final double confidentMargin;
+    private final int minFrames;
+    private final int bestFrames;
+    private final int maxAttempts;
+    private final int maxFrames;
+    private final Duration maxDuration;
+    private final MeterRegistry meterRegistry;
+    private final Counter acceptedFrames;
+    private final Counter rejectedFrames;
+    private final Counter abandonedStreams;
+
+    public BiometricFrameStreamService(
+            BiometricVerificationService verificationService,
+            ReactiveBiometricRestService reactiveBiometricRestService,
+            ImageQualityGate imageQualityGate,
+            BiometricSessionRepository sessionRepository,
+            @Value("${app.biometric.stream.confident-margin:0.1}") double confidentMargin,
+            @Value("${app.biometric.stream.min-frames:3}") int minFrames,
+            @Value("${app.biometric.stream.best-frames:3}") int bestFrames,
+            @Value("${app.biometric.stream.max-attempts:3}") int maxAttempts,
+            @Value("${app.biometric.stream.max-frames:30}") int maxFrames,
+            @Value("${app.biometric.stream.max-duration:5s}") Duration maxDuration,
+            MeterRegistry meterRegistry) {
+
+        this.verificationService = verificationService;
+        this.reactiveBiometricRestService = reactiveBiometricRestService;
+        this.imageQualityGate = imageQualityGate;
+        this.sessionRepository = sessionRepository;
+        this.confidentMargin = confidentMargin;
+        this.minFrames = minFrames;
+        this.bestFrames = bestFrames;
+        this.maxAttempts = maxAttempts;
+        this.maxFrames = maxFrames;
+        this.maxDuration = maxDuration;
+        this.meterRegistry = meterRegistry;
+        this.acceptedFrames = Counter.builder("biometric.stream.frames")
+                .tag("accepted", "true")
+                .description("Streamed login frames by quality gate verdict")
+                .register(meterRegistry);
+        this.rejectedFrames = Counter.builder("biometric.stream.frames")
+                .tag("accepted", "false")
+                .description("Streamed login frames by quality gate verdict")
+                .register(meterRegistry);
+        this.abandonedStreams = Counter.builder("biometric.stream.abandoned")
+                .description("Login frame streams closed by the client before a decision")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open handle of one stream - frames go to stream, the session id goes to the client
+     */
+    public record OpenStream(String sessionId, BiometricFrameStream stream) {
+    }
+
+    /**
+     * Starts a login stream for a user with an ACTIVE enrollment
+     *
+     * @param onDecision receives the final message (type=result) exactly once, not called for abandoned streams
+     * @throws org.springframework.web.server.ResponseStatusException 404/403 like /verify-for-auth
+     */
+    public OpenStream open(String userEmail, double threshold, SecurityContext securityContext,
+                           String clientIp, String userAgent, Consumer<Map<String, Object>> onDecision) {
+
+        User user = verificationService.findActiveEnrollment(userEmail).getUser();
+        BiometricSession session = sessionRepository.save(BiometricSession.builder()
+                .user(user)
+                .sessionId(UUID.randomUUID().toString())
+                .mode(BiometricSession.BiometricMode.LOGIN)
+                .status(BiometricSession.BiometricStatus.ACTIVE)
+                .imagesReceived(0)
+                .createdAt(LocalDateTime.now())
+                .clientIp(clientIp)
+                .userAgent(userAgent)
+                .build());
+
+        long start = System.nanoTime();
+        String userId = String.valueOf(user.getId());
+        AtomicReference<Disposable> deadline = new AtomicReference<>();
+        BiometricFrameStream stream = new BiometricFrameStream(
+                new BiometricFrameStream.Settings(threshold, confidentMargin, minFrames, bestFrames, maxAttempts, maxFrames),
+                imageQualityGate,
+                image -> reactiveBiometricRestService.verify(userId, image, threshold, true, BiometricPriority.AUTH)
+                        // The answer updates the session and the SecurityContext - not on the event loop
+                        .publishOn(Schedulers.boundedElastic()),
+                decision -> {
+                    Disposable timeout = deadline.get();
+                    if (timeout != null) {
+                        timeout.dispose();
+                    }
+                    onDecision.accept(complete(session, user, userEmail, securityContext, decision, start));
+                });
+        deadline.set(Mono.delay(maxDuration, Schedulers.boundedElastic()).subscribe(tick -> stream.finish()));
+
+        log.info("🎥 Frame stream opened: user={}, session={}", userEmail, session.getSessionId());
+        return new OpenStream(session.getSessionId(), stream);
+    }
+
+    public void recordFrame(BiometricFrameStream.FrameVerdict verdict) {
+        (verdict.accepted() ? acceptedFrames : rejectedFrames).increment();
+    }
+
+    /**
+     * The client disconnected - marks the session ABANDONED unless it was already decided
+     */
+    public void abandon(OpenStream open) {
+        if (!open.stream().abandon()) {
+            return;
+        }
+        sessionRepository.findBySessionId(open.sessionId()).ifPresent(session -> {
+            session.setStatus(BiometricSession.BiometricStatus.ABANDONED);
+            session.setImagesReceived(open.stream().framesReceived());
+            session.setCompletedAt(LocalDateTime.now());
+            sessionRepository.save(session);
+        });
+        abandonedStreams.increment();
+        log.info("🎥 Frame stream abandoned: session={}", open.sessionId());
+    }
+
+    private Map<String, Object> complete(BiometricSession session, User user, String userEmail,
+                                         SecurityContext securityContext, BiometricFrameStream.Decision decision,
+                                         long start) {
+        if (decision.verified()) {
+            verificationService.upgradeAuthentication(user, securityContext);
+        }
+
+        session.setStatus(decision.verified() ? BiometricSession.BiometricStatus.COMPLETED
+                : BiometricSession.BiometricStatus.FAILED);
+        session.setImagesReceived(decision.framesReceived());
+        session.setCompletedAt(LocalDateTime.now());
+        sessionRepository.save(session);
+
+        decisionTimer(decision.outcome()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("🎥 Frame stream decided: user={}, outcome={}, frames={}, sent={}",
+                userEmail, decision.outcome(), decision.framesReceived(), decision.framesSent());
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "result");
+        message.put("status", decision.verified() ? "verified" : "failed");
+        message.put("outcome", decision.outcome().name());
+        message.put("user_email", userEmail);
+        if (decision.result() != null) {
+            message.put("confidence", decision.result().confidence());
+        }
+        if (decision.hint() != null) {
+            message.put("reason", decision.hint());
+        }
+        message.put("frames_received", decision.framesReceived());
+        message.put("frames_sent", decision.framesSent());
+        if (decision.verified()) {
+            message.put("redirect_url", "/oauth2/authorize");
+        }
+        return message;
+    }
+
+    private Timer decisionTimer(BiometricFrameStream.Outcome outcome) {
+        return Timer.builder("biometric.stream.decision")
+                .tag("outcome", outcome.name().toLowerCase())
+                .description("Time from opening a login frame stream to its decision")
+                .register(meterRegistry);
+    }
+}
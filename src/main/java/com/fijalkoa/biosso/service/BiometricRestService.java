@@ -1,9 +1,22 @@
 package com.fijalkoa.biosso.service;
 
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricServiceUnavailableException;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.DeferredImagePart;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityException;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.TemplatesResponse;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -14,13 +27,28 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Biometric REST Service - Proxy layer for Python Microservice
  * 
  * Forwards multipart form data (images + metadata) to Python biometric service
+ * Images are streamed part by part from the upload (see ImagePartResource),
+ * or downscaled and re-encoded first when normalisation is enabled (see ImageNormalizer);
+ * the five registration images are preprocessed in parallel and sent as they become ready
+ * Requests are spread over Python replicas by BiometricLoadBalancer
+ * Register/verify run under BiometricCallGuard (circuit breaker, adaptive limit, bulkhead)
+ * and are dispatched by BiometricPriority - login verifications go before enrollments
+ * Identical verify requests inside a short window are answered from VerificationResultCache,
+ * concurrent identical ones share a single Python call (VerificationSingleFlight)
+ * With app.biometric.transport=uds, verify and embed go to a Python sidecar over a Unix domain
+ * socket instead (BiometricSocketTransport) - same guard, no HTTP/multipart/JSON
+ * Standalone verify frames that are blurry, badly exposed or with a too small face are rejected
+ * with 422 before any call (ImageQualityGate)
  * All encryption, face recognition, and embeddings are handled by Python
  * Java only:
  * - Validates input
@@ -32,14 +60,23 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class BiometricRestService {
 
-    @Value("${app.biometric.microservice-url:http://localhost:5001}")
-    private String microserviceUrl;
-
     private final RestTemplate restTemplate;
+    private final BiometricLoadBalancer loadBalancer;
+    private final BiometricCallGuard callGuard;
+    private final ImageNormalizer imageNormalizer;
+    private final VerificationResultCache verificationResultCache;
+    private final VerificationSingleFlight verificationSingleFlight;
+    private final BiometricSocketTransport socketTransport;
+    private final ImageQualityGate imageQualityGate;
 
     /**
      * Register user with multiple face images
-     * Forwards multipart request to Python microservice
+     * Forwards multipart request to Python microservice (ENROLL priority)
+     *
+     * The five images are validated up front, then preprocessed in parallel once the call
+     * guard admits the call - a refused or queued registration does not use the image pool.
+     * The POST to Python starts right away - each part is written as soon as it is
+     * ready, so registration costs about the slowest image instead of the sum of all five.
      */
     public ResponseEntity<Map<String, Object>> registerUser(
             String userId,
@@ -50,62 +87,44 @@ public class BiometricRestService {
             MultipartFile imageDown,
             boolean checkLiveness) {
 
+        Map<String, MultipartFile> images = new LinkedHashMap<>();
+        images.put("front", imageFront);
+        images.put("left", imageLeft);
+        images.put("right", imageRight);
+        images.put("up", imageUp);
+        images.put("down", imageDown);
+
+        List<DeferredImagePart> parts = new ArrayList<>(images.size());
         try {
             log.info("📤 Forwarding registration request to Python: user={}", userId);
 
-            // Build multipart form for Python
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("user_id", userId);
-            body.add("check_liveness", String.valueOf(checkLiveness));
-            
-            // Add all 5 images
-            body.add("image_front", new ByteArrayResource(imageFront.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "front.jpg";
-                }
-            });
-            
-            body.add("image_left", new ByteArrayResource(imageLeft.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "left.jpg";
-                }
-            });
-            
-            body.add("image_right", new ByteArrayResource(imageRight.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "right.jpg";
-                }
-            });
-            
-            body.add("image_up", new ByteArrayResource(imageUp.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "up.jpg";
-                }
-            });
-            
-            body.add("image_down", new ByteArrayResource(imageDown.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "down.jpg";
-                }
-            });
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            
-            HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(body, headers);
+            validateImages(images);
 
             long startTime = System.currentTimeMillis();
-            
-            ResponseEntity<Map> pythonResponse = restTemplate.postForEntity(
-                    microserviceUrl + "/api/biometrics/register",
-                    request,
-                    Map.class
-            );
+
+            ResponseEntity<Map> pythonResponse = callGuard.execute(BiometricPriority.ENROLL, () -> {
+                // Build multipart form for Python - admitted, so preprocessing of all 5 images starts now, in parallel
+                MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+                body.add("user_id", userId);
+                body.add("check_liveness", String.valueOf(checkLiveness));
+                images.forEach((angle, image) -> {
+                    String filename = angle + ".jpg";
+                    DeferredImagePart part = new DeferredImagePart(imageNormalizer.prepareAsync(image, filename), filename);
+                    parts.add(part);
+                    body.add("image_" + angle, part);
+                });
+
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+                HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(body, headers);
+
+                return loadBalancer.execute(baseUrl -> restTemplate.postForEntity(
+                        baseUrl + "/api/biometrics/register",
+                        request,
+                        Map.class
+                ));
+            });
 
             long processingTime = System.currentTimeMillis() - startTime;
             log.info("✅ Python response received for registration: status={}, time={}ms", 
@@ -118,13 +137,16 @@ public class BiometricRestService {
             
             return typedResponse;
 
-        } catch (IOException e) {
-            log.error("❌ Error reading image files: {}", e.getMessage(), e);
-            return ResponseEntity.status(400)
+        } catch (IllegalArgumentException e) {
+            log.warn("❌ Invalid registration images for user {}: {}", userId, e.getMessage());
+            return ResponseEntity.badRequest()
                 .body(Map.of(
                     "success", false,
-                    "error", "Failed to read image files: " + e.getMessage()
+                    "error", e.getMessage()
                 ));
+        } catch (BiometricServiceUnavailableException e) {
+            log.warn("⛔ Registration rejected without calling Python: {}", e.getReason());
+            return unavailable(e);
         } catch (Exception e) {
             log.error("❌ Error forwarding registration to Python: {}", e.getMessage(), e);
             return ResponseEntity.status(500)
@@ -132,101 +154,247 @@ public class BiometricRestService {
                     "success", false,
                     "error", "Failed to forward request to biometric service: " + e.getMessage()
                 ));
+        } finally {
+            // No-op for parts already sent, stops queued preprocessing when the call failed early
+            parts.forEach(DeferredImagePart::cancel);
         }
     }
 
     /**
      * Verify user with single face image
-     * Forwards multipart request to Python microservice
+     * Forwards multipart request to Python microservice (standalone, VERIFY priority)
      */
     public ResponseEntity<Map<String, Object>> verifyUser(
             String userId,
             MultipartFile image,
             double threshold,
             boolean checkLiveness) {
+        return verifyUser(userId, image, threshold, checkLiveness, BiometricPriority.VERIFY);
+    }
+
+    /**
+     * Verify user with single face image in the given dispatch class
+     */
+    public ResponseEntity<Map<String, Object>> verifyUser(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
+        return verifyUser(userId, image, threshold, checkLiveness, priority, null);
+    }
+
+    /**
+     * Verify user with single face image in the given dispatch class
+     * The frame passes ImageQualityGate first (scored inside faceBox when the client sent one)
+     * Response body in the public /verify JSON shape (see VerifyResponse.toMap),
+     * errors as JSON bodies with 400/422/429/500/503
+     */
+    public ResponseEntity<Map<String, Object>> verifyUser(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority,
+            ImageQualityGate.FaceBox faceBox) {
+
+        try {
+            imageQualityGate.check(image, faceBox);
+
+            ResponseEntity<VerifyResponse> response = verifyOrThrow(userId, image, threshold, checkLiveness, priority);
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .body(response.getBody().toMap());
+
+        } catch (ImageQualityException e) {
+            log.info("📉 Verification frame rejected by quality gate: user={}, reason={}", userId, e.getReason());
+            return ResponseEntity.status(e.getHttpStatus()).body(e.toMap());
+        } catch (IllegalArgumentException e) {
+            log.warn("❌ Invalid verification request for user {}: {}", userId, e.getMessage());
+            return ResponseEntity.badRequest()
+                .body(Map.of(
+                    "success", false,
+                    "error", e.getMessage()
+                ));
+        } catch (BiometricServiceUnavailableException e) {
+            log.warn("⛔ Verification rejected without calling Python: {}", e.getReason());
+            return unavailable(e);
+        } catch (Exception e) {
+            log.error("❌ Error forwarding verification to Python: {}", e.getMessage(), e);
+            return ResponseEntity.status(500)
+                .body(Map.of(
+                    "success", false,
+                    "error", "Failed to forward request to biometric service: " + e.getMessage()
+                ));
+        }
+    }
+
+    /**
+     * Typed verify for internal callers (login) - no JSON tree, no Map lookups
+     * Errors come back as status only: 503/429 with Retry-After, 500
+     */
+    public ResponseEntity<VerifyResponse> verify(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
 
         try {
-            log.info("📤 Forwarding verification request to Python: user={}, threshold={}", userId, threshold);
+            return verifyOrThrow(userId, image, threshold, checkLiveness, priority);
+        } catch (BiometricServiceUnavailableException e) {
+            log.warn("⛔ Verification rejected without calling Python: {}", e.getReason());
+            return unavailableStatus(e);
+        } catch (Exception e) {
+            log.error("❌ Error forwarding verification to Python: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    /**
+     * A repeat of the same request (same user, image bytes, threshold, liveness flag)
+     * inside the cache TTL returns the previous result without calling Python,
+     * one arriving while the same request is in flight waits for and shares that call
+     */
+    private ResponseEntity<VerifyResponse> verifyOrThrow(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
 
+        VerificationResultCache.Key key = null;
+        if (verificationResultCache.isEnabled() || verificationSingleFlight.isEnabled()) {
+            key = verificationResultCache.key(userId, image, threshold, checkLiveness);
+        }
+        if (key != null && verificationResultCache.isEnabled()) {
+            ResponseEntity<VerifyResponse> cached = verificationResultCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        VerificationResultCache.Key cacheKey = verificationResultCache.isEnabled() ? key : null;
+        Supplier<ResponseEntity<VerifyResponse>> call =
+                () -> forwardVerification(userId, image, threshold, checkLiveness, priority, cacheKey);
+        return key != null && verificationSingleFlight.isEnabled()
+                ? verificationSingleFlight.execute(key, call)
+                : call.get();
+    }
+
+    /**
+     * The actual verify call to Python - runs once per flight, errors are thrown to all waiters
+     */
+    private ResponseEntity<VerifyResponse> forwardVerification(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority,
+            VerificationResultCache.Key cacheKey) {
+
+        log.info("📤 Forwarding verification request to Python: user={}, threshold={}", userId, threshold);
+
+        Resource part = imageNormalizer.toPart(image, "face.jpg");
+        long startTime = System.currentTimeMillis();
+
+        ResponseEntity<VerifyResponse> response;
+        if (socketTransport.isEnabled()) {
+            response = callGuard.execute(priority, () -> ResponseEntity.ok(
+                    socketTransport.verify(userId, part, threshold, checkLiveness)));
+        } else {
             // Build multipart form for Python
             MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
             body.add("user_id", userId);
             body.add("threshold", String.valueOf(threshold));
             body.add("check_liveness", String.valueOf(checkLiveness));
-            
-            body.add("image", new ByteArrayResource(image.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return "face.jpg";
-                }
-            });
+            body.add("image", part);
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-            
+
             HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(body, headers);
 
-            long startTime = System.currentTimeMillis();
-            
-            ResponseEntity<Map> pythonResponse = restTemplate.postForEntity(
-                    microserviceUrl + "/api/biometrics/verify",
+            response = callGuard.execute(priority, () -> loadBalancer.execute(baseUrl -> restTemplate.postForEntity(
+                    baseUrl + "/api/biometrics/verify",
                     request,
-                    Map.class
-            );
+                    VerifyResponse.class
+            )));
+        }
 
-            long processingTime = System.currentTimeMillis() - startTime;
-            log.info("✅ Python response received for verification: status={}, time={}ms", 
-                pythonResponse.getStatusCodeValue(), processingTime);
+        long processingTime = System.currentTimeMillis() - startTime;
+        log.info("✅ Python response received for verification: status={}, time={}ms",
+            response.getStatusCode().value(), processingTime);
 
-            @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> typedResponse = 
-                (ResponseEntity<Map<String, Object>>) (ResponseEntity<?>) pythonResponse;
-            
-            return typedResponse;
+        if (response.getBody() == null) {
+            throw new IllegalStateException("Empty verification response from biometric service");
+        }
+        // Cached before the flight ends, so a request arriving in between finds one or the other
+        if (cacheKey != null) {
+            verificationResultCache.put(cacheKey, response);
+        }
+        return response;
+    }
 
-        } catch (IOException e) {
-            log.error("❌ Error reading image file: {}", e.getMessage(), e);
-            return ResponseEntity.status(400)
-                .body(Map.of(
-                    "success", false,
-                    "error", "Failed to read image file: " + e.getMessage()
-                ));
+    /**
+     * Probe embedding for one face image (no matching on the Python side)
+     * Used when matching runs in the Java tier - the embedding is bound straight into a float[]
+     * Errors come back as status only (503/429 with Retry-After, 500)
+     */
+    public ResponseEntity<EmbeddingResponse> extractEmbedding(
+            MultipartFile image,
+            boolean checkLiveness,
+            BiometricPriority priority) {
+
+        try {
+            Resource part = imageNormalizer.toPart(image, "face.jpg");
+            if (socketTransport.isEnabled()) {
+                return callGuard.execute(priority, () -> ResponseEntity.ok(socketTransport.embed(part, checkLiveness)));
+            }
+
+            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+            body.add("check_liveness", String.valueOf(checkLiveness));
+            body.add("image", part);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+
+            HttpEntity<MultiValueMap<String, Object>> request = new HttpEntity<>(body, headers);
+
+            return callGuard.execute(priority, () -> loadBalancer.execute(baseUrl -> restTemplate.postForEntity(
+                    baseUrl + "/api/biometrics/embed",
+                    request,
+                    EmbeddingResponse.class
+            )));
+
+        } catch (BiometricServiceUnavailableException e) {
+            log.warn("⛔ Embedding extraction rejected without calling Python: {}", e.getReason());
+            return unavailableStatus(e);
         } catch (Exception e) {
-            log.error("❌ Error forwarding verification to Python: {}", e.getMessage(), e);
-            return ResponseEntity.status(500)
-                .body(Map.of(
-                    "success", false,
-                    "error", "Failed to forward request to biometric service: " + e.getMessage()
-                ));
+            log.error("❌ Error extracting embedding in Python: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         }
     }
 
     /**
-     * Health check for biometric microservice
+     * Enrolled embeddings of a user (one per enrolled angle, as float[][])
+     * Fetched once per template and cached by EmbeddingTemplateCache
+     * Errors come back as status only (503/429 with Retry-After, 500)
      */
-    public ResponseEntity<Map<String, Object>> healthCheck() {
+    public ResponseEntity<TemplatesResponse> fetchTemplates(String userId) {
         try {
-            log.debug("🔍 Checking Python biometric service health...");
-            
-            ResponseEntity<Map> pythonResponse = restTemplate.getForEntity(
-                    microserviceUrl + "/api/biometrics/health",
-                    Map.class
-            );
-
-            @SuppressWarnings("unchecked")
-            ResponseEntity<Map<String, Object>> typedResponse = 
-                (ResponseEntity<Map<String, Object>>) (ResponseEntity<?>) pythonResponse;
-            
-            log.info("✅ Python service is healthy");
-            return typedResponse;
+            return callGuard.execute(BiometricPriority.AUTH, () -> loadBalancer.execute(baseUrl -> restTemplate.getForEntity(
+                    baseUrl + "/api/biometrics/templates/{userId}",
+                    TemplatesResponse.class,
+                    userId
+            )));
 
+        } catch (BiometricServiceUnavailableException e) {
+            log.warn("⛔ Template fetch rejected without calling Python: {}", e.getReason());
+            return unavailableStatus(e);
         } catch (Exception e) {
-            log.warn("⚠️ Python biometric service is unavailable: {}", e.getMessage());
-            return ResponseEntity.status(503)
-                .body(Map.of(
-                    "status", "unavailable",
-                    "error", "Biometric microservice is not responding"
-                ));
+            log.error("❌ Error fetching templates from Python: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().build();
         }
     }
 
@@ -237,10 +405,10 @@ public class BiometricRestService {
         try {
             log.debug("📊 Fetching metrics from Python service...");
             
-            ResponseEntity<Map> pythonResponse = restTemplate.getForEntity(
-                    microserviceUrl + "/api/biometrics/metrics",
+            ResponseEntity<Map> pythonResponse = loadBalancer.execute(baseUrl -> restTemplate.getForEntity(
+                    baseUrl + "/api/biometrics/metrics",
                     Map.class
-            );
+            ));
 
             @SuppressWarnings("unchecked")
             ResponseEntity<Map<String, Object>> typedResponse = 
@@ -256,4 +424,42 @@ public class BiometricRestService {
                 ));
         }
     }
+
+    /**
+     * Cheap checks before any preprocessing starts - every angle present and an image
+     */
+    static void validateImages(Map<String, MultipartFile> images) {
+        images.forEach((angle, image) -> {
+            if (image == null || image.isEmpty()) {
+                throw new IllegalArgumentException("Missing " + angle + " image");
+            }
+            String contentType = image.getContentType();
+            if (contentType != null && !contentType.startsWith("image/")
+                    && !MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentType)) {
+                throw new IllegalArgumentException("Unsupported content type for " + angle + " image: " + contentType);
+            }
+        });
+    }
+
+    /**
+     * Same status and Retry-After as unavailable(e), without a body - for the typed responses
+     */
+    private static <T> ResponseEntity<T> unavailableStatus(BiometricServiceUnavailableException e) {
+        return ResponseEntity.status(e.getHttpStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .build();
+    }
+
+    /**
+     * Clean 503 (circuit breaker, bulkhead) or 429 (concurrency limit) for calls refused locally
+     */
+    private ResponseEntity<Map<String, Object>> unavailable(BiometricServiceUnavailableException e) {
+        return ResponseEntity.status(e.getHttpStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of(
+                    "success", false,
+                    "error", e.getMessage(),
+                    "reason", e.getReason().name()
+                ));
+    }
 }
@@ -1,5 +1,11 @@
 package com.fijalkoa.biosso.service;
 
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.biometric.TemplatesResponse;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
 import com.fijalkoa.biosso.model.User;
 import com.fijalkoa.biosso.model.UserBiometricMetadata;
 import com.fijalkoa.biosso.repository.BiometricOperationLogRepository;
@@ -7,23 +13,30 @@ import com.fijalkoa.biosso.repository.UserBiometricMetadataRepository;
 import com.fijalkoa.biosso.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Biometric Verification Service
  * 
  * Handles:
- * 1. Verification with Python microservice (face recognition)
+ * 1. Verification with Python microservice (face recognition, AUTH dispatch priority)
  * 2. Embedding matching against enrolled data
  * 3. Authentication token upgrade (from BIOMETRIC_PENDING to FULL)
+ *    or, for passwordless login, from anonymous to FULL on a confident 1:N match
  * 4. Audit logging
  * 
  * After successful biometric verification, user is considered fully authenticated
@@ -35,9 +48,19 @@ import java.util.Map;
 public class BiometricVerificationService {
 
     private final BiometricRestService biometricRestService;
+    private final ReactiveBiometricRestService reactiveBiometricRestService;
     private final UserRepository userRepository;
     private final UserBiometricMetadataRepository biometricMetadataRepository;
     private final BiometricOperationLogRepository operationLogRepository;
+    private final EmbeddingTemplateCache templateCache;
+    private final FaceIdentificationService faceIdentificationService;
+
+    /**
+     * python - Python matches the probe against the enrolled templates (/verify)
+     * java - Python only extracts the probe embedding, matching runs here (VectorSimilarity)
+     */
+    @Value("${app.biometric.matcher.mode:python}")
+    private String matcher = "python";
 
     /**
      * Verify biometric image with enrolled templates
@@ -45,10 +68,117 @@ public class BiometricVerificationService {
      * Called after frontend captures image during login
      * If verification succeeds, completes the authentication flow
      * Then user can proceed to OAuth2 authorization
+     * With app.biometric.matcher.mode=java the matching itself runs in the Java tier (see matchInJava)
      */
     public Map<String, Object> verifyAndAuthenticate(String userEmail, MultipartFile image, double threshold) {
         log.info("🔐 Starting biometric verification for user: {}", userEmail);
 
+        UserBiometricMetadata metadata = findActiveEnrollment(userEmail);
+        User user = metadata.getUser();
+
+        VerifyResponse verifyResult;
+        if ("java".equalsIgnoreCase(matcher) && metadata.getTemplateId() != null) {
+            verifyResult = matchInJava(user, metadata.getTemplateId(), image, threshold);
+        } else {
+            // Call Python microservice for verification
+            verifyResult = requireVerificationResult(
+                    biometricRestService.verify(String.valueOf(user.getId()), image, threshold, true, BiometricPriority.AUTH));
+        }
+
+        return completeVerification(userEmail, user, verifyResult, SecurityContextHolder.getContext());
+    }
+
+    /**
+     * Non-blocking variant of verifyAndAuthenticate
+     *
+     * DB lookups run on the calling (servlet) thread, the Python call does not block any thread.
+     * The caller's SecurityContext is captured up front, so the upgraded authentication lands
+     * in the same context (and session) even though the result arrives on another thread.
+     */
+    public Mono<Map<String, Object>> verifyAndAuthenticateAsync(String userEmail, MultipartFile image, double threshold) {
+        log.info("🔐 Starting async biometric verification for user: {}", userEmail);
+
+        User user = findActiveEnrollment(userEmail).getUser();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        return reactiveBiometricRestService.verify(String.valueOf(user.getId()), image, threshold, true, BiometricPriority.AUTH)
+                .map(response -> completeVerification(userEmail, user, requireVerificationResult(response), securityContext));
+    }
+
+    /**
+     * Passwordless login - "who is this?" instead of "is this user X?"
+     *
+     * FaceIdentificationService decides whether the face confidently belongs to exactly one
+     * enrolled user; only then is the given (fresh) SecurityContext upgraded for that user.
+     * Every refusal is the same 401 and the response names no candidates or scores.
+     */
+    public Map<String, Object> identifyAndAuthenticate(MultipartFile image, SecurityContext securityContext) {
+        log.info("🔐 Starting passwordless biometric login");
+
+        User user = faceIdentificationService.identifyForLogin(image).stream()
+                .mapToObj(userRepository::findById)
+                .flatMap(Optional::stream)
+                .filter(candidate -> biometricMetadataRepository.findByUser(candidate)
+                        .filter(metadata -> metadata.getStatus() == UserBiometricMetadata.BiometricStatus.ACTIVE)
+                        .isPresent())
+                .findFirst()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Face not recognised"));
+
+        log.info("✅ Passwordless biometric login successful for user: {}", user.getEmail());
+        upgradeAuthentication(user, securityContext);
+
+        // Mutable - controller appends redirect_url
+        return new HashMap<>(Map.of(
+                "status", "verified",
+                "message", "Biometric identification successful"
+        ));
+    }
+
+    /**
+     * Match in the Java tier - only the probe embedding comes from Python,
+     * enrolled embeddings come from EmbeddingTemplateCache (fetched from Python once per template)
+     */
+    private VerifyResponse matchInJava(User user, String templateId, MultipartFile image, double threshold) {
+        float[][] templates = templateCache.getOrLoad(user.getId(), templateId, () -> requireEmbeddings(
+                requireVerificationResult(biometricRestService.fetchTemplates(String.valueOf(user.getId())))));
+
+        EmbeddingResponse probe = requireVerificationResult(
+                biometricRestService.extractEmbedding(image, true, BiometricPriority.AUTH));
+        if (probe.livenessFailed()) {
+            log.warn("❌ Liveness check failed for user {}", user.getEmail());
+            return new VerifyResponse(false, 0.0, false, null);
+        }
+
+        float[] unitProbe = VectorSimilarity.normalize(requireEmbedding(probe));
+        double similarity = VectorSimilarity.maxSimilarity(unitProbe, templates);
+
+        log.debug("🧮 Java-side match for user {}: similarity={}, threshold={}", user.getEmail(), similarity, threshold);
+        return new VerifyResponse(similarity >= threshold, similarity, probe.livenessPassed(), null);
+    }
+
+    static float[] requireEmbedding(EmbeddingResponse probe) {
+        if (probe.embedding() == null || probe.embedding().length == 0) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Malformed embedding from biometric service");
+        }
+        return probe.embedding();
+    }
+
+    static float[][] requireEmbeddings(TemplatesResponse templates) {
+        if (templates.embeddings() == null || templates.embeddings().length == 0) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "No enrolled embeddings for template");
+        }
+        for (float[] embedding : templates.embeddings()) {
+            if (embedding == null || embedding.length == 0) {
+                throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Malformed embedding from biometric service");
+            }
+        }
+        return templates.embeddings();
+    }
+
+    /**
+     * Find user and make sure the biometric enrollment is ACTIVE
+     */
+    UserBiometricMetadata findActiveEnrollment(String userEmail) {
         // Find user
         var userOpt = userRepository.findByEmail(userEmail);
         if (userOpt.isEmpty()) {
@@ -71,19 +201,38 @@ public class BiometricVerificationService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Biometric enrollment not active");
         }
 
-        // Call Python microservice for verification
-        Map<String, Object> verifyResult;
-        try {
-            verifyResult = biometricRestService.verifyUser(user.getId(), threshold, image);
-            log.debug("📊 Verification result: {}", verifyResult);
-        } catch (Exception e) {
-            log.error("❌ Biometric verification failed: {}", e.getMessage());
+        return metadata;
+    }
+
+    /**
+     * Unwrap the proxy response - 503 (circuit open / bulkhead full) and 429 (load shed) are passed through
+     */
+    private <T> T requireVerificationResult(ResponseEntity<T> response) {
+        if (response.getStatusCode().value() == HttpStatus.SERVICE_UNAVAILABLE.value()) {
+            log.warn("⛔ Biometric verification service unavailable");
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Biometric verification service unavailable");
+        }
+        if (response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            log.warn("⛔ Biometric verification shed by concurrency limiter");
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Too many biometric verifications, retry shortly");
+        }
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            log.error("❌ Biometric verification failed: status={}", response.getStatusCode());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Biometric verification service error");
         }
 
+        log.debug("📊 Verification result: {}", response.getBody());
+        return response.getBody();
+    }
+
+    /**
+     * Check Python verification result and upgrade authentication on match
+     */
+    private Map<String, Object> completeVerification(String userEmail, User user, VerifyResponse verifyResult,
+                                                     SecurityContext securityContext) {
         // Check verification result
-        boolean isMatched = (boolean) verifyResult.getOrDefault("is_matched", false);
-        double confidence = ((Number) verifyResult.getOrDefault("confidence", 0)).doubleValue();
+        boolean isMatched = verifyResult.matched();
+        double confidence = verifyResult.confidence();
 
         if (!isMatched) {
             log.warn("❌ Biometric verification failed for user: {} (confidence: {})", userEmail, confidence);
@@ -94,17 +243,18 @@ public class BiometricVerificationService {
         log.info("✅ Biometric verification successful for user: {} (confidence: {}%)", userEmail, confidence);
 
         // Step 3: Upgrade authentication - mark user as fully authenticated
-        upgradeAuthentication(user);
+        upgradeAuthentication(user, securityContext);
 
         // Log successful biometric verification
         // TODO: Create BiometricOperationLog entry
 
-        return Map.of(
+        // Mutable - controller appends redirect_url
+        return new HashMap<>(Map.of(
                 "status", "verified",
                 "message", "Biometric verification successful",
                 "user_email", userEmail,
                 "confidence", confidence
-        );
+        ));
     }
 
     /**
@@ -113,7 +263,7 @@ public class BiometricVerificationService {
      * After successful biometric verification, this creates a full authentication token
      * and updates the SecurityContext so user can proceed to OAuth2 authorization endpoint.
      */
-    private void upgradeAuthentication(User user) {
+    void upgradeAuthentication(User user, SecurityContext securityContext) {
         log.info("⬆️  Upgrading authentication for user: {}", user.getEmail());
 
         // Create full authentication token
@@ -124,7 +274,7 @@ public class BiometricVerificationService {
         );
 
         // Update security context
-        SecurityContextHolder.getContext().setAuthentication(fullAuth);
+        securityContext.setAuthentication(fullAuth);
 
         log.info("✅ Authentication upgraded for user: {} - ready for OAuth2 flow", user.getEmail());
     }
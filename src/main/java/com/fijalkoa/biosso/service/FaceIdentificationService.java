@@ -0,0 +1,457 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.biometric.HnswIndex;
+import com.fijalkoa.biosso.biometric.QuantizedVector;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import com.fijalkoa.biosso.model.UserBiometricMetadata;
+import com.fijalkoa.biosso.repository.UserBiometricMetadataRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 1:N face identification for passwordless login - "who is this?" instead of "is this user X?"
+ *
+ * Keeps an HNSW index (see HnswIndex) of the enrolled embeddings of every ACTIVE enrollment
+ * in the Java tier; only the probe embedding comes from Python (/embed).
+ *
+ * - Startup: loads the last snapshot, then reconciles it with the database (enrollments
+ *   added, re-enrolled or deactivated while the node was down); without a snapshot the
+ *   index is built from scratch in the background
+ * - Enrollment status changes arrive from BiometricEnrollmentListener and are applied
+ *   incrementally (insert / tombstone) on a single writer thread, so they stay ordered
+ * - Searches are bounded by search-budget; a search that runs out returns the best
+ *   candidates found so far and is flagged partial
+ * - With quantization (int8 / float16) the graph holds compressed vectors; the top
+ *   rerank-candidates users are re-scored on their full-precision templates
+ *   (EmbeddingTemplateCache - best paired with the off-heap embedding store)
+ * - Snapshots are written every snapshot-interval when the index changed (temp file + atomic
+ *   move); the index is compacted first when too many tombstones piled up
+ *
+ * Two ways in:
+ * - identify(): raw top-k candidates with scores, for administrators only (SecurityConfig)
+ * - identifyForLogin(): passwordless login - at most one user, and only for a live face whose best
+ *   match clears login-threshold with login-margin over the runner-up; no candidate list leaves
+ *
+ * Disabled by default (app.biometric.identification.enabled).
+ *
+ * Metrics: biometric.identification.search, biometric.identification.users
+ */
+@Slf4j
+@Service
+public class FaceIdentificationService {
+
+    private static final long INDEX_SEED = 0x5EEDL;
+    private static final double COMPACT_DELETED_RATIO = 0.3;
+
+    private final BiometricRestService biometricRestService;
+    private final UserBiometricMetadataRepository biometricMetadataRepository;
+    private final EmbeddingTemplateCache templateCache;
+    private final boolean enabled;
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int defaultTopK;
+    private final double loginThreshold;
+    private final double loginMargin;
+    private final QuantizedVector.Quantization quantization;
+    private final int rerankCandidates;
+    private final long searchBudgetNanos;
+    private final Path snapshotPath;
+    private final Timer searchTimer;
+
+    private final ExecutorService indexWriter;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Map<Long, String> indexedTemplates = new ConcurrentHashMap<>();
+    private volatile HnswIndex index;
+    private volatile boolean ready;
+
+    public FaceIdentificationService(
+            BiometricRestService biometricRestService,
+            UserBiometricMetadataRepository biometricMetadataRepository,
+            EmbeddingTemplateCache templateCache,
+            @Value("${app.biometric.identification.enabled:false}") boolean enabled,
+            @Value("${app.biometric.identification.dimensions:512}") int dimensions,
+            @Value("${app.biometric.identification.m:16}") int m,
+            @Value("${app.biometric.identification.ef-construction:200}") int efConstruction,
+            @Value("${app.biometric.identification.ef-search:64}") int efSearch,
+            @Value("${app.biometric.identification.top-k:5}") int defaultTopK,
+            @Value("${app.biometric.identification.login-threshold:0.6}") double loginThreshold,
+            @Value("${app.biometric.identification.login-margin:0.05}") double loginMargin,
+            @Value("${app.biometric.identification.quantization:none}") String quantization,
+            @Value("${app.biometric.identification.rerank-candidates:20}") int rerankCandidates,
+            @Value("${app.biometric.identification.search-budget:50ms}") Duration searchBudget,
+            @Value("${app.biometric.identification.snapshot-path:data/face-index.bin}") String snapshotPath,
+            MeterRegistry meterRegistry) {
+
+        this.biometricRestService = biometricRestService;
+        this.biometricMetadataRepository = biometricMetadataRepository;
+        this.templateCache = templateCache;
+        this.enabled = enabled;
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.defaultTopK = defaultTopK;
+        this.loginThreshold = loginThreshold;
+        this.loginMargin = loginMargin;
+        this.quantization = QuantizedVector.Quantization.valueOf(quantization.trim().toUpperCase());
+        this.rerankCandidates = rerankCandidates;
+        this.searchBudgetNanos = searchBudget.toNanos();
+        this.snapshotPath = Path.of(snapshotPath);
+        this.index = new HnswIndex(dimensions, m, efConstruction, this.quantization, INDEX_SEED);
+        this.indexWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "face-index-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.searchTimer = Timer.builder("biometric.identification.search")
+                .description("1:N identification index search time")
+                .register(meterRegistry);
+        Gauge.builder("biometric.identification.users", this, s -> s.index.userCount())
+                .description("Enrollments in the identification index")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadIndex() {
+        if (!enabled) {
+            return;
+        }
+        indexWriter.execute(() -> {
+            if (Files.exists(snapshotPath)) {
+                try {
+                    readSnapshot();
+                    log.info("🗂️ Face index snapshot loaded: {} users from {}", index.userCount(), snapshotPath);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("⚠️ Face index snapshot unreadable, rebuilding: {}", e.getMessage());
+                    index = new HnswIndex(dimensions, m, efConstruction, quantization, INDEX_SEED);
+                    indexedTemplates.clear();
+                }
+            }
+            reconcile();
+            ready = true;
+            log.info("🗂️ Face identification index ready: {} users", index.userCount());
+        });
+    }
+
+    /**
+     * One index search - liveness of the probe (null when Python did not check it) and the best-first candidates
+     */
+    public record Identification(Boolean livenessPassed, List<HnswIndex.Candidate> candidates, boolean partial,
+                                 double searchTimeMs) {
+    }
+
+    /**
+     * Top-k enrolled users most similar to the face in the image (similarity >= minSimilarity)
+     * Candidate ids and scores - administrators only, never a login step
+     */
+    public Map<String, Object> identify(MultipartFile image, Integer topK, double minSimilarity) {
+        int k = topK == null ? defaultTopK : Math.max(1, Math.min(topK, 50));
+        Identification identification = search(image, k);
+        if (Boolean.FALSE.equals(identification.livenessPassed())) {
+            return new LinkedHashMap<>(Map.of("candidates", List.of(), "liveness_passed", false, "partial", false));
+        }
+
+        List<Map<String, Object>> candidates = identification.candidates().stream()
+                .filter(candidate -> candidate.similarity() >= minSimilarity)
+                .map(candidate -> Map.<String, Object>of(
+                        "user_id", candidate.userId(),
+                        "similarity", candidate.similarity()))
+                .toList();
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("candidates", candidates);
+        body.put("partial", identification.partial());
+        body.put("search_time_ms", identification.searchTimeMs());
+        return body;
+    }
+
+    /**
+     * Passwordless login - the one enrolled user this face belongs to, if the match is confident
+     *
+     * Empty unless liveness passed, the search completed within its budget, the best match
+     * reaches login-threshold and leads the runner-up (another user) by login-margin.
+     */
+    public OptionalLong identifyForLogin(MultipartFile image) {
+        Identification identification = search(image, 2);
+        if (!Boolean.TRUE.equals(identification.livenessPassed())) {
+            log.warn("❌ Passwordless login refused: liveness not confirmed");
+            return OptionalLong.empty();
+        }
+        if (identification.partial()) {
+            log.warn("❌ Passwordless login refused: identification search hit its budget");
+            return OptionalLong.empty();
+        }
+        List<HnswIndex.Candidate> candidates = identification.candidates();
+        if (candidates.isEmpty() || candidates.get(0).similarity() < loginThreshold) {
+            log.warn("❌ Passwordless login refused: no match above {}", loginThreshold);
+            return OptionalLong.empty();
+        }
+        if (candidates.size() > 1 && candidates.get(0).similarity() - candidates.get(1).similarity() < loginMargin) {
+            log.warn("❌ Passwordless login refused: ambiguous match (runner-up within {})", loginMargin);
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(candidates.get(0).userId());
+    }
+
+    private Identification search(MultipartFile image, int k) {
+        if (!enabled) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Face identification is disabled");
+        }
+        if (!ready) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Face identification index is still loading");
+        }
+
+        EmbeddingResponse probe = requireBody(biometricRestService.extractEmbedding(image, true, BiometricPriority.AUTH));
+        if (probe.livenessFailed()) {
+            log.warn("❌ Liveness check failed during identification");
+            return new Identification(false, List.of(), false, 0);
+        }
+
+        float[] unitProbe = VectorSimilarity.normalize(BiometricVerificationService.requireEmbedding(probe));
+        if (unitProbe.length != dimensions) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Probe embedding has " + unitProbe.length + " dimensions, index expects " + dimensions);
+        }
+
+        long start = System.nanoTime();
+        HnswIndex.SearchResult result;
+        if (quantization == QuantizedVector.Quantization.NONE) {
+            result = index.search(unitProbe, k, efSearch, searchBudgetNanos);
+        } else {
+            HnswIndex.SearchResult approximate = index.search(unitProbe, Math.max(k, rerankCandidates), efSearch, searchBudgetNanos);
+            result = new HnswIndex.SearchResult(rerank(unitProbe, approximate.candidates(), k), approximate.partial());
+        }
+        long elapsed = System.nanoTime() - start;
+        searchTimer.record(elapsed, TimeUnit.NANOSECONDS);
+
+        if (result.partial()) {
+            log.warn("⏱️ Identification search hit its budget ({} ms), returning partial candidates",
+                    TimeUnit.NANOSECONDS.toMillis(searchBudgetNanos));
+        }
+        return new Identification(probe.livenessPassed(), result.candidates(), result.partial(), elapsed / 1_000_000.0);
+    }
+
+    /**
+     * Apply an enrollment change (called by BiometricEnrollmentListener after commit)
+     */
+    public void onEnrollmentChanged(UserBiometricMetadata metadata, boolean removed) {
+        if (!enabled || metadata.getUser() == null) {
+            return;
+        }
+        long userId = metadata.getUser().getId();
+        boolean active = !removed && metadata.getStatus() == UserBiometricMetadata.BiometricStatus.ACTIVE
+                && metadata.getTemplateId() != null;
+        String templateId = metadata.getTemplateId();
+
+        indexWriter.execute(() -> {
+            if (active) {
+                index(userId, templateId);
+            } else if (index.remove(userId)) {
+                indexedTemplates.remove(userId);
+                dirty.set(true);
+                log.info("🗂️ User {} removed from face index", userId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.biometric.identification.snapshot-interval:5m}",
+            initialDelayString = "${app.biometric.identification.snapshot-interval:5m}")
+    public void snapshot() {
+        if (!enabled || !ready || !dirty.get()) {
+            return;
+        }
+        indexWriter.execute(() -> {
+            if (index.deletedRatio() > COMPACT_DELETED_RATIO) {
+                index = index.compact();
+                log.info("🗜️ Face index compacted: {} nodes", index.nodeCount());
+            }
+            dirty.set(false);
+            try {
+                writeSnapshot();
+                log.debug("💾 Face index snapshot written: {} users", index.userCount());
+            } catch (IOException e) {
+                dirty.set(true);
+                log.warn("⚠️ Could not write face index snapshot: {}", e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        indexWriter.shutdown();
+        try {
+            if (enabled && ready && dirty.get() && indexWriter.awaitTermination(10, TimeUnit.SECONDS)) {
+                writeSnapshot();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("⚠️ Could not write face index snapshot on shutdown: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Bring the index in line with the ACTIVE enrollments in the database
+     */
+    private void reconcile() {
+        Map<Long, String> active = new HashMap<>();
+        for (UserBiometricMetadata metadata : biometricMetadataRepository.findByStatus(UserBiometricMetadata.BiometricStatus.ACTIVE)) {
+            if (metadata.getTemplateId() != null) {
+                active.put(metadata.getUser().getId(), metadata.getTemplateId());
+            }
+        }
+
+        Set<Long> stale = new HashSet<>(indexedTemplates.keySet());
+        stale.removeAll(active.keySet());
+        for (Long userId : stale) {
+            index.remove(userId);
+            indexedTemplates.remove(userId);
+            dirty.set(true);
+        }
+
+        active.forEach((userId, templateId) -> {
+            if (!templateId.equals(indexedTemplates.get(userId))) {
+                index(userId, templateId);
+            }
+        });
+    }
+
+    private void index(long userId, String templateId) {
+        if (Objects.equals(indexedTemplates.get(userId), templateId)) {
+            return;
+        }
+        float[][] templates;
+        try {
+            templates = loadTemplates(userId, templateId);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Could not index user {} (template {}): {}", userId, templateId, e.getMessage());
+            return;
+        }
+
+        index.remove(userId);
+        for (float[] template : templates) {
+            if (template.length != dimensions) {
+                log.warn("⚠️ Template {} has {} dimensions, index expects {} - skipped", templateId, template.length, dimensions);
+                continue;
+            }
+            index.insert(userId, template);
+        }
+        indexedTemplates.put(userId, templateId);
+        dirty.set(true);
+    }
+
+    /**
+     * Exact scores for the approximate (quantized) candidates, best k kept
+     */
+    private List<HnswIndex.Candidate> rerank(float[] unitProbe, List<HnswIndex.Candidate> approximate, int k) {
+        List<HnswIndex.Candidate> exact = new ArrayList<>(approximate.size());
+        for (HnswIndex.Candidate candidate : approximate) {
+            String templateId = indexedTemplates.get(candidate.userId());
+            if (templateId == null) {
+                continue;
+            }
+            try {
+                float similarity = VectorSimilarity.maxSimilarity(unitProbe, loadTemplates(candidate.userId(), templateId));
+                exact.add(new HnswIndex.Candidate(candidate.userId(), similarity));
+            } catch (RuntimeException e) {
+                log.warn("⚠️ Re-rank of user {} failed, keeping approximate score: {}", candidate.userId(), e.getMessage());
+                exact.add(candidate);
+            }
+        }
+        exact.sort(Comparator.comparing(HnswIndex.Candidate::similarity).reversed());
+        return exact.size() > k ? List.copyOf(exact.subList(0, k)) : exact;
+    }
+
+    private float[][] loadTemplates(long userId, String templateId) {
+        return templateCache.getOrLoad(userId, templateId, () -> BiometricVerificationService.requireEmbeddings(
+                requireBody(biometricRestService.fetchTemplates(String.valueOf(userId)))));
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path parent = snapshotPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "face-index", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                index.writeSnapshot(out);
+                Map<Long, String> templates = new HashMap<>(indexedTemplates);
+                out.writeInt(templates.size());
+                for (Map.Entry<Long, String> entry : templates.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            HnswIndex loaded = HnswIndex.readSnapshot(in, INDEX_SEED);
+            if (loaded.getDimensions() != dimensions || loaded.getQuantization() != quantization) {
+                throw new IOException("Snapshot is " + loaded.getDimensions() + "d/" + loaded.getQuantization()
+                        + ", expected " + dimensions + "d/" + quantization);
+            }
+            int count = in.readInt();
+            Map<Long, String> templates = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                templates.put(in.readLong(), in.readUTF());
+            }
+            index = loaded;
+            indexedTemplates.clear();
+            indexedTemplates.putAll(templates);
+        }
+    }
+
+    private static <T> T requireBody(ResponseEntity<T> response) {
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            throw new ResponseStatusException(response.getStatusCode(), "Biometric service error");
+        }
+        return response.getBody();
+    }
+}
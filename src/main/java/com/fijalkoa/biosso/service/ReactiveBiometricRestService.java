@@ -0,0 +1,312 @@
+package com.fijalkoa.biosso.service;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricEndpoint;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricServiceUnavailableException;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityException;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Reactive Biometric REST Service - Non-blocking proxy to Python Microservice
+ *
+ * Same contract as BiometricRestService, but built on WebClient:
+ * - Returns Mono, no thread is parked while Python is matching faces
+ * - Used by the *-async endpoints and /verify-batch in BiometricController
+ * - Servlet worker is released as soon as the outbound request is started
+ * - Replica chosen per request by BiometricLoadBalancer, outcome fed back to it
+ * - Images go through ImageNormalizer like in the blocking path
+ * - Admitted by BiometricCallGuard like the blocking path - queued calls wait without a thread (503/429 when refused)
+ * - Verification frames pass ImageQualityGate like in the blocking path (422 with reason and scores)
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReactiveBiometricRestService {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> MAP_TYPE =
+            new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<VerifyResponse> VERIFY_TYPE =
+            new ParameterizedTypeReference<>() {};
+
+    private final WebClient webClient;
+    private final BiometricLoadBalancer loadBalancer;
+    private final BiometricCallGuard callGuard;
+    private final ImageNormalizer imageNormalizer;
+    private final ImageQualityGate imageQualityGate;
+
+    /**
+     * Register user with multiple face images (non-blocking)
+     *
+     * Images are preprocessed in parallel, each one is an async part of the multipart body,
+     * so the request starts immediately and a part is written as soon as it is ready.
+     * Preprocessing starts only once the call guard admits the call, and whatever is still
+     * queued when the call ends early (Python error, subscriber cancelled) is cancelled.
+     */
+    public Mono<ResponseEntity<Map<String, Object>>> registerUser(
+            String userId,
+            MultipartFile imageFront,
+            MultipartFile imageLeft,
+            MultipartFile imageRight,
+            MultipartFile imageUp,
+            MultipartFile imageDown,
+            boolean checkLiveness) {
+
+        log.info("📤 Forwarding async registration request to Python: user={}", userId);
+
+        Map<String, MultipartFile> images = new LinkedHashMap<>();
+        images.put("front", imageFront);
+        images.put("left", imageLeft);
+        images.put("right", imageRight);
+        images.put("up", imageUp);
+        images.put("down", imageDown);
+
+        try {
+            BiometricRestService.validateImages(images);
+        } catch (IllegalArgumentException e) {
+            log.warn("❌ Invalid registration images for user {}: {}", userId, e.getMessage());
+            return Mono.just(ResponseEntity.badRequest()
+                    .body(Map.of(
+                            "success", false,
+                            "error", e.getMessage()
+                    )));
+        }
+
+        return Mono.defer(() -> {
+            List<CompletableFuture<Resource>> prepared = new ArrayList<>(images.size());
+            return post("/api/biometrics/register", () -> {
+                MultipartBodyBuilder body = new MultipartBodyBuilder();
+                body.part("user_id", userId);
+                body.part("check_liveness", String.valueOf(checkLiveness));
+                images.forEach((angle, image) -> {
+                    String filename = angle + ".jpg";
+                    body.asyncPart("image_" + angle, Mono.fromFuture(prepare(prepared, image, filename)), Resource.class)
+                            .filename(filename);
+                });
+                return body;
+            }, "registration", BiometricPriority.ENROLL)
+                    .doFinally(signal -> cancelUnfinished(prepared));
+        });
+    }
+
+    /**
+     * Verify user with single face image (non-blocking, standalone VERIFY priority)
+     */
+    public Mono<ResponseEntity<Map<String, Object>>> verifyUser(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness) {
+        return verifyUser(userId, image, threshold, checkLiveness, BiometricPriority.VERIFY);
+    }
+
+    /**
+     * Verify user with single face image in the given dispatch class (non-blocking)
+     * The frame passes ImageQualityGate first - a rejected frame is a 422 without calling Python
+     */
+    public Mono<ResponseEntity<Map<String, Object>>> verifyUser(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
+
+        try {
+            imageQualityGate.check(image, null);
+        } catch (ImageQualityException e) {
+            log.info("📉 Async verification frame rejected by quality gate: user={}, reason={}", userId, e.getReason());
+            return Mono.just(ResponseEntity.status(e.getHttpStatus()).body(e.toMap()));
+        }
+
+        log.info("📤 Forwarding async verification request to Python: user={}, threshold={}", userId, threshold);
+
+        return post("/api/biometrics/verify", () -> verifyBody(userId, image, threshold, checkLiveness),
+                "verification", priority);
+    }
+
+    /**
+     * Typed variant of verifyUser for callers that only read the result (BiometricVerificationService)
+     * Errors come back as a status-only response, the body is parsed straight into VerifyResponse
+     */
+    public Mono<ResponseEntity<VerifyResponse>> verify(
+            String userId,
+            MultipartFile image,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
+
+        log.info("📤 Forwarding async verification request to Python: user={}, threshold={}", userId, threshold);
+
+        return exchange("/api/biometrics/verify", () -> verifyBody(userId, image, threshold, checkLiveness),
+                "verification", priority, VERIFY_TYPE)
+                .onErrorResume(BiometricServiceUnavailableException.class, e -> {
+                    log.warn("⛔ Async verification rejected without calling Python: {}", e.getReason());
+                    return Mono.just(ResponseEntity.status(e.getHttpStatus())
+                            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                            .build());
+                })
+                .onErrorResume(e -> {
+                    log.error("❌ Error forwarding async verification to Python: {}", e.getMessage(), e);
+                    return Mono.just(ResponseEntity.internalServerError().build());
+                });
+    }
+
+    private MultipartBodyBuilder verifyBody(String userId, MultipartFile image, double threshold, boolean checkLiveness) {
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        body.part("user_id", userId);
+        body.part("threshold", String.valueOf(threshold));
+        body.part("check_liveness", String.valueOf(checkLiveness));
+        body.part("image", imageNormalizer.toPart(image, "face.jpg"));
+        return body;
+    }
+
+    /**
+     * Verify a micro-batch of (user, image) pairs in a single Python call (non-blocking)
+     * Python answers with {"results": [...]} in request order, see BiometricBatchVerificationService
+     * The images must have passed qualityRejection - BiometricBatchVerificationService checks every item
+     * first, so a rejected frame is a 422 line of its own instead of failing the whole micro-batch
+     */
+    public Mono<ResponseEntity<Map<String, Object>>> verifyBatch(
+            List<String> userIds,
+            List<MultipartFile> images,
+            double threshold,
+            boolean checkLiveness,
+            BiometricPriority priority) {
+
+        log.info("📤 Forwarding batch verification request to Python: items={}, threshold={}", userIds.size(), threshold);
+
+        return Mono.defer(() -> {
+            List<CompletableFuture<Resource>> prepared = new ArrayList<>(images.size());
+            return post("/api/biometrics/verify-batch", () -> {
+                MultipartBodyBuilder body = new MultipartBodyBuilder();
+                body.part("threshold", String.valueOf(threshold));
+                body.part("check_liveness", String.valueOf(checkLiveness));
+                for (int i = 0; i < userIds.size(); i++) {
+                    String filename = "face-" + i + ".jpg";
+                    body.part("user_ids", userIds.get(i));
+                    body.asyncPart("images", Mono.fromFuture(prepare(prepared, images.get(i), filename)), Resource.class)
+                            .filename(filename);
+                }
+                return body;
+            }, "batch verification", priority)
+                    .doFinally(signal -> cancelUnfinished(prepared));
+        });
+    }
+
+    /**
+     * ImageQualityGate for one batch item - the 422 body verifyUser would answer, null when the frame may go to Python
+     */
+    public Map<String, Object> qualityRejection(MultipartFile image) {
+        try {
+            imageQualityGate.check(image, null);
+            return null;
+        } catch (ImageQualityException e) {
+            return e.toMap();
+        }
+    }
+
+    private CompletableFuture<Resource> prepare(List<CompletableFuture<Resource>> prepared, MultipartFile image,
+                                                String filename) {
+        CompletableFuture<Resource> part = imageNormalizer.prepareAsync(image, filename);
+        prepared.add(part);
+        return part;
+    }
+
+    /**
+     * Images not picked up by the image pool yet are skipped, ones already being processed finish unused
+     */
+    private static void cancelUnfinished(List<CompletableFuture<Resource>> prepared) {
+        prepared.forEach(part -> part.cancel(false));
+    }
+
+    private Mono<ResponseEntity<Map<String, Object>>> post(String path, Supplier<MultipartBodyBuilder> body,
+                                                          String operation, BiometricPriority priority) {
+        return exchange(path, body, operation, priority, MAP_TYPE).onErrorResume(BiometricServiceUnavailableException.class, e -> {
+            log.warn("⛔ Async {} rejected without calling Python: {}", operation, e.getReason());
+            return Mono.just(ResponseEntity.status(e.getHttpStatus())
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of(
+                            "success", false,
+                            "error", e.getMessage(),
+                            "reason", e.getReason().name()
+                    )));
+        }).onErrorResume(e -> {
+            log.error("❌ Error forwarding async {} to Python: {}", operation, e.getMessage(), e);
+            return Mono.just(ResponseEntity.status(500)
+                    .body(Map.of(
+                            "success", false,
+                            "error", "Failed to forward request to biometric service: " + e.getMessage()
+                    )));
+        });
+    }
+
+    /**
+     * Admission, replica choice and outcome accounting - the body is decoded straight into the requested type
+     * The request body is built only once the call is admitted, refused calls cost no image preprocessing
+     */
+    private <T> Mono<ResponseEntity<T>> exchange(String path, Supplier<MultipartBodyBuilder> body, String operation,
+                                                BiometricPriority priority, ParameterizedTypeReference<T> responseType) {
+        return callGuard.acquireAsync(priority).flatMap(permit -> {
+            BiometricEndpoint endpoint;
+            MultiValueMap<String, HttpEntity<?>> parts;
+            try {
+                endpoint = loadBalancer.choose();
+                parts = body.get().build();
+            } catch (RuntimeException e) {
+                // Nothing was sent - the permit was never used
+                permit.cancel();
+                throw e;
+            }
+            long startTime = System.nanoTime();
+            endpoint.onRequestStart();
+
+            return webClient.post()
+                    .uri(endpoint.getUrl() + path)
+                    .contentType(MediaType.MULTIPART_FORM_DATA)
+                    .body(BodyInserters.fromMultipartData(parts))
+                    .retrieve()
+                    .toEntity(responseType)
+                    .doOnSuccess(response -> {
+                        loadBalancer.record(endpoint, System.nanoTime() - startTime, false);
+                        permit.release(false);
+                    })
+                    .doOnError(e -> {
+                        boolean failed = !(e instanceof WebClientResponseException w && w.getStatusCode().is4xxClientError());
+                        loadBalancer.record(endpoint, System.nanoTime() - startTime, failed);
+                        permit.release(failed);
+                    })
+                    .doOnCancel(() -> {
+                        loadBalancer.record(endpoint, System.nanoTime() - startTime, false);
+                        permit.cancel();
+                    })
+                    .doOnNext(response -> log.info("✅ Python response received for async {}: status={}, time={}ms",
+                            operation, response.getStatusCode().value(), (System.nanoTime() - startTime) / 1_000_000));
+        });
+    }
+}
@@ -0,0 +1,203 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("AdaptiveConcurrencyLimiter – limit uczony z czasów odpowiedzi")
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    @DisplayName("Powyżej limitu wywołanie czeka w kolejce i dostaje slot po zwolnieniu")
+    void queuedCallIsGrantedOnRelease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter("gradient", 2, Duration.ofSeconds(5));
+        assertThat(limiter.tryAcquire(BiometricPriority.VERIFY)).isTrue();
+        assertThat(limiter.tryAcquire(BiometricPriority.VERIFY)).isTrue();
+        assertThat(limiter.tryAcquire(BiometricPriority.VERIFY)).isFalse();
+
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire(BiometricPriority.VERIFY);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        limiter.onIgnored();
+
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Po upływie max-queue-wait wywołanie jest odrzucane")
+    void queuedCallIsShedAfterMaxWait() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter("gradient", 2, Duration.ofMillis(50));
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+
+        assertThat(limiter.acquire(BiometricPriority.VERIFY)).isFalse();
+        assertThat(limiter.getQueued()).isZero();
+    }
+
+    @Test
+    @DisplayName("Przerwanie wątku, któremu właśnie przydzielono slot → slot wraca do limitera")
+    void interruptedGrantedWaiterReleasesItsSlot() throws Exception {
+        AtomicReference<Thread> waiting = new AtomicReference<>();
+        AtomicReference<ReentrantLock> limiterLock = new AtomicReference<>();
+        // Interrupt lands while the releasing thread holds the lock, right before the grant; the grant
+        // waits until the waiter has seen the interrupt (queued for the lock again), otherwise the
+        // signal could win and the waiter would simply get its slot with the interrupt flag set
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, Duration.ofSeconds(5), 3,
+                Duration.ofSeconds(5), 1, Duration.ofSeconds(5), Duration.ofSeconds(2), new SimpleMeterRegistry()) {
+            @Override
+            public Waiter poll(long nowNanos) {
+                waiting.get().interrupt();
+                while (!limiterLock.get().hasQueuedThread(waiting.get())) {
+                    Thread.onSpinWait();
+                }
+                return super.poll(nowNanos);
+            }
+        };
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("gradient", 2, 2, 32, 64,
+                dispatchQueue, new SimpleMeterRegistry());
+        limiterLock.set((ReentrantLock) ReflectionTestUtils.getField(limiter, "lock"));
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+
+        CompletableFuture<Boolean> queued = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                queued.complete(limiter.acquire(BiometricPriority.VERIFY));
+            } catch (InterruptedException e) {
+                queued.completeExceptionally(e);
+            }
+        });
+        waiting.set(thread);
+        thread.start();
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+
+        limiter.onIgnored();
+
+        assertThatThrownBy(() -> queued.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(InterruptedException.class);
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+        assertThat(limiter.tryAcquire(BiometricPriority.VERIFY)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Nieblokujące oczekiwanie – callback dostaje slot po zwolnieniu, bez wątku w kolejce")
+    void asyncWaiterIsGrantedOnRelease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter("gradient", 2, Duration.ofSeconds(5));
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        BiometricDispatchQueue.Waiter waiter = limiter.acquireAsync(BiometricPriority.VERIFY, decision::complete);
+        assertThat(waiter).isNotNull();
+        assertThat(decision).isNotDone();
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        limiter.onIgnored();
+
+        assertThat(decision).isCompletedWithValue(true);
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        assertThat(limiter.withdraw(waiter)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Nieblokujące oczekiwanie – wycofanie zwalnia miejsce w kolejce, timeout → odrzucenie")
+    void asyncWaiterCanBeWithdrawnOrTimesOut() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter("gradient", 2, Duration.ofMillis(50));
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+        limiter.tryAcquire(BiometricPriority.VERIFY);
+
+        CompletableFuture<Boolean> withdrawn = new CompletableFuture<>();
+        BiometricDispatchQueue.Waiter waiter = limiter.acquireAsync(BiometricPriority.VERIFY, withdrawn::complete);
+        assertThat(limiter.withdraw(waiter)).isTrue();
+        assertThat(limiter.getQueued()).isZero();
+
+        CompletableFuture<Boolean> timedOut = new CompletableFuture<>();
+        limiter.acquireAsync(BiometricPriority.VERIFY, timedOut::complete);
+        assertThat(timedOut.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(limiter.getQueued()).isZero();
+
+        // Neither of them holds a slot
+        limiter.onIgnored();
+        limiter.onIgnored();
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(withdrawn).isNotDone();
+    }
+
+    @Test
+    @DisplayName("Rosnące RTT przy pełnym wykorzystaniu → limit spada")
+    void gradientShrinksWhenLatencyGrows() {
+        AdaptiveConcurrencyLimiter limiter = limiter("gradient", 16, Duration.ZERO);
+        for (int i = 0; i < 50; i++) {
+            saturateAndSample(limiter, FAST, false);
+        }
+        int warmedUp = limiter.getLimit();
+
+        for (int i = 0; i < 50; i++) {
+            saturateAndSample(limiter, FAST * 10, false);
+        }
+
+        assertThat(limiter.getLimit()).isLessThan(warmedUp);
+    }
+
+    @Test
+    @DisplayName("AIMD: +1 przy sukcesach, mnożnikowe cięcie przy błędach")
+    void aimdIncreasesAndBacksOff() {
+        AdaptiveConcurrencyLimiter limiter = limiter("aimd", 8, Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            saturateAndSample(limiter, FAST, false);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(12);
+
+        for (int i = 0; i < 10; i++) {
+            saturateAndSample(limiter, FAST, true);
+        }
+        assertThat(limiter.getLimit()).isLessThan(6);
+    }
+
+    /**
+     * Fill the current limit, complete one call with the given RTT, release the rest unsampled
+     */
+    private static void saturateAndSample(AdaptiveConcurrencyLimiter limiter, long rttNanos, boolean dropped) {
+        int admitted = 0;
+        while (limiter.tryAcquire(BiometricPriority.VERIFY)) {
+            admitted++;
+        }
+        limiter.onSample(rttNanos, dropped);
+        for (int i = 1; i < admitted; i++) {
+            limiter.onIgnored();
+        }
+    }
+
+    /**
+     * Limits 2..32, every priority class waits up to maxQueueWait
+     */
+    private static AdaptiveConcurrencyLimiter limiter(String algorithm, int initialLimit, Duration maxQueueWait) {
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, maxQueueWait, 3, maxQueueWait,
+                1, maxQueueWait, Duration.ofSeconds(2), new SimpleMeterRegistry());
+        return new AdaptiveConcurrencyLimiter(algorithm, initialLimit, 2, 32, 64, dispatchQueue, new SimpleMeterRegistry());
+    }
+}
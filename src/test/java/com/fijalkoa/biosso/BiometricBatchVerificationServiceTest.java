@@ -0,0 +1,197 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.service.BiometricBatchVerificationService;
+import com.fijalkoa.biosso.service.ReactiveBiometricRestService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricBatchVerificationService – mikro-partie dla kiosków (lokalny serwer stub)")
+class BiometricBatchVerificationServiceTest {
+
+    private static final Pattern USER_ID_PART = Pattern.compile("name=\"user_ids\"\\r\\n(?:[^\\r\\n]+\\r\\n)*\\r\\n([^\\r\\n]*)");
+
+    private HttpServer pythonStub;
+    private AtomicInteger batchCalls;
+    private AtomicInteger singleCalls;
+    private ReactiveBiometricRestService reactiveService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        batchCalls = new AtomicInteger();
+        singleCalls = new AtomicInteger();
+
+        pythonStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        pythonStub.setExecutor(Executors.newCachedThreadPool());
+        pythonStub.createContext("/api/biometrics/verify-batch", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1);
+            batchCalls.incrementAndGet();
+            List<String> userIds = new ArrayList<>();
+            Matcher matcher = USER_ID_PART.matcher(body);
+            while (matcher.find()) {
+                userIds.add(matcher.group(1));
+            }
+            // Echo the user id so the test can check the results are matched to the right items
+            String results = userIds.stream()
+                    .map(id -> "{\"is_matched\":true,\"confidence\":0.9,\"echo\":\"" + id + "\"}")
+                    .collect(Collectors.joining(",", "{\"results\":[", "]}"));
+            respond(exchange, 200, results);
+        });
+        pythonStub.createContext("/api/biometrics/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            singleCalls.incrementAndGet();
+            respond(exchange, 200, "{\"is_matched\":false,\"confidence\":0.2}");
+        });
+        pythonStub.start();
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BiometricLoadBalancer loadBalancer = new BiometricLoadBalancer(
+                List.of("http://127.0.0.1:" + pythonStub.getAddress().getPort()), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, Duration.ofMillis(500), 3,
+                Duration.ofMillis(500), 1, Duration.ofSeconds(5), Duration.ofSeconds(2), registry);
+        BiometricCallGuard callGuard = new BiometricCallGuard(50, 10, 50, Duration.ofSeconds(10),
+                Duration.ofSeconds(30), 3, 32, Duration.ZERO,
+                new AdaptiveConcurrencyLimiter("gradient", 8, 2, 32, 64, dispatchQueue, registry), registry);
+        // Real gate with the default thresholds - the blurry-item test relies on it
+        reactiveService = new ReactiveBiometricRestService(WebClient.create(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, registry),
+                new ImageQualityGate(true, 256, 40, 50, 205, 0.35, 96, registry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pythonStub.stop(0);
+    }
+
+    @Test
+    @DisplayName("10 osób, mikro-partie po 4 → 3 wywołania Pythona, wynik dla każdej osoby")
+    void splitsIntoMicroBatches() {
+        BiometricBatchVerificationService service = new BiometricBatchVerificationService(reactiveService, "batch", 4, 2, 256);
+
+        List<Map<String, Object>> lines = service.verify(userIds(10), images(10), 0.5, true)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(batchCalls.get()).isEqualTo(3);
+        assertThat(lines).hasSize(10);
+        assertThat(lines).allSatisfy(line -> {
+            assertThat(line.get("status")).isEqualTo(200);
+            assertThat(line.get("echo")).isEqualTo(line.get("user_id"));
+            assertThat(line.get("user_id")).isEqualTo("user-" + line.get("index"));
+        });
+    }
+
+    @Test
+    @DisplayName("Tryb single → osobne wywołanie /verify dla każdej osoby")
+    void singleModeCallsVerifyPerItem() {
+        BiometricBatchVerificationService service = new BiometricBatchVerificationService(reactiveService, "single", 4, 2, 256);
+
+        List<Map<String, Object>> lines = service.verify(userIds(5), images(5), 0.5, true)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(singleCalls.get()).isEqualTo(5);
+        assertThat(batchCalls.get()).isZero();
+        assertThat(lines).extracting(line -> line.get("is_matched")).containsOnly(false);
+    }
+
+    @Test
+    @DisplayName("Rozmyte zdjęcie → własna linia 422 z powodem, reszta partii idzie do Pythona")
+    void rejectsBlurryItemsOnTheirOwn() throws IOException {
+        BiometricBatchVerificationService service = new BiometricBatchVerificationService(reactiveService, "batch", 4, 2, 256);
+        List<MultipartFile> images = new ArrayList<>(images(3));
+        images.set(1, new MockMultipartFile("image", "blurry.png", "image/png", gradient()));
+
+        List<Map<String, Object>> lines = service.verify(userIds(3), images, 0.5, true)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(lines).hasSize(3);
+        assertThat(lines).filteredOn(line -> line.get("index").equals(1)).singleElement().satisfies(line -> {
+            assertThat(line.get("status")).isEqualTo(422);
+            assertThat(line.get("reason")).isEqualTo("BLURRY");
+            assertThat(line).containsKey("quality");
+        });
+        assertThat(lines).filteredOn(line -> !line.get("index").equals(1))
+                .allSatisfy(line -> assertThat(line.get("echo")).isEqualTo(line.get("user_id")));
+        assertThat(batchCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Różna liczba user_id i zdjęć / za duża partia → 400")
+    void rejectsInvalidBatch() {
+        BiometricBatchVerificationService service = new BiometricBatchVerificationService(reactiveService, "batch", 4, 2, 8);
+
+        assertThatThrownBy(() -> service.verify(userIds(3), images(2), 0.5, true))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> service.verify(userIds(9), images(9), 0.5, true))
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(batchCalls.get()).isZero();
+    }
+
+    private static List<String> userIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "user-" + i).toList();
+    }
+
+    private static List<MultipartFile> images(int count) {
+        return Collections.nCopies(count, new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[512]));
+    }
+
+    private static byte[] gradient() throws IOException {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int value = 70 + 120 * x / image.getWidth();
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricCircuitBreaker;
+import com.fijalkoa.biosso.biometric.BiometricCircuitBreaker.Acquisition;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricCircuitBreaker / BiometricCallGuard – fail fast")
+class BiometricCircuitBreakerTest {
+
+    private static final long SLOW_CALL = TimeUnit.SECONDS.toNanos(5);
+    private static final long OPEN_DURATION = TimeUnit.SECONDS.toNanos(30);
+
+    private AtomicLong clock;
+    private BiometricCircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(1_000);
+        breaker = new BiometricCircuitBreaker(10, 5, 50, SLOW_CALL, OPEN_DURATION, 2, clock::get);
+    }
+
+    @Test
+    @DisplayName("Przekroczony próg błędów → OPEN, kolejne wywołania odrzucone")
+    void opensAfterFailureRateThreshold() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(breaker.tryAcquire(), 1_000, i % 2 == 0);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(Acquisition.REJECTED);
+    }
+
+    @Test
+    @DisplayName("Wolne wywołania liczą się jako błędy")
+    void slowCallsCountAsFailures() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(breaker.tryAcquire(), SLOW_CALL + 1, false);
+        }
+
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    @DisplayName("Po czasie otwarcia → HALF_OPEN z ograniczoną liczbą prób, udane próby zamykają obwód")
+    void halfOpenProbesCloseTheCircuit() {
+        openBreaker();
+        clock.addAndGet(OPEN_DURATION);
+
+        Acquisition probe1 = breaker.tryAcquire();
+        Acquisition probe2 = breaker.tryAcquire();
+        assertThat(probe1).isEqualTo(Acquisition.PROBE);
+        assertThat(probe2).isEqualTo(Acquisition.PROBE);
+        assertThat(breaker.tryAcquire()).isEqualTo(Acquisition.REJECTED);
+
+        breaker.onResult(probe1, 1_000, false);
+        breaker.onResult(probe2, 1_000, false);
+
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isEqualTo(Acquisition.PERMITTED);
+    }
+
+    @Test
+    @DisplayName("Nieudana próba w HALF_OPEN → ponownie OPEN")
+    void failedProbeReopens() {
+        openBreaker();
+        clock.addAndGet(OPEN_DURATION);
+
+        breaker.onResult(breaker.tryAcquire(), 1_000, true);
+
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+        assertThat(breaker.getRemainingOpenNanos()).isEqualTo(OPEN_DURATION);
+    }
+
+    @Test
+    @DisplayName("Health check: żadna replika nie odpowiada → OPEN od razu, powrót repliki → HALF_OPEN bez czekania")
+    void healthChecksDriveTheBreaker() {
+        breaker.onHealthCheck(false);
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+
+        clock.addAndGet(OPEN_DURATION / 2);
+        breaker.onHealthCheck(false);
+        assertThat(breaker.getRemainingOpenNanos()).isEqualTo(OPEN_DURATION);
+
+        breaker.onHealthCheck(true);
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isEqualTo(Acquisition.PROBE);
+    }
+
+    @Test
+    @DisplayName("Breaker otwarty przez błędy wywołań, repliki odpowiadają → health check nie skraca OPEN")
+    void reachableHealthChecksDoNotCutShortAFailureOpenedBreaker() {
+        openBreaker();
+
+        for (int round = 0; round < 3; round++) {
+            clock.addAndGet(OPEN_DURATION / 10);
+            breaker.onHealthCheck(true);
+            assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+            assertThat(breaker.tryAcquire()).isEqualTo(Acquisition.REJECTED);
+        }
+
+        breaker.onHealthCheck(false);
+        breaker.onHealthCheck(true);
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.HALF_OPEN);
+    }
+
+    @Test
+    @DisplayName("Pełny bulkhead → BiometricServiceUnavailableException (BULKHEAD_FULL)")
+    void bulkheadRejectsWhenFull() {
+        // Concurrency limit (16) well above the bulkhead (2) - only the bulkhead can refuse
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(1, Duration.ZERO, 1, Duration.ZERO,
+                1, Duration.ZERO, Duration.ofSeconds(1), new SimpleMeterRegistry());
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("gradient", 16, 16, 16, 0,
+                dispatchQueue, new SimpleMeterRegistry());
+        BiometricCallGuard guard = new BiometricCallGuard(10, 5, 50, Duration.ofSeconds(5), Duration.ofSeconds(30), 2,
+                2, Duration.ZERO, limiter, new SimpleMeterRegistry());
+
+        BiometricCallGuard.Permit first = guard.acquire(BiometricPriority.VERIFY);
+        BiometricCallGuard.Permit second = guard.acquire(BiometricPriority.VERIFY);
+
+        assertThatThrownBy(() -> guard.acquire(BiometricPriority.VERIFY))
+                .isInstanceOf(BiometricServiceUnavailableException.class)
+                .extracting("reason")
+                .isEqualTo(BiometricServiceUnavailableException.Reason.BULKHEAD_FULL);
+
+        first.release(false);
+        assertThatNoException().isThrownBy(() -> guard.acquire(BiometricPriority.VERIFY).release(false));
+        second.release(false);
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(breaker.tryAcquire(), 1_000, true);
+        }
+        assertThat(breaker.getState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+    }
+}
@@ -0,0 +1,96 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricDispatchQueue – priorytety logowania / weryfikacji / rejestracji")
+class BiometricDispatchQueueTest {
+
+    private static final long STARVATION_AGE = TimeUnit.SECONDS.toNanos(2);
+
+    private final Condition condition = new ReentrantLock().newCondition();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BiometricDispatchQueue queue = new BiometricDispatchQueue(
+            8, Duration.ofMillis(500), 3, Duration.ofMillis(500), 1, Duration.ofSeconds(5),
+            Duration.ofNanos(STARVATION_AGE), meterRegistry);
+
+    @Test
+    @DisplayName("Przy pełnych kolejkach przydział slotów odpowiada wagom 8/3/1")
+    void grantsFollowWeights() {
+        for (BiometricPriority priority : BiometricPriority.values()) {
+            for (int i = 0; i < 100; i++) {
+                queue.enqueue(priority, condition, 0);
+            }
+        }
+
+        Map<BiometricPriority, Integer> grants = new EnumMap<>(BiometricPriority.class);
+        for (int i = 0; i < 120; i++) {
+            grants.merge(queue.poll(0).getPriority(), 1, Integer::sum);
+        }
+
+        assertThat(grants.get(BiometricPriority.AUTH)).isBetween(78, 82);
+        assertThat(grants.get(BiometricPriority.VERIFY)).isBetween(28, 32);
+        assertThat(grants.get(BiometricPriority.ENROLL)).isBetween(8, 12);
+    }
+
+    @Test
+    @DisplayName("Rejestracja czekająca dłużej niż starvation-age jest obsłużona przed logowaniami")
+    void starvedEnrollmentIsServedFirst() {
+        queue.enqueue(BiometricPriority.ENROLL, condition, 0);
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue(BiometricPriority.AUTH, condition, STARVATION_AGE / 2);
+        }
+
+        assertThat(queue.poll(STARVATION_AGE / 2).getPriority()).isEqualTo(BiometricPriority.AUTH);
+        assertThat(queue.poll(STARVATION_AGE).getPriority()).isEqualTo(BiometricPriority.ENROLL);
+    }
+
+    @Test
+    @DisplayName("Bezczynna klasa nie gromadzi kredytu")
+    void idleClassDoesNotBurst() {
+        for (int i = 0; i < 50; i++) {
+            queue.enqueue(BiometricPriority.AUTH, condition, 0);
+        }
+        for (int i = 0; i < 40; i++) {
+            queue.poll(0);
+        }
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue(BiometricPriority.ENROLL, condition, 0);
+        }
+
+        int enrollGrants = 0;
+        for (int i = 0; i < 9; i++) {
+            if (queue.poll(0).getPriority() == BiometricPriority.ENROLL) {
+                enrollGrants++;
+            }
+        }
+
+        assertThat(enrollGrants).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Głębokość kolejki i czas oczekiwania są raportowane per klasa")
+    void exposesPerClassMetrics() {
+        queue.enqueue(BiometricPriority.ENROLL, condition, 0);
+        queue.enqueue(BiometricPriority.ENROLL, condition, 0);
+        assertThat(meterRegistry.get("biometric.dispatch.queued").tag("class", "enroll").gauge().value()).isEqualTo(2);
+
+        queue.poll(TimeUnit.MILLISECONDS.toNanos(30));
+
+        assertThat(queue.getQueued(BiometricPriority.ENROLL)).isEqualTo(1);
+        assertThat(meterRegistry.get("biometric.dispatch.wait").tag("class", "enroll").timer().totalTime(TimeUnit.MILLISECONDS))
+                .isEqualTo(30);
+    }
+}
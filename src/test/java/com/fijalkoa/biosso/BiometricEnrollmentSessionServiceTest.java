@@ -0,0 +1,183 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.model.BiometricSession;
+import com.fijalkoa.biosso.model.User;
+import com.fijalkoa.biosso.repository.BiometricSessionRepository;
+import com.fijalkoa.biosso.repository.UserRepository;
+import com.fijalkoa.biosso.service.BiometricEnrollmentSessionService;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("BiometricEnrollmentSessionService – rejestracja zdjęcie po zdjęciu z wznawianiem")
+class BiometricEnrollmentSessionServiceTest {
+
+    @Mock
+    private BiometricRestService biometricRestService;
+    @Mock
+    private BiometricSessionRepository sessionRepository;
+    @Mock
+    private UserRepository userRepository;
+
+    @TempDir
+    Path directory;
+
+    private static final String OWNER = "ania@ania.com";
+
+    private final Map<String, BiometricSession> sessions = new HashMap<>();
+    private final List<String> registeredImages = new ArrayList<>();
+    private BiometricEnrollmentSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new BiometricEnrollmentSessionService(biometricRestService, sessionRepository, userRepository,
+                directory.toString(), Duration.ofMinutes(30), new SimpleMeterRegistry());
+
+        User user = new User();
+        user.setId(7L);
+        user.setEmail(OWNER);
+        lenient().when(userRepository.findByEmail(OWNER)).thenReturn(Optional.of(user));
+        lenient().when(sessionRepository.save(any())).thenAnswer(invocation -> {
+            BiometricSession session = invocation.getArgument(0);
+            sessions.put(session.getSessionId(), session);
+            return session;
+        });
+        lenient().when(sessionRepository.findBySessionId(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(sessions.get(invocation.<String>getArgument(0))));
+    }
+
+    @Test
+    @DisplayName("Częściowy upload zapisuje postęp, powtórzony kąt zastępuje poprzedni")
+    void tracksProgressWithoutCallingPython() {
+        String sessionId = start();
+
+        assertThat(service.putImage(sessionId, OWNER, "front", image("front-1")).getStatusCode()).isEqualTo(HttpStatus.OK);
+        service.putImage(sessionId, OWNER, "left", image("left"));
+        ResponseEntity<Map<String, Object>> response = service.putImage(sessionId, OWNER, "front", image("front-2"));
+
+        assertThat(response.getBody())
+                .containsEntry("status", "ACTIVE")
+                .containsEntry("received", List.of("front", "left"))
+                .containsEntry("missing", List.of("right", "up", "down"))
+                .containsEntry("images_received", 2);
+        assertThat(sessions.get(sessionId).getReceivedParts()).isEqualTo("front,left");
+        verifyNoInteractions(biometricRestService);
+    }
+
+    @Test
+    @DisplayName("Ostatni brakujący kąt wysyła wszystkie 5 zdjęć do Pythona i kończy sesję")
+    void registersOnceAllAnglesArrive() {
+        answerRegistration(HttpStatus.OK);
+        String sessionId = start();
+
+        for (String angle : List.of("down", "up", "front", "right")) {
+            service.putImage(sessionId, OWNER, angle, image(angle));
+        }
+        ResponseEntity<Map<String, Object>> response = service.putImage(sessionId, OWNER, "left", image("left"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("status", "COMPLETED").containsKey("registration");
+        assertThat(registeredImages).containsExactly("front", "left", "right", "up", "down");
+        verify(biometricRestService).registerUser(eq("7"), any(), any(), any(), any(), any(), eq(false));
+        assertThat(directory.resolve(sessionId)).doesNotExist();
+
+        assertThat(service.putImage(sessionId, OWNER, "front", image("again")).getStatusCode())
+                .isEqualTo(HttpStatus.CONFLICT);
+    }
+
+    @Test
+    @DisplayName("Błąd Pythona zostawia sesję aktywną – complete() ponawia bez ponownego uploadu")
+    void keepsSessionForRetryWhenRegistrationFails() {
+        answerRegistration(HttpStatus.SERVICE_UNAVAILABLE);
+        String sessionId = start();
+        for (String angle : List.of("front", "left", "right", "up", "down")) {
+            service.putImage(sessionId, OWNER, angle, image(angle));
+        }
+        assertThat(sessions.get(sessionId).getStatus()).isEqualTo(BiometricSession.BiometricStatus.ACTIVE);
+        assertThat(service.status(sessionId, OWNER).getBody()).containsEntry("missing", List.of());
+
+        registeredImages.clear();
+        answerRegistration(HttpStatus.OK);
+        ResponseEntity<Map<String, Object>> retry = service.complete(sessionId, OWNER);
+
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getBody()).containsEntry("status", "COMPLETED");
+        assertThat(registeredImages).containsExactly("front", "left", "right", "up", "down");
+    }
+
+    @Test
+    @DisplayName("Nieznany kąt → 400, nieznana sesja lub użytkownik → 404, wygasła sesja → 410")
+    void rejectsInvalidUploads() {
+        String sessionId = start();
+
+        assertThat(service.putImage(sessionId, OWNER, "back", image("x")).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(service.putImage(sessionId, OWNER, "front", new MockMultipartFile("image", new byte[0])).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(service.putImage("missing", OWNER, "front", image("x")).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(service.start("nobody@example.com", true, null, null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+
+        service.putImage(sessionId, OWNER, "front", image("front"));
+        sessions.get(sessionId).setCreatedAt(LocalDateTime.now().minusHours(1));
+        assertThat(service.putImage(sessionId, OWNER, "left", image("left")).getStatusCode()).isEqualTo(HttpStatus.GONE);
+        assertThat(sessions.get(sessionId).getStatus()).isEqualTo(BiometricSession.BiometricStatus.ABANDONED);
+        assertThat(directory.resolve(sessionId)).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("Sesja innego użytkownika → 404 jak nieznana, bez zapisu zdjęć")
+    void sessionBelongsToItsOwner() {
+        String sessionId = start();
+
+        assertThat(service.status(sessionId, "mallory@example.com").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(service.putImage(sessionId, "mallory@example.com", "front", image("front")).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(service.complete(sessionId, "mallory@example.com").getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(directory.resolve(sessionId)).doesNotExist();
+    }
+
+    private String start() {
+        ResponseEntity<Map<String, Object>> response = service.start(OWNER, false, "127.0.0.1", "test");
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        return (String) response.getBody().get("session_id");
+    }
+
+    /**
+     * Python stub - records the content of the forwarded images (front, left, right, up, down order)
+     */
+    private void answerRegistration(HttpStatus status) {
+        doAnswer(invocation -> {
+            for (int i = 1; i <= 5; i++) {
+                registeredImages.add(new String(invocation.<MultipartFile>getArgument(i).getBytes()));
+            }
+            return ResponseEntity.status(status).body(Map.<String, Object>of("success", status.is2xxSuccessful()));
+        }).when(biometricRestService).registerUser(anyString(), any(), any(), any(), any(), any(), anyBoolean());
+    }
+
+    private static MockMultipartFile image(String content) {
+        return new MockMultipartFile("image", content + ".jpg", "image/jpeg", content.getBytes());
+    }
+}
@@ -0,0 +1,180 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import com.fijalkoa.biosso.service.BiometricFrameStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricFrameStream – ocena klatek na bieżąco i wybór najlepszych")
+class BiometricFrameStreamTest {
+
+    private final BiometricFrameStream.Settings settings = new BiometricFrameStream.Settings(0.5, 0.1, 3, 3, 3, 30);
+    // Frames are scored whether or not the gate blocks /verify - sharpness >= 40, brightness 50-205
+    private final ImageQualityGate qualityGate = new ImageQualityGate(false, 256, 40, 50, 205, 0.35, 96,
+            new SimpleMeterRegistry());
+    private final List<String> sentFrames = new ArrayList<>();
+    private final Deque<VerifyResponse> answers = new ArrayDeque<>();
+    private final List<BiometricFrameStream.Decision> decisions = new ArrayList<>();
+
+    private final BiometricFrameStream stream = new BiometricFrameStream(settings,
+            qualityGate,
+            image -> {
+                sentFrames.add(image.getOriginalFilename());
+                return Mono.just(ResponseEntity.ok(answers.poll()));
+            },
+            decisions::add);
+
+    @Test
+    @DisplayName("Najostrzejsza z pierwszych klatek idzie do Pythona, pewne dopasowanie kończy strumień")
+    void sendsSharpestFrameAndStopsOnConfidentMatch() throws IOException {
+        answers.add(new VerifyResponse(true, 0.92, true, 40.0));
+
+        assertThat(stream.onFrame(texture(30)).accepted()).isTrue();
+        stream.onFrame(texture(70));
+        assertThat(sentFrames).isEmpty();
+        stream.onFrame(texture(50));
+
+        assertThat(sentFrames).containsExactly("frame-1.jpg");
+        assertThat(decisions).singleElement().satisfies(decision -> {
+            assertThat(decision.outcome()).isEqualTo(BiometricFrameStream.Outcome.VERIFIED);
+            assertThat(decision.framesReceived()).isEqualTo(3);
+            assertThat(decision.framesSent()).isEqualTo(1);
+        });
+        // Frames after the decision are ignored
+        assertThat(stream.onFrame(texture(70)).accepted()).isFalse();
+        assertThat(stream.abandon()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Rozmyte klatki nie trafiają do Pythona, koniec strumienia podaje powód")
+    void reportsReasonWhenNoFrameIsUsable() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            BiometricFrameStream.FrameVerdict verdict = stream.onFrame(gradient());
+            assertThat(verdict.accepted()).isFalse();
+            assertThat(verdict.reason()).isEqualTo("BLURRY");
+        }
+        assertThat(stream.onFrame(new byte[512]).reason()).isEqualTo("UNREADABLE");
+
+        stream.finish();
+
+        assertThat(sentFrames).isEmpty();
+        assertThat(decisions).singleElement().satisfies(decision -> {
+            assertThat(decision.outcome()).isEqualTo(BiometricFrameStream.Outcome.NO_USABLE_FRAME);
+            assertThat(decision.hint()).isEqualTo("BLURRY");
+        });
+    }
+
+    @Test
+    @DisplayName("Niepewne odpowiedzi – kolejne najlepsze klatki, decyduje najlepsza odpowiedź")
+    void triesNextBestFramesWhenUncertain() throws IOException {
+        answers.add(new VerifyResponse(false, 0.45, true, 40.0));
+        answers.add(new VerifyResponse(true, 0.55, true, 40.0));
+        answers.add(new VerifyResponse(false, 0.48, true, 40.0));
+
+        stream.onFrame(texture(40));
+        stream.onFrame(texture(60));
+        stream.onFrame(texture(50));
+        // Two of the first three are still candidates - sent right after the uncertain answers
+        assertThat(sentFrames).containsExactly("frame-1.jpg", "frame-2.jpg", "frame-0.jpg");
+
+        assertThat(decisions).singleElement().satisfies(decision -> {
+            assertThat(decision.outcome()).isEqualTo(BiometricFrameStream.Outcome.VERIFIED);
+            assertThat(decision.result().confidence()).isEqualTo(0.55);
+            assertThat(decision.framesSent()).isEqualTo(3);
+        });
+    }
+
+    @Test
+    @DisplayName("Pewny brak dopasowania i nieudana żywotność kończą strumień od razu")
+    void stopsOnConfidentRejection() throws IOException {
+        answers.add(new VerifyResponse(false, 0.12, true, 40.0));
+        for (int i = 0; i < 3; i++) {
+            stream.onFrame(texture(50));
+        }
+        assertThat(decisions).singleElement()
+                .extracting(BiometricFrameStream.Decision::outcome)
+                .isEqualTo(BiometricFrameStream.Outcome.NOT_MATCHED);
+
+        List<BiometricFrameStream.Decision> spoofDecisions = new ArrayList<>();
+        BiometricFrameStream spoofed = new BiometricFrameStream(settings, qualityGate,
+                image -> Mono.just(ResponseEntity.ok(new VerifyResponse(true, 0.95, false, 40.0))),
+                spoofDecisions::add);
+        spoofed.onFrame(texture(50));
+        spoofed.finish();
+
+        assertThat(spoofDecisions).singleElement()
+                .extracting(BiometricFrameStream.Decision::outcome)
+                .isEqualTo(BiometricFrameStream.Outcome.LIVENESS_FAILED);
+    }
+
+    @Test
+    @DisplayName("Decyzja jest przekazywana po zwolnieniu blokady – odpowiedź synchroniczna i z innego wątku")
+    void deliversDecisionOutsideTheLock() throws Exception {
+        for (boolean asynchronous : new boolean[]{false, true}) {
+            BiometricFrameStream[] holder = new BiometricFrameStream[1];
+            CompletableFuture<Boolean> lockHeld = new CompletableFuture<>();
+            Mono<ResponseEntity<VerifyResponse>> answer = Mono.fromCallable(
+                    () -> ResponseEntity.ok(new VerifyResponse(true, 0.92, true, 40.0)));
+            holder[0] = new BiometricFrameStream(settings, qualityGate,
+                    image -> asynchronous ? answer.subscribeOn(Schedulers.boundedElastic()) : answer,
+                    decision -> lockHeld.complete(Thread.holdsLock(holder[0])));
+
+            for (int i = 0; i < 3; i++) {
+                holder[0].onFrame(texture(50));
+            }
+
+            assertThat(lockHeld.get(5, TimeUnit.SECONDS)).as("asynchronous=%s", asynchronous).isFalse();
+        }
+    }
+
+    /**
+     * Random grey texture around mid-grey - the larger the amplitude, the sharper the frame scores
+     */
+    private static byte[] texture(int amplitude) throws IOException {
+        Random random = new Random(amplitude);
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int value = 128 + random.nextInt(2 * amplitude + 1) - amplitude;
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return png(image);
+    }
+
+    private static byte[] gradient() throws IOException {
+        BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int value = 70 + 120 * x / image.getWidth();
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return png(image);
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
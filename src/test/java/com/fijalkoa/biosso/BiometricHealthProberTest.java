@@ -0,0 +1,181 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricCircuitBreaker;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricEndpoint;
+import com.fijalkoa.biosso.biometric.BiometricHealthProber;
+import com.fijalkoa.biosso.biometric.BiometricHealthProber.Status;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricHealthProber – health check w tle i zapamiętany stan")
+class BiometricHealthProberTest {
+
+    private final List<HttpServer> stubs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(stub -> stub.stop(0));
+    }
+
+    @Test
+    @DisplayName("Przed pierwszą próbą UNKNOWN (503), odczyt snapshotu nie woła Pythona")
+    void snapshotIsServedWithoutCallingPython() {
+        AtomicInteger healthCalls = new AtomicInteger();
+        BiometricHealthProber prober = prober(callGuard(), stub(healthCalls, new AtomicInteger(200)));
+
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.UNKNOWN);
+        assertThat(prober.getSnapshot().response().getStatusCode().value()).isEqualTo(503);
+
+        prober.probe();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(prober.getSnapshot().response().getStatusCode().value()).isEqualTo(200);
+        }
+
+        assertThat(healthCalls.get()).isEqualTo(1);
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.UP);
+        assertThat(prober.getSnapshot().endpoints().get(0).lastSuccess()).isNotNull();
+        assertThat(prober.getSnapshot().response().getBody()).containsOnlyKeys("status", "checked_at");
+        assertThat(prober.getSnapshot().details().getBody()).containsKeys("status", "endpoints", "service");
+    }
+
+    @Test
+    @DisplayName("Replika, która oblała ostatnią próbę, ale jest jeszcze w rotacji → DEGRADED, nie UP")
+    void lastFailedProbeIsReportedBeforeTheThreshold() {
+        AtomicInteger brokenStatus = new AtomicInteger(200);
+        String healthy = stub(new AtomicInteger(), new AtomicInteger(200));
+        String broken = stub(new AtomicInteger(), brokenStatus);
+        BiometricLoadBalancer loadBalancer = loadBalancer(healthy, broken);
+        BiometricHealthProber prober = new BiometricHealthProber(loadBalancer, callGuard(),
+                Duration.ofSeconds(1), 3, new SimpleMeterRegistry());
+
+        prober.probe();
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.UP);
+
+        brokenStatus.set(500);
+        prober.probe();
+
+        assertThat(endpoint(loadBalancer, broken).isHealthy()).isTrue();
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.DEGRADED);
+        assertThat(prober.getSnapshot().endpoints().get(1).lastProbePassed()).isFalse();
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> replicas =
+                (List<Map<String, Object>>) prober.getSnapshot().details().getBody().get("endpoints");
+        assertThat(replicas).extracting(replica -> replica.get("last_probe")).containsExactly("PASSED", "FAILED");
+        assertThat(prober.getSnapshot().response().getBody()).doesNotContainKey("endpoints");
+    }
+
+    @Test
+    @DisplayName("Replika oblewająca health check wypada z rotacji po progu i wraca po udanej próbie")
+    void failingReplicaLeavesRotation() {
+        AtomicInteger brokenStatus = new AtomicInteger(500);
+        String healthy = stub(new AtomicInteger(), new AtomicInteger(200));
+        String broken = stub(new AtomicInteger(), brokenStatus);
+        BiometricLoadBalancer loadBalancer = loadBalancer(healthy, broken);
+        BiometricHealthProber prober = new BiometricHealthProber(loadBalancer, callGuard(),
+                Duration.ofSeconds(1), 2, new SimpleMeterRegistry());
+
+        prober.probe();
+        assertThat(endpoint(loadBalancer, broken).isHealthy()).isTrue();
+
+        prober.probe();
+        assertThat(endpoint(loadBalancer, broken).isHealthy()).isFalse();
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.DEGRADED);
+        assertThat(prober.getSnapshot().endpoints().get(1).consecutiveFailures()).isEqualTo(2);
+        for (int i = 0; i < 100; i++) {
+            assertThat(loadBalancer.choose().getUrl()).isEqualTo(healthy);
+        }
+
+        brokenStatus.set(200);
+        prober.probe();
+        assertThat(endpoint(loadBalancer, broken).isHealthy()).isTrue();
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    @DisplayName("Żadna replika nie odpowiada → DOWN (503) i otwarty circuit breaker, powrót → HALF_OPEN")
+    void allReplicasDownOpensTheBreaker() {
+        AtomicInteger status = new AtomicInteger(500);
+        BiometricCallGuard callGuard = callGuard();
+        BiometricHealthProber prober = prober(callGuard, stub(new AtomicInteger(), status));
+
+        prober.probe();
+        prober.probe();
+
+        assertThat(prober.getSnapshot().status()).isEqualTo(Status.DOWN);
+        assertThat(prober.getSnapshot().response().getStatusCode().value()).isEqualTo(503);
+        assertThat(callGuard.getCircuitState()).isEqualTo(BiometricCircuitBreaker.State.OPEN);
+
+        status.set(200);
+        prober.probe();
+
+        assertThat(callGuard.getCircuitState()).isEqualTo(BiometricCircuitBreaker.State.HALF_OPEN);
+    }
+
+    private static BiometricHealthProber prober(BiometricCallGuard callGuard, String url) {
+        return new BiometricHealthProber(loadBalancer(url), callGuard,
+                Duration.ofSeconds(1), 2, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Only health-check state is under test - passive ejection needs more errors and samples than these tests make
+     */
+    private static BiometricLoadBalancer loadBalancer(String... urls) {
+        return new BiometricLoadBalancer(List.of(urls), "p2c", 5, 3.0, 20, Duration.ofSeconds(30), 50,
+                Duration.ofSeconds(10));
+    }
+
+    /**
+     * Real circuit breaker (health checks move it), limiter and bulkhead far above what a probe uses
+     */
+    private static BiometricCallGuard callGuard() {
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, Duration.ofMillis(500), 3,
+                Duration.ofMillis(500), 1, Duration.ofSeconds(5), Duration.ofSeconds(2), new SimpleMeterRegistry());
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("gradient", 8, 2, 32, 64, dispatchQueue,
+                new SimpleMeterRegistry());
+        return new BiometricCallGuard(50, 10, 50, Duration.ofSeconds(10), Duration.ofSeconds(30), 3, 32, Duration.ZERO,
+                limiter, new SimpleMeterRegistry());
+    }
+
+    private static BiometricEndpoint endpoint(BiometricLoadBalancer loadBalancer, String url) {
+        return loadBalancer.getEndpoints().stream().filter(e -> e.getUrl().equals(url)).findFirst().orElseThrow();
+    }
+
+    private String stub(AtomicInteger calls, AtomicInteger status) {
+        try {
+            HttpServer stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            stub.createContext("/api/biometrics/health", exchange -> {
+                calls.incrementAndGet();
+                byte[] json = "{\"status\":\"healthy\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status.get(), json.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(json);
+                }
+            });
+            stub.start();
+            stubs.add(stub);
+            return "http://127.0.0.1:" + stub.getAddress().getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
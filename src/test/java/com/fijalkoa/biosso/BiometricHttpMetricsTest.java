@@ -0,0 +1,98 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("BiometricHttpMetrics – metryki wywołań Pythona po stronie Javy")
+class BiometricHttpMetricsTest {
+
+    private static final byte[] RESPONSE = "{\"is_matched\":true,\"confidence\":0.9}".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BiometricHttpMetrics metrics = new BiometricHttpMetrics(meterRegistry);
+    private final RestTemplate restTemplate = new RestTemplate(metrics.instrument(new SimpleClientHttpRequestFactory()));
+    private HttpServer stub;
+
+    @AfterEach
+    void tearDown() {
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Udane wywołanie → timer z percentylami, bajty wysłane i odebrane, in-flight wraca do 0")
+    void successfulCallIsTimedAndSized() {
+        String url = stub(200);
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("user_id", "user-1");
+        body.add("image", new ByteArrayResource(new byte[10_000]) {
+            @Override
+            public String getFilename() {
+                return "face.jpg";
+            }
+        });
+
+        restTemplate.postForEntity(url + "/api/biometrics/verify", body, Map.class);
+
+        assertThat(meterRegistry.get("biometric.client.requests")
+                .tags("operation", "verify", "outcome", "success", "transport", "blocking").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("biometric.client.request.size").tag("operation", "verify").summary().totalAmount())
+                .isGreaterThan(10_000);
+        assertThat(meterRegistry.get("biometric.client.response.size").tag("operation", "verify").summary().totalAmount())
+                .isEqualTo(RESPONSE.length);
+        assertThat(meterRegistry.get("biometric.client.in_flight").tag("operation", "verify").gauge().value()).isZero();
+        assertThat(metrics.summary()).containsKey("verify");
+    }
+
+    @Test
+    @DisplayName("5xx i brak połączenia liczone jako błędy w osobnych kategoriach")
+    void errorsAreCategorised() {
+        String url = stub(500);
+        assertThatThrownBy(() -> restTemplate.getForEntity(url + "/api/biometrics/templates/user-1", Map.class));
+        stub.stop(0);
+        stub = null;
+        assertThatThrownBy(() -> restTemplate.getForEntity(url + "/api/biometrics/templates/user-1", Map.class));
+
+        assertThat(meterRegistry.get("biometric.client.errors")
+                .tags("operation", "templates", "category", "server_error").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("biometric.client.errors")
+                .tags("operation", "templates", "category", "connect").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("biometric.client.in_flight").tag("operation", "templates").gauge().value()).isZero();
+    }
+
+    private String stub(int status) {
+        try {
+            stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            stub.createContext("/api/biometrics", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, RESPONSE.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(RESPONSE);
+                }
+            });
+            stub.start();
+            return "http://127.0.0.1:" + stub.getAddress().getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
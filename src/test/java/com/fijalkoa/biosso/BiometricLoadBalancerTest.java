@@ -0,0 +1,171 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricEndpoint;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("BiometricLoadBalancer – routing między replikami (lokalne serwery stub)")
+class BiometricLoadBalancerTest {
+
+    private final List<HttpServer> stubs = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        stubs.forEach(stub -> stub.stop(0));
+    }
+
+    @Test
+    @DisplayName("Replika zwracająca 5xx zostaje wyłączona po serii błędów")
+    void failingReplicaIsEjected() {
+        AtomicInteger healthyHits = new AtomicInteger();
+        AtomicInteger brokenHits = new AtomicInteger();
+        String healthy = stub(healthyHits, 200, 0);
+        String broken = stub(brokenHits, 500, 0);
+        String healthy2 = stub(new AtomicInteger(), 200, 0);
+
+        BiometricLoadBalancer loadBalancer = loadBalancer("p2c", List.of(healthy, broken, healthy2));
+        BiometricRestService service = service(loadBalancer);
+
+        for (int i = 0; i < 100; i++) {
+            service.verifyUser("user-" + i, image(), 0.5, true);
+        }
+
+        assertThat(brokenHits.get()).isLessThanOrEqualTo(3);
+        assertThat(endpoint(loadBalancer, broken).isEjected(System.nanoTime())).isTrue();
+        assertThat(healthyHits.get()).isGreaterThan(30);
+    }
+
+    @Test
+    @DisplayName("Wolna replika (GPU) dostaje mniej ruchu")
+    void slowReplicaGetsLessTraffic() {
+        AtomicInteger fastHits = new AtomicInteger();
+        AtomicInteger slowHits = new AtomicInteger();
+        String fast = stub(fastHits, 200, 0);
+        String slow = stub(slowHits, 200, 50);
+
+        BiometricLoadBalancer loadBalancer = loadBalancer("p2c", List.of(fast, slow));
+        BiometricRestService service = service(loadBalancer);
+
+        for (int i = 0; i < 60; i++) {
+            service.verifyUser("user-" + i, image(), 0.5, true);
+        }
+
+        assertThat(fastHits.get()).isGreaterThan(slowHits.get() * 3);
+    }
+
+    @Test
+    @DisplayName("least-outstanding wybiera replikę z najmniejszą liczbą żądań w toku")
+    void leastOutstandingPicksIdleReplica() {
+        BiometricLoadBalancer loadBalancer = loadBalancer("least-outstanding",
+                List.of("http://replica-a", "http://replica-b", "http://replica-c"));
+
+        BiometricEndpoint busy1 = loadBalancer.choose();
+        busy1.onRequestStart();
+        BiometricEndpoint busy2 = loadBalancer.choose();
+        busy2.onRequestStart();
+        BiometricEndpoint idle = loadBalancer.choose();
+
+        assertThat(List.of(busy1, busy2, idle)).doesNotHaveDuplicates();
+    }
+
+    @Test
+    @DisplayName("Jedyna replika nigdy nie jest wyłączana")
+    void singleReplicaIsNeverEjected() {
+        BiometricLoadBalancer loadBalancer = loadBalancer("p2c", List.of("http://only-replica"));
+        BiometricEndpoint endpoint = loadBalancer.choose();
+
+        for (int i = 0; i < 10; i++) {
+            endpoint.onRequestStart();
+            loadBalancer.record(endpoint, 1_000_000, true);
+        }
+
+        assertThat(endpoint.isEjected(System.nanoTime())).isFalse();
+        assertThat(loadBalancer.choose()).isSameAs(endpoint);
+    }
+
+    /**
+     * Ejects after 3 consecutive errors, or latency above 3x the other replicas once 5 samples are in
+     */
+    private static BiometricLoadBalancer loadBalancer(String strategy, List<String> urls) {
+        return new BiometricLoadBalancer(urls, strategy, 3, 3.0, 5, Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+    }
+
+    /**
+     * Only the replica choice is under test - the call guard lets every call through,
+     * no cache, no single-flight, no quality gate, HTTP transport
+     */
+    @SuppressWarnings("unchecked")
+    private static BiometricRestService service(BiometricLoadBalancer loadBalancer) {
+        BiometricCallGuard callGuard = mock(BiometricCallGuard.class);
+        when(callGuard.execute(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Object>>getArgument(1).get());
+        return new BiometricRestService(new RestTemplate(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, new SimpleMeterRegistry()), mock(VerificationResultCache.class),
+                mock(VerificationSingleFlight.class), mock(BiometricSocketTransport.class), mock(ImageQualityGate.class));
+    }
+
+    private static BiometricEndpoint endpoint(BiometricLoadBalancer loadBalancer, String url) {
+        return loadBalancer.getEndpoints().stream()
+                .filter(e -> e.getUrl().equals(url))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private String stub(AtomicInteger hits, int status, long delayMs) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/api/biometrics/verify", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                hits.incrementAndGet();
+                if (delayMs > 0) {
+                    try {
+                        Thread.sleep(delayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] json = "{\"is_matched\":true,\"confidence\":0.9}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, json.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(json);
+                }
+            });
+            server.start();
+            stubs.add(server);
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[1024]);
+    }
+}
@@ -0,0 +1,175 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.DeferredImagePart;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Rejestracja – równoległe przetwarzanie i strumieniowe wysyłanie 5 zdjęć")
+class BiometricRegistrationPipelineTest {
+
+    private HttpServer stub;
+
+    @AfterEach
+    void tearDown() {
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Wszystkie 5 zdjęć trafia do Pythona w jednym żądaniu")
+    void forwardsAllNormalisedParts() throws IOException {
+        AtomicReference<String> received = new AtomicReference<>();
+        String url = stub(received);
+
+        BiometricRestService service = service(url, callGuard(limiter(8)), normalizer());
+
+        ResponseEntity<Map<String, Object>> response = service.registerUser("user-1",
+                image(), image(), image(), image(), image(), true);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        for (String angle : List.of("front", "left", "right", "up", "down")) {
+            assertThat(received.get()).contains("name=\"image_" + angle + "\"; filename=\"" + angle + ".jpg\"");
+        }
+    }
+
+    @Test
+    @DisplayName("Brakujące zdjęcie → 400 bez wywołania Pythona")
+    void rejectsMissingImage() {
+        BiometricRestService service = service("http://unused", callGuard(limiter(8)), normalizer());
+
+        ResponseEntity<Map<String, Object>> response = service.registerUser("user-1",
+                image(), image(), new MockMultipartFile("image_right", new byte[0]), image(), image(), true);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(400);
+        assertThat(response.getBody()).containsEntry("error", "Missing right image");
+    }
+
+    @Test
+    @DisplayName("Rejestracja odrzucona przez strażnika → zdjęcia nie są w ogóle przetwarzane")
+    void refusedRegistrationDoesNotPreprocessImages() {
+        AdaptiveConcurrencyLimiter full = limiter(2);
+        full.tryAcquire(BiometricPriority.ENROLL);
+        full.tryAcquire(BiometricPriority.ENROLL);
+        ImageNormalizer normalizer = spy(normalizer());
+        BiometricRestService service = service("http://unused", callGuard(full), normalizer);
+
+        ResponseEntity<Map<String, Object>> response = service.registerUser("user-1",
+                image(), image(), image(), image(), image(), true);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(429);
+        verify(normalizer, never()).prepareAsync(any(), any());
+    }
+
+    @Test
+    @DisplayName("Część jeszcze nieprzygotowana: długość nieznana, treść dostępna po zakończeniu")
+    void deferredPartWaitsForContent() throws IOException {
+        CompletableFuture<Resource> content = new CompletableFuture<>();
+        DeferredImagePart part = new DeferredImagePart(content, "front.jpg");
+
+        assertThat(part.contentLength()).isEqualTo(-1);
+
+        content.complete(new ByteArrayResource(new byte[]{1, 2, 3}));
+
+        assertThat(part.contentLength()).isEqualTo(3);
+        assertThat(part.getInputStream().readAllBytes()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    @DisplayName("Anulowana część → IOException przy odczycie")
+    void cancelledPartFailsOnRead() {
+        DeferredImagePart part = new DeferredImagePart(new CompletableFuture<>(), "front.jpg");
+
+        part.cancel();
+
+        assertThatThrownBy(part::getInputStream).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * No cache, no single-flight, no quality gate, HTTP transport - registration does not use them
+     */
+    private static BiometricRestService service(String url, BiometricCallGuard callGuard, ImageNormalizer normalizer) {
+        BiometricLoadBalancer loadBalancer = new BiometricLoadBalancer(List.of(url), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+        return new BiometricRestService(new RestTemplate(), loadBalancer, callGuard, normalizer,
+                mock(VerificationResultCache.class), mock(VerificationSingleFlight.class),
+                mock(BiometricSocketTransport.class), mock(ImageQualityGate.class));
+    }
+
+    /**
+     * Fixed limit, no queueing - a call beyond the limit is refused at once
+     */
+    private static AdaptiveConcurrencyLimiter limiter(int limit) {
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, Duration.ZERO, 3, Duration.ZERO,
+                1, Duration.ZERO, Duration.ofSeconds(2), new SimpleMeterRegistry());
+        return new AdaptiveConcurrencyLimiter("gradient", limit, limit, limit, 64, dispatchQueue, new SimpleMeterRegistry());
+    }
+
+    private static BiometricCallGuard callGuard(AdaptiveConcurrencyLimiter limiter) {
+        return new BiometricCallGuard(50, 10, 50, Duration.ofSeconds(10), Duration.ofSeconds(30), 3, 32, Duration.ZERO,
+                limiter, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Normalisation on - parts are prepared in parallel on 2 threads
+     */
+    private static ImageNormalizer normalizer() {
+        return new ImageNormalizer(true, 640, 0.85f, 2, new SimpleMeterRegistry());
+    }
+
+    private String stub(AtomicReference<String> received) throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/api/biometrics/register", exchange -> {
+            received.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1));
+            byte[] json = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        });
+        stub.start();
+        return "http://127.0.0.1:" + stub.getAddress().getPort();
+    }
+
+    private static MockMultipartFile image() {
+        try {
+            return new MockMultipartFile("image", "face.jpg", "image/jpeg", ImageNormalizerTest.jpeg(2400, 1600));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricSocketProtocol;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stand-in for the Python sidecar listening on a Unix domain socket (BiometricSocketProtocol)
+ *
+ * Echo-style answers, so every caller can check it got its own response back:
+ * - VERIFY: matched = threshold <= 0.9, confidence 0.9, verification time = image length
+ * - EMBED: DIMENSIONS values, each = image length
+ * - user id "reject" -> ERROR 400
+ * Every request is answered from its own virtual thread, user ids starting with "slow" after
+ * slowDelay - answers on one channel come back out of order, as from a multi-worker Python.
+ */
+public final class BiometricSocketStub implements AutoCloseable {
+
+    public static final int DIMENSIONS = 512;
+
+    private final Path socket;
+    private final Duration slowDelay;
+    private final ServerSocketChannel server;
+    private final List<SocketChannel> clients = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private BiometricSocketStub(Path socket, Duration slowDelay) throws IOException {
+        this.socket = socket;
+        this.slowDelay = slowDelay;
+        Files.deleteIfExists(socket);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.server.bind(UnixDomainSocketAddress.of(socket));
+        Thread.ofVirtual().name("biometric-socket-stub").start(this::acceptLoop);
+    }
+
+    public static BiometricSocketStub start(Path socket, Duration slowDelay) throws IOException {
+        return new BiometricSocketStub(socket, slowDelay);
+    }
+
+    public int connections() {
+        return clients.size();
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        Files.deleteIfExists(socket);
+    }
+
+    private void acceptLoop() {
+        try {
+            while (server.isOpen()) {
+                SocketChannel client = server.accept();
+                clients.add(client);
+                Thread.ofVirtual().start(() -> serve(client));
+            }
+        } catch (IOException e) {
+            // closed
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        ByteBuffer header = ByteBuffer.allocate(BiometricSocketProtocol.HEADER_BYTES);
+        try {
+            BiometricSocketProtocol.Frame frame;
+            while ((frame = BiometricSocketProtocol.read(client, header)) != null) {
+                requests.incrementAndGet();
+                BiometricSocketProtocol.Frame request = frame;
+                Thread.ofVirtual().start(() -> answer(client, request));
+            }
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    private void answer(SocketChannel client, BiometricSocketProtocol.Frame request) {
+        ByteBuffer payload = request.payload();
+        ByteBuffer response;
+        if (request.type() == BiometricSocketProtocol.VERIFY) {
+            byte[] user = new byte[payload.getShort()];
+            payload.get(user);
+            String userId = new String(user, StandardCharsets.UTF_8);
+            double threshold = payload.getDouble();
+            boolean checkLiveness = (payload.get() & BiometricSocketProtocol.FLAG_CHECK_LIVENESS) != 0;
+            int imageLength = payload.getInt();
+            if (userId.startsWith("slow")) {
+                sleep(slowDelay);
+            }
+            response = "reject".equals(userId)
+                    ? BiometricSocketProtocol.encodeError(request.requestId(), 400, "No face detected")
+                    : BiometricSocketProtocol.encodeVerifyResult(request.requestId(), new VerifyResponse(
+                            threshold <= 0.9, 0.9, checkLiveness ? Boolean.TRUE : null, (double) imageLength));
+        } else if (request.type() == BiometricSocketProtocol.EMBED) {
+            boolean checkLiveness = (payload.get() & BiometricSocketProtocol.FLAG_CHECK_LIVENESS) != 0;
+            float[] embedding = new float[DIMENSIONS];
+            Arrays.fill(embedding, payload.getInt());
+            response = BiometricSocketProtocol.encodeEmbedResult(request.requestId(),
+                    new EmbeddingResponse(embedding, checkLiveness ? Boolean.TRUE : null));
+        } else {
+            response = BiometricSocketProtocol.encodeError(request.requestId(), 400, "Unknown frame type");
+        }
+
+        synchronized (client) {
+            try {
+                while (response.hasRemaining()) {
+                    client.write(response);
+                }
+            } catch (IOException e) {
+                // client went away
+            }
+        }
+    }
+
+    private static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
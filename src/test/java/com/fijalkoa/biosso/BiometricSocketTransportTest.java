@@ -0,0 +1,154 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("BiometricSocketTransport – binarne ramki do sidecara Pythona przez Unix domain socket")
+class BiometricSocketTransportTest {
+
+    private static final int IMAGE_BYTES = 150_000;
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BiometricSocketStub stub;
+    private BiometricSocketTransport transport;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (transport != null) {
+            transport.close();
+        }
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    @DisplayName("verify i embed: obraz większy niż bufor zapisu dochodzi w całości, wynik zdekodowany")
+    void verifyAndEmbedRoundTrip() throws Exception {
+        stub = BiometricSocketStub.start(socket(), Duration.ZERO);
+        transport = transport(2);
+
+        VerifyResponse verified = transport.verify("user-1", image(), 0.5, true);
+        EmbeddingResponse embedded = transport.embed(image(), false);
+
+        assertThat(verified.matched()).isTrue();
+        assertThat(verified.confidence()).isEqualTo(0.9);
+        assertThat(verified.livenessPassed()).isTrue();
+        assertThat(verified.verificationTimeMs()).isEqualTo(IMAGE_BYTES);
+        assertThat(embedded.embedding()).hasSize(BiometricSocketStub.DIMENSIONS).containsOnly(IMAGE_BYTES);
+        assertThat(embedded.livenessPassed()).isNull();
+        assertThat(meterRegistry.get("biometric.client.requests")
+                .tags("operation", "verify", "outcome", "success", "transport", "socket").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Jeden kanał, wiele żądań – szybka odpowiedź nie czeka na wolną (multipleksowanie)")
+    void callsAreMultiplexedOnOneChannel() throws Exception {
+        stub = BiometricSocketStub.start(socket(), Duration.ofMillis(500));
+        transport = transport(1);
+
+        CompletableFuture<VerifyResponse> slow = CompletableFuture.supplyAsync(() -> transport.verify("slow-1", image(), 0.5, true));
+        Thread.sleep(50);
+        VerifyResponse fast = transport.verify("user-2", image(), 0.95, true);
+
+        assertThat(slow).isNotDone();
+        assertThat(fast.matched()).isFalse();
+        assertThat(slow.get(5, TimeUnit.SECONDS).matched()).isTrue();
+        assertThat(stub.connections()).isEqualTo(1);
+        assertThat(stub.requests()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Ramka ERROR → HttpClientErrorException z kodem z Pythona, kanał zostaje otwarty")
+    void errorFrameIsThrownAsHttpError() throws Exception {
+        stub = BiometricSocketStub.start(socket(), Duration.ZERO);
+        transport = transport(1);
+
+        assertThatThrownBy(() -> transport.verify("reject", image(), 0.5, true))
+                .isInstanceOfSatisfying(HttpClientErrorException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        assertThat(transport.verify("user-1", image(), 0.5, true).matched()).isTrue();
+        assertThat(stub.connections()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Sidecar niedostępny → ResourceAccessException, po jego starcie kanał otwiera się ponownie")
+    void reconnectsAfterSidecarComesBack() throws Exception {
+        transport = transport(1);
+
+        assertThatThrownBy(() -> transport.verify("user-1", image(), 0.5, true))
+                .isInstanceOf(ResourceAccessException.class);
+
+        stub = BiometricSocketStub.start(socket(), Duration.ZERO);
+        assertThat(transport.verify("user-1", image(), 0.5, true).matched()).isTrue();
+    }
+
+    @Test
+    @DisplayName("BiometricRestService z transport=uds → verify bez HTTP")
+    void restServiceUsesSocket() throws Exception {
+        stub = BiometricSocketStub.start(socket(), Duration.ZERO);
+        transport = transport(2);
+        BiometricLoadBalancer loadBalancer = mock(BiometricLoadBalancer.class);
+        BiometricCallGuard callGuard = mock(BiometricCallGuard.class);
+        when(callGuard.execute(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Object>>getArgument(1).get());
+        BiometricRestService service = new BiometricRestService(new RestTemplate(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, meterRegistry), mock(VerificationResultCache.class),
+                mock(VerificationSingleFlight.class), transport, mock(ImageQualityGate.class));
+        MockMultipartFile image = new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[IMAGE_BYTES]);
+
+        ResponseEntity<VerifyResponse> response = service.verify("user-1", image, 0.5, true, BiometricPriority.AUTH);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().matched()).isTrue();
+        assertThat(stub.requests()).isEqualTo(1);
+        verifyNoInteractions(loadBalancer);
+    }
+
+    private Path socket() {
+        return directory.resolve("biometric.sock");
+    }
+
+    private BiometricSocketTransport transport(int connections) {
+        return new BiometricSocketTransport("uds", socket().toString(), connections, Duration.ofSeconds(5),
+                new BiometricHttpMetrics(meterRegistry));
+    }
+
+    private static ByteArrayResource image() {
+        return new ByteArrayResource(new byte[IMAGE_BYTES]);
+    }
+}
@@ -0,0 +1,95 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.biometric.HnswIndex;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import com.fijalkoa.biosso.repository.UserBiometricMetadataRepository;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import com.fijalkoa.biosso.service.FaceIdentificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("FaceIdentificationService – logowanie bez hasła tylko przy pewnym dopasowaniu 1:N")
+class FaceIdentificationServiceTest {
+
+    private static final int DIMENSIONS = 4;
+    private static final MockMultipartFile IMAGE = new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[]{1});
+
+    private final BiometricRestService restService = mock(BiometricRestService.class);
+    private FaceIdentificationService service;
+    private HnswIndex index;
+
+    @BeforeEach
+    void setUp() {
+        service = new FaceIdentificationService(restService, mock(UserBiometricMetadataRepository.class),
+                mock(EmbeddingTemplateCache.class), true, DIMENSIONS, 16, 200, 64, 5,
+                0.6, 0.05, "none", 20, Duration.ofSeconds(5), "target/face-index-test.bin",
+                new SimpleMeterRegistry());
+        index = new HnswIndex(DIMENSIONS, 16, 200, 42);
+        ReflectionTestUtils.setField(service, "index", index);
+        ReflectionTestUtils.setField(service, "ready", true);
+    }
+
+    @Test
+    @DisplayName("Żywa twarz, wyraźnie najbliższy jeden użytkownik → jego id")
+    void confidentLiveMatchLogsIn() {
+        index.insert(1, unit(1, 0, 0, 0));
+        index.insert(2, unit(0, 1, 0, 0));
+        probe(unit(1, 0.1f, 0, 0), true);
+
+        assertThat(service.identifyForLogin(IMAGE)).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("Dwóch użytkowników w granicy marginesu → brak logowania")
+    void ambiguousMatchIsRefused() {
+        index.insert(1, unit(1, 0, 0, 0));
+        index.insert(2, unit(0.99f, 0.14f, 0, 0));
+        probe(unit(1, 0.07f, 0, 0), true);
+
+        assertThat(service.identifyForLogin(IMAGE)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Najlepsze dopasowanie poniżej progu → brak logowania")
+    void weakMatchIsRefused() {
+        index.insert(1, unit(1, 0, 0, 0));
+        probe(unit(0.5f, 1, 0, 0), true);
+
+        assertThat(service.identifyForLogin(IMAGE)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Liveness niesprawdzone lub niezaliczone → brak logowania, nawet przy idealnym dopasowaniu")
+    void livenessMustBeConfirmed() {
+        index.insert(1, unit(1, 0, 0, 0));
+
+        probe(unit(1, 0, 0, 0), null);
+        assertThat(service.identifyForLogin(IMAGE)).isEmpty();
+
+        probe(unit(1, 0, 0, 0), false);
+        assertThat(service.identifyForLogin(IMAGE)).isEmpty();
+    }
+
+    private void probe(float[] embedding, Boolean livenessPassed) {
+        when(restService.extractEmbedding(any(), eq(true), eq(BiometricPriority.AUTH)))
+                .thenReturn(ResponseEntity.ok(new EmbeddingResponse(embedding, livenessPassed)));
+    }
+
+    private static float[] unit(float... values) {
+        return VectorSimilarity.normalize(values);
+    }
+}
@@ -0,0 +1,145 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.HnswIndex;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("HnswIndex – identyfikacja 1:N")
+class HnswIndexTest {
+
+    private static final int USERS = 2_000;
+    private static final int ANGLES = 3;
+    private static final int DIMENSIONS = 64;
+
+    private static float[][] centres;
+    private static float[][][] enrolled;
+    private static HnswIndex index;
+
+    @BeforeAll
+    static void buildIndex() {
+        Random random = new Random(7);
+        centres = new float[USERS][];
+        enrolled = new float[USERS][ANGLES][];
+        index = new HnswIndex(DIMENSIONS, 16, 200, 42);
+        for (int user = 0; user < USERS; user++) {
+            centres[user] = VectorSimilarity.normalize(gaussian(random, 1f));
+            for (int angle = 0; angle < ANGLES; angle++) {
+                enrolled[user][angle] = perturb(centres[user], random, 0.05f);
+                index.insert(user, enrolled[user][angle]);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Zaburzona próbka → właściwy użytkownik na pierwszym miejscu (≥ 95%)")
+    void identifiesTheEnrolledUser() {
+        Random random = new Random(11);
+        int hits = 0;
+        for (int i = 0; i < 200; i++) {
+            int user = random.nextInt(USERS);
+            HnswIndex.SearchResult result = index.search(perturb(centres[user], random, 0.05f), 5, 64, Long.MAX_VALUE);
+            if (!result.candidates().isEmpty() && result.candidates().get(0).userId() == user) {
+                hits++;
+            }
+        }
+
+        assertThat(hits).isGreaterThanOrEqualTo(190);
+    }
+
+    @Test
+    @DisplayName("Recall@10 względem przeszukiwania wyczerpującego ≥ 0.9")
+    void recallAgainstBruteForce() {
+        Random random = new Random(13);
+        int found = 0;
+        int expected = 0;
+        for (int i = 0; i < 100; i++) {
+            float[] query = VectorSimilarity.normalize(gaussian(random, 1f));
+            List<Long> exact = IntStream.range(0, USERS).boxed()
+                    .sorted(Comparator.comparing((Integer user) -> VectorSimilarity.maxSimilarity(query, enrolled[user])).reversed())
+                    .limit(10)
+                    .map(Integer::longValue)
+                    .toList();
+            List<Long> approximate = index.search(query, 10, 128, Long.MAX_VALUE).candidates().stream()
+                    .map(HnswIndex.Candidate::userId)
+                    .toList();
+            expected += exact.size();
+            found += (int) exact.stream().filter(approximate::contains).count();
+        }
+
+        assertThat((double) found / expected).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    @DisplayName("Usunięty użytkownik nie jest zwracany, ponowne dodanie przywraca go")
+    void removedUsersAreNotReturned() {
+        HnswIndex small = new HnswIndex(DIMENSIONS, 8, 64, 1);
+        Random random = new Random(17);
+        for (int user = 0; user < 200; user++) {
+            small.insert(user, centres[user]);
+        }
+
+        assertThat(small.remove(5)).isTrue();
+        assertThat(small.remove(5)).isFalse();
+        assertThat(small.search(centres[5], 5, 64, Long.MAX_VALUE).candidates())
+                .extracting(HnswIndex.Candidate::userId)
+                .doesNotContain(5L);
+
+        small.insert(5, perturb(centres[5], random, 0.01f));
+        assertThat(small.search(centres[5], 1, 64, Long.MAX_VALUE).candidates().get(0).userId()).isEqualTo(5L);
+
+        HnswIndex compacted = small.compact();
+        assertThat(compacted.nodeCount()).isEqualTo(200);
+        assertThat(compacted.deletedRatio()).isZero();
+    }
+
+    @Test
+    @DisplayName("Snapshot → odczyt daje identyczne wyniki wyszukiwania")
+    void snapshotRoundTrip() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeSnapshot(new DataOutputStream(bytes));
+        HnswIndex restored = HnswIndex.readSnapshot(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+
+        assertThat(restored.userCount()).isEqualTo(USERS);
+        for (int user = 0; user < 20; user++) {
+            assertThat(restored.search(centres[user], 5, 64, Long.MAX_VALUE))
+                    .isEqualTo(index.search(centres[user], 5, 64, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    @DisplayName("Wyczerpany budżet czasu → wynik częściowy zamiast czekania")
+    void searchStopsAtBudget() {
+        HnswIndex.SearchResult result = index.search(centres[0], 10, 5_000, 1);
+
+        assertThat(result.partial()).isTrue();
+    }
+
+    private static float[] perturb(float[] centre, Random random, float noise) {
+        float[] vector = gaussian(random, noise);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] += centre[i];
+        }
+        return VectorSimilarity.normalize(vector);
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,120 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImagePartResource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("ImageNormalizer – zmniejszanie, orientacja EXIF, usuwanie metadanych")
+class ImageNormalizerTest {
+
+    private final ImageNormalizer normalizer = new ImageNormalizer(true, 640, 0.85f, 2, new SimpleMeterRegistry());
+
+    @Test
+    @DisplayName("Duży obraz jest zmniejszany do max-dimension po dłuższym boku")
+    void downscalesToMaxDimension() throws IOException {
+        byte[] jpeg = jpeg(2400, 1600);
+
+        BufferedImage result = decode(normalizer.normalize(file(jpeg)));
+
+        assertThat(result.getWidth()).isEqualTo(640);
+        assertThat(result.getHeight()).isEqualTo(427);
+    }
+
+    @Test
+    @DisplayName("Orientacja EXIF 6 (90° w prawo) jest zastosowana, a EXIF usunięty")
+    void appliesOrientationAndStripsExif() throws IOException {
+        byte[] jpeg = withExifOrientation(jpeg(1200, 800), 6);
+
+        byte[] normalized = normalizer.normalize(file(jpeg));
+        BufferedImage result = decode(normalized);
+
+        assertThat(result.getWidth()).isEqualTo(427);
+        assertThat(result.getHeight()).isEqualTo(640);
+        // Left half of the source is red - after a 90° CW rotation it is the top half
+        assertThat(new Color(result.getRGB(213, 50)).getRed()).isGreaterThan(200);
+        assertThat(new Color(result.getRGB(213, 590)).getBlue()).isGreaterThan(200);
+        assertThat(new String(normalized, StandardCharsets.ISO_8859_1)).doesNotContain("Exif");
+    }
+
+    @Test
+    @DisplayName("Mały obraz nie jest powiększany")
+    void doesNotUpscale() throws IOException {
+        BufferedImage result = decode(normalizer.normalize(file(jpeg(320, 240))));
+
+        assertThat(result.getWidth()).isEqualTo(320);
+        assertThat(result.getHeight()).isEqualTo(240);
+    }
+
+    @Test
+    @DisplayName("Nieczytelny plik i wyłączona normalizacja → oryginalny upload")
+    void fallsBackToOriginalUpload() {
+        Resource garbage = normalizer.toPart(file(new byte[]{1, 2, 3, 4}), "face.jpg");
+        Resource disabled = new ImageNormalizer(false, 640, 0.85f, 2, new SimpleMeterRegistry())
+                .toPart(file(new byte[]{1, 2, 3, 4}), "face.jpg");
+
+        assertThat(garbage).isInstanceOf(ImagePartResource.class);
+        assertThat(disabled).isInstanceOf(ImagePartResource.class);
+    }
+
+    private static MockMultipartFile file(byte[] content) {
+        return new MockMultipartFile("image", "face.jpg", "image/jpeg", content);
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    /**
+     * Left half red, right half blue
+     */
+    static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert a minimal big-endian EXIF APP1 segment with a single orientation entry right after SOI
+     */
+    static byte[] withExifOrientation(byte[] jpeg, int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(26);
+        tiff.put("MM".getBytes(StandardCharsets.ISO_8859_1)).putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+
+        byte[] exifHeader = "Exif\0\0".getBytes(StandardCharsets.ISO_8859_1);
+        int segmentLength = 2 + exifHeader.length + tiff.capacity();
+
+        ByteBuffer result = ByteBuffer.allocate(jpeg.length + 2 + segmentLength);
+        result.put(jpeg, 0, 2);
+        result.putShort((short) 0xFFE1).putShort((short) segmentLength);
+        result.put(exifHeader).put(tiff.array());
+        result.put(jpeg, 2, jpeg.length - 2);
+        return result.array();
+    }
+}
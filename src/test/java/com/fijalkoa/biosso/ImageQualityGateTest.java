@@ -0,0 +1,164 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityException;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ImageQualityGate – odrzucanie rozmytych i źle naświetlonych klatek")
+class ImageQualityGateTest {
+
+    private static final double MIN_SHARPNESS = 40;
+    private static final int MIN_FACE_SIZE = 96;
+
+    private final ImageQualityGate gate = gate(true);
+
+    @Test
+    @DisplayName("Ostra, dobrze naświetlona klatka przechodzi")
+    void passesSharpFrame() throws IOException {
+        ImageQualityGate.Assessment assessment = gate.check(file(texture(640, 480, 128, 50)), null);
+
+        assertThat(assessment).isNotNull();
+        assertThat(assessment.sharpness()).isGreaterThan(MIN_SHARPNESS);
+        assertThat(assessment.brightness()).isBetween(100.0, 156.0);
+    }
+
+    @Test
+    @DisplayName("Gładka (rozmyta) klatka jest odrzucana jako BLURRY")
+    void rejectsBlurryFrame() throws IOException {
+        assertThatThrownBy(() -> gate.check(file(gradient(640, 480)), null))
+                .isInstanceOfSatisfying(ImageQualityException.class, e -> {
+                    assertThat(e.getReason()).isEqualTo(ImageQualityException.Reason.BLURRY);
+                    assertThat(e.getHttpStatus().value()).isEqualTo(422);
+                    assertThat(e.getAssessment().sharpness()).isLessThan(MIN_SHARPNESS);
+                });
+    }
+
+    @Test
+    @DisplayName("Ciemna i prześwietlona klatka dają UNDEREXPOSED i OVEREXPOSED")
+    void rejectsBadExposure() throws IOException {
+        assertThatThrownBy(() -> gate.check(file(texture(640, 480, 20, 10)), null))
+                .isInstanceOfSatisfying(ImageQualityException.class,
+                        e -> assertThat(e.getReason()).isEqualTo(ImageQualityException.Reason.UNDEREXPOSED));
+        assertThatThrownBy(() -> gate.check(file(texture(640, 480, 235, 10)), null))
+                .isInstanceOfSatisfying(ImageQualityException.class,
+                        e -> assertThat(e.getReason()).isEqualTo(ImageQualityException.Reason.OVEREXPOSED));
+    }
+
+    @Test
+    @DisplayName("Za mała ramka twarzy daje FACE_TOO_SMALL")
+    void rejectsSmallFace() throws IOException {
+        byte[] frame = texture(640, 480, 128, 50);
+
+        assertThatThrownBy(() -> gate.check(file(frame), new ImageQualityGate.FaceBox(300, 200, 60, 80)))
+                .isInstanceOfSatisfying(ImageQualityException.class, e -> {
+                    assertThat(e.getReason()).isEqualTo(ImageQualityException.Reason.FACE_TOO_SMALL);
+                    assertThat(e.getAssessment().faceSize()).isEqualTo(60);
+                });
+        assertThat(gate.check(file(frame), ImageQualityGate.FaceBox.parse("200,100,200,240"))).isNotNull();
+    }
+
+    @Test
+    @DisplayName("Nieczytelny obraz i wyłączona bramka nie blokują weryfikacji")
+    void skipsUndecodableAndDisabled() throws IOException {
+        assertThat(gate.check(new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[2048]), null)).isNull();
+        assertThat(gate(false).check(file(gradient(640, 480)), null)).isNull();
+    }
+
+    @Test
+    @DisplayName("verifyUser zwraca 422 z powodem i wynikami bez wywołania Pythona")
+    void verifyUserReturns422() throws IOException {
+        BiometricLoadBalancer loadBalancer = mock(BiometricLoadBalancer.class);
+        BiometricCallGuard callGuard = mock(BiometricCallGuard.class);
+        BiometricRestService service = new BiometricRestService(new RestTemplate(), loadBalancer, callGuard,
+                mock(ImageNormalizer.class), mock(VerificationResultCache.class), mock(VerificationSingleFlight.class),
+                mock(BiometricSocketTransport.class), gate);
+
+        ResponseEntity<Map<String, Object>> response = service.verifyUser("42", file(gradient(640, 480)), 0.5, true,
+                BiometricPriority.VERIFY, null);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(422);
+        assertThat(response.getBody())
+                .containsEntry("success", false)
+                .containsEntry("reason", "BLURRY")
+                .containsKey("quality");
+        verifyNoInteractions(loadBalancer, callGuard);
+    }
+
+    @Test
+    @DisplayName("Niepoprawna ramka twarzy jest odrzucana przy parsowaniu")
+    void rejectsMalformedFaceBox() {
+        assertThatThrownBy(() -> ImageQualityGate.FaceBox.parse("1,2,3"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ImageQualityGate.FaceBox.parse("1,2,-3,4"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Mid-grey window 50-205, at most 35% clipped pixels, scored on a 256 px downscale
+     */
+    private static ImageQualityGate gate(boolean enabled) {
+        return new ImageQualityGate(enabled, 256, MIN_SHARPNESS, 50, 205, 0.35, MIN_FACE_SIZE, new SimpleMeterRegistry());
+    }
+
+    private static MockMultipartFile file(byte[] png) {
+        return new MockMultipartFile("image", "face.png", "image/png", png);
+    }
+
+    /**
+     * Random grey texture around the given level - high Laplacian variance
+     */
+    private static byte[] texture(int width, int height, int level, int amplitude) throws IOException {
+        Random random = new Random(7);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = Math.max(0, Math.min(255, level + random.nextInt(2 * amplitude + 1) - amplitude));
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return png(image);
+    }
+
+    /**
+     * Smooth horizontal gradient - what a defocused frame looks like to the Laplacian
+     */
+    private static byte[] gradient(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = 70 + 120 * x / width;
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return png(image);
+    }
+
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,257 @@
+package com.fijalkoa.biosso;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fijalkoa.biosso.biometric.ImageHeader;
+import com.fijalkoa.biosso.biometric.ImageUploadFilter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("ImageUploadFilter – odrzucanie złych obrazów w trakcie odbierania")
+class ImageUploadFilterTest {
+
+    private static final String BOUNDARY = "----bioSsoBoundary";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ImageUploadFilter filter = new ImageUploadFilter(true,
+            DataSize.ofMegabytes(10), DataSize.ofMegabytes(40), DataSize.ofMegabytes(50),
+            DataSize.ofMegabytes(10), DataSize.ofKilobytes(128), 64, 8192, 50_000_000L, DataSize.ofKilobytes(256),
+            new ObjectMapper(), meterRegistry);
+
+    @Test
+    @DisplayName("Poprawny JPEG przechodzi, a kontroler dostaje plik i parametry")
+    void passesValidImage() throws Exception {
+        byte[] jpeg = jpeg(320, 240);
+        MockHttpServletRequest request = request("/api/biometric/verify", body(jpeg, null));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        HttpServletRequest forwarded = (HttpServletRequest) chain.getRequest();
+        assertThat(forwarded).isInstanceOf(MultipartHttpServletRequest.class);
+        MultipartFile image = ((MultipartHttpServletRequest) forwarded).getFile("image");
+        assertThat(image).isNotNull();
+        assertThat(image.getBytes()).isEqualTo(jpeg);
+        assertThat(image.getOriginalFilename()).isEqualTo("face.jpg");
+        assertThat(forwarded.getParameter("userId")).isEqualTo("jan@example.com");
+    }
+
+    @Test
+    @DisplayName("Plik, który nie jest obrazem, dostaje 415 po przeczytaniu kilku KB")
+    void rejectsNonImageEarly() throws Exception {
+        byte[] pdf = new byte[5 * 1024 * 1024];
+        System.arraycopy("%PDF-1.7".getBytes(StandardCharsets.US_ASCII), 0, pdf, 0, 8);
+        CountingStream body = new CountingStream(body(pdf, null));
+        MockHttpServletRequest request = streamingRequest("/api/biometric/verify", body, -1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(415);
+        assertThat(response.getHeader("Connection")).isEqualTo("close");
+        assertThat(response.getContentAsString()).contains("\"success\":false").contains("FORMAT");
+        assertThat(chain.getRequest()).isNull();
+        assertThat(body.read.get()).isLessThan(64 * 1024);
+        assertThat(meterRegistry.get("biometric.upload.rejected").tag("reason", "format").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    @DisplayName("Content-Length ponad budżet endpointu daje 413 bez czytania ciała")
+    void rejectsDeclaredSizeOverBudget() throws Exception {
+        CountingStream body = new CountingStream(body(jpeg(320, 240), null));
+        MockHttpServletRequest request = streamingRequest("/api/biometric/verify", body,
+                DataSize.ofMegabytes(11).toBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(body.read.get()).isZero();
+    }
+
+    @Test
+    @DisplayName("Strumień bez Content-Length jest przerywany po przekroczeniu budżetu")
+    void rejectsStreamOverBudget() throws Exception {
+        // Two images of 6 MB each - every one under max-image-size, together over the 10 MB budget
+        byte[] image = padded(jpeg(320, 240), 6 * 1024 * 1024);
+        CountingStream body = new CountingStream(body(image, image));
+        MockHttpServletRequest request = streamingRequest("/api/biometric/verify", body, -1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(response.getContentAsString()).contains("BUDGET");
+        assertThat(body.read.get()).isLessThanOrEqualTo(DataSize.ofMegabytes(10).toBytes() + 16 * 1024);
+    }
+
+    @Test
+    @DisplayName("Obraz 20000x20000 px dostaje 422 zaraz po nagłówku")
+    void rejectsHugeDimensions() throws Exception {
+        byte[] png = pngHeader(20_000, 20_000);
+        byte[] image = new byte[3 * 1024 * 1024];
+        System.arraycopy(png, 0, image, 0, png.length);
+        CountingStream body = new CountingStream(body(image, null));
+        MockHttpServletRequest request = streamingRequest("/api/biometric/register", body, -1);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.getContentAsString()).contains("DIMENSIONS");
+        assertThat(body.read.get()).isLessThan(64 * 1024);
+    }
+
+    @Test
+    @DisplayName("Inne ścieżki i żądania nie-multipart nie są filtrowane")
+    void skipsOtherRequests() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/clients");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent("not a multipart body".getBytes(StandardCharsets.UTF_8));
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isSameAs(request);
+    }
+
+    @Test
+    @DisplayName("Nagłówek JPEG i PNG jest czytany bez dekodowania obrazu")
+    void sniffsHeaders() throws IOException {
+        byte[] jpeg = jpeg(640, 480);
+
+        assertThat(ImageHeader.sniff(jpeg, jpeg.length, true))
+                .isEqualTo(new ImageHeader(ImageHeader.Format.JPEG, 640, 480));
+        assertThat(ImageHeader.sniff(pngHeader(300, 200), 24, false))
+                .isEqualTo(new ImageHeader(ImageHeader.Format.PNG, 300, 200));
+        assertThat(ImageHeader.sniff(jpeg, 2, false)).isNull();
+    }
+
+    private static MockHttpServletRequest request(String path, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        if (body != null) {
+            request.setContent(body);
+        }
+        return request;
+    }
+
+    /**
+     * Request reading from the given stream, as a container does for a body still on the wire
+     */
+    private static MockHttpServletRequest streamingRequest(String path, InputStream body, long contentLength) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path) {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new DelegatingServletInputStream(body);
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return contentLength;
+            }
+        };
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        return request;
+    }
+
+    /**
+     * userId field + image part, optionally followed by a second image part
+     */
+    private static byte[] body(byte[] image, byte[] secondImage) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"userId\"\r\n\r\n"
+                + "jan@example.com\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"image\"; filename=\"face.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(image);
+        if (secondImage != null) {
+            out.write(("\r\n--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"image2\"; filename=\"face2.jpg\"\r\n\r\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            out.write(secondImage);
+        }
+        out.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] padded(byte[] image, int size) {
+        byte[] result = new byte[size];
+        System.arraycopy(image, 0, result, 0, image.length);
+        return result;
+    }
+
+    private static byte[] pngHeader(int width, int height) {
+        byte[] header = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R',
+                0, 0, 0, 0, 0, 0, 0, 0, 8, 2, 0, 0, 0};
+        header[16] = (byte) (width >>> 24);
+        header[17] = (byte) (width >>> 16);
+        header[18] = (byte) (width >>> 8);
+        header[19] = (byte) width;
+        header[20] = (byte) (height >>> 24);
+        header[21] = (byte) (height >>> 16);
+        header[22] = (byte) (height >>> 8);
+        header[23] = (byte) height;
+        return header;
+    }
+
+    private static final class CountingStream extends FilterInputStream {
+
+        private final AtomicLong read = new AtomicLong();
+
+        private CountingStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                read.addAndGet(n);
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                read.incrementAndGet();
+            }
+            return b;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.biometric.MappedEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("MappedEmbeddingStore – embeddingi poza stertą")
+class MappedEmbeddingStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Zapisane wzorce przetrwają restart, nowszy wzorzec użytkownika zastępuje poprzedni")
+    void templatesSurviveRestart() {
+        MappedEmbeddingStore store = store();
+        store.put(1, "t1", new float[][]{{1, 0, 0}, {0, 1, 0}});
+        store.put(2, "t2", new float[][]{{0, 0, 1}});
+        store.put(2, "t2-reenrolled", new float[][]{{0, 1, 0}});
+        store.close();
+
+        MappedEmbeddingStore reopened = store();
+
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.get("t1")).hasValueSatisfying(embeddings ->
+                assertThat(embeddings).isDeepEqualTo(new float[][]{{1, 0, 0}, {0, 1, 0}}));
+        assertThat(reopened.get("t2")).isEmpty();
+        assertThat(reopened.get("t2-reenrolled")).isPresent();
+    }
+
+    @Test
+    @DisplayName("Odwołanie (tombstone) usuwa wzorzec, kompaktowanie zwalnia segmenty bez utraty danych")
+    void revokeAndCompact() throws IOException {
+        MappedEmbeddingStore store = store();
+        for (int user = 0; user < 2_000; user++) {
+            store.put(user, "t" + user, new float[][]{new float[16]});
+        }
+        for (int user = 0; user < 1_900; user++) {
+            store.revoke(user);
+        }
+        long segmentsBefore = segmentCount();
+
+        store.compact();
+
+        assertThat(segmentCount()).isLessThan(segmentsBefore);
+        assertThat(store.size()).isEqualTo(100);
+        assertThat(store.get("t1950")).isPresent();
+        assertThat(store.get("t10")).isEmpty();
+
+        MappedEmbeddingStore reopened = store();
+        assertThat(reopened.size()).isEqualTo(100);
+        assertThat(reopened.get("t10")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Cache z włączonym magazynem: wzorzec pobierany z Pythona tylko raz, także po restarcie")
+    void templateCacheLoadsThroughStore() {
+        AtomicInteger loads = new AtomicInteger();
+        EmbeddingTemplateCache cache = new EmbeddingTemplateCache(10,
+                store(), new SimpleMeterRegistry());
+        cache.getOrLoad(7L, "t7", () -> {
+            loads.incrementAndGet();
+            return new float[][]{{3, 4}};
+        });
+
+        EmbeddingTemplateCache restarted = new EmbeddingTemplateCache(10,
+                store(), new SimpleMeterRegistry());
+        float[][] embeddings = restarted.getOrLoad(7L, "t7", () -> {
+            loads.incrementAndGet();
+            return new float[][]{{3, 4}};
+        });
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(embeddings[0]).containsExactly(new float[]{0.6f, 0.8f}, within(1e-6f));
+        assertThat(restarted.size()).isZero();
+    }
+
+    /**
+     * Small segments - the 2000 templates of revokeAndCompact span several, so compaction has some to free
+     */
+    private MappedEmbeddingStore store() {
+        return new MappedEmbeddingStore(true, directory.toString(), DataSize.ofKilobytes(64), 0.5,
+                new SimpleMeterRegistry());
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.HnswIndex;
+import com.fijalkoa.biosso.biometric.QuantizedVector;
+import com.fijalkoa.biosso.biometric.QuantizedVector.Quantization;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Score drift of quantized templates against full precision
+ *
+ * Pairs are an enrolled embedding and a noisy probe of it, with noise levels spread so the
+ * scores cover the whole range around the match threshold. Drift is printed per run.
+ */
+@DisplayName("QuantizedVector – dryf wyniku względem float32")
+class QuantizedVectorTest {
+
+    private static final int DIMENSIONS = 512;
+    private static final int PAIRS = 5_000;
+    private static final double THRESHOLD = 0.5;
+
+    @ParameterizedTest
+    @CsvSource({"INT8, 0.005", "FLOAT16, 0.0005"})
+    @DisplayName("Dryf wyniku poniżej limitu, zmieniają się tylko decyzje tuż przy progu")
+    void scoreDriftStaysSmall(Quantization quantization, double maxAllowedDrift) {
+        Random random = new Random(3);
+        double sumDrift = 0;
+        double maxDrift = 0;
+        int flippedDecisions = 0;
+        double flippedFurthestFromThreshold = 0;
+
+        for (int i = 0; i < PAIRS; i++) {
+            float[] enrolled = VectorSimilarity.normalize(gaussian(random, 1f));
+            float[] probe = perturb(enrolled, random, random.nextFloat() * 0.1f);
+
+            float exact = VectorSimilarity.dot(probe, enrolled);
+            float approximate = QuantizedVector.encode(enrolled, quantization).dot(probe);
+            double drift = Math.abs(approximate - exact);
+            sumDrift += drift;
+            maxDrift = Math.max(maxDrift, drift);
+            if ((exact >= THRESHOLD) != (approximate >= THRESHOLD)) {
+                flippedDecisions++;
+                flippedFurthestFromThreshold = Math.max(flippedFurthestFromThreshold, Math.abs(exact - THRESHOLD));
+            }
+        }
+
+        System.out.printf("%s score drift over %d pairs: mean=%.6f max=%.6f, decisions flipped at %.2f: %d%n",
+                quantization, PAIRS, sumDrift / PAIRS, maxDrift, THRESHOLD, flippedDecisions);
+        assertThat(maxDrift).isLessThan(maxAllowedDrift);
+        // Only borderline scores can flip - those are what the exact re-rank is for
+        assertThat(flippedFurthestFromThreshold).isLessThan(maxAllowedDrift);
+        assertThat(flippedDecisions).isLessThanOrEqualTo(PAIRS / 500);
+    }
+
+    @Test
+    @DisplayName("int8 × int8 (budowa grafu) zgodne z dekodowanym float")
+    void int8DotMatchesDecoded() {
+        Random random = new Random(5);
+        QuantizedVector a = QuantizedVector.encode(VectorSimilarity.normalize(gaussian(random, 1f)), Quantization.INT8);
+        QuantizedVector b = QuantizedVector.encode(VectorSimilarity.normalize(gaussian(random, 1f)), Quantization.INT8);
+
+        assertThat(a.dot(b)).isCloseTo(VectorSimilarity.dotScalar(a.decode(), b.decode()), within(1e-4f));
+    }
+
+    @Test
+    @DisplayName("Indeks HNSW na int8: właściwy użytkownik w top-5, snapshot zachowuje kwantyzację")
+    void quantizedIndexFindsUsers() throws Exception {
+        Random random = new Random(9);
+        int users = 1_000;
+        float[][] enrolled = new float[users][];
+        HnswIndex index = new HnswIndex(DIMENSIONS, 16, 100, Quantization.INT8, 42);
+        for (int user = 0; user < users; user++) {
+            enrolled[user] = VectorSimilarity.normalize(gaussian(random, 1f));
+            index.insert(user, enrolled[user]);
+        }
+
+        int hits = 0;
+        for (int i = 0; i < 100; i++) {
+            int user = random.nextInt(users);
+            if (index.search(perturb(enrolled[user], random, 0.05f), 5, 64, Long.MAX_VALUE).candidates().stream()
+                    .anyMatch(candidate -> candidate.userId() == user)) {
+                hits++;
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeSnapshot(new DataOutputStream(bytes));
+        HnswIndex restored = HnswIndex.readSnapshot(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 1);
+
+        assertThat(hits).isGreaterThanOrEqualTo(98);
+        assertThat(restored.getQuantization()).isEqualTo(Quantization.INT8);
+        assertThat(restored.search(enrolled[0], 1, 64, Long.MAX_VALUE).candidates().get(0).userId()).isZero();
+        // int8 payload + scale per vector vs 4 bytes per dimension
+        assertThat(bytes.size()).isLessThan(users * DIMENSIONS * Float.BYTES / 2);
+    }
+
+    private static float[] perturb(float[] vector, Random random, float noise) {
+        float[] perturbed = gaussian(random, noise);
+        for (int i = 0; i < perturbed.length; i++) {
+            perturbed[i] += vector[i];
+        }
+        return VectorSimilarity.normalize(perturbed);
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,144 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.service.ReactiveBiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Shows that a small "servlet" worker pool is not held while Python is processing.
+ *
+ * The stub Python service holds every response until the test releases it.
+ * Two worker threads start 12 verifications - with the blocking RestTemplate path
+ * they would be stuck on the first two calls, with the reactive path they return immediately.
+ */
+@DisplayName("ReactiveBiometricRestService – test obciążeniowy (zwalnianie wątków)")
+class ReactiveBiometricRestServiceLoadTest {
+
+    private static final int WORKER_THREADS = 2;
+    private static final int REQUESTS = 12;  // Below the default Reactor Netty pool size (16)
+
+    private HttpServer pythonStub;
+    private CountDownLatch releasePython;
+    private AtomicInteger requestsInPython;
+    private ExecutorService workers;
+    private ReactiveBiometricRestService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        releasePython = new CountDownLatch(1);
+        requestsInPython = new AtomicInteger();
+
+        pythonStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        pythonStub.setExecutor(Executors.newCachedThreadPool());
+        pythonStub.createContext("/api/biometrics/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            requestsInPython.incrementAndGet();
+            try {
+                releasePython.await(30, TimeUnit.SECONDS);  // "Slow face matching"
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] json = "{\"is_matched\":true,\"confidence\":0.97}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        });
+        pythonStub.start();
+
+        workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BiometricLoadBalancer loadBalancer = new BiometricLoadBalancer(
+                List.of("http://127.0.0.1:" + pythonStub.getAddress().getPort()), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+        // Limit and bulkhead fixed at REQUESTS on purpose - this test is about releasing threads, all calls must
+        // reach Python at once; queueing behind the limit is covered in ReactiveBiometricRestServiceTest
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, Duration.ofMillis(500), 3,
+                Duration.ofMillis(500), 1, Duration.ofSeconds(5), Duration.ofSeconds(2), registry);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("gradient", REQUESTS, REQUESTS, REQUESTS,
+                64, dispatchQueue, registry);
+        BiometricCallGuard callGuard = new BiometricCallGuard(50, 10, 50, Duration.ofSeconds(10),
+                Duration.ofSeconds(30), 3, REQUESTS, Duration.ZERO, limiter, registry);
+        service = new ReactiveBiometricRestService(WebClient.create(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, registry), mock(ImageQualityGate.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        releasePython.countDown();
+        workers.shutdownNow();
+        pythonStub.stop(0);
+    }
+
+    @Test
+    @DisplayName("Wątki robocze wracają do puli, zanim Python odpowie")
+    void workerThreadsAreReleasedWhilePythonIsProcessing() throws Exception {
+        List<CompletableFuture<ResponseEntity<Map<String, Object>>>> results = new ArrayList<>();
+        List<Future<?>> handlerCalls = new ArrayList<>();
+
+        for (int i = 0; i < REQUESTS; i++) {
+            String userId = "user-" + i;
+            CompletableFuture<ResponseEntity<Map<String, Object>>> result = new CompletableFuture<>();
+            results.add(result);
+            handlerCalls.add(workers.submit(() -> service.verifyUser(userId, image(), 0.5, true)
+                    .subscribe(result::complete, result::completeExceptionally)));
+        }
+
+        // All handler invocations finish while Python has not answered a single request
+        for (Future<?> call : handlerCalls) {
+            call.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(results).noneMatch(CompletableFuture::isDone);
+
+        // More requests are in flight than there are worker threads
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (requestsInPython.get() < REQUESTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(requestsInPython.get()).isEqualTo(REQUESTS).isGreaterThan(WORKER_THREADS);
+
+        releasePython.countDown();
+
+        for (CompletableFuture<ResponseEntity<Map<String, Object>>> result : results) {
+            ResponseEntity<Map<String, Object>> response = result.get(10, TimeUnit.SECONDS);
+            assertThat(response.getStatusCode().value()).isEqualTo(200);
+            assertThat(response.getBody()).containsEntry("is_matched", true);
+        }
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[4096]);
+    }
+}
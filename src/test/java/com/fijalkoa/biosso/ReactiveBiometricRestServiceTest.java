@@ -0,0 +1,233 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.AdaptiveConcurrencyLimiter;
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricDispatchQueue;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricPriority;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.service.ReactiveBiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("ReactiveBiometricRestService – kolejka limitera, zwalnianie pozwoleń i przetwarzanie po dopuszczeniu")
+class ReactiveBiometricRestServiceTest {
+
+    private final AdaptiveConcurrencyLimiter limiter = limiter(Duration.ofSeconds(5));
+    private final BiometricCallGuard callGuard = callGuard(limiter);
+    private final CountDownLatch releasePython = new CountDownLatch(1);
+    private final AtomicInteger requestsInPython = new AtomicInteger();
+    private HttpServer pythonStub;
+
+    @AfterEach
+    void tearDown() {
+        releasePython.countDown();
+        if (pythonStub != null) {
+            pythonStub.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Wywołania ponad limit czekają w kolejce bez wątku i przechodzą po zwolnieniu slotu")
+    void callsAboveTheLimitQueueInsteadOfBeingShed() throws Exception {
+        ReactiveBiometricRestService service = service(loadBalancer(startPythonStub()));
+
+        List<CompletableFuture<ResponseEntity<Map<String, Object>>>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<ResponseEntity<Map<String, Object>>> result = new CompletableFuture<>();
+            results.add(result);
+            service.verifyUser("user-" + i, image(), 0.5, true).subscribe(result::complete, result::completeExceptionally);
+        }
+
+        // subscribe() returned on this thread for all four, two of them wait for a slot
+        awaitInPython(2);
+        assertThat(limiter.getQueued()).isEqualTo(2);
+        assertThat(results).noneMatch(CompletableFuture::isDone);
+
+        releasePython.countDown();
+
+        for (CompletableFuture<ResponseEntity<Map<String, Object>>> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS).getStatusCode().value()).isEqualTo(200);
+        }
+        assertThat(requestsInPython.get()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Anulowanie w kolejce wycofuje wywołanie – nie trafia do Pythona, slot nie wycieka")
+    void cancelledWhileQueuedNeverReachesPython() throws Exception {
+        ReactiveBiometricRestService service = service(loadBalancer(startPythonStub()));
+
+        service.verifyUser("user-0", image(), 0.5, true).subscribe();
+        service.verifyUser("user-1", image(), 0.5, true).subscribe();
+        awaitInPython(2);
+        Disposable queued = service.verifyUser("user-2", image(), 0.5, true).subscribe();
+        assertThat(limiter.getQueued()).isEqualTo(1);
+
+        queued.dispose();
+        assertThat(limiter.getQueued()).isZero();
+
+        releasePython.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (limiter.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(requestsInPython.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Rejestracja odrzucona przez strażnika → zdjęcia nie są w ogóle przetwarzane")
+    void refusedRegistrationDoesNotPreprocessImages() {
+        AdaptiveConcurrencyLimiter full = limiter(Duration.ZERO);
+        full.tryAcquire(BiometricPriority.ENROLL);
+        full.tryAcquire(BiometricPriority.ENROLL);
+        ImageNormalizer normalizer = spy(new ImageNormalizer(true, 640, 0.85f, 2, new SimpleMeterRegistry()));
+        ReactiveBiometricRestService service = new ReactiveBiometricRestService(WebClient.create(),
+                loadBalancer("http://127.0.0.1:9"), callGuard(full), normalizer, qualityGate(false));
+
+        ResponseEntity<Map<String, Object>> response = service.registerUser("7",
+                image(), image(), image(), image(), image(), true).block();
+
+        assertThat(response.getStatusCode().value()).isEqualTo(429);
+        verify(normalizer, never()).prepareAsync(any(), any());
+    }
+
+    @Test
+    @DisplayName("Brak repliki do wyboru → pozwolenie wraca do limitera, odpowiedź 500")
+    void releasesPermitWhenNoReplicaCanBeChosen() {
+        BiometricLoadBalancer loadBalancer = mock(BiometricLoadBalancer.class);
+        when(loadBalancer.choose()).thenThrow(new IllegalStateException("No biometric endpoint available"));
+        ReactiveBiometricRestService service = service(loadBalancer);
+
+        for (int i = 0; i < 20; i++) {
+            ResponseEntity<Map<String, Object>> response = service.verifyUser("user-" + i, image(), 0.5, true).block();
+            assertThat(response.getStatusCode().value()).isEqualTo(500);
+        }
+
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Rozmyta klatka → 422 z powodem jak w /verify, bez pozwolenia i bez wywołania Pythona")
+    void rejectsBlurryFrameBeforeAdmission() throws Exception {
+        BiometricLoadBalancer loadBalancer = mock(BiometricLoadBalancer.class);
+        ReactiveBiometricRestService service = new ReactiveBiometricRestService(WebClient.create(), loadBalancer,
+                callGuard, normalizer(), qualityGate(true));
+        BufferedImage gradient = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < gradient.getHeight(); y++) {
+            for (int x = 0; x < gradient.getWidth(); x++) {
+                int value = 70 + 120 * x / gradient.getWidth();
+                gradient.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(gradient, "png", png);
+
+        ResponseEntity<Map<String, Object>> response = service.verifyUser("user-0",
+                new MockMultipartFile("image", "blurry.png", "image/png", png.toByteArray()), 0.5, true).block();
+
+        assertThat(response.getStatusCode().value()).isEqualTo(422);
+        assertThat(response.getBody()).containsEntry("reason", "BLURRY").containsKey("quality");
+        verify(loadBalancer, never()).choose();
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private ReactiveBiometricRestService service(BiometricLoadBalancer loadBalancer) {
+        return new ReactiveBiometricRestService(WebClient.create(), loadBalancer, callGuard, normalizer(), qualityGate(false));
+    }
+
+    /**
+     * Fixed limit of 2 (min = max), so the third call has to queue
+     */
+    private static AdaptiveConcurrencyLimiter limiter(Duration maxQueueWait) {
+        BiometricDispatchQueue dispatchQueue = new BiometricDispatchQueue(8, maxQueueWait, 3, maxQueueWait,
+                1, maxQueueWait, Duration.ofSeconds(2), new SimpleMeterRegistry());
+        return new AdaptiveConcurrencyLimiter("gradient", 2, 2, 2, 64, dispatchQueue, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Breaker that stays closed and a bulkhead wider than the limiter - only the limiter admits or queues
+     */
+    private static BiometricCallGuard callGuard(AdaptiveConcurrencyLimiter limiter) {
+        return new BiometricCallGuard(50, 10, 50, Duration.ofSeconds(10), Duration.ofSeconds(30), 3,
+                32, Duration.ZERO, limiter, new SimpleMeterRegistry());
+    }
+
+    private static BiometricLoadBalancer loadBalancer(String url) {
+        return new BiometricLoadBalancer(List.of(url), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+    }
+
+    private static ImageNormalizer normalizer() {
+        return new ImageNormalizer(false, 640, 0.85f, 1, new SimpleMeterRegistry());
+    }
+
+    private static ImageQualityGate qualityGate(boolean enabled) {
+        return new ImageQualityGate(enabled, 256, 40, 50, 205, 0.35, 96, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Python stub holding every /verify response until releasePython
+     */
+    private String startPythonStub() throws Exception {
+        pythonStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        pythonStub.setExecutor(Executors.newCachedThreadPool());
+        pythonStub.createContext("/api/biometrics/verify", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            requestsInPython.incrementAndGet();
+            try {
+                releasePython.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] json = "{\"is_matched\":true,\"confidence\":0.97}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        });
+        pythonStub.start();
+        return "http://127.0.0.1:" + pythonStub.getAddress().getPort();
+    }
+
+    private void awaitInPython(int requests) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (requestsInPython.get() < requests && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(requestsInPython.get()).isEqualTo(requests);
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[4096]);
+    }
+}
@@ -0,0 +1,93 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.EmbeddingTemplateCache;
+import com.fijalkoa.biosso.biometric.MappedEmbeddingStore;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("VectorSimilarity / EmbeddingTemplateCache – dopasowanie embeddingów w Javie")
+class VectorSimilarityTest {
+
+    @Test
+    @DisplayName("Testy uruchomione z --add-modules jdk.incubator.vector używają jąder SIMD")
+    void vectorApiIsEnabled() {
+        assertThat(VectorSimilarity.isVectorApiAvailable()).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 128, 512, 515})
+    @DisplayName("Wynik SIMD zgodny z pętlą skalarną (również dla końcówki wektora)")
+    void vectorMatchesScalar(int dimensions) {
+        Random random = new Random(dimensions);
+        float[] a = randomEmbedding(random, dimensions);
+        float[] b = randomEmbedding(random, dimensions);
+
+        assertThat(VectorSimilarity.cosine(a, b)).isCloseTo(VectorSimilarity.cosineScalar(a, b), within(1e-4f));
+        assertThat(VectorSimilarity.dot(a, b)).isCloseTo(VectorSimilarity.dotScalar(a, b), within(1e-2f));
+    }
+
+    @Test
+    @DisplayName("Najlepsze dopasowanie spośród wzorców, wektory jednostkowe")
+    void maxSimilarityPicksBestTemplate() {
+        float[] probe = VectorSimilarity.normalize(new float[]{1, 1, 0, 0});
+        float[][] templates = {
+                VectorSimilarity.normalize(new float[]{0, 0, 1, 0}),
+                VectorSimilarity.normalize(new float[]{1, 1, 0.1f, 0}),
+                VectorSimilarity.normalize(new float[]{-1, -1, 0, 0})
+        };
+
+        assertThat(VectorSimilarity.maxSimilarity(probe, templates)).isCloseTo(0.9975f, within(1e-3f));
+        assertThat(VectorSimilarity.cosine(new float[]{3, 4}, new float[]{6, 8})).isCloseTo(1f, within(1e-6f));
+    }
+
+    @Test
+    @DisplayName("Różne wymiary → IllegalArgumentException")
+    void rejectsDimensionMismatch() {
+        assertThatThrownBy(() -> VectorSimilarity.cosine(new float[3], new float[4]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Cache: wzorce pobierane raz na templateId, najstarsze usuwane (LRU)")
+    void templateCacheLoadsOnceAndEvictsLru() {
+        MappedEmbeddingStore heapOnly = new MappedEmbeddingStore(false, "unused", DataSize.ofMegabytes(64), 0.5,
+                new SimpleMeterRegistry());
+        EmbeddingTemplateCache cache = new EmbeddingTemplateCache(2, heapOnly, new SimpleMeterRegistry());
+        AtomicInteger loads = new AtomicInteger();
+
+        float[][] first = cache.getOrLoad(1L, "t1", () -> load(loads));
+        cache.getOrLoad(1L, "t1", () -> load(loads));
+        cache.getOrLoad(1L, "t2", () -> load(loads));
+        cache.getOrLoad(1L, "t1", () -> load(loads));
+        cache.getOrLoad(1L, "t3", () -> load(loads));   // evicts t2 (least recently used)
+        cache.getOrLoad(1L, "t1", () -> load(loads));
+        cache.getOrLoad(1L, "t2", () -> load(loads));
+
+        assertThat(loads.get()).isEqualTo(4);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(VectorSimilarity.dotScalar(first[0], first[0])).isCloseTo(1f, within(1e-5f));
+    }
+
+    private static float[][] load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new float[][]{{3, 4, 0}};
+    }
+
+    private static float[] randomEmbedding(Random random, int dimensions) {
+        float[] embedding = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,176 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("VerificationResultCache – powtórzone żądania /verify bez wywołania Pythona")
+class VerificationResultCacheTest {
+
+    private HttpServer stub;
+
+    @AfterEach
+    void tearDown() {
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("To samo zdjęcie w oknie TTL → wynik z cache z nagłówkiem X-Biometric-Replay")
+    void replayIsAnsweredFromCache() {
+        AtomicInteger pythonCalls = new AtomicInteger();
+        BiometricRestService service = service(stub(pythonCalls, 200), cache());
+
+        ResponseEntity<Map<String, Object>> first = service.verifyUser("user-1", image(1), 0.5, true);
+        ResponseEntity<Map<String, Object>> replay = service.verifyUser("user-1", image(1), 0.5, true);
+
+        assertThat(pythonCalls.get()).isEqualTo(1);
+        assertThat(first.getHeaders().containsKey(VerificationResultCache.REPLAY_HEADER)).isFalse();
+        assertThat(replay.getHeaders().getFirst(VerificationResultCache.REPLAY_HEADER)).isEqualTo("true");
+        assertThat(replay.getBody()).isEqualTo(first.getBody());
+    }
+
+    @Test
+    @DisplayName("Pola Pythona spoza VerifyResponse (success, message) trafiają do odpowiedzi /verify, także z cache")
+    void keepsPythonFieldsNotBoundByVerifyResponse() {
+        BiometricRestService service = service(stub(new AtomicInteger(), 200), cache());
+
+        ResponseEntity<Map<String, Object>> first = service.verifyUser("user-1", image(1), 0.5, true);
+        ResponseEntity<Map<String, Object>> replay = service.verifyUser("user-1", image(1), 0.5, true);
+
+        assertThat(first.getBody())
+                .containsEntry("is_matched", true)
+                .containsEntry("confidence", 0.9)
+                .containsEntry("success", true)
+                .containsEntry("message", "Face matched");
+        assertThat(replay.getBody()).isEqualTo(first.getBody());
+    }
+
+    @Test
+    @DisplayName("Inne zdjęcie, użytkownik, próg lub liveness → nowe wywołanie")
+    void anyKeyPartChangeMisses() {
+        AtomicInteger pythonCalls = new AtomicInteger();
+        BiometricRestService service = service(stub(pythonCalls, 200), cache());
+
+        service.verifyUser("user-1", image(1), 0.5, true);
+        service.verifyUser("user-1", image(2), 0.5, true);
+        service.verifyUser("user-2", image(1), 0.5, true);
+        service.verifyUser("user-1", image(1), 0.6, true);
+        service.verifyUser("user-1", image(1), 0.5, false);
+
+        assertThat(pythonCalls.get()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Błędy Pythona nie są zapamiętywane")
+    void errorsAreNotCached() {
+        AtomicInteger pythonCalls = new AtomicInteger();
+        BiometricRestService service = service(stub(pythonCalls, 400), cache());
+
+        service.verifyUser("user-1", image(1), 0.5, true);
+        service.verifyUser("user-1", image(1), 0.5, true);
+
+        assertThat(pythonCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Wpis wygasa po TTL, rozmiar ograniczony do max-entries")
+    void expiresAndStaysBounded() {
+        AtomicLong clock = new AtomicLong();
+        VerificationResultCache cache = new VerificationResultCache(true, Duration.ofSeconds(10), 2, clock::get,
+                new SimpleMeterRegistry());
+        ResponseEntity<VerifyResponse> result = ResponseEntity.ok(new VerifyResponse(true, 0.9, true, null));
+
+        VerificationResultCache.Key first = cache.key("user-1", image(1), 0.5, true);
+        cache.put(first, result);
+        clock.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertThat(cache.get(first)).isNotNull();
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(cache.get(first)).isNull();
+
+        for (int i = 0; i < 5; i++) {
+            cache.put(cache.key("user-" + i, image(i), 0.5, true), result);
+        }
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(cache.key("user-4", image(4), 0.5, true))).isNotNull();
+        assertThat(cache.get(cache.key("user-0", image(0), 0.5, true))).isNull();
+    }
+
+    /**
+     * 10 s TTL - every replay in these tests lands well inside it
+     */
+    private static VerificationResultCache cache() {
+        return new VerificationResultCache(true, Duration.ofSeconds(10), 10_000, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Only the cache is under test - the call guard lets every call through, no single-flight, no quality gate
+     */
+    private static BiometricRestService service(String url, VerificationResultCache cache) {
+        BiometricLoadBalancer loadBalancer = new BiometricLoadBalancer(List.of(url), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+        BiometricCallGuard callGuard = mock(BiometricCallGuard.class);
+        when(callGuard.execute(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Object>>getArgument(1).get());
+        return new BiometricRestService(new RestTemplate(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, new SimpleMeterRegistry()), cache,
+                mock(VerificationSingleFlight.class), mock(BiometricSocketTransport.class), mock(ImageQualityGate.class));
+    }
+
+    private String stub(AtomicInteger calls, int status) {
+        try {
+            stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            stub.createContext("/api/biometrics/verify", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                calls.incrementAndGet();
+                byte[] json = "{\"success\":true,\"is_matched\":true,\"confidence\":0.9,\"message\":\"Face matched\"}"
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, json.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(json);
+                }
+            });
+            stub.start();
+            return "http://127.0.0.1:" + stub.getAddress().getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MockMultipartFile image(int seed) {
+        byte[] bytes = new byte[2048];
+        new Random(seed).nextBytes(bytes);
+        return new MockMultipartFile("image", "face.jpg", "image/jpeg", bytes);
+    }
+}
@@ -0,0 +1,246 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricCallGuard;
+import com.fijalkoa.biosso.biometric.BiometricLoadBalancer;
+import com.fijalkoa.biosso.biometric.BiometricServiceUnavailableException;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import com.fijalkoa.biosso.biometric.ImageQualityGate;
+import com.fijalkoa.biosso.biometric.VerificationResultCache;
+import com.fijalkoa.biosso.biometric.VerificationSingleFlight;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import com.fijalkoa.biosso.service.BiometricRestService;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DisplayName("VerificationSingleFlight – współbieżne identyczne żądania /verify dzielą jedno wywołanie")
+class VerificationSingleFlightTest {
+
+    private static final VerificationResultCache.Key KEY = new VerificationResultCache.Key("user-1", "abc", 0.5, true);
+    private static final VerifyResponse MATCHED = new VerifyResponse(true, 0.9, true, null);
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VerificationSingleFlight singleFlight = new VerificationSingleFlight(true, meterRegistry);
+    private HttpServer stub;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @Test
+    @DisplayName("Równoczesne wywołania → jedno wywołanie Pythona, reszta dostaje kopię z nagłówkiem")
+    void concurrentCallersShareOneCall() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<VerifyResponse>> call = () -> {
+            calls.incrementAndGet();
+            await(release);
+            return ResponseEntity.ok(MATCHED);
+        };
+
+        List<Future<ResponseEntity<VerifyResponse>>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(KEY, call)));
+        }
+        waitForFollowers(CALLERS - 1);
+        release.countDown();
+
+        int coalesced = 0;
+        for (Future<ResponseEntity<VerifyResponse>> result : results) {
+            ResponseEntity<VerifyResponse> response = result.get(5, TimeUnit.SECONDS);
+            assertThat(response.getBody().matched()).isTrue();
+            if ("true".equals(response.getHeaders().getFirst(VerificationSingleFlight.COALESCED_HEADER))) {
+                coalesced++;
+            }
+        }
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(coalesced).isEqualTo(CALLERS - 1);
+        assertThat(singleFlight.inFlight()).isZero();
+    }
+
+    @Test
+    @DisplayName("Błąd wywołania trafia do wszystkich czekających (ten sam typ wyjątku)")
+    void errorsReachEveryWaiter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<ResponseEntity<VerifyResponse>> call = () -> {
+            await(release);
+            throw new BiometricServiceUnavailableException(BiometricServiceUnavailableException.Reason.CIRCUIT_OPEN,
+                    30, "circuit open");
+        };
+
+        List<Future<ResponseEntity<VerifyResponse>>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute(KEY, call)));
+        }
+        waitForFollowers(CALLERS - 1);
+        release.countDown();
+
+        for (Future<ResponseEntity<VerifyResponse>> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(BiometricServiceUnavailableException.class);
+        }
+        // The next request is a new flight, not a cached failure
+        assertThat(singleFlight.execute(KEY, () -> ResponseEntity.ok(MATCHED)).getBody().matched()).isTrue();
+    }
+
+    @Test
+    @DisplayName("Przerwany follower przestaje czekać, wywołanie lidera trwa dalej")
+    void interruptedFollowerDetaches() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<ResponseEntity<VerifyResponse>> leader = executor.submit(() -> singleFlight.execute(KEY, () -> {
+            await(release);
+            return ResponseEntity.ok(MATCHED);
+        }));
+        waitForFlight();
+        Future<ResponseEntity<VerifyResponse>> follower = executor.submit(() -> singleFlight.execute(KEY, () -> {
+            throw new AssertionError("follower must not call Python");
+        }));
+        waitForFollowers(1);
+
+        follower.cancel(true);
+        release.countDown();
+
+        assertThat(leader.get(5, TimeUnit.SECONDS).getBody().matched()).isTrue();
+        assertThatThrownBy(follower::get).isInstanceOf(CancellationException.class);
+    }
+
+    @Test
+    @DisplayName("Przerwany lider nie anuluje followerów – jeden z nich przejmuje wywołanie")
+    void abandonedFlightIsTakenOver() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        Future<ResponseEntity<VerifyResponse>> leader = executor.submit(() -> singleFlight.execute(KEY, () -> {
+            leaderStarted.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                // As BiometricCallGuard does when interrupted in the limiter queue
+                Thread.currentThread().interrupt();
+            }
+            throw new BiometricServiceUnavailableException(BiometricServiceUnavailableException.Reason.CONCURRENCY_LIMIT,
+                    1, "interrupted");
+        }));
+        leaderStarted.await(5, TimeUnit.SECONDS);
+        AtomicInteger followerCalls = new AtomicInteger();
+        Future<ResponseEntity<VerifyResponse>> follower = executor.submit(() -> singleFlight.execute(KEY, () -> {
+            followerCalls.incrementAndGet();
+            return ResponseEntity.ok(MATCHED);
+        }));
+        waitForFollowers(1);
+
+        leader.cancel(true);
+
+        assertThat(follower.get(5, TimeUnit.SECONDS).getBody().matched()).isTrue();
+        assertThat(followerCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("BiometricRestService: równoczesne identyczne /verify → jedno wywołanie Pythona")
+    void restServiceCoalescesIdenticalRequests() throws Exception {
+        AtomicInteger pythonCalls = new AtomicInteger();
+        BiometricLoadBalancer loadBalancer = new BiometricLoadBalancer(List.of(stub(pythonCalls)), "p2c", 5, 3.0, 20,
+                Duration.ofSeconds(30), 50, Duration.ofSeconds(10));
+        BiometricCallGuard callGuard = mock(BiometricCallGuard.class);
+        when(callGuard.execute(any(), any())).thenAnswer(invocation -> invocation.<Supplier<Object>>getArgument(1).get());
+        // Real, disabled cache - it still derives the key, but every caller has to reach the single-flight
+        VerificationResultCache cache = new VerificationResultCache(false, Duration.ofSeconds(10), 10_000, meterRegistry);
+        BiometricRestService service = new BiometricRestService(new RestTemplate(), loadBalancer, callGuard,
+                new ImageNormalizer(false, 640, 0.85f, 1, meterRegistry), cache,
+                singleFlight, mock(BiometricSocketTransport.class), mock(ImageQualityGate.class));
+        MockMultipartFile image = new MockMultipartFile("image", "face.jpg", "image/jpeg", new byte[2048]);
+
+        List<Future<ResponseEntity<Map<String, Object>>>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> service.verifyUser("user-1", image, 0.5, true)));
+        }
+        for (Future<ResponseEntity<Map<String, Object>>> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS).getStatusCode().is2xxSuccessful()).isTrue();
+        }
+
+        assertThat(pythonCalls.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter("biometric.verify.coalesced").count()).isEqualTo(CALLERS - 1);
+    }
+
+    private void waitForFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlight.inFlight() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void waitForFollowers(int followers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.counter("biometric.verify.coalesced").count() < followers && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Python stub that answers only once all callers have had time to join the flight
+     */
+    private String stub(AtomicInteger calls) {
+        try {
+            stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            stub.setExecutor(Executors.newCachedThreadPool());
+            stub.createContext("/api/biometrics/verify", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                calls.incrementAndGet();
+                try {
+                    waitForFollowers(CALLERS - 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] json = "{\"is_matched\":true,\"confidence\":0.9}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, json.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(json);
+                }
+            });
+            stub.start();
+            return "http://127.0.0.1:" + stub.getAddress().getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
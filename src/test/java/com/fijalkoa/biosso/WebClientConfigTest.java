@@ -0,0 +1,89 @@
+package com.fijalkoa.biosso;
+
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import com.fijalkoa.biosso.config.WebClientConfig;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("WebClientConfig – RestTemplate do Pythona budowany w każdym trybie klienta HTTP")
+class WebClientConfigTest {
+
+    private static final byte[] RESPONSE = "{\"status\":\"healthy\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CloseableHttpClient pooledClient;
+    private HttpServer stub;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (pooledClient != null) {
+            pooledClient.close();
+        }
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    @ParameterizedTest(name = "http-client={0}, streaming={1}, virtual threads={2}")
+    @CsvSource({
+            "pooled, true, false",
+            "pooled, false, false",
+            "jdk, true, false",
+            "simple, true, false",
+            "simple, false, false",
+            "simple, true, true"
+    })
+    @DisplayName("Bean restTemplate się buduje i wywołania Pythona trafiają do metryk")
+    void restTemplateBuildsAndIsMetered(String httpClient, boolean streaming, boolean virtualThreads) throws Exception {
+        WebClientConfig config = new WebClientConfig();
+        ReflectionTestUtils.setField(config, "httpClientType", httpClient);
+        ReflectionTestUtils.setField(config, "streamingEnabled", streaming);
+        ReflectionTestUtils.setField(config, "streamChunkSize", 65536);
+        ReflectionTestUtils.setField(config, "virtualThreadsEnabled", virtualThreads);
+
+        @SuppressWarnings("unchecked")
+        ObjectProvider<CloseableHttpClient> provider = mock(ObjectProvider.class);
+        if ("pooled".equals(httpClient)) {
+            pooledClient = HttpClients.createDefault();
+        }
+        when(provider.getIfAvailable()).thenReturn(pooledClient);
+
+        RestTemplate restTemplate = config.restTemplate(new RestTemplateBuilder(), provider,
+                new BiometricHttpMetrics(meterRegistry));
+
+        assertThat(restTemplate.getForObject(stub() + "/api/biometrics/health", String.class))
+                .isEqualTo(new String(RESPONSE, StandardCharsets.UTF_8));
+        assertThat(meterRegistry.get("biometric.client.requests").tag("transport", "blocking").timer().count())
+                .isEqualTo(1);
+    }
+
+    private String stub() throws Exception {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/api/biometrics/health", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(RESPONSE);
+            }
+        });
+        stub.start();
+        return "http://127.0.0.1:" + stub.getAddress().getPort();
+    }
+}
@@ -0,0 +1,125 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fijalkoa.biosso.biometric.QuantizedVector;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar loops vs jdk.incubator.vector kernels for embedding similarity
+ *
+ * - cosine*: full cosine (dot + both norms) of two raw embeddings
+ * - match*: 1:1 verification as done in BiometricVerificationService - unit probe
+ *   against the user's unit-length enrolled embeddings (5 angles)
+ * - matchInt8 / matchFloat16: same against quantized templates (QuantizedVector)
+ *
+ * Dimensions cover common face models (128 FaceNet, 512 ArcFace) plus an odd size
+ * that exercises the tail loop.
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.EmbeddingSimilarityBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EmbeddingSimilarityBenchmark {
+
+    private static final int ENROLLED_ANGLES = 5;
+
+    @Param({"128", "512", "515"})
+    public int dimensions;
+
+    private float[] a;
+    private float[] b;
+    private float[] unitProbe;
+    private float[][] unitTemplates;
+    private QuantizedVector[] int8Templates;
+    private QuantizedVector[] float16Templates;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        a = randomEmbedding(random);
+        b = randomEmbedding(random);
+        unitProbe = VectorSimilarity.normalize(randomEmbedding(random));
+        unitTemplates = new float[ENROLLED_ANGLES][];
+        for (int i = 0; i < ENROLLED_ANGLES; i++) {
+            unitTemplates[i] = VectorSimilarity.normalize(randomEmbedding(random));
+        }
+        int8Templates = new QuantizedVector[ENROLLED_ANGLES];
+        float16Templates = new QuantizedVector[ENROLLED_ANGLES];
+        for (int i = 0; i < ENROLLED_ANGLES; i++) {
+            int8Templates[i] = QuantizedVector.encode(unitTemplates[i], QuantizedVector.Quantization.INT8);
+            float16Templates[i] = QuantizedVector.encode(unitTemplates[i], QuantizedVector.Quantization.FLOAT16);
+        }
+        if (!VectorSimilarity.isVectorApiAvailable()) {
+            throw new IllegalStateException("Run with --add-modules jdk.incubator.vector");
+        }
+    }
+
+    @Benchmark
+    public float cosineScalar() {
+        return VectorSimilarity.cosineScalar(a, b);
+    }
+
+    @Benchmark
+    public float cosineVector() {
+        return VectorSimilarity.cosine(a, b);
+    }
+
+    @Benchmark
+    public float matchScalar() {
+        float best = -1f;
+        for (float[] template : unitTemplates) {
+            best = Math.max(best, VectorSimilarity.dotScalar(unitProbe, template));
+        }
+        return best;
+    }
+
+    @Benchmark
+    public float matchVector() {
+        return VectorSimilarity.maxSimilarity(unitProbe, unitTemplates);
+    }
+
+    @Benchmark
+    public float matchInt8() {
+        return matchQuantized(int8Templates);
+    }
+
+    @Benchmark
+    public float matchFloat16() {
+        return matchQuantized(float16Templates);
+    }
+
+    private float matchQuantized(QuantizedVector[] templates) {
+        float best = -1f;
+        for (QuantizedVector template : templates) {
+            best = Math.max(best, template.dot(unitProbe));
+        }
+        return best;
+    }
+
+    private float[] randomEmbedding(Random random) {
+        float[] embedding = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            embedding[i] = (float) random.nextGaussian();
+        }
+        return embedding;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(EmbeddingSimilarityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,174 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fijalkoa.biosso.biometric.HnswIndex;
+import com.fijalkoa.biosso.biometric.VectorSimilarity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1:N identification - HNSW search vs exhaustive scan over synthetic enrollments
+ *
+ * - search: HnswIndex top-10 at the given ef (what FaceIdentificationService does per login)
+ * - bruteForce: dot product against every enrolled embedding (exact, the recall baseline)
+ *
+ * Recall@10 of the index against the exhaustive scan is measured on 200 probes in setup and
+ * printed per trial. Probes are enrolled embeddings with noise (a new photo of an enrolled face).
+ *
+ * Building 1M x 512 takes a while, so built indexes are cached as snapshots in java.io.tmpdir
+ * (HnswIndex.writeSnapshot) - later runs only pay for loading them. Needs a large heap at 1M.
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.IdentificationIndexBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Xmx12g"})
+public class IdentificationIndexBenchmark {
+
+    private static final int DIMENSIONS = 512;
+    private static final int TOP_K = 10;
+    private static final int PROBES = 200;
+    private static final float PROBE_NOISE = 0.03f;
+
+    @Param({"10000", "100000", "1000000"})
+    public int enrollments;
+
+    @Param({"64", "128"})
+    public int ef;
+
+    private float[][] embeddings;
+    private float[][] probes;
+    private HnswIndex index;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        embeddings = new float[enrollments][];
+        for (int i = 0; i < enrollments; i++) {
+            embeddings[i] = VectorSimilarity.normalize(gaussian(random, 1f));
+        }
+        probes = new float[PROBES][];
+        for (int i = 0; i < PROBES; i++) {
+            float[] noise = gaussian(random, PROBE_NOISE);
+            float[] enrolled = embeddings[random.nextInt(enrollments)];
+            for (int d = 0; d < DIMENSIONS; d++) {
+                noise[d] += enrolled[d];
+            }
+            probes[i] = VectorSimilarity.normalize(noise);
+        }
+
+        index = loadOrBuild();
+
+        int found = 0;
+        for (float[] probe : probes) {
+            Set<Long> exact = exactTopK(probe);
+            for (HnswIndex.Candidate candidate : index.search(probe, TOP_K, ef, Long.MAX_VALUE).candidates()) {
+                if (exact.contains(candidate.userId())) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("%n>> enrollments=%d ef=%d recall@%d=%.4f%n",
+                enrollments, ef, TOP_K, (double) found / (PROBES * TOP_K));
+    }
+
+    @Benchmark
+    public HnswIndex.SearchResult search() {
+        return index.search(nextProbe(), TOP_K, ef, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public float bruteForce() {
+        float[] probe = nextProbe();
+        float best = -1f;
+        for (float[] embedding : embeddings) {
+            best = Math.max(best, VectorSimilarity.dot(probe, embedding));
+        }
+        return best;
+    }
+
+    private float[] nextProbe() {
+        next = (next + 1) % PROBES;
+        return probes[next];
+    }
+
+    private HnswIndex loadOrBuild() throws IOException {
+        Path snapshot = Path.of(System.getProperty("java.io.tmpdir"), "hnsw-bench-" + enrollments + "x" + DIMENSIONS + ".bin");
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                return HnswIndex.readSnapshot(in, 42);
+            }
+        }
+
+        long start = System.nanoTime();
+        HnswIndex built = new HnswIndex(DIMENSIONS, 16, 200, 42);
+        for (int i = 0; i < enrollments; i++) {
+            built.insert(i, embeddings[i]);
+        }
+        System.out.printf("%n>> built %d in %d s%n", enrollments, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshot)))) {
+            built.writeSnapshot(out);
+        }
+        return built;
+    }
+
+    private Set<Long> exactTopK(float[] probe) {
+        long[] ids = new long[TOP_K];
+        float[] best = new float[TOP_K];
+        Arrays.fill(best, -2f);
+        for (int i = 0; i < embeddings.length; i++) {
+            float similarity = VectorSimilarity.dot(probe, embeddings[i]);
+            if (similarity > best[TOP_K - 1]) {
+                int slot = TOP_K - 1;
+                while (slot > 0 && best[slot - 1] < similarity) {
+                    best[slot] = best[slot - 1];
+                    ids[slot] = ids[slot - 1];
+                    slot--;
+                }
+                best[slot] = similarity;
+                ids[slot] = i;
+            }
+        }
+        Set<Long> exact = new HashSet<>();
+        for (long id : ids) {
+            exact.add(id);
+        }
+        return exact;
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(IdentificationIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
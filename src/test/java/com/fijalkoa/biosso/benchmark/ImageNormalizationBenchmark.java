@@ -0,0 +1,97 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fijalkoa.biosso.biometric.ImageNormalizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of ImageNormalizer against the bytes it keeps off the wire
+ *
+ * Source is a synthetic phone-camera frame (gradient + sensor noise, so it compresses
+ * like a real photo rather than a flat test card). Per operation the benchmark reports
+ * the normalisation time, and through the aux counters the original vs normalised bytes.
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.ImageNormalizationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImageNormalizationBenchmark {
+
+    @Param({"4032x3024", "1920x1080"})
+    public String source;
+
+    @Param({"640", "1024"})
+    public int maxDimension;
+
+    private MockMultipartFile upload;
+    private ImageNormalizer normalizer;
+
+    @Setup
+    public void setUp() throws IOException {
+        String[] size = source.split("x");
+        upload = new MockMultipartFile("image", "face.jpg", "image/jpeg",
+                syntheticPhoto(Integer.parseInt(size[0]), Integer.parseInt(size[1])));
+        normalizer = new ImageNormalizer(true, maxDimension, 0.85f, 2, new SimpleMeterRegistry());
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long originalBytes;
+        public long normalizedBytes;
+    }
+
+    @Benchmark
+    public byte[] normalize(Bytes bytes) throws IOException {
+        byte[] normalized = normalizer.normalize(upload);
+        bytes.originalBytes += upload.getSize();
+        bytes.normalizedBytes += normalized.length;
+        return normalized;
+    }
+
+    private static byte[] syntheticPhoto(int width, int height) throws IOException {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = 255 * (x + y) / (width + height);
+                int noise = random.nextInt(24) - 12;
+                int r = clamp(base + noise);
+                int g = clamp(base / 2 + 60 + noise);
+                int b = clamp(200 - base / 2 + noise);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ImageNormalizationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
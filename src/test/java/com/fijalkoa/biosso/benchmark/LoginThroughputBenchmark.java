@@ -0,0 +1,214 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fijalkoa.biosso.model.User;
+import com.fijalkoa.biosso.model.UserBiometricMetadata;
+import com.fijalkoa.biosso.repository.UserBiometricMetadataRepository;
+import com.fijalkoa.biosso.repository.UserRepository;
+import com.fijalkoa.biosso.security.BioSSOAuthenticationProvider;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Concurrent login throughput: platform threads vs virtual threads
+ *
+ * Each invocation fires CONCURRENT_LOGINS password logins through BioSSOAuthenticationProvider,
+ * wired with the real JPA repositories, Hibernate and the Hikari pool from application.properties
+ * against PostgreSQL in a Testcontainers container (Docker required). Half of the seeded users have
+ * an ACTIVE biometric enrollment, so both branches of the provider run. The platform pool is sized
+ * like Tomcat's default (200 threads).
+ *
+ * In the virtual mode a JFR stream records jdk.VirtualThreadPinned events (any duration) during the
+ * whole trial; if a login pinned its carrier - synchronized around blocking I/O in the JDBC driver,
+ * Hikari or Hibernate - the trial fails with the pinning stacks instead of reporting a score.
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.LoginThroughputBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LoginThroughputBenchmark {
+
+    private static final int CONCURRENT_LOGINS = 2_000;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int USERS = 1_000;
+    private static final String PASSWORD = "password";
+    private static final int PINNED_FRAMES_REPORTED = 32;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    private PostgreSQLContainer<?> postgres;
+    private ConfigurableApplicationContext context;
+    private ExecutorService executor;
+    private BioSSOAuthenticationProvider provider;
+
+    private RecordingStream pinnedEvents;
+    private final AtomicInteger pinned = new AtomicInteger();
+    private final Set<String> pinnedStacks = ConcurrentHashMap.newKeySet();
+
+    @Setup
+    public void setUp() {
+        postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+        postgres.start();
+
+        // application.properties is on the classpath - only the connection and the noisy bits are overridden
+        context = new SpringApplicationBuilder(LoginBenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        "spring.jpa.show-sql=false",
+                        "logging.level.com.fijalkoa.biosso=WARN")
+                .run();
+        seed(context.getBean(UserRepository.class), context.getBean(UserBiometricMetadataRepository.class));
+        provider = context.getBean(BioSSOAuthenticationProvider.class);
+
+        if ("virtual".equals(threads)) {
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            pinnedEvents = new RecordingStream();
+            pinnedEvents.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            pinnedEvents.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+            pinnedEvents.startAsync();
+        } else {
+            executor = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        if (pinnedEvents != null) {
+            pinnedEvents.stop();
+            pinnedEvents.close();
+        }
+        context.close();
+        postgres.stop();
+
+        if (pinned.get() > 0) {
+            throw new IllegalStateException(pinned.get() + " jdk.VirtualThreadPinned events during logins:\n\n"
+                    + String.join("\n\n", pinnedStacks));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_LOGINS)
+    public void concurrentLogins() throws Exception {
+        List<Future<?>> logins = new ArrayList<>(CONCURRENT_LOGINS);
+        for (int i = 0; i < CONCURRENT_LOGINS; i++) {
+            String email = email(i % USERS);
+            logins.add(executor.submit(() -> provider.authenticate(
+                    new UsernamePasswordAuthenticationToken(email, PASSWORD))));
+        }
+        for (Future<?> login : logins) {
+            login.get();
+        }
+    }
+
+    private static void seed(UserRepository userRepository, UserBiometricMetadataRepository metadataRepository) {
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setEmail(email(i));
+            user.setPassword(PASSWORD);
+            users.add(user);
+        }
+        users = userRepository.saveAll(users);
+
+        List<UserBiometricMetadata> enrollments = new ArrayList<>(USERS / 2);
+        for (int i = 0; i < USERS; i += 2) {
+            enrollments.add(UserBiometricMetadata.builder()
+                    .user(users.get(i))
+                    .status(UserBiometricMetadata.BiometricStatus.ACTIVE)
+                    .enrolledAt(LocalDateTime.now())
+                    .build());
+        }
+        metadataRepository.saveAll(enrollments);
+    }
+
+    private static String email(int user) {
+        return "bench" + user + "@example.com";
+    }
+
+    private void onPinned(RecordedEvent event) {
+        pinned.incrementAndGet();
+        if (event.getStackTrace() != null) {
+            pinnedStacks.add(event.getStackTrace().getFrames().stream()
+                    .limit(PINNED_FRAMES_REPORTED)
+                    .map(LoginThroughputBenchmark::describe)
+                    .collect(Collectors.joining("\n    at ", "    at ", "")));
+        }
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+
+    /**
+     * Persistence slice of the application - DataSource, Hibernate and the repositories, nothing web or biometric
+     */
+    @SpringBootConfiguration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class})
+    @EntityScan(basePackageClasses = User.class)
+    @EnableJpaRepositories(basePackageClasses = UserRepository.class)
+    @Import(BioSSOAuthenticationProvider.class)
+    static class LoginBenchmarkConfiguration {
+
+        /**
+         * BCrypt cost is identical in both modes, keep it out of the measurement
+         */
+        @Bean
+        @SuppressWarnings("deprecation")
+        PasswordEncoder passwordEncoder() {
+            return NoOpPasswordEncoder.getInstance();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LoginThroughputBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
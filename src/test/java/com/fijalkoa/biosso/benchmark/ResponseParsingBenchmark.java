@@ -0,0 +1,114 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import com.fijalkoa.biosso.biometric.EmbeddingResponse;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing Python responses: untyped Map (as before) vs typed records, with and without Blackbird
+ *
+ * - verify*: /api/biometrics/verify body, read into the values BiometricVerificationService needs
+ * - embed*: /api/biometrics/embed body with a 512-d embedding, read into a float[]
+ *
+ * Allocation per call is the gc.alloc.rate.norm column (GCProfiler is added in main).
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.ResponseParsingBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
+    private static final int EMBEDDING_DIMENSIONS = 512;
+
+    private ObjectMapper plain;
+    private ObjectMapper blackbird;
+    private byte[] verifyJson;
+    private byte[] embedJson;
+
+    @Setup
+    public void setUp() {
+        plain = new ObjectMapper();
+        blackbird = new ObjectMapper().registerModule(new BlackbirdModule());
+
+        verifyJson = ("{\"is_matched\":true,\"confidence\":0.8731,\"liveness_passed\":true,"
+                + "\"verification_time_ms\":143.2,\"user_id\":\"42\",\"model\":\"arcface\"}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        Random random = new Random(42);
+        StringBuilder embed = new StringBuilder("{\"liveness_passed\":true,\"embedding\":[");
+        for (int i = 0; i < EMBEDDING_DIMENSIONS; i++) {
+            embed.append(i == 0 ? "" : ",").append(random.nextGaussian());
+        }
+        embedJson = embed.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public double verifyMap() throws IOException {
+        Map<String, Object> body = plain.readValue(verifyJson, MAP_TYPE);
+        boolean matched = (boolean) body.getOrDefault("is_matched", false);
+        double confidence = ((Number) body.getOrDefault("confidence", 0)).doubleValue();
+        return matched ? confidence : -confidence;
+    }
+
+    @Benchmark
+    public double verifyTyped() throws IOException {
+        VerifyResponse body = plain.readValue(verifyJson, VerifyResponse.class);
+        return body.matched() ? body.confidence() : -body.confidence();
+    }
+
+    @Benchmark
+    public double verifyTypedBlackbird() throws IOException {
+        VerifyResponse body = blackbird.readValue(verifyJson, VerifyResponse.class);
+        return body.matched() ? body.confidence() : -body.confidence();
+    }
+
+    @Benchmark
+    public float[] embedMap() throws IOException {
+        Map<String, Object> body = plain.readValue(embedJson, MAP_TYPE);
+        List<?> values = (List<?>) body.get("embedding");
+        float[] embedding = new float[values.size()];
+        for (int i = 0; i < embedding.length; i++) {
+            embedding[i] = ((Number) values.get(i)).floatValue();
+        }
+        return embedding;
+    }
+
+    @Benchmark
+    public float[] embedTyped() throws IOException {
+        return plain.readValue(embedJson, EmbeddingResponse.class).embedding();
+    }
+
+    @Benchmark
+    public float[] embedTypedBlackbird() throws IOException {
+        return blackbird.readValue(embedJson, EmbeddingResponse.class).embedding();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResponseParsingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,142 @@
+package com.fijalkoa.biosso.benchmark;
+
+import com.fijalkoa.biosso.BiometricSocketStub;
+import com.fijalkoa.biosso.biometric.BiometricHttpMetrics;
+import com.fijalkoa.biosso.biometric.BiometricSocketTransport;
+import com.fijalkoa.biosso.biometric.VerifyResponse;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verify round trip to a local stub: HTTP + multipart + JSON (RestTemplate, as BiometricRestService
+ * does today) vs BiometricSocketTransport over a Unix domain socket
+ *
+ * Both stubs answer immediately, so the numbers are pure transport + encoding overhead -
+ * what a same-pod Python sidecar saves per login. SampleTime reports p50/p90/p99.
+ *
+ * Run: mvn test-compile exec:java -Dexec.classpathScope=test \
+ *        -Dexec.mainClass=com.fijalkoa.biosso.benchmark.SocketTransportBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SocketTransportBenchmark {
+
+    private static final byte[] VERIFY_JSON =
+            "{\"is_matched\":true,\"confidence\":0.9,\"liveness_passed\":true,\"verification_time_ms\":1.0}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"http", "uds"})
+    public String transport;
+
+    // Normalised JPEG (~640px) vs a phone upload forwarded as is
+    @Param({"60000", "2000000"})
+    public int imageBytes;
+
+    private ByteArrayResource image;
+    private HttpServer httpStub;
+    private String verifyUrl;
+    private RestTemplate restTemplate;
+    private Path socketDirectory;
+    private BiometricSocketStub socketStub;
+    private BiometricSocketTransport socketTransport;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] bytes = new byte[imageBytes];
+        new Random(42).nextBytes(bytes);
+        image = new ByteArrayResource(bytes) {
+            @Override
+            public String getFilename() {
+                return "face.jpg";
+            }
+        };
+
+        if ("http".equals(transport)) {
+            httpStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpStub.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            httpStub.createContext("/api/biometrics/verify", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, VERIFY_JSON.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(VERIFY_JSON);
+                }
+            });
+            httpStub.start();
+            verifyUrl = "http://127.0.0.1:" + httpStub.getAddress().getPort() + "/api/biometrics/verify";
+            restTemplate = new RestTemplate(new JdkClientHttpRequestFactory(
+                    HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()));
+        } else {
+            socketDirectory = Files.createTempDirectory("biometric-uds");
+            Path socket = socketDirectory.resolve("biometric.sock");
+            socketStub = BiometricSocketStub.start(socket, Duration.ZERO);
+            socketTransport = new BiometricSocketTransport("uds", socket.toString(), 2, Duration.ofSeconds(10),
+                    new BiometricHttpMetrics(new SimpleMeterRegistry()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (httpStub != null) {
+            httpStub.stop(0);
+        }
+        if (socketTransport != null) {
+            socketTransport.close();
+            socketStub.close();
+            Files.deleteIfExists(socketDirectory);
+        }
+    }
+
+    @Benchmark
+    public boolean verify() {
+        if (socketTransport != null) {
+            return socketTransport.verify("user-1", image, 0.5, true).matched();
+        }
+
+        MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+        body.add("user_id", "user-1");
+        body.add("threshold", "0.5");
+        body.add("check_liveness", "true");
+        body.add("image", image);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        return restTemplate.postForEntity(verifyUrl, new HttpEntity<>(body, headers), VerifyResponse.class)
+                .getBody().matched();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SocketTransportBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}